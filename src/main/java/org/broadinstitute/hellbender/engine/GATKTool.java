@@ -42,6 +42,7 @@ import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.read.SAMFileGATKReadWriter;
 import org.broadinstitute.hellbender.utils.reference.ReferenceUtils;
 import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.hellbender.utils.variant.writers.ParallelVCFWriter;
 
 /**
  * Base class for all GATK tools. Tool authors that wish to write a "GATK" tool but not use one of
@@ -119,6 +120,12 @@ public abstract class GATKTool extends CommandLineProgram {
             doc = "If true, don't emit genotype fields when writing vcf file output.", optional = true)
     public boolean outputSitesOnlyVCFs = false;
 
+    public static final String VARIANT_OUTPUT_THREADS_NAME = "variant-output-threads";
+    @Argument(fullName = VARIANT_OUTPUT_THREADS_NAME,
+            doc = "Number of threads formatting and compressing VCF output, or 0 to write it on the main thread. " +
+                    "Does not apply to BCF output or when creating an MD5 digest.", optional = true, common = true, minValue = 0)
+    public int variantOutputThreads = 0;
+
     /**
      * Master sequence dictionary to be used instead of all other dictionaries (if provided).
      */
@@ -799,6 +806,10 @@ public abstract class GATKTool extends CommandLineProgram {
             options.add(Options.DO_NOT_WRITE_GENOTYPES);
         }
 
+        if (variantOutputThreads > 0 && !createOutputVariantMD5 && ParallelVCFWriter.canWrite(outFile)) {
+            return new ParallelVCFWriter(outFile, sequenceDictionary, variantOutputThreads, options.toArray(new Options[options.size()]));
+        }
+
         return GATKVariantContextUtils.createVCFWriter(
                 outFile,
                 sequenceDictionary,
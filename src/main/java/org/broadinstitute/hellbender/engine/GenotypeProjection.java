@@ -0,0 +1,220 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Drops the genotype data a tool does not need from variants read from a VCF, before it is parsed.
+ *
+ * The VCF codec keeps the genotype columns of each record as a single unparsed string until they are accessed, and
+ * then parses every field of every sample. This cuts that string down to the FORMAT fields and sample columns
+ * requested, and hands it to a codec with a header for just those samples, so that only they are parsed, and still
+ * only if accessed. Variants whose genotypes have already been parsed, or that did not come from a VCF, are returned
+ * unchanged.
+ *
+ * The projection of the genotype columns assumes they follow the columns of the header given here, so it must be
+ * the header of the file the variants were read from.
+ */
+final class GenotypeProjection implements UnaryOperator<VariantContext> {
+
+    private static final char COLUMN_SEPARATOR = VCFConstants.FIELD_SEPARATOR_CHAR;
+    private static final char FORMAT_FIELD_SEPARATOR = VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR;
+
+    private final boolean sitesOnly;
+    private final Set<String> formatFieldsToKeep;
+
+    // sorted columns of the samples to keep, counting the FORMAT column as column 0, or null to keep all samples
+    private final int[] sampleColumnsToKeep;
+    private final int numSamplesToKeep;
+    private final VCFCodec projectedCodec;
+
+    // the last FORMAT column projected, and the indices of the fields kept from it
+    private String lastFormat = null;
+    private String lastProjectedFormat = null;
+    private int[] lastFormatFieldsToKeep = null;
+
+    /**
+     * @param header header of the VCF the variants are read from, or null if there is no single such header, in which
+     *               case only dropping all the genotypes is supported
+     * @param samplesToKeep samples whose genotypes are needed, or null for all of them; if none of them are in the
+     *                      header the genotypes are dropped from every variant
+     * @param formatFieldsToKeep FORMAT fields needed, or null for all of them; GT is always kept
+     */
+    GenotypeProjection(final VCFHeader header, final Set<String> samplesToKeep, final Set<String> formatFieldsToKeep) {
+        this.formatFieldsToKeep = formatFieldsToKeep;
+        if (header == null || !header.hasGenotypingData() || (samplesToKeep == null && formatFieldsToKeep == null)) {
+            sitesOnly = samplesToKeep != null && samplesToKeep.isEmpty();
+            sampleColumnsToKeep = null;
+            numSamplesToKeep = 0;
+            projectedCodec = null;
+            return;
+        }
+
+        final List<String> headerSamples = header.getGenotypeSamples();
+        final List<String> projectedSamples = new ArrayList<>();
+        final int[] columns = new int[headerSamples.size()];
+        for (int i = 0; i < headerSamples.size(); i++) {
+            if (samplesToKeep == null || samplesToKeep.contains(headerSamples.get(i))) {
+                columns[projectedSamples.size()] = i + 1;
+                projectedSamples.add(headerSamples.get(i));
+            }
+        }
+        sitesOnly = projectedSamples.isEmpty();
+        sampleColumnsToKeep = samplesToKeep == null ? null : Arrays.copyOf(columns, projectedSamples.size());
+        numSamplesToKeep = projectedSamples.size();
+        projectedCodec = sitesOnly ? null : new VCFCodec();
+        if (projectedCodec != null) {
+            projectedCodec.setVCFHeader(new VCFHeader(header.getMetaDataInInputOrder(), projectedSamples), getVersion(header));
+        }
+    }
+
+    private static VCFHeaderVersion getVersion(final VCFHeader header) {
+        final VCFHeaderLine fileFormat = header.getOtherHeaderLine(VCFHeaderVersion.VCF4_2.getFormatString());
+        if (fileFormat != null && VCFHeaderVersion.isVersionString(fileFormat.getValue())) {
+            return VCFHeaderVersion.toHeaderVersion(fileFormat.getValue());
+        }
+        return VCFHeaderVersion.VCF4_2;
+    }
+
+    @Override
+    public VariantContext apply(final VariantContext vc) {
+        if (sitesOnly) {
+            return vc.hasGenotypes() ? new VariantContextBuilder(vc).noGenotypes().make() : vc;
+        }
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if (projectedCodec == null || !genotypes.isLazyWithData() ||
+                !(((LazyGenotypesContext) genotypes).getUnparsedGenotypeData() instanceof String)) {
+            return vc;
+        }
+
+        final String projectedData = project((String) ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData(), vc);
+        final List<Allele> alleles = vc.getAlleles();
+        final String contig = vc.getContig();
+        final int start = vc.getStart();
+        final LazyGenotypesContext projectedGenotypes = new LazyGenotypesContext(
+                data -> projectedCodec.createGenotypeMap((String) data, alleles, contig, start), projectedData, numSamplesToKeep);
+        // no validation, which would parse the genotypes right away
+        return new VariantContextBuilder(vc).genotypesNoValidation(projectedGenotypes).make();
+    }
+
+    /**
+     * Cuts the unparsed genotype columns (FORMAT followed by one column per sample) down to the fields and samples kept
+     */
+    private String project(final String data, final VariantContext vc) {
+        final StringBuilder projected = new StringBuilder();
+        int columnStart = 0;
+        int columnEnd = nextColumnEnd(data, columnStart);
+        final int[] fieldsToKeep = projectFormat(data.substring(0, columnEnd));
+        if (sampleColumnsToKeep == null && fieldsToKeep == null) {
+            return data;
+        }
+        projected.append(lastProjectedFormat);
+
+        int column = 0;
+        int numKept = 0;
+        while (sampleColumnsToKeep == null || numKept < sampleColumnsToKeep.length) {
+            if (columnEnd == data.length()) {
+                if (sampleColumnsToKeep == null) {
+                    break;
+                }
+                throw new UserException.BadInput(String.format("The record at %s:%d has fewer genotype columns than the samples in its header",
+                        vc.getContig(), vc.getStart()));
+            }
+            columnStart = columnEnd + 1;
+            columnEnd = nextColumnEnd(data, columnStart);
+            column++;
+            if (sampleColumnsToKeep == null || sampleColumnsToKeep[numKept] == column) {
+                projected.append(COLUMN_SEPARATOR);
+                appendProjectedSample(projected, data, columnStart, columnEnd, fieldsToKeep);
+                numKept++;
+            }
+        }
+        return projected.toString();
+    }
+
+    private static int nextColumnEnd(final String data, final int columnStart) {
+        final int separator = data.indexOf(COLUMN_SEPARATOR, columnStart);
+        return separator < 0 ? data.length() : separator;
+    }
+
+    /**
+     * Works out the fields to keep from a FORMAT column, reusing the last answer since most records share a FORMAT
+     * @return the indices of the fields to keep, or null to keep them all
+     */
+    private int[] projectFormat(final String format) {
+        if (format.equals(lastFormat)) {
+            return lastFormatFieldsToKeep;
+        }
+        lastFormat = format;
+        if (formatFieldsToKeep == null) {
+            lastProjectedFormat = format;
+            lastFormatFieldsToKeep = null;
+            return null;
+        }
+        final String[] fields = Utils.split(format, FORMAT_FIELD_SEPARATOR).toArray(new String[0]);
+        final List<String> projectedFields = new ArrayList<>(fields.length);
+        final int[] indices = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(VCFConstants.GENOTYPE_KEY) || formatFieldsToKeep.contains(fields[i])) {
+                indices[projectedFields.size()] = i;
+                projectedFields.add(fields[i]);
+            }
+        }
+        // a FORMAT column can't be empty, so keep the first field if none of the others are needed
+        if (projectedFields.isEmpty()) {
+            projectedFields.add(fields[0]);
+        }
+        lastProjectedFormat = String.join(String.valueOf(FORMAT_FIELD_SEPARATOR), projectedFields);
+        lastFormatFieldsToKeep = projectedFields.size() == fields.length ? null : Arrays.copyOf(indices, projectedFields.size());
+        return lastFormatFieldsToKeep;
+    }
+
+    /**
+     * Appends the kept fields of a sample column. Trailing fields may be missing from a sample, as VCF allows.
+     */
+    private static void appendProjectedSample(final StringBuilder projected, final String data, final int columnStart,
+                                              final int columnEnd, final int[] fieldsToKeep) {
+        if (fieldsToKeep == null) {
+            projected.append(data, columnStart, columnEnd);
+            return;
+        }
+        final int projectedStart = projected.length();
+        int field = 0;
+        int fieldStart = columnStart;
+        for (final int fieldToKeep : fieldsToKeep) {
+            while (field < fieldToKeep && fieldStart <= columnEnd) {
+                final int separator = data.indexOf(FORMAT_FIELD_SEPARATOR, fieldStart);
+                fieldStart = separator < 0 || separator > columnEnd ? columnEnd + 1 : separator + 1;
+                field++;
+            }
+            if (fieldStart > columnEnd) {
+                break;
+            }
+            final int separator = data.indexOf(FORMAT_FIELD_SEPARATOR, fieldStart);
+            final int fieldEnd = separator < 0 || separator > columnEnd ? columnEnd : separator;
+            if (projected.length() > projectedStart) {
+                projected.append(FORMAT_FIELD_SEPARATOR);
+            }
+            projected.append(data, fieldStart, fieldEnd);
+        }
+        if (projected.length() == projectedStart) {
+            projected.append(VCFConstants.MISSING_VALUE_v4);
+        }
+    }
+}
@@ -3,9 +3,7 @@ package org.broadinstitute.hellbender.engine;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.CloseableIterator;
-import htsjdk.samtools.util.MergingIterator;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.VariantContextComparator;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFUtils;
@@ -195,8 +193,7 @@ public final class MultiVariantDataSource implements GATKDataSource<VariantConte
             final List<CloseableIterator<VariantContext>> iterators = new ArrayList<>(featureDataSources.size());
             featureDataSources.forEach(ds -> iterators.add(getCloseableIteratorWrapper(iteratorFromSource.apply((ds)))));
 
-            final VariantContextComparator varComparator = new VariantContextComparator(getSequenceDictionary());
-            currentIterator = new MergingIterator<>(varComparator, iterators);
+            currentIterator = new VariantContextMergingIterator(iterators, getSequenceDictionary());
         } else {
             currentIterator = getCloseableIteratorWrapper(iteratorFromSource.apply(featureDataSources.get(0)));
         }
@@ -371,7 +368,7 @@ public final class MultiVariantDataSource implements GATKDataSource<VariantConte
     }
 
     /**
-     * Wrap the sourceIterator in a CloseableIterator to make it usable as a MergingIterator source.
+     * Wrap the sourceIterator in a CloseableIterator to make it usable as a VariantContextMergingIterator source.
      */
     private CloseableIterator<VariantContext> getCloseableIteratorWrapper(final Iterator<VariantContext> sourceIterator) {
         Utils.nonNull(sourceIterator);
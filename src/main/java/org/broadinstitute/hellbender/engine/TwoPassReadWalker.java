@@ -12,6 +12,7 @@ import org.broadinstitute.hellbender.utils.read.GATKRead;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 
@@ -39,32 +40,48 @@ public abstract class TwoPassReadWalker extends ReadWalker {
         // Supply reference bases spanning each read, if a reference is available.
         final CountingReadFilter countedFilter = makeReadFilter();
 
-        traverseReads(countedFilter, this::firstPassApply);
+        traverseReads(getTransformedReadStream(countedFilter), this::firstPassApply);
         logger.info("Finished first pass through the reads");
         afterFirstPass();
+        logger.info("Starting second pass through the reads");
+        traverseReads(getSecondPassReadStream(countedFilter), this::secondPassApply);
+        logger.info(countedFilter.getSummaryLine());
+    }
+
+    /**
+     * Returns the stream of reads presented to {@link #secondPassApply}.
+     *
+     * The default implementation reinitializes the reads and intervals and then re-reads the input, applying the
+     * same filter and transformers as in the first pass. Tools that have kept their own copy of the first pass reads
+     * (for example, spilled to a local file) may override this to replay them instead, avoiding a second read and decode
+     * of the input. Overriding implementations are responsible for presenting the reads in first pass order.
+     *
+     * @param countedFilter the filter used during the first pass
+     * @return stream of reads for the second pass
+     */
+    protected Stream<GATKRead> getSecondPassReadStream(final CountingReadFilter countedFilter) {
         // Need to reinitialize the reads and intervals so they are guaranteed to pass over a file
         initializeReads();
         setReadTraversalBounds();
-        logger.info("Starting second pass through the reads");
-        traverseReads(countedFilter, this::secondPassApply);
-        logger.info(countedFilter.getSummaryLine());
+        return getTransformedReadStream(countedFilter);
     }
 
     /**
-     * Process using the given filter and function.
-     * @param countedFilter a filter to apply to all reads.
+     * Process the given reads using the given function.
+     * @param readStream the reads to traverse
      * @param f function applied to each read, should produce some useful side effect
      */
-    private void traverseReads(final CountingReadFilter countedFilter, final GATKApply f) {
-        getTransformedReadStream(countedFilter)
-                .forEach(read -> {
-                    final SimpleInterval readInterval = getReadInterval(read);
-                    f.consume(read,
-                            new ReferenceContext(reference, readInterval), // Will create an empty ReferenceContext if reference or readInterval == null
-                            new FeatureContext(features, readInterval));   // Will create an empty FeatureContext if features or readInterval == null
+    private void traverseReads(final Stream<GATKRead> readStream, final GATKApply f) {
+        try ( final Stream<GATKRead> reads = readStream ) {
+            reads.forEach(read -> {
+                final SimpleInterval readInterval = getReadInterval(read);
+                f.consume(read,
+                        new ReferenceContext(reference, readInterval), // Will create an empty ReferenceContext if reference or readInterval == null
+                        new FeatureContext(features, readInterval));   // Will create an empty FeatureContext if features or readInterval == null
 
-                    progressMeter.update(readInterval);
-                });
+                progressMeter.update(readInterval);
+            });
+        }
     }
 
     /**
@@ -0,0 +1,141 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges iterators of VariantContexts that are each sorted by reference position into a single sorted iterator.
+ *
+ * The inputs are kept in a binary heap of input indices ordered by a primitive key packing the contig index and start
+ * of each input's next variant, so each step does a few long comparisons rather than contig name lookups, and the
+ * contig index is only looked up when an input moves to a new contig. Variants with the same position are returned
+ * in the order of their inputs, as with htsjdk's MergingIterator.
+ */
+final class VariantContextMergingIterator implements CloseableIterator<VariantContext> {
+
+    private final List<CloseableIterator<VariantContext>> inputs;
+    private final SAMSequenceDictionary dictionary;
+
+    // the next variant of each input, its key, and the contig it is on
+    private final VariantContext[] nextVariants;
+    private final long[] keys;
+    private final String[] contigs;
+    private final int[] contigIndices;
+
+    // heap of the indices of the inputs that have variants left
+    private final int[] heap;
+    private int heapSize;
+
+    VariantContextMergingIterator(final List<CloseableIterator<VariantContext>> inputs, final SAMSequenceDictionary dictionary) {
+        this.inputs = Utils.nonNull(inputs);
+        this.dictionary = Utils.nonNull(dictionary, "A sequence dictionary is required to merge variants");
+        final int numInputs = inputs.size();
+        nextVariants = new VariantContext[numInputs];
+        keys = new long[numInputs];
+        contigs = new String[numInputs];
+        contigIndices = new int[numInputs];
+        heap = new int[numInputs];
+        for (int input = 0; input < numInputs; input++) {
+            if (advance(input)) {
+                heap[heapSize] = input;
+                siftUp(heapSize++);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return heapSize > 0;
+    }
+
+    @Override
+    public VariantContext next() {
+        if (heapSize == 0) {
+            throw new NoSuchElementException("No more variants");
+        }
+        final int input = heap[0];
+        final VariantContext result = nextVariants[input];
+        if (advance(input)) {
+            siftDown(0);
+        } else {
+            heap[0] = heap[--heapSize];
+            if (heapSize > 0) {
+                siftDown(0);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        inputs.forEach(CloseableIterator::close);
+    }
+
+    /**
+     * Moves an input on to its next variant
+     * @return whether the input had another variant
+     */
+    private boolean advance(final int input) {
+        final CloseableIterator<VariantContext> iterator = inputs.get(input);
+        if (!iterator.hasNext()) {
+            nextVariants[input] = null;
+            return false;
+        }
+        final VariantContext variant = iterator.next();
+        final String contig = variant.getContig();
+        if (!contig.equals(contigs[input])) {
+            final int contigIndex = dictionary.getSequenceIndex(contig);
+            if (contigIndex < 0) {
+                throw new UserException("Contig " + contig + " of variant at " + contig + ":" + variant.getStart() +
+                        " is not in the merged sequence dictionary of the variant inputs");
+            }
+            contigs[input] = contig;
+            contigIndices[input] = contigIndex;
+        }
+        nextVariants[input] = variant;
+        keys[input] = ((long) contigIndices[input] << 32) | (variant.getStart() & 0xFFFFFFFFL);
+        return true;
+    }
+
+    private boolean precedes(final int input, final int otherInput) {
+        return keys[input] < keys[otherInput] || (keys[input] == keys[otherInput] && input < otherInput);
+    }
+
+    private void siftUp(int position) {
+        final int input = heap[position];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (!precedes(input, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = input;
+    }
+
+    private void siftDown(int position) {
+        final int input = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && precedes(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!precedes(heap[child], input)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = input;
+    }
+}
@@ -84,6 +84,14 @@ public abstract class VariantWalker extends VariantWalkerBase {
         return (VCFHeader)header;
     }
 
+    /**
+     * The driving variants all come from a single file, so their genotypes can be projected using its header.
+     */
+    @Override
+    protected final VCFHeader getHeaderForGenotypeProjection() {
+        return getHeaderForVariants();
+    }
+
     /**
      * Close all data sources.
      *
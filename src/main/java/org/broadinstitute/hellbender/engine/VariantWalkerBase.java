@@ -9,7 +9,9 @@ import org.broadinstitute.hellbender.engine.filters.VariantFilterLibrary;
 import org.broadinstitute.hellbender.utils.IndexUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.function.UnaryOperator;
 import java.util.stream.StreamSupport;
 
 /**
@@ -101,8 +103,10 @@ public abstract class VariantWalkerBase extends GATKTool {
     public void traverse() {
         final VariantFilter variantfilter = makeVariantFilter();
         final CountingReadFilter readFilter = makeReadFilter();
+        final UnaryOperator<VariantContext> genotypeProjection = makeGenotypeProjection();
         // Process each variant in the input stream.
         StreamSupport.stream(getSpliteratorForDrivingVariants(), false)
+                .map(genotypeProjection)
                 .filter(variantfilter)
                 .forEach(variant -> {
                     final SimpleInterval variantInterval = new SimpleInterval(variant);
@@ -115,6 +119,47 @@ public abstract class VariantWalkerBase extends GATKTool {
                 });
     }
 
+    /**
+     * Returns the samples whose genotypes this tool looks at. The genotypes of other samples in the driving variants
+     * may be dropped before they are parsed, which for VCFs with many samples is most of the cost of reading them.
+     * The default implementation returns null, meaning all samples are needed; an empty set means the tool only looks
+     * at the sites, and the genotypes are dropped from every driving variant.
+     *
+     * Called once, after {@link #onTraversalStart}, so it may depend on the tool's arguments and input headers.
+     */
+    protected Set<String> getSamplesToDecode() {
+        return null;
+    }
+
+    /**
+     * Returns the FORMAT fields this tool looks at. Other FORMAT fields of the driving variants may be dropped before
+     * they are parsed. GT is always kept. The default implementation returns null, meaning all fields are needed.
+     *
+     * Called once, after {@link #onTraversalStart}, so it may depend on the tool's arguments and input headers.
+     */
+    protected Set<String> getFormatFieldsToDecode() {
+        return null;
+    }
+
+    /**
+     * Returns the header the genotype columns of every driving variant were read with, used to drop the samples and
+     * FORMAT fields that are not needed (see {@link #getSamplesToDecode} and {@link #getFormatFieldsToDecode}), or
+     * null if there is no single such header. The default implementation returns null, in which case genotypes can
+     * only be dropped from the driving variants altogether.
+     */
+    protected VCFHeader getHeaderForGenotypeProjection() {
+        return null;
+    }
+
+    private UnaryOperator<VariantContext> makeGenotypeProjection() {
+        final Set<String> samplesToDecode = getSamplesToDecode();
+        final Set<String> formatFieldsToDecode = getFormatFieldsToDecode();
+        if (samplesToDecode == null && formatFieldsToDecode == null) {
+            return UnaryOperator.identity();
+        }
+        return new GenotypeProjection(getHeaderForGenotypeProjection(), samplesToDecode, formatFieldsToDecode);
+    }
+
     /**
      * Returns the variant filter (simple or composite) that will be applied to the variants before calling {@link #apply}.
      * The default implementation filters nothing.
@@ -1,6 +1,5 @@
 package org.broadinstitute.hellbender.engine.spark;
 
-import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.api.java.JavaPairRDD;
@@ -22,10 +21,10 @@ import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
 import org.broadinstitute.hellbender.utils.variant.GATKVariant;
 import scala.Tuple2;
 
-import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -49,7 +48,7 @@ public class AddContextDataToReadSpark {
      * @param variants the coordinate-sorted variants
      * @param variantsPaths the paths to variants files
      * @param joinStrategy the strategy to use to join context data to reads
-     * @param sequenceDictionary the sequence dictionary for the reads (only used for OVERLAPS_PARTITIONER join strategy, use null otherwise)
+     * @param sequenceDictionary the sequence dictionary for the reads (only used for OVERLAPS_PARTITIONER and SORTED_MERGE join strategies, use null otherwise)
      * @param shardSize the maximum size of each shard, in bases (only used for OVERLAPS_PARTITIONER join strategy, use 0 otherwise)
      * @param shardPadding amount of extra context around each shard, in bases (only used for OVERLAPS_PARTITIONER join strategy, use 0 otherwise)
      * @return a RDD of read-context pairs, in coordinate-sorted order
@@ -63,6 +62,10 @@ public class AddContextDataToReadSpark {
         // TODO: this static method should not be filtering the unmapped reads.  To be addressed in another issue.
         JavaRDD<GATKRead> mappedReads = reads.filter(read -> ReadFilterLibrary.MAPPED.test(read));
         JavaPairRDD<GATKRead, Tuple2<Iterable<GATKVariant>, ReferenceBases>> withVariantsWithRef;
+        if (variantsPaths != null && (joinStrategy.equals(JoinStrategy.BROADCAST) || joinStrategy.equals(JoinStrategy.OVERLAPS_PARTITIONER))) {
+            // build the known sites index once on the driver and ship it to the executors, rather than have every executor build its own
+            KnownSitesCache.distribute(ctx, variantsPaths);
+        }
         if (joinStrategy.equals(JoinStrategy.BROADCAST)) {
             // Join Reads and Variants
             JavaPairRDD<GATKRead, Iterable<GATKVariant>> withVariants = variantsPaths == null ? BroadcastJoinReadsWithVariants.join(mappedReads, variants) : BroadcastJoinReadsWithVariants.join(mappedReads, variantsPaths);
@@ -73,6 +76,13 @@ public class AddContextDataToReadSpark {
             JavaPairRDD<GATKRead, Iterable<GATKVariant>> withVariants = ShuffleJoinReadsWithVariants.join(mappedReads, variants);
             // Join Reads with ReferenceBases
             withVariantsWithRef = ShuffleJoinReadsWithRefBases.addBases(referenceSource, withVariants);
+        } else if (joinStrategy.equals(JoinStrategy.SORTED_MERGE)) {
+            // Join Reads and Variants, keeping the reads in their existing partitions
+            JavaPairRDD<GATKRead, Iterable<GATKVariant>> withVariants = SortedMergeJoinReadsWithVariants.join(mappedReads, variants, sequenceDictionary);
+            // Join Reads with ReferenceBases
+            withVariantsWithRef = referenceSource.isCompatibleWithSparkBroadcast() ?
+                    BroadcastJoinReadsWithRefBases.addBases(referenceSource, withVariants) :
+                    ShuffleJoinReadsWithRefBases.addBases(referenceSource, withVariants);
         } else if (joinStrategy.equals(JoinStrategy.OVERLAPS_PARTITIONER)) {
             return addUsingOverlapsPartitioning(ctx, reads, referenceSource, variants, variantsPaths, sequenceDictionary, shardSize, shardPadding);
         } else {
@@ -119,22 +129,18 @@ public class AddContextDataToReadSpark {
                 // get reference bases for this shard (padded)
                 SimpleInterval paddedInterval = shard.getInterval().expandWithinContig(shardPadding, sequenceDictionary);
                 ReferenceBases referenceBases = bReferenceSource.getValue().getReferenceBases(paddedInterval);
-                final IntervalsSkipList<GATKVariant> intervalsSkipList = variantsPaths == null ? variantsBroadcast.getValue() :
-                        KnownSitesCache.getVariants(variantsPaths);
-                Iterator<Tuple2<GATKRead, ReadContextData>> transform = Iterators.transform(shard.iterator(), new Function<GATKRead, Tuple2<GATKRead, ReadContextData>>() {
-                    @Nullable
-                    @Override
-                    public Tuple2<GATKRead, ReadContextData> apply(@Nullable GATKRead r) {
-                        List<GATKVariant> overlappingVariants;
-                        if (SimpleInterval.isValid(r.getContig(), r.getStart(), r.getEnd())) {
-                            overlappingVariants = intervalsSkipList.getOverlapping(new SimpleInterval(r));
-                        } else {
-                            //Sometimes we have reads that do not form valid intervals (reads that do not consume any ref bases, eg CIGAR 61S90I
-                            //In those cases, we'll just say that nothing overlaps the read
-                            overlappingVariants = Collections.emptyList();
-                        }
-                        return new Tuple2<>(r, new ReadContextData(referenceBases, overlappingVariants));
+                final Function<SimpleInterval, List<GATKVariant>> overlapping = variantsPaths == null ?
+                        variantsBroadcast.getValue()::getOverlapping : KnownSitesCache.getVariants(variantsPaths)::getOverlapping;
+                Iterator<Tuple2<GATKRead, ReadContextData>> transform = Iterators.transform(shard.iterator(), r -> {
+                    List<GATKVariant> overlappingVariants;
+                    if (SimpleInterval.isValid(r.getContig(), r.getStart(), r.getEnd())) {
+                        overlappingVariants = overlapping.apply(new SimpleInterval(r));
+                    } else {
+                        //Sometimes we have reads that do not form valid intervals (reads that do not consume any ref bases, eg CIGAR 61S90I
+                        //In those cases, we'll just say that nothing overlaps the read
+                        overlappingVariants = Collections.emptyList();
                     }
+                    return new Tuple2<>(r, new ReadContextData(referenceBases, overlappingVariants));
                 });
                 // only include reads that start in the shard
                 return Iterators.filter(transform, r -> r._1().getStart() >= shard.getStart()
@@ -6,6 +6,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.hellbender.engine.*;
@@ -17,6 +18,7 @@ import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.spark.SparkUtils;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -104,6 +106,12 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
     @Argument(doc = "whether to use the shuffle implementation or not", shortName = "shuffle", fullName = "shuffle", optional = true)
     public boolean shuffle = false;
 
+    @Advanced
+    @Argument(doc = "whether to redistribute the assembly regions across partitions by their estimated cost (reads times extended span length) " +
+            "before processing them, so that read shards that yield a few very dense regions don't become straggler tasks",
+            shortName = "rebalanceAssemblyRegions", fullName = "rebalanceAssemblyRegions", optional = true)
+    public boolean rebalanceAssemblyRegions = false;
+
     @Override
     public final boolean requiresReads() { return true; }
 
@@ -126,6 +134,9 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
 
     private List<ShardBoundary> intervalShards;
 
+    // the assembly regions cached for rebalancing, which are released once runTool has processed them
+    private transient List<JavaRDD<AssemblyRegion>> persistedAssemblyRegions = new ArrayList<>();
+
     /**
      * Note that this sets {@code intervalShards} as a side effect, in order to add padding to the intervals.
      */
@@ -146,6 +157,8 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
      *
      * If no intervals were specified, returns all the assembly regions.
      *
+     * When the regions are rebalanced, they are cached until {@link #runTool} has processed them.
+     *
      * @return all assembly regions as a {@link JavaRDD}, bounded by intervals if specified.
      */
     protected JavaRDD<AssemblyRegionWalkerContext> getAssemblyRegions(JavaSparkContext ctx) {
@@ -153,10 +166,54 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
         JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle);
         Broadcast<ReferenceMultiSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
+        if (rebalanceAssemblyRegions) {
+            return getRebalancedAssemblyRegions(shardedReads, bReferenceSource, bFeatureManager, sequenceDictionary);
+        }
         return shardedReads.flatMap(getAssemblyRegionsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(),
                 assemblyRegionEvaluator(), minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold, maxProbPropagationDistance, includeReadsWithDeletionsInIsActivePileups()));
     }
 
+    /**
+     * Finds the assembly regions of each read shard, then redistributes the regions across partitions by their
+     * estimated cost (see {@link #estimateAssemblyRegionCost}) before they are processed, so that the cost of
+     * processing them is not bound to the read shard they came from.
+     *
+     * Since regions may move to a different partition, the reference and feature contexts are created after the
+     * regions have been redistributed, and the reference context spans the extended span of the region plus the
+     * assembly region padding.
+     */
+    private JavaRDD<AssemblyRegionWalkerContext> getRebalancedAssemblyRegions(
+            final JavaRDD<Shard<GATKRead>> shardedReads,
+            final Broadcast<ReferenceMultiSource> bReferenceSource,
+            final Broadcast<FeatureManager> bFeatureManager,
+            final SAMSequenceDictionary sequenceDictionary) {
+        final int assemblyRegionPadding = this.assemblyRegionPadding;
+        final JavaRDD<AssemblyRegion> assemblyRegions = shardedReads.flatMap(getAssemblyRegionsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(),
+                assemblyRegionEvaluator(), minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold, maxProbPropagationDistance, includeReadsWithDeletionsInIsActivePileups()))
+                .map(AssemblyRegionWalkerContext::getAssemblyRegion)
+                .persist(StorageLevel.MEMORY_AND_DISK_SER());
+        persistedAssemblyRegions.add(assemblyRegions);
+
+        return SparkUtils.rebalanceByCost(assemblyRegions, AssemblyRegionWalkerSpark::estimateAssemblyRegionCost, shardedReads.getNumPartitions())
+                .map(assemblyRegion -> {
+                    final ReferenceDataSource reference = bReferenceSource == null ? null :
+                            new ReferenceMemorySource(bReferenceSource.getValue().getReferenceBases(
+                                    assemblyRegion.getExtendedSpan().expandWithinContig(assemblyRegionPadding, sequenceDictionary)), sequenceDictionary);
+                    final FeatureManager features = bFeatureManager == null ? null : bFeatureManager.getValue();
+                    return new AssemblyRegionWalkerContext(assemblyRegion,
+                            new ReferenceContext(reference, assemblyRegion.getExtendedSpan()),
+                            new FeatureContext(features, assemblyRegion.getExtendedSpan()));
+                });
+    }
+
+    /**
+     * @return the estimated cost of processing an assembly region: the number of reads times the length of the
+     *         haplotypes that would be assembled from them, approximated by the length of the extended span
+     */
+    public static long estimateAssemblyRegionCost(final AssemblyRegion assemblyRegion) {
+        return (long) assemblyRegion.getReads().size() * assemblyRegion.getExtendedSpan().size();
+    }
+
     private static FlatMapFunction<Shard<GATKRead>, AssemblyRegionWalkerContext> getAssemblyRegionsFunction(
             final Broadcast<ReferenceMultiSource> bReferenceSource,
             final Broadcast<FeatureManager> bFeatureManager,
@@ -192,7 +249,12 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
 
     @Override
     protected void runTool(JavaSparkContext ctx) {
-        processAssemblyRegions(getAssemblyRegions(ctx), ctx);
+        try {
+            processAssemblyRegions(getAssemblyRegions(ctx), ctx);
+        } finally {
+            persistedAssemblyRegions.forEach(assemblyRegions -> assemblyRegions.unpersist(false));
+            persistedAssemblyRegions.clear();
+        }
     }
 
     /**
@@ -18,6 +18,7 @@ import org.broadinstitute.hellbender.engine.FeatureDataSource;
 import org.broadinstitute.hellbender.engine.FeatureManager;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.engine.spark.datasources.ADAMReadsQuery;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
@@ -31,10 +32,12 @@ import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Base class for GATK spark tools that accept standard kinds of inputs (reads, reference, and/or intervals).
@@ -70,6 +73,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     public static final String NUM_REDUCERS_LONG_NAME = "num-reducers";
     public static final String SHARDED_OUTPUT_LONG_NAME = "sharded-output";
     public static final String OUTPUT_SHARD_DIR_LONG_NAME = "output-shard-tmp-dir";
+    public static final String STAGE_CHECKPOINT_DIR_LONG_NAME = "stage-checkpoint-dir";
 
     @ArgumentCollection
     public final ReferenceInputArgumentCollection referenceArguments = requiresReference() ? new RequiredReferenceInputArgumentCollection() :  new OptionalReferenceInputArgumentCollection();
@@ -108,6 +112,12 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
             optional = true)
     protected int numReducers = 0;
 
+    @Argument(doc = "For pipelines with checkpointed stages, the directory (local, HDFS or GCS) to write the output of each stage to. " +
+            "A rerun with the same inputs and arguments reuses the completed stages instead of recomputing them.",
+            fullName = STAGE_CHECKPOINT_DIR_LONG_NAME,
+            optional = true)
+    protected String stageCheckpointDir = null;
+
     private ReadsSparkSource readsSource;
     private SAMFileHeader readsHeader;
     private String readInput;
@@ -115,6 +125,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     private SAMSequenceDictionary referenceDictionary;
     private List<SimpleInterval> intervals;
     protected FeatureManager features;
+    private StageCheckpoints stageCheckpoints;
 
     /**
      * Return the list of GATKCommandLinePluginDescriptor objects to be used for this CLP.
@@ -265,7 +276,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         // TODO: This if statement is a temporary hack until #959 gets resolved.
         if (readInput.endsWith(".adam")) {
             try {
-                return readsSource.getADAMReads(readInput, traversalParameters, getHeaderForReads());
+                return readsSource.getADAMReads(readInput, traversalParameters, getHeaderForReads(), getADAMReadsQuery());
             } catch (IOException e) {
                 throw new UserException("Failed to read ADAM file " + readInput, e);
             }
@@ -307,6 +318,30 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         }
     }
 
+    /**
+     * Returns the output of a named pipeline stage. If a checkpoint directory was given, the output is written to it,
+     * and a rerun with the same inputs and arguments reads it back instead of computing the stage (see
+     * {@link StageCheckpoints}). Otherwise the stage is just computed.
+     *
+     * @param ctx the Spark context
+     * @param stageName the name of the stage, unique within the tool
+     * @param stage computes the output of the stage
+     * @return the output of the stage
+     */
+    protected <T> JavaRDD<T> checkpointStage(final JavaSparkContext ctx, final String stageName, final Supplier<JavaRDD<T>> stage) {
+        if (stageCheckpointDir == null) {
+            return stage.get();
+        }
+        if (stageCheckpoints == null) {
+            final List<String> inputs = new ArrayList<>(readArguments.getReadFilesNames());
+            if (hasReference()) {
+                inputs.add(referenceArguments.getReferenceFileName());
+            }
+            stageCheckpoints = new StageCheckpoints(stageCheckpointDir, StageCheckpoints.fingerprint(getCommandLine(), inputs));
+        }
+        return stageCheckpoints.checkpoint(ctx, stageName, stage);
+    }
+
     /**
      * Return the recommended number of reducers for a pipeline processing the reads. The number is
      * calculated by finding the total size (in bytes) of all the files in the input path, then
@@ -383,6 +418,19 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         return Arrays.asList(new WellformedReadFilter());
     }
 
+    /**
+     * Returns the fields and flags to push down to the Parquet reader when the reads input is an ADAM dataset, so that
+     * only the columns and records the tool uses are read. The default reads everything.
+     *
+     * Tools that override this to project a subset of the fields must make sure that they (and their read filters)
+     * only use the projected fields.
+     *
+     * @return the query to use for ADAM reads inputs
+     */
+    public ADAMReadsQuery getADAMReadsQuery() {
+        return ADAMReadsQuery.ALL;
+    }
+
     /**
      * @see GATKTool#useVariantAnnotations()
      */
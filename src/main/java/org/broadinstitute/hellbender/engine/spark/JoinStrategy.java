@@ -17,5 +17,10 @@ public enum JoinStrategy {
     /**
      * Use a shuffle join strategy, where both sides of join are shuffled across the workers.
      */
-    SHUFFLE
+    SHUFFLE,
+
+    /**
+     * Use a sorted merge join strategy, where the variants are partitioned to match the ranges of the (coordinate-sorted) reads' partitions and merged with them.
+     */
+    SORTED_MERGE
 }
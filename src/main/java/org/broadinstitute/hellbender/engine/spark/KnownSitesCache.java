@@ -3,57 +3,102 @@ package org.broadinstitute.hellbender.engine.spark;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.spark.SparkEnv;
+import org.apache.spark.SparkFiles;
+import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.engine.FeatureDataSource;
-import org.broadinstitute.hellbender.utils.collections.IntervalsSkipList;
-import org.broadinstitute.hellbender.utils.variant.GATKVariant;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.variant.KnownSitesIndex;
 import org.broadinstitute.hellbender.utils.variant.VariantContextVariantAdapter;
 
+import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * A cache of known sites by file path, with the property that there is only one copy of each collection of known sites per JVM.
  * This class is an alternative for cases that can't use a Spark broadcast due to its 2GB limitation.
+ *
+ * The known sites are held in a memory-mapped {@link KnownSitesIndex} rather than on the heap. When the index has been
+ * built on the driver and shipped to the executors with {@link #distribute(JavaSparkContext, List)}, executors map the
+ * shipped file directly instead of each reading and parsing the original known sites files.
  */
 class KnownSitesCache {
 
     private static final Logger log = LogManager.getLogger(KnownSitesCache.class);
 
-    private static final Map<List<String>, IntervalsSkipList<GATKVariant>> PATHS_TO_VARIANTS = new HashMap<>();
+    private static final Map<List<String>, KnownSitesIndex> PATHS_TO_VARIANTS = new HashMap<>();
 
-    public static synchronized IntervalsSkipList<GATKVariant> getVariants(List<String> paths) {
+    // paths whose index has been added to the files of the Spark application distributedApplicationId
+    private static final Set<List<String>> DISTRIBUTED_PATHS = new HashSet<>();
+
+    private static String distributedApplicationId;
+
+    /**
+     * Builds the known sites index for the given paths on the driver and adds it to the files that Spark ships to
+     * every executor, so that {@link #getVariants(List)} can map it there. Calling this more than once for the same
+     * paths and context has no effect; a new context gets the file added again.
+     */
+    public static synchronized void distribute(final JavaSparkContext ctx, final List<String> paths) {
+        final String applicationId = ctx.sc().applicationId();
+        if (!applicationId.equals(distributedApplicationId)) {
+            DISTRIBUTED_PATHS.clear();
+            distributedApplicationId = applicationId;
+        }
+        if (DISTRIBUTED_PATHS.contains(paths)) {
+            return;
+        }
+        final KnownSitesIndex index = getVariants(paths);
+        ctx.addFile(index.getFile().getAbsolutePath());
+        DISTRIBUTED_PATHS.add(paths);
+    }
+
+    public static synchronized KnownSitesIndex getVariants(List<String> paths) {
         if (PATHS_TO_VARIANTS.containsKey(paths)) {
             return PATHS_TO_VARIANTS.get(paths);
         }
-        IntervalsSkipList<GATKVariant> variants = retrieveVariants(paths);
+        KnownSitesIndex variants = retrieveVariants(paths);
         PATHS_TO_VARIANTS.put(paths, variants);
         return variants;
     }
 
-    private static IntervalsSkipList<GATKVariant> retrieveVariants(List<String> paths) {
-        return new IntervalsSkipList<>(paths
-                .stream()
-                .map(KnownSitesCache::loadFromFeatureDataSource)
-                .flatMap(Collection::stream)
-                .collect(Collectors.toList()));
+    private static KnownSitesIndex retrieveVariants(List<String> paths) {
+        final String indexFileName = indexFileName(paths);
+        if (SparkEnv.get() != null) {
+            final File distributedIndex = new File(SparkFiles.get(indexFileName));
+            if (distributedIndex.exists()) {
+                log.info("Using distributed known sites index " + distributedIndex);
+                return KnownSitesIndex.open(distributedIndex);
+            }
+        }
+
+        final KnownSitesIndex.Builder builder = new KnownSitesIndex.Builder();
+        paths.forEach(path -> loadFromFeatureDataSource(path, builder));
+        final File indexFile = new File(IOUtils.createTempDir("knownSites"), indexFileName);
+        builder.write(indexFile);
+        return KnownSitesIndex.open(indexFile);
+    }
+
+    /**
+     * The name of the index file for a list of paths, which is how executors find the file shipped by the driver.
+     */
+    private static String indexFileName(final List<String> paths) {
+        return "knownSites." + Integer.toHexString(paths.hashCode()) + ".index";
     }
 
-    private static List<GATKVariant> loadFromFeatureDataSource(String path) {
+    private static void loadFromFeatureDataSource(String path, final KnownSitesIndex.Builder builder) {
         int cloudPrefetchBuffer = 40; // only used for GCS
         try ( final FeatureDataSource<VariantContext> dataSource = new FeatureDataSource<>(path, null, 0, null, cloudPrefetchBuffer, cloudPrefetchBuffer) ) {
-            return wrapQueryResults(dataSource.iterator());
+            addQueryResults(dataSource.iterator(), builder);
         }
     }
 
-    private static List<GATKVariant> wrapQueryResults(final Iterator<VariantContext> queryResults ) {
-        final List<GATKVariant> wrappedResults = new ArrayList<>();
+    private static void addQueryResults(final Iterator<VariantContext> queryResults, final KnownSitesIndex.Builder builder) {
         long count = 0;
         while ( queryResults.hasNext() ) {
             if (count++ % 100000 == 0) {
                 log.info("Number of variants read: " + count);
             }
-            wrappedResults.add(VariantContextVariantAdapter.sparkVariantAdapter(queryResults.next()));
+            builder.add(VariantContextVariantAdapter.sparkVariantAdapter(queryResults.next()));
         }
-        return wrappedResults;
     }
 }
@@ -0,0 +1,108 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.google.common.collect.Iterators;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.OverlapDetector;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.variant.GATKVariant;
+import scala.Tuple2;
+
+import java.util.*;
+
+/**
+ * Joins an RDD of GATKReads to variant data by partitioning the variants to match the existing partitions of the reads,
+ * and then merging the two sorted streams within each partition. Neither the reads nor the whole set of variants are
+ * shuffled or broadcast: only the variants move, and each one only to the read partitions whose extent it overlaps.
+ *
+ * The reads must be coordinate-sorted (by the order of the contigs in the sequence dictionary), and are returned in
+ * the same order and partitioning. The reads are traversed more than once (to find the partition extents and then to
+ * join), so callers should consider caching them.
+ */
+public final class SortedMergeJoinReadsWithVariants {
+    private SortedMergeJoinReadsWithVariants(){}
+
+    public static JavaPairRDD<GATKRead, Iterable<GATKVariant>> join(final JavaRDD<GATKRead> reads, final JavaRDD<GATKVariant> variants,
+                                                                   final SAMSequenceDictionary sequenceDictionary) {
+        Utils.nonNull(sequenceDictionary, "The sequence dictionary is required for the sorted merge join strategy");
+        final JavaSparkContext ctx = new JavaSparkContext(reads.context());
+
+        // find the genomic extent of each read partition, as the overlaps partitioner does
+        final int maxReadLength = reads.map(read -> read.getEnd() - read.getStart() + 1).fold(0, Math::max);
+        final List<SparkSharder.PartitionLocatable<SimpleInterval>> extents = SparkSharder.computePartitionReadExtents(reads, sequenceDictionary, maxReadLength);
+        final Broadcast<OverlapDetector<SparkSharder.PartitionLocatable<SimpleInterval>>> extentsBroadcast = ctx.broadcast(OverlapDetector.create(extents));
+
+        // send each variant to every read partition whose extent it overlaps
+        final JavaRDD<GATKVariant> partitionedVariants = variants.flatMapToPair(variant -> {
+            final Set<Integer> partitionIndexes = new LinkedHashSet<>();
+            for (final SparkSharder.PartitionLocatable<SimpleInterval> extent : extentsBroadcast.getValue().getOverlaps(variant)) {
+                partitionIndexes.add(extent.getPartitionIndex());
+            }
+            return partitionIndexes.stream().map(partitionIndex -> new Tuple2<>(partitionIndex, variant)).iterator();
+        }).partitionBy(new SparkSharder.KeyPartitioner(reads.getNumPartitions())).values();
+
+        return reads.zipPartitions(partitionedVariants, (readsIterator, variantsIterator) -> {
+            final List<GATKVariant> sortedVariants = new ArrayList<>();
+            variantsIterator.forEachRemaining(sortedVariants::add);
+            sortedVariants.sort(Comparator.comparingInt((GATKVariant v) -> sequenceDictionary.getSequenceIndex(v.getContig()))
+                    .thenComparingInt(GATKVariant::getStart));
+            final VariantMerger merger = new VariantMerger(sortedVariants, sequenceDictionary);
+            return Iterators.transform(readsIterator, read -> new Tuple2<GATKRead, Iterable<GATKVariant>>(read, merger.getOverlapping(read)));
+        }).mapToPair(t -> t);
+    }
+
+    /**
+     * Finds the variants overlapping each read of a coordinate-sorted stream, by keeping a window of the variants
+     * that start at or before the current read's end and have not ended before its start.
+     */
+    private static final class VariantMerger {
+        private final Iterator<GATKVariant> variants;
+        private final SAMSequenceDictionary sequenceDictionary;
+        private final List<GATKVariant> window = new ArrayList<>();
+        private GATKVariant next;
+        private int nextContigIndex;
+
+        VariantMerger(final List<GATKVariant> sortedVariants, final SAMSequenceDictionary sequenceDictionary) {
+            this.variants = sortedVariants.iterator();
+            this.sequenceDictionary = sequenceDictionary;
+            advance();
+        }
+
+        private void advance() {
+            next = variants.hasNext() ? variants.next() : null;
+            nextContigIndex = next == null ? -1 : sequenceDictionary.getSequenceIndex(next.getContig());
+        }
+
+        Iterable<GATKVariant> getOverlapping(final GATKRead read) {
+            if (!SimpleInterval.isValid(read.getContig(), read.getStart(), read.getEnd())) {
+                //Sometimes we have reads that do not form valid intervals (reads that do not consume any ref bases, eg CIGAR 61S90I
+                //In those cases, we'll just say that nothing overlaps the read
+                return Collections.emptyList();
+            }
+            final int readContigIndex = sequenceDictionary.getSequenceIndex(read.getContig());
+            // add the variants that start at or before the end of the read, dropping any on earlier contigs
+            while (next != null && (nextContigIndex < readContigIndex || (nextContigIndex == readContigIndex && next.getStart() <= read.getEnd()))) {
+                if (nextContigIndex == readContigIndex) {
+                    window.add(next);
+                }
+                advance();
+            }
+            // drop the variants that end before the read, since no later read can overlap them either
+            window.removeIf(v -> !v.getContig().equals(read.getContig()) || v.getEnd() < read.getStart());
+
+            final List<GATKVariant> overlapping = new ArrayList<>();
+            for (final GATKVariant variant : window) {
+                // a shorter read than the previous one may end before variants already in the window
+                if (variant.getStart() <= read.getEnd()) {
+                    overlapping.add(variant);
+                }
+            }
+            return overlapping;
+        }
+    }
+}
@@ -28,6 +28,9 @@ public final class SparkCommandLineArgumentCollection implements Serializable {
     )
     final List<String> sparkProperties = new ArrayList<>();
 
+    @Argument(fullName = "spark-stage-metrics-report", doc = "If specified, write a report of the metrics of each Spark stage (task times, skew, GC time, shuffle and spill bytes) to this file at the end of the run.", optional = true)
+    private String stageMetricsReport = null;
+
     public Map<String,String> getSparkProperties(){
         final Map<String, String> propertyMap = new LinkedHashMap<>();
         for( String property: sparkProperties) {
@@ -45,4 +48,8 @@ public final class SparkCommandLineArgumentCollection implements Serializable {
         return sparkMaster;
     }
 
+    public String getStageMetricsReport() {
+        return stageMetricsReport;
+    }
+
 }
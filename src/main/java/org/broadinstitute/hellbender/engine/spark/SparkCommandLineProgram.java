@@ -26,11 +26,21 @@ public abstract class SparkCommandLineProgram extends CommandLineProgram impleme
     @Override
     protected Object doWork() {
         final JavaSparkContext ctx = SparkContextFactory.getSparkContext(getProgramName(), sparkArgs.getSparkProperties(), sparkArgs.getSparkMaster());
+        final StageMetricsListener stageMetrics = sparkArgs.getStageMetricsReport() == null ? null : SparkContextFactory.addStageMetricsListener(ctx);
         try{
             runPipeline(ctx);
             return null;
         } finally {
             afterPipeline(ctx);
+            if (stageMetrics != null) {
+                try {
+                    // stopping the context delivers the events of the last stages, but the test context keeps running
+                    SparkContextFactory.waitForListenerEvents(ctx);
+                    stageMetrics.writeReport(sparkArgs.getStageMetricsReport());
+                } finally {
+                    SparkContextFactory.removeStageMetricsListener(ctx, stageMetrics);
+                }
+            }
         }
     }
 
@@ -12,6 +12,7 @@ import org.broadinstitute.hellbender.utils.Utils;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Manages creation of the Spark context. In particular, for tests a shared global context is used, since Spark does not
@@ -28,6 +29,9 @@ public final class SparkContextFactory {
 
     private static final Logger logger = LogManager.getLogger(SparkContextFactory.class);
 
+    // how long to wait for the listeners of a running context to receive the events already posted
+    private static final long LISTENER_EVENTS_TIMEOUT_MILLIS = 10000;
+
     /**
      * GATK will not run without these properties
      * They will always be set unless explicitly overridden with {@link org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions#SPARK_PROPERTY_NAME}
@@ -140,6 +144,50 @@ public final class SparkContextFactory {
 
 
 
+    /**
+     * Registers a {@link StageMetricsListener} with a {@link JavaSparkContext}, to record the metrics of the stages
+     * run from now on.
+     *
+     * @param context the context to listen to
+     * @return the listener, whose report can be written once the pipeline has run
+     */
+    public static StageMetricsListener addStageMetricsListener(final JavaSparkContext context) {
+        final StageMetricsListener listener = new StageMetricsListener();
+        context.sc().addSparkListener(listener);
+        return listener;
+    }
+
+    /**
+     * Waits until the listeners of a {@link JavaSparkContext} have received the events posted so far, such as the
+     * completion of the last stages of a pipeline. Stopping a context delivers its pending events, but the test context
+     * is never stopped, so this must be called before reading a listener while the context is still running.
+     * If the events are not delivered within {@link #LISTENER_EVENTS_TIMEOUT_MILLIS} a warning is logged and the
+     * listeners may miss them.
+     *
+     * @param context the context whose listeners should be up to date
+     */
+    public static void waitForListenerEvents(final JavaSparkContext context) {
+        if (context.sc().isStopped()) {
+            return;
+        }
+        try {
+            context.sc().listenerBus().waitUntilEmpty(LISTENER_EVENTS_TIMEOUT_MILLIS);
+        } catch (final TimeoutException e) {
+            logger.warn("Spark listener events were not delivered within " + LISTENER_EVENTS_TIMEOUT_MILLIS + "ms; the stage metrics may be incomplete");
+        }
+    }
+
+    /**
+     * Unregisters a listener added by {@link #addStageMetricsListener}, so that it stops recording stages. This must
+     * be called once its report has been written, since the test context outlives the tools that run on it.
+     *
+     * @param context the context the listener was added to
+     * @param listener the listener to remove
+     */
+    public static void removeStageMetricsListener(final JavaSparkContext context, final StageMetricsListener listener) {
+        context.sc().removeSparkListener(listener);
+    }
+
     /**
      * Stop a {@link JavaSparkContext}, unless it is the test context.
      *
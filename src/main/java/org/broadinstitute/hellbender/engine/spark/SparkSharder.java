@@ -20,6 +20,7 @@ import org.broadinstitute.hellbender.engine.Shard;
 import org.broadinstitute.hellbender.engine.ShardBoundary;
 import org.broadinstitute.hellbender.engine.ShardBoundaryShard;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 import scala.Option;
@@ -107,6 +108,110 @@ public class SparkSharder {
         });
     }
 
+    /**
+     * Divide intervals into {@link ShardBoundary} objects that each hold roughly the same amount of work, as estimated
+     * by the number of {@link Locatable} objects that start in them, rather than the same number of bases.
+     *
+     * A coarse coverage profile (the number of locatables starting in each bin of <code>binSize</code> bases) is
+     * computed with a single pass over the locatables. Each interval is then cut into shards as soon as a shard reaches
+     * the target number of locatables or <code>maxShardSize</code> bases, whichever comes first, so that high-coverage
+     * regions that would otherwise become straggler tasks are subdivided into smaller shards.
+     *
+     * @param locatables the RDD of {@link Locatable}
+     * @param sequenceDictionary the sequence dictionary to use to find contig indexes
+     * @param intervals the intervals to divide into shards, must be coordinate sorted
+     * @param maxShardSize the maximum size of each shard, in bases
+     * @param shardPadding each shard's interval will be padded on both sides by this number of bases (may be 0)
+     * @param binSize the size of the coverage profile bins, in bases; shards are only cut at bin boundaries
+     *                (or at <code>maxShardSize</code>), so this is also the granularity of the shard sizes
+     * @param targetLocatablesPerShard the number of locatables each shard should hold, or 0 to use the mean number of
+     *                                 locatables of shards of <code>maxShardSize</code> bases
+     * @param <L> the {@link Locatable} type
+     * @return the {@link ShardBoundary} objects spanning the intervals, in coordinate order
+     */
+    public static <L extends Locatable> List<ShardBoundary> coverageAwareShardBoundaries(JavaRDD<L> locatables, SAMSequenceDictionary sequenceDictionary,
+                                                                                         List<SimpleInterval> intervals, int maxShardSize, int shardPadding,
+                                                                                         int binSize, long targetLocatablesPerShard) {
+        Utils.validateArg(binSize >= 1, "binSize must be >= 1");
+        final Map<Long, Long> locatablesPerBin = locatables
+                .filter(l -> l.getContig() != null && sequenceDictionary.getSequenceIndex(l.getContig()) >= 0)
+                .mapToPair(l -> new Tuple2<>(binKey(sequenceDictionary.getSequenceIndex(l.getContig()), (l.getStart() - 1) / binSize), 1L))
+                .reduceByKey(Long::sum)
+                .collectAsMap();
+        return divideIntervalsByCoverage(new HashMap<>(locatablesPerBin), sequenceDictionary, intervals, maxShardSize, shardPadding, binSize, targetLocatablesPerShard);
+    }
+
+    /**
+     * Divide intervals into shards of roughly equal numbers of locatables, given the number of locatables starting in
+     * each bin of the genome (see {@link #coverageAwareShardBoundaries}).
+     */
+    static List<ShardBoundary> divideIntervalsByCoverage(Map<Long, Long> locatablesPerBin, SAMSequenceDictionary sequenceDictionary,
+                                                         List<SimpleInterval> intervals, int maxShardSize, int shardPadding,
+                                                         int binSize, long targetLocatablesPerShard) {
+        Utils.validateArg(maxShardSize >= 1, "maxShardSize must be >= 1");
+        Utils.validateArg(shardPadding >= 0, "shardPadding must be >= 0");
+        Utils.validateArg(binSize >= 1, "binSize must be >= 1");
+        Utils.validateArg(targetLocatablesPerShard >= 0, "targetLocatablesPerShard must be >= 0");
+
+        final double target;
+        if (targetLocatablesPerShard > 0) {
+            target = targetLocatablesPerShard;
+        } else {
+            double total = 0;
+            long numFixedSizeShards = 0;
+            for (final SimpleInterval interval : intervals) {
+                total += expectedLocatables(locatablesPerBin, sequenceDictionary.getSequenceIndex(interval.getContig()), interval.getStart(), interval.getEnd(), binSize);
+                numFixedSizeShards += (interval.size() + maxShardSize - 1) / maxShardSize;
+            }
+            target = Math.max(1.0, total / Math.max(1, numFixedSizeShards));
+        }
+
+        final List<ShardBoundary> shards = new ArrayList<>();
+        for (final SimpleInterval interval : intervals) {
+            Utils.validateArg(IntervalUtils.intervalIsOnDictionaryContig(interval, sequenceDictionary), () ->
+                    "Interval " + interval + " not within the bounds of a contig in the provided dictionary");
+            final int contigIndex = sequenceDictionary.getSequenceIndex(interval.getContig());
+            int shardStart = interval.getStart();
+            double shardLocatables = 0;
+            int position = shardStart;
+            while (position <= interval.getEnd()) {
+                // advance to the end of the current bin, without going past the end of the interval or the maximum shard size
+                final long binEnd = ((long) (position - 1) / binSize + 1) * binSize;
+                final int chunkEnd = (int) Math.min(Math.min(binEnd, interval.getEnd()), (long) shardStart + maxShardSize - 1);
+                shardLocatables += expectedLocatables(locatablesPerBin, contigIndex, position, chunkEnd, binSize);
+                position = chunkEnd + 1;
+                if (position > interval.getEnd() || position - shardStart >= maxShardSize || shardLocatables >= target) {
+                    final SimpleInterval shardInterval = new SimpleInterval(interval.getContig(), shardStart, chunkEnd);
+                    shards.add(new ShardBoundary(shardInterval, shardInterval.expandWithinContig(shardPadding, sequenceDictionary)));
+                    shardStart = position;
+                    shardLocatables = 0;
+                }
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * @return the expected number of locatables starting in [start, end], assuming the locatables of each bin start
+     * uniformly across the bin
+     */
+    private static double expectedLocatables(Map<Long, Long> locatablesPerBin, int contigIndex, int start, int end, int binSize) {
+        double expected = 0;
+        for (int bin = (start - 1) / binSize; bin <= (end - 1) / binSize; bin++) {
+            final Long count = locatablesPerBin.get(binKey(contigIndex, bin));
+            if (count != null) {
+                final long binStart = (long) bin * binSize + 1;
+                final long binEnd = binStart + binSize - 1;
+                expected += count * (double) (Math.min(binEnd, end) - Math.max(binStart, start) + 1) / binSize;
+            }
+        }
+        return expected;
+    }
+
+    private static long binKey(int contigIndex, int bin) {
+        return ((long) contigIndex << 32) | bin;
+    }
+
     /**
      * Join an RDD of locatables with a set of intervals, and apply a function to process the locatables that overlap each interval.
      * @param ctx the Spark Context
@@ -329,7 +434,7 @@ public class SparkSharder {
         return new JavaRDD<>(coalescedRdd, tag);
     }
 
-    private static class KeyPartitioner extends Partitioner {
+    static class KeyPartitioner extends Partitioner {
 
         private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,179 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.SparkEnv;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.serializer.DeserializationStream;
+import org.apache.spark.serializer.SerializationStream;
+import org.apache.spark.serializer.SerializerInstance;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Persists the outputs of named pipeline stages so that a rerun of a failed pipeline can skip the stages that
+ * completed. Each stage's output is written under the checkpoint directory (local, HDFS or GCS) as a compressed
+ * sequence file of batches of records serialized with the Spark serializer (Kryo, for GATK tools).
+ *
+ * Checkpoints are keyed by a fingerprint of the command line and the inputs (their paths, sizes and modification
+ * times), so changing an argument or an input file starts the pipeline afresh rather than reusing stale results.
+ * A stage is only reused if it was written completely.
+ */
+public final class StageCheckpoints {
+    private static final Logger logger = LogManager.getLogger(StageCheckpoints.class);
+
+    /**
+     * The number of records serialized together in each value of the checkpoint files.
+     */
+    static final int RECORDS_PER_BATCH = 1000;
+
+    private final String checkpointDir;
+    private final String fingerprint;
+
+    /**
+     * @param checkpointDir the directory to write the stage outputs to
+     * @param fingerprint identifies the run whose stages are checkpointed, see {@link #fingerprint(String, List)}
+     */
+    public StageCheckpoints(final String checkpointDir, final String fingerprint) {
+        this.checkpointDir = Utils.nonNull(checkpointDir);
+        this.fingerprint = Utils.nonNull(fingerprint);
+    }
+
+    /**
+     * @param commandLine the command line of the run
+     * @param inputPaths the inputs of the run
+     * @return a fingerprint of the command line and of the path, size and modification time of each input
+     */
+    public static String fingerprint(final String commandLine, final List<String> inputPaths) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putString(commandLine, StandardCharsets.UTF_8);
+        for (final String inputPath : inputPaths) {
+            final Path path = new Path(inputPath);
+            try {
+                final FileStatus status = path.getFileSystem(new Configuration()).getFileStatus(path);
+                hasher.putString(inputPath, StandardCharsets.UTF_8).putLong(status.getLen()).putLong(status.getModificationTime());
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(inputPath, "could not get the file status: " + e.getMessage());
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the path that the output of the given stage is written to
+     */
+    public String getStagePath(final String stageName) {
+        return checkpointDir + (checkpointDir.endsWith("/") ? "" : "/") + stageName + "." + fingerprint;
+    }
+
+    /**
+     * @return whether the output of the given stage was written completely
+     */
+    public boolean isComplete(final String stageName) {
+        final Path success = new Path(getStagePath(stageName), "_SUCCESS");
+        try {
+            return success.getFileSystem(new Configuration()).exists(success);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(success.toString(), "could not check the checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the output of a stage, reading it from its checkpoint if a previous run with the same fingerprint
+     * completed the stage, or otherwise computing it and writing the checkpoint.
+     *
+     * When a checkpoint is written the stage is computed once to write it, and the returned RDD then reads the
+     * checkpoint back, so later stages don't compute the stage again.
+     *
+     * @param ctx the Spark context
+     * @param stageName the name of the stage, unique within the pipeline
+     * @param stage computes the output of the stage, which is not called if the checkpoint is reused
+     * @return the output of the stage
+     */
+    public <T> JavaRDD<T> checkpoint(final JavaSparkContext ctx, final String stageName, final Supplier<JavaRDD<T>> stage) {
+        final String stagePath = getStagePath(stageName);
+        if (isComplete(stageName)) {
+            logger.info("Reusing the output of stage " + stageName + " from " + stagePath);
+        } else {
+            deleteIncomplete(stagePath);
+            logger.info("Writing the output of stage " + stageName + " to " + stagePath);
+            // name the Spark jobs that compute the stage after it, for the stage metrics report
+            ctx.setJobDescription(stageName);
+            try {
+                write(stage.get(), stagePath);
+            } finally {
+                ctx.setJobDescription(null);
+            }
+        }
+        return read(ctx, stagePath);
+    }
+
+    private static void deleteIncomplete(final String stagePath) {
+        final Path path = new Path(stagePath);
+        try {
+            final FileSystem fs = path.getFileSystem(new Configuration());
+            if (fs.exists(path)) {
+                logger.info("Deleting the incomplete checkpoint " + stagePath);
+                fs.delete(path, true);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(stagePath, "could not delete the incomplete checkpoint", e);
+        }
+    }
+
+    private static <T> void write(final JavaRDD<T> rdd, final String stagePath) {
+        rdd.mapPartitions(it -> {
+            final SerializerInstance serializer = SparkEnv.get().serializer().newInstance();
+            final ClassTag<Object> tag = ClassTag$.MODULE$.AnyRef();
+            return Iterators.transform(Iterators.partition(it, RECORDS_PER_BATCH), batch -> {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final SerializationStream stream = serializer.serializeStream(bytes);
+                for (final T record : batch) {
+                    stream.writeObject(record, tag);
+                }
+                stream.close();
+                return new BytesWritable(bytes.toByteArray());
+            });
+        }).mapToPair(batch -> new Tuple2<>(NullWritable.get(), batch))
+          .saveAsHadoopFile(stagePath, NullWritable.class, BytesWritable.class, SequenceFileOutputFormat.class, DefaultCodec.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> JavaRDD<T> read(final JavaSparkContext ctx, final String stagePath) {
+        return ctx.sequenceFile(stagePath, NullWritable.class, BytesWritable.class).flatMap(pair -> {
+            // Hadoop reuses the writable, so its bytes must be copied before the next record is read
+            final DeserializationStream stream = SparkEnv.get().serializer().newInstance()
+                    .deserializeStream(new ByteArrayInputStream(pair._2().copyBytes()));
+            final Iterator<Object> records = JavaConversions.asJavaIterator(stream.asIterator());
+            final List<T> batch = new ArrayList<>();
+            records.forEachRemaining(record -> batch.add((T) record));
+            stream.close();
+            return batch.iterator();
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.*;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A Spark listener that records metrics for each stage of a run: task times and their skew, GC time, input, shuffle
+ * and spill bytes. The metrics outlive the Spark UI, and are written to a tab-separated report with
+ * {@link #writeReport(String)} so that partition counts and executor sizes can be tuned from the history of runs.
+ *
+ * Stages are identified by their Spark name (the call site that created them) and by the job description, if a tool
+ * set one with {@link org.apache.spark.api.java.JavaSparkContext#setJobDescription(String)} to name a GATK stage.
+ */
+public final class StageMetricsListener extends SparkListener {
+
+    static final String[] REPORT_COLUMNS = {
+            "stageId", "attempt", "name", "description", "status", "tasks", "failedTasks", "wallClockMs",
+            "totalTaskTimeMs", "medianTaskTimeMs", "maxTaskTimeMs", "skew", "gcTimeMs", "inputBytes",
+            "shuffleReadBytes", "shuffleWriteBytes", "memoryBytesSpilled", "diskBytesSpilled"};
+
+    private static final String JOB_DESCRIPTION_PROPERTY = "spark.job.description";
+
+    private final Map<StageKey, StageMetrics> stages = new TreeMap<>();
+
+    @Override
+    public synchronized void onStageSubmitted(final SparkListenerStageSubmitted stageSubmitted) {
+        final StageMetrics metrics = getStage(stageSubmitted.stageInfo().stageId(), stageSubmitted.stageInfo().attemptId());
+        metrics.name = stageSubmitted.stageInfo().name();
+        if (stageSubmitted.properties() != null) {
+            metrics.description = stageSubmitted.properties().getProperty(JOB_DESCRIPTION_PROPERTY, "");
+        }
+    }
+
+    @Override
+    public synchronized void onTaskEnd(final SparkListenerTaskEnd taskEnd) {
+        final StageMetrics metrics = getStage(taskEnd.stageId(), taskEnd.stageAttemptId());
+        if (taskEnd.taskInfo() != null && taskEnd.taskInfo().failed()) {
+            metrics.failedTasks++;
+        }
+        final TaskMetrics taskMetrics = taskEnd.taskMetrics();
+        if (taskMetrics == null) {
+            return;
+        }
+        metrics.taskTimes.add(taskMetrics.executorRunTime());
+        metrics.gcTime += taskMetrics.jvmGCTime();
+        metrics.inputBytes += taskMetrics.inputMetrics().bytesRead();
+        metrics.shuffleReadBytes += taskMetrics.shuffleReadMetrics().totalBytesRead();
+        metrics.shuffleWriteBytes += taskMetrics.shuffleWriteMetrics().bytesWritten();
+        metrics.memoryBytesSpilled += taskMetrics.memoryBytesSpilled();
+        metrics.diskBytesSpilled += taskMetrics.diskBytesSpilled();
+    }
+
+    @Override
+    public synchronized void onStageCompleted(final SparkListenerStageCompleted stageCompleted) {
+        final StageInfo stageInfo = stageCompleted.stageInfo();
+        final StageMetrics metrics = getStage(stageInfo.stageId(), stageInfo.attemptId());
+        metrics.name = stageInfo.name();
+        metrics.status = stageInfo.failureReason().isDefined() ? "FAILED" : "COMPLETED";
+        if (stageInfo.submissionTime().isDefined() && stageInfo.completionTime().isDefined()) {
+            metrics.wallClockTime = (Long) stageInfo.completionTime().get() - (Long) stageInfo.submissionTime().get();
+        }
+    }
+
+    private StageMetrics getStage(final int stageId, final int attempt) {
+        return stages.computeIfAbsent(new StageKey(stageId, attempt), k -> new StageMetrics());
+    }
+
+    /**
+     * @return the number of stages that metrics have been recorded for
+     */
+    public synchronized int getNumStages() {
+        return stages.size();
+    }
+
+    /**
+     * Writes the metrics of the stages recorded so far as a tab-separated table, one row per stage attempt.
+     * Events are delivered to listeners asynchronously, so this should be called after the Spark context has been
+     * stopped (which delivers any outstanding events) to include the last stages.
+     *
+     * @param path the file to write (local, HDFS or GCS)
+     */
+    public synchronized void writeReport(final String path) {
+        try (final PrintWriter writer = new PrintWriter(BucketUtils.createFile(path))) {
+            writer.println(String.join("\t", REPORT_COLUMNS));
+            for (final Map.Entry<StageKey, StageMetrics> entry : stages.entrySet()) {
+                final StageMetrics metrics = entry.getValue();
+                final long[] taskTimes = metrics.taskTimes.toLongArray();
+                Arrays.sort(taskTimes);
+                final long totalTaskTime = Arrays.stream(taskTimes).sum();
+                final long medianTaskTime = taskTimes.length == 0 ? 0 : taskTimes[taskTimes.length / 2];
+                final long maxTaskTime = taskTimes.length == 0 ? 0 : taskTimes[taskTimes.length - 1];
+                // the longest task relative to the median task: a high value means a few partitions hold most of the work
+                final double skew = medianTaskTime == 0 ? 0 : (double) maxTaskTime / medianTaskTime;
+                writer.println(String.join("\t",
+                        Integer.toString(entry.getKey().stageId), Integer.toString(entry.getKey().attempt),
+                        toField(metrics.name), toField(metrics.description), metrics.status,
+                        Integer.toString(taskTimes.length), Integer.toString(metrics.failedTasks), Long.toString(metrics.wallClockTime),
+                        Long.toString(totalTaskTime), Long.toString(medianTaskTime), Long.toString(maxTaskTime), String.format("%.2f", skew),
+                        Long.toString(metrics.gcTime), Long.toString(metrics.inputBytes),
+                        Long.toString(metrics.shuffleReadBytes), Long.toString(metrics.shuffleWriteBytes),
+                        Long.toString(metrics.memoryBytesSpilled), Long.toString(metrics.diskBytesSpilled)));
+            }
+            if (writer.checkError()) {
+                throw new UserException("Couldn't write the stage metrics report " + path);
+            }
+        }
+    }
+
+    private static String toField(final String value) {
+        return value.replaceAll("[\\t\\r\\n]+", " ");
+    }
+
+    private static final class StageKey implements Comparable<StageKey> {
+        private final int stageId;
+        private final int attempt;
+
+        StageKey(final int stageId, final int attempt) {
+            this.stageId = stageId;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public int compareTo(final StageKey other) {
+            final int result = Integer.compare(stageId, other.stageId);
+            return result != 0 ? result : Integer.compare(attempt, other.attempt);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final StageKey that = (StageKey) o;
+            return stageId == that.stageId && attempt == that.attempt;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * stageId + attempt;
+        }
+    }
+
+    private static final class StageMetrics {
+        private String name = "";
+        private String description = "";
+        private String status = "RUNNING";
+        private long wallClockTime;
+        private final LongArrayList taskTimes = new LongArrayList();
+        private int failedTasks;
+        private long gcTime;
+        private long inputBytes;
+        private long shuffleReadBytes;
+        private long shuffleWriteBytes;
+        private long memoryBytesSpilled;
+        private long diskBytesSpilled;
+    }
+}
@@ -0,0 +1,187 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.parquet.avro.AvroParquetInputFormat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetInputFormat;
+import org.apache.parquet.io.api.Binary;
+import org.bdgenomics.formats.avro.AlignmentRecord;
+import org.broadinstitute.hellbender.engine.TraversalParameters;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Describes which parts of an ADAM (Parquet) reads dataset a tool needs, so that they can be pushed down to the
+ * Parquet reader instead of decoding every column of every record and filtering afterwards.
+ *
+ * <ul>
+ *     <li>A projection restricts the {@link AlignmentRecord} fields (columns) that are read; all other fields are
+ *     left null in the records. Tools that project must only use the fields they asked for, including in their read
+ *     filters. The fields needed to apply the traversal intervals are always included.</li>
+ *     <li>Flag predicates restrict the records to those with the given values of boolean fields (for example
+ *     {@code duplicateRead == false}).</li>
+ *     <li>The traversal intervals are turned into a predicate on the contig, start and end columns, so that row groups
+ *     that cannot overlap the intervals are skipped without being decoded.</li>
+ * </ul>
+ *
+ * The predicates are only used to skip data: records are still filtered exactly by the traversal intervals after
+ * they are read, so a predicate only needs to match a superset of the records to keep.
+ */
+public final class ADAMReadsQuery {
+
+    /**
+     * The fields used to find the records that overlap the traversal intervals.
+     */
+    public static final List<String> LOCATION_FIELDS = Collections.unmodifiableList(Arrays.asList("contigName", "start", "end", "readMapped"));
+
+    /**
+     * Above this many intervals the interval predicate is simplified to one span per contig, to keep it small.
+     */
+    static final int MAX_INTERVALS_IN_PREDICATE = 1000;
+
+    /**
+     * A query for all the fields of all the records.
+     */
+    public static final ADAMReadsQuery ALL = new ADAMReadsQuery(null, Collections.emptyMap());
+
+    private final Set<String> fields;
+    private final Map<String, Boolean> flags;
+
+    private ADAMReadsQuery(final Set<String> fields, final Map<String, Boolean> flags) {
+        this.fields = fields;
+        this.flags = flags;
+    }
+
+    /**
+     * @return a copy of this query that only reads the given fields (plus {@link #LOCATION_FIELDS})
+     */
+    public ADAMReadsQuery withFields(final String... fieldNames) {
+        final Set<String> projectedFields = new LinkedHashSet<>(LOCATION_FIELDS);
+        for (final String fieldName : fieldNames) {
+            Utils.validateArg(AlignmentRecord.getClassSchema().getField(fieldName) != null, () -> "Unknown AlignmentRecord field: " + fieldName);
+            projectedFields.add(fieldName);
+        }
+        if (fields != null) {
+            projectedFields.addAll(fields);
+        }
+        return new ADAMReadsQuery(projectedFields, flags);
+    }
+
+    /**
+     * @return a copy of this query that only reads the records where the given boolean field has the given value
+     */
+    public ADAMReadsQuery withFlag(final String flagField, final boolean value) {
+        final Schema.Field field = AlignmentRecord.getClassSchema().getField(flagField);
+        Utils.validateArg(field != null && isBooleanField(field), () -> "Not a boolean AlignmentRecord field: " + flagField);
+        final Map<String, Boolean> newFlags = new LinkedHashMap<>(flags);
+        newFlags.put(flagField, value);
+        return new ADAMReadsQuery(fields == null ? null : withFieldsOf(fields, flagField), newFlags);
+    }
+
+    private static Set<String> withFieldsOf(final Set<String> fields, final String field) {
+        final Set<String> newFields = new LinkedHashSet<>(fields);
+        newFields.add(field);
+        return newFields;
+    }
+
+    private static boolean isBooleanField(final Schema.Field field) {
+        final Schema schema = field.schema();
+        if (schema.getType() == Schema.Type.UNION) {
+            return schema.getTypes().stream().anyMatch(s -> s.getType() == Schema.Type.BOOLEAN);
+        }
+        return schema.getType() == Schema.Type.BOOLEAN;
+    }
+
+    /**
+     * @return the Avro schema of the projected fields, or null if all the fields are read
+     */
+    public Schema getProjection() {
+        if (fields == null) {
+            return null;
+        }
+        final Schema fullSchema = AlignmentRecord.getClassSchema();
+        final List<Schema.Field> projectedFields = fullSchema.getFields().stream()
+                .filter(field -> fields.contains(field.name()))
+                .map(field -> new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultValue()))
+                .collect(Collectors.toList());
+        final Schema projection = Schema.createRecord(fullSchema.getName(), fullSchema.getDoc(), fullSchema.getNamespace(), fullSchema.isError());
+        projection.setFields(projectedFields);
+        return projection;
+    }
+
+    /**
+     * @param traversalParameters the intervals to traverse, or null to traverse all the reads
+     * @return the predicate matching (a superset of) the records to read, or null if all records must be read
+     */
+    public FilterPredicate getPredicate(final TraversalParameters traversalParameters) {
+        FilterPredicate predicate = null;
+        for (final Map.Entry<String, Boolean> flag : flags.entrySet()) {
+            predicate = and(predicate, FilterApi.eq(FilterApi.booleanColumn(flag.getKey()), flag.getValue()));
+        }
+        return and(predicate, getIntervalsPredicate(traversalParameters));
+    }
+
+    private static FilterPredicate getIntervalsPredicate(final TraversalParameters traversalParameters) {
+        if (traversalParameters == null) {
+            return null;
+        }
+        final List<SimpleInterval> intervals = traversalParameters.getIntervalsForTraversal();
+        if (intervals == null || intervals.isEmpty()) {
+            // unmapped reads only, or no reads at all (which is left to the exact filter)
+            return traversalParameters.traverseUnmappedReads() ? FilterApi.eq(FilterApi.booleanColumn("readMapped"), false) : null;
+        }
+
+        FilterPredicate predicate = null;
+        for (final SimpleInterval interval : intervals.size() > MAX_INTERVALS_IN_PREDICATE ? spanPerContig(intervals) : intervals) {
+            // ADAM coordinates are 0-based, with an exclusive end; unmapped reads that are placed at a position may
+            // not have an end, so they are matched by their start alone
+            final FilterPredicate overlaps = FilterApi.and(
+                    FilterApi.eq(FilterApi.binaryColumn("contigName"), Binary.fromString(interval.getContig())),
+                    FilterApi.and(
+                            FilterApi.lt(FilterApi.longColumn("start"), (long) interval.getEnd()),
+                            FilterApi.or(
+                                    FilterApi.gt(FilterApi.longColumn("end"), (long) interval.getStart() - 1),
+                                    FilterApi.eq(FilterApi.booleanColumn("readMapped"), false))));
+            predicate = predicate == null ? overlaps : FilterApi.or(predicate, overlaps);
+        }
+        if (traversalParameters.traverseUnmappedReads()) {
+            predicate = FilterApi.or(predicate, FilterApi.eq(FilterApi.booleanColumn("readMapped"), false));
+        }
+        return predicate;
+    }
+
+    private static List<SimpleInterval> spanPerContig(final List<SimpleInterval> intervals) {
+        final Map<String, SimpleInterval> spans = new LinkedHashMap<>();
+        for (final SimpleInterval interval : intervals) {
+            spans.merge(interval.getContig(), interval, SimpleInterval::spanWith);
+        }
+        return new ArrayList<>(spans.values());
+    }
+
+    private static FilterPredicate and(final FilterPredicate left, final FilterPredicate right) {
+        if (left == null) {
+            return right;
+        }
+        return right == null ? left : FilterApi.and(left, right);
+    }
+
+    /**
+     * Configures a Parquet input job to read the records of this query.
+     */
+    void configure(final Job job, final TraversalParameters traversalParameters) {
+        AvroParquetInputFormat.setAvroReadSchema(job, AlignmentRecord.getClassSchema());
+        final Schema projection = getProjection();
+        if (projection != null) {
+            AvroParquetInputFormat.setRequestedProjection(job, projection);
+        }
+        final FilterPredicate predicate = getPredicate(traversalParameters);
+        if (predicate != null) {
+            ParquetInputFormat.setFilterPredicate(job.getConfiguration(), predicate);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.broadinstitute.hellbender.engine.spark.datasources;
 import htsjdk.samtools.BamFileIoUtils;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.util.IOUtil;
 import org.apache.hadoop.conf.Configuration;
@@ -35,6 +36,9 @@ import scala.Tuple2;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 
 /**
@@ -238,6 +242,15 @@ public final class ReadsSparkSink {
         deleteHadoopFile(outputFile, ctx.hadoopConfiguration());
         rddAlignmentRecords.saveAsNewAPIHadoopFile(
                 outputFile, Void.class, AlignmentRecord.class, AvroParquetOutputFormat.class, job.getConfiguration());
+        // the records do not carry the header, so it is written alongside them for ReadsSparkSource#getHeader
+        writeADAMHeader(outputFile, header, ctx.hadoopConfiguration());
+    }
+
+    private static void writeADAMHeader(final String outputFile, final SAMFileHeader header, final Configuration conf) throws IOException {
+        final Path headerPath = new Path(outputFile, ReadsSparkSource.ADAM_HEADER_FILE_NAME);
+        try (final Writer writer = new OutputStreamWriter(headerPath.getFileSystem(conf).create(headerPath), StandardCharsets.UTF_8)) {
+            new SAMTextHeaderCodec().encode(writer, header);
+        }
     }
 
     private static void saveAsShardedHadoopFiles(
@@ -1,6 +1,8 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
+import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.BufferedLineReader;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -23,6 +25,7 @@ import org.broadinstitute.hellbender.engine.ReadsDataSource;
 import org.broadinstitute.hellbender.engine.TraversalParameters;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.read.*;
@@ -46,6 +49,12 @@ public final class ReadsSparkSource implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final String HADOOP_PART_PREFIX = "part-";
 
+    /**
+     * The name of the file holding the SAM header of the reads in an ADAM dataset (a directory of Parquet files).
+     * Files starting with "_" are skipped by the Parquet input format.
+     */
+    public static final String ADAM_HEADER_FILE_NAME = "_header";
+
     private transient final JavaSparkContext ctx;
     private ValidationStringency validationStringency = ReadConstants.DEFAULT_READ_VALIDATION_STRINGENCY;
 
@@ -184,8 +193,20 @@ public final class ReadsSparkSource implements Serializable {
      * @return RDD of (ADAM-backed) GATKReads from the file.
      */
     public JavaRDD<GATKRead> getADAMReads(final String inputPath, final TraversalParameters traversalParameters, final SAMFileHeader header) throws IOException {
+        return getADAMReads(inputPath, traversalParameters, header, ADAMReadsQuery.ALL);
+    }
+
+    /**
+     * Loads ADAM reads stored as Parquet, reading only the fields and records selected by the query. The traversal
+     * intervals are pushed down to the Parquet reader as well, so that data that cannot overlap them is skipped.
+     * @param inputPath path to the Parquet data
+     * @param query the fields and flags to push down to the Parquet reader
+     * @return RDD of (ADAM-backed) GATKReads from the file.
+     */
+    public JavaRDD<GATKRead> getADAMReads(final String inputPath, final TraversalParameters traversalParameters, final SAMFileHeader header, final ADAMReadsQuery query) throws IOException {
+        Utils.nonNull(query);
         Job job = Job.getInstance(ctx.hadoopConfiguration());
-        AvroParquetInputFormat.setAvroReadSchema(job, AlignmentRecord.getClassSchema());
+        query.configure(job, traversalParameters);
         Broadcast<SAMFileHeader> bHeader;
         if (header == null) {
             bHeader= ctx.broadcast(null);
@@ -196,10 +217,13 @@ public final class ReadsSparkSource implements Serializable {
         JavaRDD<AlignmentRecord> recordsRdd = ctx.newAPIHadoopFile(
                 inputPath, AvroParquetInputFormat.class, Void.class, AlignmentRecord.class, job.getConfiguration())
                 .values();
-        JavaRDD<GATKRead> readsRdd = recordsRdd.map(record -> new BDGAlignmentRecordToGATKReadAdapter(record, bHeader.getValue()));
-        JavaRDD<GATKRead> filteredRdd = readsRdd.filter(record -> samRecordOverlaps(record.convertToSAMRecord(header), traversalParameters));
+        // the overlap check only uses the location fields, which every query reads, so that it does not depend on
+        // fields (such as the cigar) that the query may have projected out
+        JavaRDD<AlignmentRecord> filteredRecordsRdd = traversalParameters == null ? recordsRdd :
+                recordsRdd.filter(record -> alignmentRecordOverlaps(record, traversalParameters));
+        JavaRDD<GATKRead> readsRdd = filteredRecordsRdd.map(record -> new BDGAlignmentRecordToGATKReadAdapter(record, bHeader.getValue()));
 
-        return fixPartitionsIfQueryGrouped(ctx, header, filteredRdd);
+        return fixPartitionsIfQueryGrouped(ctx, header, readsRdd);
     }
 
     /**
@@ -221,6 +245,10 @@ public final class ReadsSparkSource implements Serializable {
             Path path = new Path(filePath);
             FileSystem fs = path.getFileSystem(ctx.hadoopConfiguration());
             if (fs.isDirectory(path)) {
+                final Path adamHeaderPath = new Path(path, ADAM_HEADER_FILE_NAME);
+                if (fs.exists(adamHeaderPath)) {
+                    return readADAMHeader(fs, adamHeaderPath);
+                }
                 FileStatus[] bamFiles = fs.listStatus(path, new PathFilter() {
                     private static final long serialVersionUID = 1L;
                     @Override
@@ -240,6 +268,12 @@ public final class ReadsSparkSource implements Serializable {
         }
     }
 
+    private static SAMFileHeader readADAMHeader(final FileSystem fs, final Path headerPath) throws IOException {
+        try (final BufferedLineReader reader = new BufferedLineReader(fs.open(headerPath))) {
+            return new SAMTextHeaderCodec().decode(reader, headerPath.toString());
+        }
+    }
+
     /**
      * Propagate any values that need to be passed to Hadoop-BAM through configuration properties:
      *
@@ -311,4 +345,34 @@ public final class ReadsSparkSource implements Serializable {
         }
         return false;
     }
+
+    /**
+     * The ADAM equivalent of {@link #samRecordOverlaps}, using only the {@link ADAMReadsQuery#LOCATION_FIELDS}.
+     * ADAM coordinates are 0-based, with an exclusive end.
+     */
+    @VisibleForTesting
+    static boolean alignmentRecordOverlaps(final AlignmentRecord record, final TraversalParameters traversalParameters) {
+        if (traversalParameters == null) {
+            return true;
+        }
+        final boolean unmapped = !Boolean.TRUE.equals(record.getReadMapped());
+        final boolean placed = record.getContigName() != null && record.getStart() != null;
+        if (traversalParameters.traverseUnmappedReads() && unmapped && !placed) {
+            return true; // include record if unmapped records should be traversed and record is unmapped
+        }
+        final List<SimpleInterval> intervals = traversalParameters.getIntervalsForTraversal();
+        if (intervals == null || intervals.isEmpty() || !placed) {
+            return false; // no intervals means 'no mapped reads'
+        }
+        final String contig = record.getContigName();
+        final long start = record.getStart() + 1;
+        // unmapped reads that have a position are returned if that position is in the query region, as in htsjdk
+        final long end = unmapped || record.getEnd() == null ? start : Math.max(start, record.getEnd());
+        for (final SimpleInterval interval : intervals) {
+            if (interval.getContig().equals(contig) && interval.getStart() <= end && interval.getEnd() >= start) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
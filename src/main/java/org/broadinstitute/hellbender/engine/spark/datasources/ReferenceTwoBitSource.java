@@ -2,7 +2,6 @@ package org.broadinstitute.hellbender.engine.spark.datasources;
 
 import com.google.common.io.ByteStreams;
 import htsjdk.samtools.SAMSequenceDictionary;
-import htsjdk.samtools.SAMSequenceRecord;
 import org.bdgenomics.adam.models.ReferenceRegion;
 import org.bdgenomics.adam.util.TwoBitFile;
 import org.bdgenomics.adam.util.TwoBitRecord;
@@ -11,36 +10,53 @@ import org.broadinstitute.hellbender.engine.datasources.ReferenceSource;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+import org.broadinstitute.hellbender.utils.reference.PackedReference;
 import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
 import scala.collection.JavaConversions;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * A ReferenceSource impl that is backed by a .2bit representation of a reference genome.  This loads an entire .2bit
- * file into a byte array that is encapsulated by this object.  This is particularly useful for fast reference queries
- * if the entire reference can fit into memory.
+ * file and holds its bases off-heap in a {@link PackedReference} that is encapsulated by this object.  This is
+ * particularly useful for fast reference queries if the entire reference can fit into memory, and when broadcast, all
+ * the tasks in an executor share the one copy.
  */
 public class ReferenceTwoBitSource implements ReferenceSource, Serializable {
     private static final long serialVersionUID = 1L;
 
     public static final String TWO_BIT_EXTENSION = ".2bit";
 
+    /**
+     * The number of bases extracted from the .2bit file at a time when packing the reference.
+     */
+    private static final int PACKING_CHUNK_SIZE = 1 << 20;
+
     private final String referenceURL;
-    private final TwoBitFile twoBitFile;
-    private final Map<String, TwoBitRecord> twoBitSeqEntries;
+    private final PackedReference reference;
 
     public ReferenceTwoBitSource(String referenceURL) throws IOException {
         this.referenceURL = referenceURL;
         Utils.validateArg(isTwoBit(this.referenceURL), "ReferenceTwoBitSource can only take .2bit files");
         byte[] bytes = ByteStreams.toByteArray(BucketUtils.openFile(this.referenceURL));
         ByteAccess byteAccess = new DirectFullByteArrayByteAccess(bytes);
-        this.twoBitFile = new TwoBitFile(byteAccess);
-        this.twoBitSeqEntries = JavaConversions.mapAsJavaMap(twoBitFile.seqRecords());
+        this.reference = pack(new TwoBitFile(byteAccess));
+    }
+
+    private static PackedReference pack(final TwoBitFile twoBitFile) {
+        final PackedReference.Builder builder = new PackedReference.Builder();
+        for (final Map.Entry<String, TwoBitRecord> entry : JavaConversions.mapAsJavaMap(twoBitFile.seqRecords()).entrySet()) {
+            final String contig = entry.getKey();
+            final int length = entry.getValue().dnaSize();
+            builder.addContig(contig, length);
+            for (long start = 0; start < length; start += PACKING_CHUNK_SIZE) {
+                final long end = Math.min(length, start + PACKING_CHUNK_SIZE);
+                builder.addBases(twoBitFile.extract(new ReferenceRegion(contig, start, end, null)).getBytes());
+            }
+        }
+        return builder.build();
     }
 
     /**
@@ -54,36 +70,22 @@ public class ReferenceTwoBitSource implements ReferenceSource, Serializable {
     @Override
     public ReferenceBases getReferenceBases(SimpleInterval interval) throws IOException {
         final SimpleInterval queryInterval = cropIntervalAtContigEnd(interval);
-        final String bases = twoBitFile.extract(simpleIntervalToReferenceRegion(queryInterval));
-        return new ReferenceBases(bases.getBytes(), queryInterval);
+        return new ReferenceBases(reference.getBases(queryInterval), queryInterval);
     }
 
     @Override
     public SAMSequenceDictionary getReferenceSequenceDictionary(SAMSequenceDictionary optReadSequenceDictionaryToMatch) throws IOException {
-        List<SAMSequenceRecord> records = twoBitSeqEntries.entrySet().stream()
-                .map(pair -> new SAMSequenceRecord(pair.getKey(), pair.getValue().dnaSize()))
-                .collect(Collectors.toList());
-        return new SAMSequenceDictionary(records);
+        return reference.getSequenceDictionary();
     }
 
     public static boolean isTwoBit(String file) {
         return file.endsWith(TWO_BIT_EXTENSION);
     }
 
-    private static ReferenceRegion simpleIntervalToReferenceRegion(SimpleInterval interval) {
-        // ADAM and GA4GH both use zero-based half-open intervals for genome coordinates
-        String contig = interval.getContig();
-        long start = interval.getGA4GHStart();
-        long end = interval.getGA4GHEnd();
-        return new ReferenceRegion(contig, start, end, null);
-    }
-
     private SimpleInterval cropIntervalAtContigEnd( final SimpleInterval interval ) {
-        // The 2bit query API does not support queries beyond the ends of contigs, so we need
+        // The packed reference does not support queries beyond the ends of contigs, so we need
         // to truncate our interval at the contig end if necessary.
-        final TwoBitRecord contigRecord = twoBitSeqEntries.get(interval.getContig());
-        Utils.nonNull(contigRecord, () -> "Contig " + interval.getContig() + " not found in reference dictionary");
-        return new SimpleInterval(interval.getContig(), interval.getStart(), Math.min(interval.getEnd(), contigRecord.dnaSize()));
+        return new SimpleInterval(interval.getContig(), interval.getStart(), Math.min(interval.getEnd(), reference.getContigLength(interval.getContig())));
     }
 
 }
@@ -76,17 +76,24 @@ public final class VariantsSparkSink {
         static final String GVCF = "hadoopbam.vcf.gvcf";
         static final String GQ_PARTITIONS = "hadoopbam.vcf.gvcf.gq-partitions";
         static final String DEFAULT_PLOIDY = "hadoopbam.vcf.gvcf.default-ploidy";
+        static final String GQ_BAND_TOLERANCE = "hadoopbam.vcf.gvcf.gq-band-tolerance";
 
         public static void writeGvcf(Configuration conf, List<Integer> gqPartitions, int defaultPloidy) {
+            writeGvcf(conf, gqPartitions, defaultPloidy, 0);
+        }
+
+        public static void writeGvcf(Configuration conf, List<Integer> gqPartitions, int defaultPloidy, int gqBandTolerance) {
             conf.setBoolean(GVCF, true);
             conf.set(GQ_PARTITIONS, Joiner.on(",").join(gqPartitions));
             conf.setInt(DEFAULT_PLOIDY, defaultPloidy);
+            conf.setInt(GQ_BAND_TOLERANCE, gqBandTolerance);
         }
 
         public static void unsetGvcf(Configuration conf) {
             conf.unset(GVCF);
             conf.unset(GQ_PARTITIONS);
             conf.unset(DEFAULT_PLOIDY);
+            conf.unset(GQ_BAND_TOLERANCE);
         }
 
         @Override
@@ -155,7 +162,8 @@ public final class VariantsSparkSink {
                     .map(Integer::parseInt)
                     .collect(Collectors.toList());
             int defaultPloidy = conf.getInt(SparkHeaderlessVCFOutputFormat.DEFAULT_PLOIDY, HomoSapiensConstants.DEFAULT_PLOIDY);
-            return new GVCFWriter(writer, gqPartitions, defaultPloidy);
+            int gqBandTolerance = conf.getInt(SparkHeaderlessVCFOutputFormat.GQ_BAND_TOLERANCE, 0);
+            return new GVCFWriter(writer, gqPartitions, defaultPloidy, gqBandTolerance);
         }
         return writer;
     }
@@ -194,13 +202,33 @@ public final class VariantsSparkSink {
             final JavaSparkContext ctx, final String outputFile, final JavaRDD<VariantContext> variants,
             final VCFHeader header, final boolean writeGvcf, final List<Integer> gqPartitions, final int defaultPloidy,
             final int numReducers) throws IOException {
+        writeVariants(ctx, outputFile, variants, header, writeGvcf, gqPartitions, defaultPloidy, 0, numReducers);
+    }
+
+    /**
+     * Write variants to the given output file in VCF format with the given header. Note that writing sharded output is not supported.
+     * @param ctx the JavaSparkContext
+     * @param outputFile path to the output VCF
+     * @param variants variants to write
+     * @param header the header to put at the top of the output file
+     * @param gqBandTolerance how far outside its GQ band a site may be and still extend a GVCF reference block, as in
+     *                        {@link GVCFWriter}
+     * @param numReducers the number of reducers to use when writing a single file. A value of zero indicates that the default
+     *                    should be used.
+     * @throws IOException if an error occurs while writing
+     */
+    public static void writeVariants(
+            final JavaSparkContext ctx, final String outputFile, final JavaRDD<VariantContext> variants,
+            final VCFHeader header, final boolean writeGvcf, final List<Integer> gqPartitions, final int defaultPloidy,
+            final int gqBandTolerance, final int numReducers) throws IOException {
         String absoluteOutputFile = BucketUtils.makeFilePathAbsolute(outputFile);
-        writeVariantsSingle(ctx, absoluteOutputFile, variants, header, writeGvcf, gqPartitions, defaultPloidy, numReducers);
+        writeVariantsSingle(ctx, absoluteOutputFile, variants, header, writeGvcf, gqPartitions, defaultPloidy, gqBandTolerance, numReducers);
     }
 
     private static void writeVariantsSingle(
             final JavaSparkContext ctx, final String outputFile, final JavaRDD<VariantContext> variants,
-            final VCFHeader header, final boolean writeGvcf, final List<Integer> gqPartitions, final int defaultPloidy, final int numReducers) throws IOException {
+            final VCFHeader header, final boolean writeGvcf, final List<Integer> gqPartitions, final int defaultPloidy,
+            final int gqBandTolerance, final int numReducers) throws IOException {
 
         final Configuration conf = ctx.hadoopConfiguration();
 
@@ -216,7 +244,7 @@ public final class VariantsSparkSink {
             conf.setBoolean(FileOutputFormat.COMPRESS, false);
         }
         if (writeGvcf) {
-            SparkHeaderlessVCFOutputFormat.writeGvcf(conf, gqPartitions, defaultPloidy);
+            SparkHeaderlessVCFOutputFormat.writeGvcf(conf, gqPartitions, defaultPloidy, gqBandTolerance);
         } else {
             SparkHeaderlessVCFOutputFormat.unsetGvcf(conf);
         }
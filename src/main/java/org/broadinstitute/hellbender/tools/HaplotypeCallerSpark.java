@@ -11,6 +11,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.broadinstitute.barclay.argparser.*;
 import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -22,6 +23,7 @@ import org.broadinstitute.hellbender.cmdline.programgroups.ShortVariantDiscovery
 import org.broadinstitute.hellbender.engine.*;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.engine.spark.AssemblyRegionWalkerSpark;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.engine.ShardToMultiIntervalShardAdapter;
 import org.broadinstitute.hellbender.engine.spark.SparkSharder;
@@ -33,7 +35,9 @@ import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.HaplotypeCall
 import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.HaplotypeCallerArgumentCollection;
 import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.HaplotypeCallerEngine;
 import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.ReferenceConfidenceMode;
+import org.broadinstitute.hellbender.transformers.ReadTransformer;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
+import org.broadinstitute.hellbender.utils.SerializableFunction;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.downsampling.PositionalDownsampler;
@@ -80,6 +84,12 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
     private static final long serialVersionUID = 1L;
 
     public static final int DEFAULT_READSHARD_SIZE = 5000;
+    public static final int DEFAULT_READSHARD_COVERAGE_BIN_SIZE = 1000;
+
+    public static final String ADAPTIVE_READ_SHARDS_LONG_NAME = "adaptive-read-shards";
+    public static final String READ_SHARD_COVERAGE_BIN_SIZE_LONG_NAME = "read-shard-coverage-bin-size";
+    public static final String READ_SHARD_TARGET_READS_LONG_NAME = "read-shard-target-reads";
+    public static final String REBALANCE_ASSEMBLY_REGIONS_LONG_NAME = "rebalance-assembly-regions";
     private static final boolean INCLUDE_READS_WITH_DELETIONS_IN_IS_ACTIVE_PILEUPS = true;
 
     @Argument(fullName= StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Single file to which variants should be written")
@@ -97,6 +107,24 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
         @Argument(fullName="read-shard-padding", doc = "Each read shard has this many bases of extra context on each side. Read shards must have as much or more padding than assembly regions.", optional = true)
         public int readShardPadding = HaplotypeCaller.DEFAULT_ASSEMBLY_REGION_PADDING;
 
+        @Argument(fullName = ADAPTIVE_READ_SHARDS_LONG_NAME, doc = "Size read shards by coverage rather than by length: a first pass over the reads computes a coarse coverage profile, " +
+                "and shards are cut so that each holds roughly the same number of reads (and no more than --read-shard-size bases). This subdivides high-depth regions that would otherwise be straggler tasks.", optional = true)
+        public boolean adaptiveReadShards = false;
+
+        @Advanced
+        @Argument(fullName = READ_SHARD_COVERAGE_BIN_SIZE_LONG_NAME, doc = "Size of the bins of the coverage profile used by --" + ADAPTIVE_READ_SHARDS_LONG_NAME + ", in bases. " +
+                "Adaptive shards are cut at bin boundaries, so this should be larger than the maximum assembly region size.", optional = true, minValue = 1)
+        public int readShardCoverageBinSize = DEFAULT_READSHARD_COVERAGE_BIN_SIZE;
+
+        @Advanced
+        @Argument(fullName = READ_SHARD_TARGET_READS_LONG_NAME, doc = "Number of reads each shard should hold when using --" + ADAPTIVE_READ_SHARDS_LONG_NAME + ". " +
+                "If 0, the mean number of reads of a shard of --read-shard-size bases is used.", optional = true, minValue = 0)
+        public long readShardTargetReads = 0;
+
+        @Argument(fullName = REBALANCE_ASSEMBLY_REGIONS_LONG_NAME, doc = "Redistribute the assembly regions across partitions by their estimated cost (reads times extended span length) " +
+                "before calling variants on them, so that read shards that yield a few very dense regions don't become straggler tasks.", optional = true)
+        public boolean rebalanceAssemblyRegions = false;
+
         @Argument(fullName = AssemblyRegionWalker.MIN_ASSEMBLY_LONG_NAME, doc = "Minimum size of an assembly region", optional = true)
         public int minAssemblyRegionSize = HaplotypeCaller.DEFAULT_MIN_ASSEMBLY_REGION_SIZE;
 
@@ -192,6 +220,32 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
             final int numReducers,
             final String output,
             final Collection<Annotation> annotations) {
+        callVariantsWithHaplotypeCallerAndWriteOutput(ctx, reads, header, reference, intervals, hcArgs, shardingArgs, numReducers, output, annotations, null);
+    }
+
+    /**
+     * Call Variants using HaplotypeCaller on Spark and write out a VCF file, transforming the reads inside the read
+     * shards just before they are assembled.
+     *
+     * Applying a transformation (such as base quality score recalibration) here rather than to the input RDD means
+     * that the transformed reads are never materialized: the transformation runs in the same stage as the calling,
+     * after the sort and after the passes made over the sorted reads to compute the shard boundaries.
+     *
+     * @param shardReadTransformerFactory creates the transformer to apply to the reads from the reads header, once
+     *                                    per partition, or null to call on the reads as they are
+     */
+    public static void callVariantsWithHaplotypeCallerAndWriteOutput(
+            final JavaSparkContext ctx,
+            final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header,
+            final ReferenceMultiSource reference,
+            final List<SimpleInterval> intervals,
+            final HaplotypeCallerArgumentCollection hcArgs,
+            final ShardingArgumentCollection shardingArgs,
+            final int numReducers,
+            final String output,
+            final Collection<Annotation> annotations,
+            final SerializableFunction<SAMFileHeader, ReadTransformer> shardReadTransformerFactory) {
         // Reads must be coordinate sorted to use the overlaps partitioner
         final SAMFileHeader readsHeader = header.clone();
         readsHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
@@ -199,13 +253,18 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
         final VariantAnnotatorEngine variantannotatorEngine = new VariantAnnotatorEngine(annotations,  hcArgs.dbsnp.dbsnp, hcArgs.comps, hcArgs.emitReferenceConfidence != ReferenceConfidenceMode.NONE);
 
         final HaplotypeCallerEngine hcEngine = new HaplotypeCallerEngine(hcArgs, false, false, readsHeader, new ReferenceMultiSourceAdapter(reference), variantannotatorEngine);
-        final JavaRDD<VariantContext> variants = callVariantsWithHaplotypeCaller(ctx, coordinateSortedReads, readsHeader, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine);
+        final List<JavaRDD<?>> persistedRDDs = new ArrayList<>();
+        final JavaRDD<VariantContext> variants = callVariantsWithHaplotypeCaller(ctx, coordinateSortedReads, readsHeader, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine, shardReadTransformerFactory, persistedRDDs);
         variants.cache(); // without caching, computations are run twice as a side effect of finding partition boundaries for sorting
+        persistedRDDs.add(variants);
         try {
             VariantsSparkSink.writeVariants(ctx, output, variants, hcEngine.makeVCFHeader(readsHeader.getSequenceDictionary(), new HashSet<>()),
-                    hcArgs.emitReferenceConfidence == ReferenceConfidenceMode.GVCF, hcArgs.GVCFGQBands, hcArgs.genotypeArgs.samplePloidy);
+                    hcArgs.emitReferenceConfidence == ReferenceConfidenceMode.GVCF, hcArgs.GVCFGQBands, hcArgs.genotypeArgs.samplePloidy,
+                    hcArgs.GVCFGQBandTolerance, 0);
         } catch (IOException e) {
             throw new UserException.CouldNotCreateOutputFile(output, "writing failed", e);
+        } finally {
+            persistedRDDs.forEach(rdd -> rdd.unpersist(false));
         }
     }
 
@@ -233,6 +292,47 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
             final HaplotypeCallerArgumentCollection hcArgs,
             final ShardingArgumentCollection shardingArgs,
             final VariantAnnotatorEngine variantannotatorEngine) {
+        return callVariantsWithHaplotypeCaller(ctx, reads, header, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine, null);
+    }
+
+    /**
+     * Call Variants using HaplotypeCaller on Spark and return an RDD of {@link VariantContext}, transforming the reads
+     * inside the read shards just before they are assembled.
+     *
+     * When the assembly regions are rebalanced, they are cached until the returned RDD is garbage collected.
+     *
+     * @param shardReadTransformerFactory creates the transformer to apply to the reads from the reads header, once
+     *                                    per partition, or null to call on the reads as they are
+     * @return an RDD of Variants
+     */
+    public static JavaRDD<VariantContext> callVariantsWithHaplotypeCaller(
+            final JavaSparkContext ctx,
+            final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header,
+            final ReferenceMultiSource reference,
+            final List<SimpleInterval> intervals,
+            final HaplotypeCallerArgumentCollection hcArgs,
+            final ShardingArgumentCollection shardingArgs,
+            final VariantAnnotatorEngine variantannotatorEngine,
+            final SerializableFunction<SAMFileHeader, ReadTransformer> shardReadTransformerFactory) {
+        return callVariantsWithHaplotypeCaller(ctx, reads, header, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine, shardReadTransformerFactory, new ArrayList<>());
+    }
+
+    /**
+     * @param persistedRDDs the RDDs that are cached to compute the returned RDD are added to this list, so that the
+     *                      caller can unpersist them once it has run its action on the returned RDD
+     */
+    private static JavaRDD<VariantContext> callVariantsWithHaplotypeCaller(
+            final JavaSparkContext ctx,
+            final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header,
+            final ReferenceMultiSource reference,
+            final List<SimpleInterval> intervals,
+            final HaplotypeCallerArgumentCollection hcArgs,
+            final ShardingArgumentCollection shardingArgs,
+            final VariantAnnotatorEngine variantannotatorEngine,
+            final SerializableFunction<SAMFileHeader, ReadTransformer> shardReadTransformerFactory,
+            final List<JavaRDD<?>> persistedRDDs) {
         Utils.validateArg(hcArgs.dbsnp.dbsnp == null, "HaplotypeCallerSpark does not yet support -D or --dbsnp arguments" );
         Utils.validateArg(hcArgs.comps.isEmpty(), "HaplotypeCallerSpark does not yet support -comp or --comp arguments" );
         Utils.validateArg(hcArgs.bamOutputPath == null, "HaplotypeCallerSpark does not yet support -bamout or --bamOutput");
@@ -245,7 +345,10 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
 
         final Broadcast<VariantAnnotatorEngine> annotatorEngineBroadcast = ctx.broadcast(variantannotatorEngine);
 
-        final List<ShardBoundary> shardBoundaries = getShardBoundaries(header, intervals, shardingArgs.readShardSize, shardingArgs.readShardPadding);
+        final List<ShardBoundary> shardBoundaries = shardingArgs.adaptiveReadShards ?
+                SparkSharder.coverageAwareShardBoundaries(reads, header.getSequenceDictionary(), intervals, shardingArgs.readShardSize,
+                        shardingArgs.readShardPadding, shardingArgs.readShardCoverageBinSize, shardingArgs.readShardTargetReads) :
+                getShardBoundaries(header, intervals, shardingArgs.readShardSize, shardingArgs.readShardPadding);
 
         final int maxReadLength = reads.map(r -> r.getEnd() - r.getStart() + 1).reduce(Math::max);
 
@@ -253,9 +356,18 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
 
         final JavaRDD<Tuple2<AssemblyRegion, SimpleInterval>> assemblyRegions = readShards
                 .mapPartitions(shardsToAssemblyRegions(referenceBroadcast,
-                                                       hcArgsBroadcast, shardingArgs, header, annotatorEngineBroadcast));
+                                                       hcArgsBroadcast, shardingArgs, header, annotatorEngineBroadcast, shardReadTransformerFactory));
+
+        final JavaRDD<Tuple2<AssemblyRegion, SimpleInterval>> balancedAssemblyRegions;
+        if (shardingArgs.rebalanceAssemblyRegions) {
+            persistedRDDs.add(assemblyRegions.persist(StorageLevel.MEMORY_AND_DISK_SER()));
+            balancedAssemblyRegions = SparkUtils.rebalanceByCost(assemblyRegions,
+                    regionAndInterval -> AssemblyRegionWalkerSpark.estimateAssemblyRegionCost(regionAndInterval._1()), assemblyRegions.getNumPartitions());
+        } else {
+            balancedAssemblyRegions = assemblyRegions;
+        }
 
-        return assemblyRegions.mapPartitions(callVariantsFromAssemblyRegions(header, referenceBroadcast, hcArgsBroadcast, annotatorEngineBroadcast));
+        return balancedAssemblyRegions.mapPartitions(callVariantsFromAssemblyRegions(header, referenceBroadcast, hcArgsBroadcast, annotatorEngineBroadcast));
     }
 
     /**
@@ -306,7 +418,8 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
             final Broadcast<HaplotypeCallerArgumentCollection> hcArgsBroadcast,
             final ShardingArgumentCollection assemblyArgs,
             final SAMFileHeader header,
-            final Broadcast<VariantAnnotatorEngine> annotatorEngineBroadcast) {
+            final Broadcast<VariantAnnotatorEngine> annotatorEngineBroadcast,
+            final SerializableFunction<SAMFileHeader, ReadTransformer> shardReadTransformerFactory) {
         return shards -> {
             final ReferenceMultiSource referenceMultiSource = reference.value();
             final ReferenceMultiSourceAdapter referenceSource = new ReferenceMultiSourceAdapter(referenceMultiSource);
@@ -314,7 +427,10 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
 
             final ReadsDownsampler readsDownsampler = assemblyArgs.maxReadsPerAlignmentStart > 0 ?
                 new PositionalDownsampler(assemblyArgs.maxReadsPerAlignmentStart, header) : null;
+            final Function<Shard<GATKRead>, Shard<GATKRead>> shardReadTransformer = shardReadTransformerFactory == null ?
+                Function.identity() : new ShardReadTransformer(shardReadTransformerFactory.apply(header));
             return Utils.stream(shards)
+                .map(shardReadTransformer)
                     //TODO we've hacked multi interval shards here with a shim, but we should investigate as smarter approach https://github.com/broadinstitute/gatk/issues/4299
                 .map(shard -> new ShardToMultiIntervalShardAdapter<>(
                         new DownsampleableSparkReadShard(new ShardBoundary(shard.getInterval(), shard.getPaddedInterval()), shard, readsDownsampler)))
@@ -339,6 +455,36 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
         };
     }
 
+    /**
+     * Applies a {@link ReadTransformer} to the reads of the consecutive shards of a partition.
+     *
+     * Adjacent shards share the read objects that overlap both of them (and a read that overlaps several consecutive
+     * shards overlaps every shard in between), so the reads transformed as part of the previous shard are remembered
+     * and not transformed a second time.
+     */
+    private static final class ShardReadTransformer implements Function<Shard<GATKRead>, Shard<GATKRead>> {
+        private final ReadTransformer transformer;
+        private Map<GATKRead, GATKRead> previousShardReads = new IdentityHashMap<>();
+
+        ShardReadTransformer(final ReadTransformer transformer) {
+            this.transformer = Utils.nonNull(transformer);
+        }
+
+        @Override
+        public Shard<GATKRead> apply(final Shard<GATKRead> shard) {
+            final Map<GATKRead, GATKRead> currentShardReads = new IdentityHashMap<>();
+            final List<GATKRead> transformedReads = new ArrayList<>();
+            for (final GATKRead read : shard) {
+                final GATKRead alreadyTransformed = previousShardReads.get(read);
+                final GATKRead transformed = alreadyTransformed != null ? alreadyTransformed : transformer.apply(read);
+                currentShardReads.put(read, transformed);
+                transformedReads.add(transformed);
+            }
+            previousShardReads = currentShardReads;
+            return new ShardBoundaryShard<>(new ShardBoundary(shard.getInterval(), shard.getPaddedInterval()), transformedReads);
+        }
+    }
+
     /**
      * Adapter to allow a 2bit reference to be used in HaplotypeCallerEngine.
      * This is not intended as a general purpose adapter, it only enables the operations needed in {@link HaplotypeCallerEngine}
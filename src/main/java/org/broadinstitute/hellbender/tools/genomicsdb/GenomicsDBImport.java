@@ -3,12 +3,15 @@ package org.broadinstitute.hellbender.tools.genomicsdb;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intel.genomicsdb.*;
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Locatable;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.FeatureCodec;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.TribbleException;
-import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.bcf2.BCF2Codec;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFHeader;
@@ -63,7 +66,8 @@ import java.util.function.Function;
  * <h3>Input</h3>
  * <p>
  * One or more GVCFs produced by in HaplotypeCaller with the `-ERC GVCF` or `-ERC BP_RESOLUTION` settings, containing
- * the samples to joint-genotype.
+ * the samples to joint-genotype. The GVCFs may be in VCF or, when they were written to a file ending in .g.bcf, in
+ * BCF, which is smaller and faster to read. Either way they must be indexed.
  * </p>
  *
  * <h3>Output</h3>
@@ -95,6 +99,18 @@ import java.util.function.Function;
  *       --reader-threads 5
  *  </pre>
  *
+ *  Import several intervals concurrently, each into its own workspace.
+ *
+ *  <pre>
+ *    gatk --java-options "-Xmx16g -Xms16g" \
+ *       GenomicsDBImport \
+ *       --genomicsdb-workspace-path my_database \
+ *       --batch-size 50 \
+ *       -L chr20 -L chr21 -L chr22 \
+ *       --sample-name-map cohort.sample_map \
+ *       --max-num-intervals-to-import-in-parallel 3
+ *  </pre>
+ *
  *  The sample map is a tab-delimited text file with sample_name--tab--path_to_sample_vcf per line. Using a sample map
  *  saves the tool from having to download the GVCF headers in order to determine the sample names. Sample names in
  *  the sample name map file may have non-tab whitespace, but may not begin or end with whitespace.
@@ -108,7 +124,9 @@ import java.util.function.Function;
  * <h3>Caveats</h3>
  * <ul>
  *     <li>IMPORTANT: The -Xmx value the tool is run with should be less than the total amount of physical memory available by at least a few GB, as the native TileDB library requires additional memory on top of the Java memory. Failure to leave enough memory for the native code can result in confusing error messages!</li>
- *     <li>A single interval must be provided. This means each import is limited to a maximum of one contig</li>
+ *     <li>Each interval must lie within a single contig. If more than one interval is provided, each interval is imported
+ *     into its own GenomicsDB workspace, in a sub-directory of the --genomicsdb-workspace-path named after the interval
+ *     (for example my_database/chr20_1_64444167), which is queried like any other workspace</li>
  *     <li>Currently, only supports diploid data</li>
  *     <li>Input GVCFs cannot contain multiple entries for a single genomic position</li>
  *     <li>The --genomicsdb-workspace-path must point to a non-existent or empty directory.</li>
@@ -140,10 +158,12 @@ public final class GenomicsDBImport extends GATKTool {
     public static final String SAMPLE_NAME_MAP_LONG_NAME = "sample-name-map";
     public static final String VALIDATE_SAMPLE_MAP_LONG_NAME = "validate-sample-name-map";
     public static final String VCF_INITIALIZER_THREADS_LONG_NAME = "reader-threads";
+    public static final String MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL = "max-num-intervals-to-import-in-parallel";
 
     @Argument(fullName = WORKSPACE_ARG_LONG_NAME,
               doc = "Workspace for GenomicsDB. Must be a POSIX file system path, but can be a relative path." +
-                      " Must be an empty or non-existent directory.")
+                      " Must be an empty or non-existent directory. If more than one interval is specified, this" +
+                      " directory holds a workspace for each interval.")
     private String workspace;
 
     @Argument(fullName = SEGMENT_SIZE_ARG_LONG_NAME,
@@ -183,6 +203,8 @@ public final class GenomicsDBImport extends GATKTool {
     @Argument(fullName = BATCHSIZE_ARG_LONG_NAME,
               doc = "Batch size controls the number of samples for which readers are open at once " +
                     "and therefore provides a way to minimize memory consumption. However, it can take longer to complete. " +
+                    "The readers for the next batch are opened while the current batch is imported, so up to twice this " +
+                    "many readers may be open for each interval being imported. " +
                     "Use the consolidate flag if more than a hundred batches were used. This will improve feature read time. " +
                     "batchSize=0 means no batching (i.e. readers for all samples will be opened at once) " +
                     "Defaults to " + DEFAULT_ZERO_BATCH_SIZE,
@@ -229,9 +251,22 @@ public final class GenomicsDBImport extends GATKTool {
             minValue = 1)
     private int vcfInitializerThreads = 1;
 
+    @Advanced
+    @Argument(fullName = MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL,
+            doc = "Max number of intervals to import in parallel; higher values may improve performance, but require more " +
+                    "memory and a higher number of file descriptors open at the same time. Each interval being imported " +
+                    "needs its own GenomicsDB buffers (see --" + SEGMENT_SIZE_ARG_LONG_NAME + " and --" +
+                    VCF_BUFFER_SIZE_ARG_NAME + ") and feature readers",
+            optional = true,
+            minValue = 1)
+    private int maxNumIntervalsToImportInParallel = 1;
+
     //executor service used when vcfInitializerThreads > 1
     private ExecutorService inputPreloadExecutorService;
 
+    //executor service used to open the readers of the next batch of each interval while the current batch is imported
+    private ExecutorService batchPreloadExecutorService;
+
     @Override
     public boolean requiresIntervals() { return true; }
 
@@ -256,9 +291,12 @@ public final class GenomicsDBImport extends GATKTool {
     @Override
     public String getProgressMeterRecordLabel() { return "batches"; }
 
-    // Intervals from command line (singleton for now)
+    // Intervals from command line
     private List<ChromosomeInterval> intervals;
 
+    // Workspace that each interval is imported to, in the same order as intervals
+    private List<String> intervalWorkspaces;
+
     // Sorted mapping between sample names and corresponding GVCF file name
     //
     // IMPORTANT: This must be sorted or it will result in sample name swaps in the output database.
@@ -274,15 +312,6 @@ public final class GenomicsDBImport extends GATKTool {
     // sequence dictionary created from the merged header
     private SAMSequenceDictionary mergedHeaderSequenceDictionary;
 
-    // Path to vidmap file to be written by GenomicsDBImporter
-    private File vidMapJSONFile;
-
-    // Path to callsetmap file to be written by GenomicsDBImporter
-    private File callsetMapJSONFile;
-
-    // Path to combined VCF header file to be written by GenomicsDBImporter
-    private File vcfHeaderFile;
-
     // GenomicsDB callset map protobuf structure containing all callset names
     // used to write the callset json file on traversal success
     private GenomicsDBCallsetsMapProto.CallsetMappingPB callsetMappingPB;
@@ -354,7 +383,7 @@ public final class GenomicsDBImport extends GATKTool {
     }
 
     private VCFHeader getHeaderFromPath(final Path variantPath) {
-        try(final AbstractFeatureReader<VariantContext, LineIterator> reader = getReaderFromPath(variantPath)) {
+        try(final AbstractFeatureReader<VariantContext, ?> reader = getReaderFromPath(variantPath)) {
             return (VCFHeader) reader.getHeader();
         } catch (final IOException e) {
             throw new UserException("Error while reading vcf header from " + variantPath.toUri(), e);
@@ -435,25 +464,44 @@ public final class GenomicsDBImport extends GATKTool {
 
     /**
      * Before traversal, fix configuration parameters and initialize
-     * GenomicsDB. Hard-coded to handle only VCF files and headers
+     * GenomicsDB. Handles only VCF or BCF files and headers
      */
     @Override
     public void onTraversalStart() {
 
-        final File workspaceDir = overwriteOrCreateWorkspace();
-
-        vidMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VIDMAP_FILE_NAME);
-        callsetMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME);
-        vcfHeaderFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME);
+        intervalWorkspaces = new ArrayList<>(intervals.size());
+        if (intervals.size() == 1) {
+            intervalWorkspaces.add(workspace);
+        } else {
+            // each interval gets a workspace of its own, so that each can be queried as usual
+            overwriteOrCreateParentDirectory();
+            for (final ChromosomeInterval interval : intervals) {
+                intervalWorkspaces.add(workspace + "/" + getWorkspaceName(interval));
+            }
+        }
 
-        logger.info("Vid Map JSON file will be written to " + vidMapJSONFile);
-        logger.info("Callset Map JSON file will be written to " + callsetMapJSONFile);
-        logger.info("Complete VCF Header will be written to " + vcfHeaderFile);
-        logger.info("Importing to array - " + workspace + "/" + GenomicsDBConstants.DEFAULT_ARRAY_NAME);
+        for (final String intervalWorkspace : intervalWorkspaces) {
+            final File workspaceDir = overwriteOrCreateWorkspace(new File(intervalWorkspace));
+            logger.info("Vid Map JSON file will be written to " + new File(workspaceDir, GenomicsDBConstants.DEFAULT_VIDMAP_FILE_NAME));
+            logger.info("Callset Map JSON file will be written to " + new File(workspaceDir, GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME));
+            logger.info("Complete VCF Header will be written to " + new File(workspaceDir, GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME));
+            logger.info("Importing to array - " + workspaceDir + "/" + GenomicsDBConstants.DEFAULT_ARRAY_NAME);
+        }
 
         //Pass in true here to use the given ordering, since sampleNameToVcfPath is already sorted
         callsetMappingPB = GenomicsDBImporter.generateSortedCallSetMap(new ArrayList<>(sampleNameToVcfPath.keySet()), true);
         initializeInputPreloadExecutorService();
+        batchPreloadExecutorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("batchPreloader-thread-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * @return the name of the workspace that an interval is imported to when more than one interval is imported
+     */
+    private static String getWorkspaceName(final ChromosomeInterval interval) {
+        return interval.getContig().replaceAll("[^A-Za-z0-9._-]", "_") + "_" + interval.getStart() + "_" + interval.getEnd();
     }
 
     private void initializeInputPreloadExecutorService() {
@@ -470,49 +518,139 @@ public final class GenomicsDBImport extends GATKTool {
 
     /**
      * A complete traversal from start to finish. This method will import all samples
-     * specified in the input GVCF files.
+     * specified in the input GVCF files, importing up to maxNumIntervalsToImportInParallel
+     * intervals at once.
+     *
+     * Each interval is imported into its own workspace by its own GenomicsDBImporter, and this assumes that the
+     * native library can import into sibling workspaces concurrently, since the importers share no arrays, buffers or
+     * files (this is exercised by the integration test that imports multiple intervals in parallel).
      */
     @Override
     public void traverse() {
         // Force the progress meter to update after every batch
         progressMeter.setRecordsBetweenTimeChecks(1L);
 
+        if (intervals.size() == 1) {
+            importInterval(0);
+            return;
+        }
+
+        final int numThreads = Math.min(maxNumIntervalsToImportInParallel, intervals.size());
+        logger.info("Importing " + intervals.size() + " intervals, " + numThreads + " at a time");
+        final ExecutorService intervalExecutorService = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("intervalImporter-thread-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            final List<Future<?>> futures = new ArrayList<>(intervals.size());
+            for (int intervalIndex = 0; intervalIndex < intervals.size(); intervalIndex++) {
+                final int index = intervalIndex;
+                futures.add(intervalExecutorService.submit(() -> importInterval(index)));
+            }
+            for (final Future<?> future : futures) {
+                getImportResult(future);
+            }
+        } finally {
+            intervalExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Imports all samples for one interval into its workspace, batch by batch. The feature readers for the next batch
+     * are opened while the current batch is imported, so at most two batches of readers are open at once.
+     */
+    private void importInterval(final int intervalIndex) {
+        final ChromosomeInterval interval = intervals.get(intervalIndex);
+        final String intervalWorkspace = intervalWorkspaces.get(intervalIndex);
         final int sampleCount = sampleNameToVcfPath.size();
         final int updatedBatchSize = (batchSize == DEFAULT_ZERO_BATCH_SIZE) ? sampleCount : batchSize;
         final int totalBatchCount = (sampleCount/updatedBatchSize) + (sampleCount%updatedBatchSize==0 ? 0 : 1);
 
         GenomicsDBImporter importer;
 
-        for (int i = 0, batchCount = 1; i < sampleCount; i += updatedBatchSize, ++batchCount) {
+        Future<SortedMap<String, FeatureReader<VariantContext>>> nextBatch = preloadBatch(interval, updatedBatchSize, 0);
+        try {
+            for (int i = 0, batchCount = 1; i < sampleCount; i += updatedBatchSize, ++batchCount) {
 
-            final SortedMap<String, FeatureReader<VariantContext>> sampleToReaderMap =
-                    inputPreloadExecutorService != null
-                            ? getFeatureReadersInParallel(sampleNameToVcfPath, updatedBatchSize, i)
-                            : getFeatureReadersSerially(sampleNameToVcfPath, updatedBatchSize, i);
+                final SortedMap<String, FeatureReader<VariantContext>> sampleToReaderMap = getImportResult(nextBatch);
+                nextBatch = i + updatedBatchSize < sampleCount ? preloadBatch(interval, updatedBatchSize, i + updatedBatchSize) : null;
 
-            logger.info("Importing batch " + batchCount + " with " + sampleToReaderMap.size() + " samples");
-            final long variantContextBufferSize = vcfBufferSizePerSample * sampleToReaderMap.size();
-            final GenomicsDBImportConfiguration.ImportConfiguration importConfiguration =
-                    createImportConfiguration(workspace, GenomicsDBConstants.DEFAULT_ARRAY_NAME,
-                                              variantContextBufferSize, segmentSize,
-                                              i, (i+updatedBatchSize-1),
-                                              (batchCount == 1)); //Fail if array exists and this is the first batch
+                logger.info("Importing batch " + batchCount + " with " + sampleToReaderMap.size() + " samples into " + intervalWorkspace);
+                final long variantContextBufferSize = vcfBufferSizePerSample * sampleToReaderMap.size();
+                final GenomicsDBImportConfiguration.ImportConfiguration importConfiguration =
+                        createImportConfiguration(intervalWorkspace, GenomicsDBConstants.DEFAULT_ARRAY_NAME,
+                                                  variantContextBufferSize, segmentSize,
+                                                  i, (i+updatedBatchSize-1),
+                                                  (batchCount == 1)); //Fail if array exists and this is the first batch
 
-            try {
-                importer = new GenomicsDBImporter(sampleToReaderMap, mergedHeaderLines, intervals.get(0), validateSampleToReaderMap, importConfiguration);
-            } catch (final IOException e) {
-                throw new UserException("Error initializing GenomicsDBImporter in batch " + batchCount, e);
-            } catch (final IllegalArgumentException iae) {
-                throw new GATKException("Null feature reader found in sampleNameMap file: " + sampleNameMapFile, iae);
+                try {
+                    try {
+                        importer = new GenomicsDBImporter(sampleToReaderMap, mergedHeaderLines, interval, validateSampleToReaderMap, importConfiguration);
+                    } catch (final IOException e) {
+                        throw new UserException("Error initializing GenomicsDBImporter in batch " + batchCount, e);
+                    } catch (final IllegalArgumentException iae) {
+                        throw new GATKException("Null feature reader found in sampleNameMap file: " + sampleNameMapFile, iae);
+                    }
+                    try {
+                        importer.importBatch();
+                    } catch (final IOException e) {
+                        throw new UserException("GenomicsDB import failed in batch " + batchCount, e);
+                    }
+                } catch (final RuntimeException e) {
+                    closeReadersQuietly(sampleToReaderMap);
+                    throw e;
+                }
+                closeReaders(sampleToReaderMap);
+                synchronized (progressMeter) {
+                    progressMeter.update(interval);
+                }
+                logger.info("Done importing batch " + batchCount + "/" + totalBatchCount + " into " + intervalWorkspace);
             }
-            try {
-                importer.importBatch();
-            } catch (final IOException e) {
-                throw new UserException("GenomicsDB import failed in batch " + batchCount, e);
+        } finally {
+            // if the import failed, the next batch may still be opening: wait for it so that its readers can be closed
+            discardBatch(nextBatch);
+        }
+    }
+
+    /**
+     * Waits for a batch that will not be imported to be opened, and closes its readers
+     */
+    private static void discardBatch(final Future<SortedMap<String, FeatureReader<VariantContext>>> batch) {
+        if (batch == null) {
+            return;
+        }
+        try {
+            closeReadersQuietly(batch.get());
+        } catch (final ExecutionException e) {
+            // the batch failed to open, so there are no readers to close
+        } catch (final InterruptedException e) {
+            batch.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Future<SortedMap<String, FeatureReader<VariantContext>>> preloadBatch(final ChromosomeInterval interval,
+                                                                                 final int batchSize, final int lowerSampleIndex) {
+        return batchPreloadExecutorService.submit(() ->
+                inputPreloadExecutorService != null
+                        ? getFeatureReadersInParallel(sampleNameToVcfPath, batchSize, lowerSampleIndex, interval)
+                        : getFeatureReadersSerially(sampleNameToVcfPath, batchSize, lowerSampleIndex));
+    }
+
+    /**
+     * Waits for a task run by another thread, rethrowing the exception that it failed with, if any
+     */
+    private static <T> T getImportResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            closeReaders(sampleToReaderMap);
-            progressMeter.update(intervals.get(0));
-            logger.info("Done importing batch " + batchCount + "/" + totalBatchCount);
+            throw new GATKException("GenomicsDB import failed", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while importing to GenomicsDB", e);
         }
     }
 
@@ -524,7 +662,26 @@ public final class GenomicsDBImport extends GATKTool {
             logger.info("Import of all batches to GenomicsDB completed!");
         }
 
-        // Write the vid and callset map JSON files
+        for (final String intervalWorkspace : intervalWorkspaces) {
+            writeWorkspaceMetadata(new File(intervalWorkspace));
+
+            if (doConsolidation) {
+                logger.info("GenomicsDB consolidation started for " + intervalWorkspace);
+                GenomicsDBImporter.consolidateTileDBArray(intervalWorkspace, GenomicsDBConstants.DEFAULT_ARRAY_NAME);
+                logger.info("GenomicsDB consolidation completed");
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the vid and callset map JSON files and the VCF header to a workspace
+     */
+    private void writeWorkspaceMetadata(final File workspaceDir) {
+        final File vidMapJSONFile = new File(workspaceDir, GenomicsDBConstants.DEFAULT_VIDMAP_FILE_NAME);
+        final File callsetMapJSONFile = new File(workspaceDir, GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME);
+        final File vcfHeaderFile = new File(workspaceDir, GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME);
         try {
             GenomicsDBImporter.writeVidMapJSONFile(vidMapJSONFile.getAbsolutePath(), mergedHeaderLines);
         } catch (final FileNotFoundException fe) {
@@ -540,15 +697,6 @@ public final class GenomicsDBImport extends GATKTool {
         } catch (final FileNotFoundException fe) {
             throw new UserException("Unable to write VCF Header file " + vcfHeaderFile.getAbsolutePath(), fe);
         }
-
-
-        if (doConsolidation) {
-            logger.info("GenomicsDB consolidation started");
-            GenomicsDBImporter.consolidateTileDBArray(workspace, GenomicsDBConstants.DEFAULT_ARRAY_NAME);
-            logger.info("GenomicsDB consolidation completed");
-        }
-
-        return true;
     }
 
     /**
@@ -558,10 +706,12 @@ public final class GenomicsDBImport extends GATKTool {
      * @param sampleNametoPath  Sample name to file name mapping
      * @param batchSize  Current batch size
      * @param lowerSampleIndex  0-based Lower bound of sample index -- inclusive
+     * @param interval  Interval that the readers will be queried over
      * @return  Feature readers to be imported in the current batch, sorted by sample name
      */
     private SortedMap<String, FeatureReader<VariantContext>> getFeatureReadersInParallel(final SortedMap<String, Path> sampleNametoPath,
-                                                                                   final int batchSize, final int lowerSampleIndex) {
+                                                                                   final int batchSize, final int lowerSampleIndex,
+                                                                                   final ChromosomeInterval interval) {
         final SortedMap<String, FeatureReader<VariantContext>> sampleToReaderMap = new TreeMap<>();
         logger.info("Starting batch input file preload");
         final Map<String, Future<FeatureReader<VariantContext>>> futures = new LinkedHashMap<>();
@@ -571,7 +721,7 @@ public final class GenomicsDBImport extends GATKTool {
             futures.put(sampleName, inputPreloadExecutorService.submit(() -> {
                 final Path variantPath = sampleNametoPath.get(sampleName);
                 try {
-                    return new InitializedQueryWrapper(getReaderFromPath(variantPath), intervals.get(0));
+                    return new InitializedQueryWrapper(getReaderFromPath(variantPath), interval);
                 } catch (final IOException e) {
                     throw new UserException.CouldNotReadInputFile("Couldn't read file: " + variantPath.toUri(), e);
                 }
@@ -597,24 +747,25 @@ public final class GenomicsDBImport extends GATKTool {
         final List<String> sampleNames = new ArrayList<>(sampleNameToPath.keySet());
         for(int i = lowerSampleIndex; i < sampleNameToPath.size() && i < lowerSampleIndex+batchSize; ++i) {
             final String sampleName = sampleNames.get(i);
-            final AbstractFeatureReader<VariantContext, LineIterator> reader = getReaderFromPath(sampleNameToPath.get(sampleName));
+            final AbstractFeatureReader<VariantContext, ?> reader = getReaderFromPath(sampleNameToPath.get(sampleName));
             sampleToReaderMap.put(sampleName, reader);
         }
         return sampleToReaderMap;
     }
 
     /**
-     * Creates a feature reader object from a given VCF URI (can also be
+     * Creates a feature reader object from a given VCF or BCF URI (can also be
      * a local file path) and returns it
      * @return  Feature reader
      * @param variantPath
      */
-    private AbstractFeatureReader<VariantContext, LineIterator> getReaderFromPath(final Path variantPath) {
+    private AbstractFeatureReader<VariantContext, ?> getReaderFromPath(final Path variantPath) {
         final String variantURI = variantPath.toAbsolutePath().toUri().toString();
         final Function<SeekableByteChannel, SeekableByteChannel> cloudWrapper = (cloudPrefetchBuffer > 0 ? is -> SeekableByteChannelPrefetcher.addPrefetcher(cloudPrefetchBuffer, is) : Function.identity());
         final Function<SeekableByteChannel, SeekableByteChannel> cloudIndexWrapper = (cloudIndexPrefetchBuffer > 0 ? is -> SeekableByteChannelPrefetcher.addPrefetcher(cloudIndexPrefetchBuffer, is) : Function.identity());
         try {
-            return AbstractFeatureReader.getFeatureReader(variantURI, null, new VCFCodec(), true, cloudWrapper, cloudIndexWrapper);
+            final FeatureCodec<VariantContext, ?> codec = variantPath.toString().endsWith(IOUtil.BCF_FILE_EXTENSION) ? new BCF2Codec() : new VCFCodec();
+            return AbstractFeatureReader.getFeatureReader(variantURI, null, codec, true, cloudWrapper, cloudIndexWrapper);
         } catch (final TribbleException e){
             throw new UserException("Failed to create reader from " + variantURI, e);
         }
@@ -689,16 +840,24 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    /**
+     * Close all readers in a batch that failed to import, ignoring errors so that they don't hide the failure
+     *
+     * @param sampleToReaderMap  Map of sample names to readers
+     */
+    private static void closeReadersQuietly(final Map<String, FeatureReader<VariantContext>> sampleToReaderMap) {
+        sampleToReaderMap.values().forEach(CloserUtil::close);
+    }
+
     /**
      * Input argument "overwriteExistingWorkspace" defaults to false.
      * The tool creates a new workspace if it doesn't exist. Deletes
      * an existing workspace if argument is true
      *
+     * @param workspaceDir  The workspace directory
      * @return  The workspace directory
      */
-    private File overwriteOrCreateWorkspace() {
-        final File workspaceDir = new File(workspace);
-
+    private File overwriteOrCreateWorkspace(final File workspaceDir) {
         if (overwriteExistingWorkspace) {
             IOUtils.tryDelete(workspaceDir);
         }
@@ -719,6 +878,28 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    /**
+     * Creates the directory holding the workspaces of each interval, which follows the same rules as a workspace:
+     * an existing directory is deleted if overwriteExistingWorkspace is true, and is otherwise an error
+     *
+     */
+    private void overwriteOrCreateParentDirectory() {
+        final File parentDir = new File(workspace);
+
+        if (overwriteExistingWorkspace) {
+            IOUtils.tryDelete(parentDir);
+        }
+
+        if (parentDir.exists()) {
+            throw new UnableToCreateGenomicsDBWorkspace("The workspace you're trying to create already exists. ( " + parentDir.getAbsolutePath() + " ) " +
+                                                  "Writing into an existing workspace can cause data corruption. " +
+                                                  "Please choose an output path that doesn't already exist. ");
+        }
+        if (!parentDir.mkdirs()) {
+            throw new UnableToCreateGenomicsDBWorkspace("Error creating directory for GenomicsDB workspaces: " + parentDir);
+        }
+    }
+
     static class UnableToCreateGenomicsDBWorkspace extends UserException {
         private static final long serialVersionUID = 1L;
 
@@ -753,10 +934,6 @@ public final class GenomicsDBImport extends GATKTool {
             final List<SimpleInterval> simpleIntervalList =
                 intervalArgumentCollection.getIntervals(intervalDictionary);
 
-            if (simpleIntervalList.size() > 1) {
-                throw new UserException("More than one interval specified. The tool takes only one");
-            }
-
             for (final SimpleInterval simpleInterval : simpleIntervalList) {
                 intervals.add(new ChromosomeInterval(simpleInterval.getContig(),
                   simpleInterval.getStart(), simpleInterval.getEnd()));
@@ -771,6 +948,9 @@ public final class GenomicsDBImport extends GATKTool {
         if( inputPreloadExecutorService != null) {
             inputPreloadExecutorService.shutdownNow();
         }
+        if( batchPreloadExecutorService != null) {
+            batchPreloadExecutorService.shutdownNow();
+        }
     }
 
     /**
@@ -147,6 +147,10 @@ public class BaseRecalibratorSpark extends GATKSparkTool {
             throw new UserException.BadInput("Reads must be coordinate sorted when using the overlaps partitioner join strategy.");
         }
 
+        if (joinStrategy == JoinStrategy.SORTED_MERGE && getHeaderForReads().getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+            throw new UserException.BadInput("Reads must be coordinate sorted when using the sorted merge join strategy.");
+        }
+
         JavaRDD<GATKRead> initialReads = getReads();
         VariantsSparkSource variantsSparkSource = new VariantsSparkSource(ctx);
         JavaRDD<GATKVariant> bqsrKnownVariants = variantsSparkSource.getParallelVariants(knownVariants, getIntervals());
@@ -67,7 +67,8 @@ public final class PSFilterArgumentCollection implements Serializable {
             optional = true)
     public boolean alignedInput = false;
 
-    @Argument(doc = "Path to host k-mer file generated with PathSeqBuildKmers. K-mer filtering is skipped if this is not specified.",
+    @Argument(doc = "Path to host k-mer file generated with PathSeqBuildKmers. K-mer filtering is skipped if this is not specified. " +
+            "Memory-mapped k-mer files (" + PSKmerUtils.MAPPED_HOPSCOTCH_SET_EXTENSION + " or " + PSKmerUtils.MAPPED_BLOOM_FILTER_EXTENSION + ") must be distributed to local disk on each node.",
             fullName = KMER_FILE_PATH_LONG_NAME,
             shortName = KMER_FILE_PATH_SHORT_NAME,
             optional = true)
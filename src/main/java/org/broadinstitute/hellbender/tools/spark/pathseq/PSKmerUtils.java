@@ -27,6 +27,8 @@ public class PSKmerUtils {
 
     public static final String HOPSCOTCH_SET_EXTENSION = ".hss";
     public static final String BLOOM_FILTER_EXTENSION = ".bfi";
+    public static final String MAPPED_HOPSCOTCH_SET_EXTENSION = ".mhss";
+    public static final String MAPPED_BLOOM_FILTER_EXTENSION = ".mbfi";
     private static final Logger logger = LogManager.getLogger(PSKmerUtils.class);
 
     /**
@@ -76,15 +78,13 @@ public class PSKmerUtils {
     }
 
     /**
-     * Converts a Collection of Lists of Longs's into a Hopscotch set
+     * Converts a Collection of Lists of Longs's into a Hopscotch set, adding the longs from all available cores.
+     * The layout of the set depends on the order in which the longs are added, so they are partitioned across the
+     * cores deterministically to keep the set (and the file it is written to) the same from run to run.
      */
     protected static LargeLongHopscotchSet longArrayCollectionToSet(final Collection<long[]> longs, final long numLongs) {
         final LargeLongHopscotchSet kmerHopscotchSet = new LargeLongHopscotchSet(numLongs);
-        for (final long[] array : longs) {
-            for (final long val : array) {
-                kmerHopscotchSet.add(val);
-            }
-        }
+        kmerHopscotchSet.addAllInParallel(longs);
         return kmerHopscotchSet;
     }
 
@@ -127,7 +127,30 @@ public class PSKmerUtils {
         writeKryoObject(bloomFilter, filePath);
     }
 
+    /**
+     * Writes kmers to a file that is memory-mapped when read, as a hash set or, if bloomFpp is non-zero, a Bloom filter
+     */
+    public static void writeMappedKmerFilter(final String uri, final Collection<long[]> maskedKmers, final long numKmers,
+                                             final double bloomFpp, final int kmerSize, final SVKmerShort kmerMask) {
+        final String extension = bloomFpp > 0 ? MAPPED_BLOOM_FILTER_EXTENSION : MAPPED_HOPSCOTCH_SET_EXTENSION;
+        String filePath = uri;
+        if (!uri.toLowerCase().endsWith(extension.toLowerCase())) {
+            filePath = filePath + extension;
+        }
+        if (bloomFpp > 0) {
+            PSMappedKmerBloomFilter.write(filePath, maskedKmers, numKmers, bloomFpp, kmerSize, kmerMask);
+        } else {
+            PSMappedKmerSet.write(filePath, maskedKmers, numKmers, kmerSize, kmerMask);
+        }
+    }
+
     public static PSKmerCollection readKmerFilter(final String uri) {
+        //Memory-mapped files are queried in place rather than deserialized
+        if (uri.endsWith(MAPPED_HOPSCOTCH_SET_EXTENSION)) {
+            return PSMappedKmerSet.open(uri);
+        } else if (uri.endsWith(MAPPED_BLOOM_FILTER_EXTENSION)) {
+            return PSMappedKmerBloomFilter.open(uri);
+        }
         final Input input = new Input(BucketUtils.openFile(uri));
         final Kryo kryo = new Kryo();
         if (uri.endsWith(HOPSCOTCH_SET_EXTENSION)) {
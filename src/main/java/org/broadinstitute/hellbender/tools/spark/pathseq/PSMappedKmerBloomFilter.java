@@ -0,0 +1,135 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.sv.utils.SVKmerShort;
+import org.broadinstitute.hellbender.tools.spark.sv.utils.SVUtils;
+import org.broadinstitute.hellbender.tools.spark.utils.LongBloomFilter;
+import org.broadinstitute.hellbender.tools.spark.utils.MappedLongArray;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Kmer Bloom filter that is memory-mapped from a file and queried in place, rather than deserialized onto the heap
+ * like PSKmerBloomFilter. The filter bits are held in the mapped longs and hashed as in LongBloomFilter.
+ */
+public final class PSMappedKmerBloomFilter extends PSKmerCollection {
+
+    static final long MAGIC = 0x31464d42534b5350L; //"PSKSBMF1"
+    private static final long HASH_SEED_2 = 0x6cebe6dca7f118a6L;
+
+    private final MappedLongArray bits;
+    private final long totalBits;
+    private final int numHashes;
+    private final int kmerSize;
+    private final SVKmerShort kmerMask;
+    private final double falsePositiveProbability;
+
+    private PSMappedKmerBloomFilter(final MappedLongArray bits, final PSMappedKmerHeader header) {
+        this.bits = bits;
+        this.totalBits = 64 * bits.length();
+        this.numHashes = header.numHashes;
+        this.kmerSize = header.kmerSize;
+        this.kmerMask = header.kmerMask;
+        this.falsePositiveProbability = header.falsePositiveProbability;
+    }
+
+    /**
+     * Maps a Bloom filter written by {@link #write(String, Collection, long, double, int, SVKmerShort)}. The file
+     * must be on local disk.
+     */
+    public static PSMappedKmerBloomFilter open(final String path) {
+        final Path localPath = PSMappedKmerHeader.getLocalPath(path);
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+            final PSMappedKmerHeader header = PSMappedKmerHeader.read(channel, MAGIC, localPath);
+            final MappedLongArray bits = new MappedLongArray(channel, PSMappedKmerHeader.HEADER_BYTES, header.tableLength, FileChannel.MapMode.READ_ONLY);
+            return new PSMappedKmerBloomFilter(bits, header);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(localPath, e);
+        }
+    }
+
+    /**
+     * Writes the kmers to a Bloom filter file that can be memory-mapped. The filter is built in the mapped file itself.
+     *
+     * @param path local file to write
+     * @param maskedKmers kmers that have been run through PSKmerCollection's canonicalizeAndMask(), possibly repeated
+     * @param numKmers total number of kmers in the input, including repeats
+     * @param fpp upper limit on the false positive probability
+     */
+    public static void write(final String path, final Collection<long[]> maskedKmers, final long numKmers, final double fpp,
+                             final int kmerSize, final SVKmerShort kmerMask) {
+        Utils.nonNull(maskedKmers);
+        Utils.nonNull(kmerMask);
+        Utils.validateArg(numKmers > 0, "Number of kmers must be greater than 0");
+        Utils.validateArg(fpp > 0 && fpp < 1, "False positive probability must be between 0 and 1");
+        final long numLongs = (LongBloomFilter.getOptimalNumberOfBits(numKmers, fpp) + 63) / 64;
+        final long totalBits = 64 * numLongs;
+        final int numHashes = Math.max(1, (int) Math.ceil(-Math.log(fpp) / Math.log(2)));
+        final double theoreticalFpp = Math.pow(1.0 - Math.pow(1.0 - (1.0 / totalBits), numHashes * (double) numKmers), numHashes);
+
+        final Path localPath = PSMappedKmerHeader.getLocalPath(path);
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedLongArray bits = new MappedLongArray(channel, PSMappedKmerHeader.HEADER_BYTES, numLongs, FileChannel.MapMode.READ_WRITE);
+            bits.fill(0);
+            for (final long[] kmers : maskedKmers) {
+                for (final long kmer : kmers) {
+                    final long hash1 = SVUtils.fnvLong64(kmer);
+                    final long hash2 = SVUtils.fnvLong64(HASH_SEED_2, kmer);
+                    for (int i = 0; i < numHashes; i++) {
+                        final long bitIndex = bitIndex(i, hash1, hash2, totalBits);
+                        bits.set(bitIndex >>> 6, bits.get(bitIndex >>> 6) | (1L << (bitIndex & 63)));
+                    }
+                }
+            }
+            new PSMappedKmerHeader(MAGIC, kmerSize, numHashes, kmerMask, numKmers, numLongs, theoreticalFpp).write(channel);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(localPath.toString(), "could not write the kmer Bloom filter", e);
+        }
+    }
+
+    /**
+     * Double hashing h_i = h_1 + i * h_2, as in LongBloomFilter
+     */
+    private static long bitIndex(final int i, final long hash1, final long hash2, final long totalBits) {
+        return Math.floorMod(hash1 + i * hash2, totalBits);
+    }
+
+    private boolean containsMasked(final long kmer) {
+        final long hash1 = SVUtils.fnvLong64(kmer);
+        final long hash2 = SVUtils.fnvLong64(HASH_SEED_2, kmer);
+        for (int i = 0; i < numHashes; i++) {
+            final long bitIndex = bitIndex(i, hash1, hash2, totalBits);
+            if ((bits.get(bitIndex >>> 6) & (1L << (bitIndex & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Input should not be canonicalized/masked
+     */
+    @Override
+    public boolean contains(final SVKmerShort rawKmer) {
+        return containsMasked(canonicalizeAndMask(rawKmer, kmerSize, kmerMask));
+    }
+
+    @Override
+    public int kmerSize() {
+        return kmerSize;
+    }
+
+    @Override
+    public SVKmerShort getMask() {
+        return kmerMask;
+    }
+
+    @Override
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+}
@@ -0,0 +1,87 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.sv.utils.SVKmerShort;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Header of the memory-mapped kmer collection files, which is followed by the mapped table of longs. All values are
+ * little-endian:
+ * <pre>
+ *     magic number (8 bytes), kmer size (4 bytes), number of hash functions (4 bytes), kmer mask (8 bytes),
+ *     number of kmers (8 bytes), table length in longs (8 bytes), false positive probability (8 bytes),
+ *     padding to HEADER_BYTES
+ * </pre>
+ */
+final class PSMappedKmerHeader {
+
+    static final int HEADER_BYTES = 64;
+
+    final long magic;
+    final int kmerSize;
+    final int numHashes;
+    final SVKmerShort kmerMask;
+    final long numKmers;
+    final long tableLength;
+    final double falsePositiveProbability;
+
+    PSMappedKmerHeader(final long magic, final int kmerSize, final int numHashes, final SVKmerShort kmerMask,
+                       final long numKmers, final long tableLength, final double falsePositiveProbability) {
+        this.magic = magic;
+        this.kmerSize = kmerSize;
+        this.numHashes = numHashes;
+        this.kmerMask = kmerMask;
+        this.numKmers = numKmers;
+        this.tableLength = tableLength;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    /**
+     * Reads the header of a file, checking it has the expected magic number
+     */
+    static PSMappedKmerHeader read(final FileChannel channel, final long expectedMagic, final Path path) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new UserException.MalformedFile(path, "kmer file is truncated");
+            }
+        }
+        buffer.flip();
+        final PSMappedKmerHeader header = new PSMappedKmerHeader(buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                new SVKmerShort(buffer.getLong()), buffer.getLong(), buffer.getLong(), buffer.getDouble());
+        if (header.magic != expectedMagic) {
+            throw new UserException.MalformedFile(path, "not a memory-mapped kmer file of the expected type");
+        }
+        if (channel.size() < HEADER_BYTES + 8 * header.tableLength) {
+            throw new UserException.MalformedFile(path, "kmer file is truncated");
+        }
+        return header;
+    }
+
+    void write(final FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(magic).putInt(kmerSize).putInt(numHashes).putLong(kmerMask.getLong())
+                .putLong(numKmers).putLong(tableLength).putDouble(falsePositiveProbability);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * Memory-mapped files can only be on local disk, so they must be distributed to each node
+     */
+    static Path getLocalPath(final String path) {
+        if (BucketUtils.isRemoteStorageUrl(path)) {
+            throw new UserException.BadInput("Memory-mapped kmer files must be on local disk, but got " + path);
+        }
+        return IOUtils.getPath(path);
+    }
+}
@@ -0,0 +1,144 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.sv.utils.SVKmerShort;
+import org.broadinstitute.hellbender.tools.spark.sv.utils.SVUtils;
+import org.broadinstitute.hellbender.tools.spark.utils.MappedLongArray;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Kmer set that is memory-mapped from a file and queried in place, rather than deserialized onto the heap like
+ * PSKmerSet. The kmers are held in an open addressing table with linear probing over the mapped longs, so opening
+ * the file takes no time and its pages are shared by all the tasks and executors on a node.
+ */
+public final class PSMappedKmerSet extends PSKmerCollection {
+
+    static final long MAGIC = 0x31544553534b5350L; //"PSKSSET1"
+    //Masked kmers are non-negative
+    private static final long EMPTY_SLOT = -1L;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final MappedLongArray table;
+    private final long slotMask;
+    private final int kmerSize;
+    private final SVKmerShort kmerMask;
+    private final long size;
+
+    private PSMappedKmerSet(final MappedLongArray table, final PSMappedKmerHeader header) {
+        this.table = table;
+        this.slotMask = table.length() - 1;
+        this.kmerSize = header.kmerSize;
+        this.kmerMask = header.kmerMask;
+        this.size = header.numKmers;
+    }
+
+    /**
+     * Maps a set written by {@link #write(String, Collection, long, int, SVKmerShort)}. The file must be on local disk.
+     */
+    public static PSMappedKmerSet open(final String path) {
+        final Path localPath = PSMappedKmerHeader.getLocalPath(path);
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+            final PSMappedKmerHeader header = PSMappedKmerHeader.read(channel, MAGIC, localPath);
+            final MappedLongArray table = new MappedLongArray(channel, PSMappedKmerHeader.HEADER_BYTES, header.tableLength, FileChannel.MapMode.READ_ONLY);
+            return new PSMappedKmerSet(table, header);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(localPath, e);
+        }
+    }
+
+    /**
+     * Writes the kmers to a set file that can be memory-mapped. The table is built in the mapped file itself, so no
+     * heap is needed beyond the input kmers.
+     *
+     * @param path local file to write
+     * @param maskedKmers kmers that have been run through PSKmerCollection's canonicalizeAndMask(), possibly repeated
+     * @param numKmers total number of kmers in the input, including repeats
+     */
+    public static void write(final String path, final Collection<long[]> maskedKmers, final long numKmers,
+                             final int kmerSize, final SVKmerShort kmerMask) {
+        Utils.nonNull(maskedKmers);
+        Utils.nonNull(kmerMask);
+        final long tableLength = getTableLength(numKmers);
+        final Path localPath = PSMappedKmerHeader.getLocalPath(path);
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedLongArray table = new MappedLongArray(channel, PSMappedKmerHeader.HEADER_BYTES, tableLength, FileChannel.MapMode.READ_WRITE);
+            table.fill(EMPTY_SLOT);
+            long size = 0;
+            for (final long[] kmers : maskedKmers) {
+                for (final long kmer : kmers) {
+                    if (insert(table, kmer)) size++;
+                }
+            }
+            new PSMappedKmerHeader(MAGIC, kmerSize, 0, kmerMask, size, tableLength, 0).write(channel);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(localPath.toString(), "could not write the kmer set", e);
+        }
+    }
+
+    /**
+     * Smallest power of 2 that keeps the load factor below MAX_LOAD_FACTOR
+     */
+    private static long getTableLength(final long numKmers) {
+        Utils.validateArg(numKmers >= 0, "Number of kmers must be non-negative");
+        final long minLength = Math.max(2, (long) Math.ceil(numKmers / MAX_LOAD_FACTOR));
+        return Long.highestOneBit(minLength - 1) << 1;
+    }
+
+    private static boolean insert(final MappedLongArray table, final long kmer) {
+        final long slotMask = table.length() - 1;
+        long slot = SVUtils.fnvLong64(kmer) & slotMask;
+        while (true) {
+            final long value = table.get(slot);
+            if (value == EMPTY_SLOT) {
+                table.set(slot, kmer);
+                return true;
+            }
+            if (value == kmer) return false;
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private boolean containsMasked(final long kmer) {
+        long slot = SVUtils.fnvLong64(kmer) & slotMask;
+        while (true) {
+            final long value = table.get(slot);
+            if (value == kmer) return true;
+            if (value == EMPTY_SLOT) return false;
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    /**
+     * Input should not be canonicalized/masked
+     */
+    @Override
+    public boolean contains(final SVKmerShort rawKmer) {
+        return containsMasked(canonicalizeAndMask(rawKmer, kmerSize, kmerMask));
+    }
+
+    @Override
+    public int kmerSize() {
+        return kmerSize;
+    }
+
+    @Override
+    public SVKmerShort getMask() {
+        return kmerMask;
+    }
+
+    @Override
+    public double getFalsePositiveProbability() {
+        return 0;
+    }
+
+    public long setSize() {
+        return size;
+    }
+}
@@ -62,12 +62,25 @@ import java.util.Collection;
  *   --kmer-size 31
  * </pre>
  *
+ * <h4>Builds a memory-mapped hash table, which PathSeq queries in place instead of loading it into each executor's heap.</h4>
+ * <pre>
+ * gatk PathSeqBuildKmers  \
+ *   --reference host_reference.fasta \
+ *   --output host_reference.mhss \
+ *   --memory-mapped \
+ *   --kmer-mask 16 \
+ *   --kmer-size 31
+ * </pre>
+ *
  * <h3>Notes</h3>
  *
  * <p>For most references, the Java VM will run out of memory with the default settings. The Java heap size limit should
  * be set at least 20x the size of the reference (less if building a Bloom filter). For example, for a 3 GB reference set
  * the limit to 60 GB by adding --java-options "-Xmx60g" to the command.</p>
  *
+ * <p>Memory-mapped k-mer files are opened instantly and their pages are shared by all the executors on a node, but they
+ * must be on the local disk of every node, as is the case for BWA index images.</p>
+ *
  * @author Mark Walker &lt;markw@broadinstitute.org&gt;
  */
 @DocumentedFeature
@@ -86,10 +99,14 @@ public final class PathSeqBuildKmers extends CommandLineProgram {
     public static final String KMER_MASK_SHORT_NAME = "M";
     public static final String KMER_SPACING_LONG_NAME = "kmer-spacing";
     public static final String KMER_SPACING_SHORT_NAME = "SP";
+    public static final String MEMORY_MAPPED_LONG_NAME = "memory-mapped";
+    public static final String MEMORY_MAPPED_SHORT_NAME = "MM";
 
     @Argument(doc = "File for k-mer set output. Extension will be automatically added if not present ("
             + PSKmerUtils.HOPSCOTCH_SET_EXTENSION + " for hash set or "
-            + PSKmerUtils.BLOOM_FILTER_EXTENSION + " for Bloom filter)",
+            + PSKmerUtils.BLOOM_FILTER_EXTENSION + " for Bloom filter, "
+            + PSKmerUtils.MAPPED_HOPSCOTCH_SET_EXTENSION + " or " + PSKmerUtils.MAPPED_BLOOM_FILTER_EXTENSION
+            + " if memory-mapped)",
             shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
             fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME)
     public String outputFile;
@@ -146,6 +163,16 @@ public final class PathSeqBuildKmers extends CommandLineProgram {
             optional = true)
     public int kmerSpacing = 1;
 
+    /**
+     * Writes the k-mers in a format that is memory-mapped and queried in place, so that PathSeq does not load the k-mers
+     * into the heap of each executor. The output must be on local disk.
+     */
+    @Argument(doc = "Write a memory-mapped k-mer file",
+            fullName = MEMORY_MAPPED_LONG_NAME,
+            shortName = MEMORY_MAPPED_SHORT_NAME,
+            optional = true)
+    public boolean memoryMapped = false;
+
     /**
      * Get the list of distinct kmers in the reference, and write them to a file as a HopScotch set or Bloom filter.
      */
@@ -160,7 +187,10 @@ public final class PathSeqBuildKmers extends CommandLineProgram {
         logger.info("Loading reference kmers...");
         final Collection<long[]> maskedKmerCollection = PSKmerUtils.getMaskedKmersFromLocalReference(reference, kmerSize, kmerSpacing, kmerMask);
         final long numLongs = PSKmerUtils.longArrayCollectionSize(maskedKmerCollection);
-        if (bloomFpp > 0) {
+        if (memoryMapped) {
+            logger.info("Writing memory-mapped " + (bloomFpp > 0 ? "Bloom filter" : "kmer hash set") + "...");
+            PSKmerUtils.writeMappedKmerFilter(outputFile, maskedKmerCollection, numLongs, bloomFpp, kmerSize, kmerMask);
+        } else if (bloomFpp > 0) {
             logger.info("Building Bloom filter with false positive probability " + bloomFpp + "...");
             final LongBloomFilter bloomFilter = PSKmerUtils.longArrayCollectionToBloomFilter(maskedKmerCollection, numLongs, bloomFpp);
             final PSKmerBloomFilter kmerBloomFilter = new PSKmerBloomFilter(bloomFilter, kmerSize, kmerMask, numLongs);
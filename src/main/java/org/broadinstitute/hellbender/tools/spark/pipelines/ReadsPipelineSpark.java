@@ -21,6 +21,7 @@ import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.engine.spark.JoinStrategy;
 import org.broadinstitute.hellbender.engine.spark.datasources.VariantsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.ApplyBQSRArgumentCollection;
 import org.broadinstitute.hellbender.tools.ApplyBQSRUniqueArgumentCollection;
 import org.broadinstitute.hellbender.tools.HaplotypeCallerSpark;
 import org.broadinstitute.hellbender.tools.spark.bwa.BwaArgumentCollection;
@@ -77,6 +78,22 @@ import java.util.List;
  *   --sparkRunner GCS \
  *   --cluster my-dataproc-cluster
  * </pre>
+ * <p>
+ * With --fused-pipeline, the duplicate-marked reads are cached once in serialized form (off-heap if
+ * spark.memory.offHeap.enabled is set) and reused by both BQSR passes, and the recalibration is applied lazily
+ * inside the HaplotypeCaller read shards rather than to a separately materialized set of recalibrated reads:
+ * </p>
+ * <pre>
+ * gatk ReadsPipelineSpark \
+ *   -I gs://my-gcs-bucket/aligned_reads.bam \
+ *   -R gs://my-gcs-bucket/reference.fasta \
+ *   --known-sites gs://my-gcs-bucket/sites_of_variation.vcf \
+ *   --fused-pipeline \
+ *   -O gs://my-gcs-bucket/output.vcf \
+ *   -- \
+ *   --sparkRunner GCS \
+ *   --cluster my-dataproc-cluster
+ * </pre>
  */
 
 @CommandLineProgramProperties(
@@ -93,6 +110,8 @@ public class ReadsPipelineSpark extends GATKSparkTool {
     static final String USAGE_ONE_LINE_SUMMARY = "Takes unaligned or aligned reads and runs BWA (if specified), MarkDuplicates, BQSR, and HaplotypeCaller to generate a VCF file of variants";
     static final String USAGE_SUMMARY = "Takes unaligned or aligned reads and runs BWA (if specified), MarkDuplicates, BQSR, and HaplotypeCaller. The final result is analysis-ready variants.";
 
+    public static final String FUSED_PIPELINE_LONG_NAME = "fused-pipeline";
+
     @Override
     public boolean requiresReads() { return true; }
 
@@ -115,6 +134,10 @@ public class ReadsPipelineSpark extends GATKSparkTool {
     @Argument(doc = "the join strategy for reference bases and known variants", fullName = "join-strategy", optional = true)
     private JoinStrategy joinStrategy = JoinStrategy.BROADCAST;
 
+    @Argument(doc = "cache the duplicate-marked reads once in serialized form and apply BQSR lazily inside the HaplotypeCaller shards, " +
+            "instead of materializing the reads again after each step", fullName = FUSED_PIPELINE_LONG_NAME, optional = true)
+    private boolean fusedPipeline = false;
+
     @ArgumentCollection
     protected MarkDuplicatesSparkArgumentCollection markDuplicatesSparkArgumentCollection = new MarkDuplicatesSparkArgumentCollection();
 
@@ -190,7 +213,14 @@ public class ReadsPipelineSpark extends GATKSparkTool {
             header = getHeaderForReads();
         }
 
-        final JavaRDD<GATKRead> markedReads = MarkDuplicatesSpark.mark(alignedReads, header, markDuplicatesSparkArgumentCollection.duplicatesScoringStrategy, new SerializableOpticalDuplicatesFinder(), getRecommendedNumReducers(), markDuplicatesSparkArgumentCollection.dontMarkUnmappedMates);
+        // checkpointed, so that a rerun after a later failure does not have to decode, align and mark duplicates again
+        final JavaRDD<GATKRead> markedReads = checkpointStage(ctx, "marked-duplicates", () ->
+                MarkDuplicatesSpark.mark(alignedReads, header, markDuplicatesSparkArgumentCollection.duplicatesScoringStrategy, new SerializableOpticalDuplicatesFinder(), getRecommendedNumReducers(), markDuplicatesSparkArgumentCollection.dontMarkUnmappedMates));
+        if (fusedPipeline) {
+            // the duplicate-marked reads are read by BQSR and again by HaplotypeCaller (several times, to sort and shard them),
+            // so keep them rather than recomputing the alignment and duplicate marking shuffles for each of those passes
+            markedReads.persist(getFusedPipelineStorageLevel(ctx));
+        }
 
         // The markedReads have already had the WellformedReadFilter applied to them, which
         // is all the filtering that MarkDupes and ApplyBQSR want. BQSR itself wants additional
@@ -200,8 +230,8 @@ public class ReadsPipelineSpark extends GATKSparkTool {
 
         JavaRDD<GATKRead> markedFilteredReadsForBQSR = markedReads.filter(read -> bqsrReadFilter.test(read));
 
-        if (joinStrategy.equals(JoinStrategy.OVERLAPS_PARTITIONER)) {
-            // the overlaps partitioner requires that reads are coordinate-sorted
+        if (joinStrategy.equals(JoinStrategy.OVERLAPS_PARTITIONER) || joinStrategy.equals(JoinStrategy.SORTED_MERGE)) {
+            // the overlaps partitioner and the sorted merge join require that reads are coordinate-sorted
             final SAMFileHeader readsHeader = header.clone();
             readsHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
             markedFilteredReadsForBQSR = SparkUtils.sortReadsAccordingToHeader(markedFilteredReadsForBQSR, readsHeader, numReducers);
@@ -214,7 +244,8 @@ public class ReadsPipelineSpark extends GATKSparkTool {
         final RecalibrationReport bqsrReport = BaseRecalibratorSparkFn.apply(rddReadContext, header, getReferenceSequenceDictionary(), bqsrArgs);
 
         final Broadcast<RecalibrationReport> reportBroadcast = ctx.broadcast(bqsrReport);
-        final JavaRDD<GATKRead> finalReads = ApplyBQSRSparkFn.apply(markedReads, reportBroadcast, header, applyBqsrArgs.toApplyBQSRArgumentCollection(bqsrArgs.PRESERVE_QSCORES_LESS_THAN));
+        final ApplyBQSRArgumentCollection applyBQSRArgumentCollection = applyBqsrArgs.toApplyBQSRArgumentCollection(bqsrArgs.PRESERVE_QSCORES_LESS_THAN);
+        final JavaRDD<GATKRead> finalReads = ApplyBQSRSparkFn.apply(markedReads, reportBroadcast, header, applyBQSRArgumentCollection);
 
         if (outputBam != null) { // only write output of BQSR if output BAM is specified
             writeReads(ctx, outputBam, finalReads, header);
@@ -222,13 +253,29 @@ public class ReadsPipelineSpark extends GATKSparkTool {
 
         // Run Haplotype Caller
         final ReadFilter hcReadFilter = ReadFilter.fromList(HaplotypeCallerEngine.makeStandardHCReadFilters(), header);
-        final JavaRDD<GATKRead> filteredReadsForHC = finalReads.filter(read -> hcReadFilter.test(read));
-        filteredReadsForHC.persist(StorageLevel.DISK_ONLY()); // without caching, computations are run twice as a side effect of finding partition boundaries for sorting
         final List<SimpleInterval> intervals = hasIntervals() ? getIntervals() : IntervalUtils.getAllIntervalsForReference(header.getSequenceDictionary());
-        HaplotypeCallerSpark.callVariantsWithHaplotypeCallerAndWriteOutput(ctx, filteredReadsForHC, header, getReference(), intervals, hcArgs, shardingArgs, numReducers, output, makeVariantAnnotations());
+        if (fusedPipeline) {
+            // The HaplotypeCaller read filters do not look at base qualities, so the cached reads can be filtered before
+            // recalibration, which is then applied in the HaplotypeCaller shards without materializing the recalibrated reads.
+            final JavaRDD<GATKRead> filteredReadsForHC = markedReads.filter(read -> hcReadFilter.test(read));
+            HaplotypeCallerSpark.callVariantsWithHaplotypeCallerAndWriteOutput(ctx, filteredReadsForHC, header, getReference(), intervals, hcArgs, shardingArgs, numReducers, output, makeVariantAnnotations(),
+                    ApplyBQSRSparkFn.transformerFactory(reportBroadcast, applyBQSRArgumentCollection));
+            markedReads.unpersist(false);
+        } else {
+            final JavaRDD<GATKRead> filteredReadsForHC = finalReads.filter(read -> hcReadFilter.test(read));
+            filteredReadsForHC.persist(StorageLevel.DISK_ONLY()); // without caching, computations are run twice as a side effect of finding partition boundaries for sorting
+            HaplotypeCallerSpark.callVariantsWithHaplotypeCallerAndWriteOutput(ctx, filteredReadsForHC, header, getReference(), intervals, hcArgs, shardingArgs, numReducers, output, makeVariantAnnotations());
+        }
 
         if (bwaEngine != null) {
             bwaEngine.close();
         }
     }
+
+    /**
+     * The reads are cached serialized, off-heap if Spark has been configured with off-heap memory and spilling to disk otherwise.
+     */
+    private static StorageLevel getFusedPipelineStorageLevel(final JavaSparkContext ctx) {
+        return ctx.getConf().getBoolean("spark.memory.offHeap.enabled", false) ? StorageLevel.OFF_HEAP() : StorageLevel.MEMORY_AND_DISK_SER();
+    }
 }
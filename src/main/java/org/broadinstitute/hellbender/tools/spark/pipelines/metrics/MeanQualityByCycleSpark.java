@@ -18,6 +18,7 @@ import org.broadinstitute.hellbender.engine.filters.MetricsReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.engine.spark.datasources.ADAMReadsQuery;
 import org.broadinstitute.hellbender.metrics.MetricsUtils;
 import org.broadinstitute.hellbender.utils.R.RScriptExecutor;
 import org.broadinstitute.hellbender.utils.Utils;
@@ -70,6 +71,20 @@ public final class MeanQualityByCycleSpark extends GATKSparkTool {
         return Collections.singletonList(ReadFilterLibrary.ALLOW_ALL_READS);
     }
 
+    /**
+     * Reads only the qualities and the flags used by the histograms and the metrics read filter from ADAM inputs, and
+     * skips the reads that the metrics read filter would drop.
+     */
+    @Override
+    public ADAMReadsQuery getADAMReadsQuery() {
+        final ADAMReadsQuery query = ADAMReadsQuery.ALL
+                .withFields("readName", "sequence", "qual", "origQual", "attributes", "recordGroupName",
+                        "readPaired", "readInFragment", "readNegativeStrand")
+                .withFlag("secondaryAlignment", false)
+                .withFlag("supplementaryAlignment", false);
+        return pfReadsOnly ? query.withFlag("failedVendorQualityChecks", false) : query.withFields("failedVendorQualityChecks");
+    }
+
     @VisibleForTesting
     static final class HistogramGenerator implements Serializable {
         private static final long serialVersionUID = 1L;
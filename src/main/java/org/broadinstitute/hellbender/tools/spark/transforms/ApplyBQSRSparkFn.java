@@ -5,21 +5,30 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.broadcast.Broadcast;
 import org.broadinstitute.hellbender.tools.ApplyBQSRArgumentCollection;
 import org.broadinstitute.hellbender.transformers.BQSRReadTransformer;
+import org.broadinstitute.hellbender.transformers.ReadTransformer;
+import org.broadinstitute.hellbender.utils.SerializableFunction;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.recalibration.RecalibrationReport;
 
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
 public class ApplyBQSRSparkFn {
 
     public static JavaRDD<GATKRead> apply(JavaRDD<GATKRead> reads, final Broadcast<RecalibrationReport> reportBroadcast, final SAMFileHeader readsHeader, ApplyBQSRArgumentCollection args) {
+        final SerializableFunction<SAMFileHeader, ReadTransformer> transformerFactory = transformerFactory(reportBroadcast, args);
         return reads.mapPartitions(readsIterator -> {
-            final RecalibrationReport report = reportBroadcast.getValue();
-            final BQSRReadTransformer transformer = new BQSRReadTransformer(readsHeader, report, args);//reuse this for all reads in the partition
+            final ReadTransformer transformer = transformerFactory.apply(readsHeader);//reuse this for all reads in the partition
             final Iterable<GATKRead> readsIterable = () -> readsIterator;
-            return Utils.stream(readsIterable).map(read -> transformer.apply(read)).collect(Collectors.toList()).iterator();
+            // stream the partition rather than collecting it, so the recalibrated reads are never all held in memory
+            return Utils.stream(readsIterable).map(transformer).iterator();
         });
     }
+
+    /**
+     * Returns a function that creates a {@link BQSRReadTransformer} for the given reads header from the broadcast report.
+     * The transformer is expensive to create, so callers applying recalibration on executors (for example lazily,
+     * inside HaplotypeCaller shards) should create one per partition and reuse it.
+     */
+    public static SerializableFunction<SAMFileHeader, ReadTransformer> transformerFactory(final Broadcast<RecalibrationReport> reportBroadcast, final ApplyBQSRArgumentCollection args) {
+        return readsHeader -> new BQSRReadTransformer(readsHeader, reportBroadcast.getValue(), args);
+    }
 }
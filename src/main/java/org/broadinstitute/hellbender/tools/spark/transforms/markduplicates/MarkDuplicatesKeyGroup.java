@@ -0,0 +1,198 @@
+package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
+
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSparkUtils.IndexPair;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadEnds;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
+import org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords.Fragment;
+import org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords.MarkDuplicatesSparkRecord;
+import org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords.Pair;
+import picard.sam.markduplicates.util.OpticalDuplicateFinder;
+import picard.sam.util.PhysicalLocation;
+import scala.Tuple2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Running summary of all the {@link MarkDuplicatesSparkRecord}s sharing one {@link ReadsKey}, used as the combiner
+ * for duplicate marking in place of materializing the whole group.
+ *
+ * Only what is needed to decide the non-duplicates of the group is retained: whether an empty fragment was seen,
+ * the best fragment, the best pair, the names of the passthrough templates and, for optical duplicate detection,
+ * the compact physical location of every pair (the read names are parsed into tile/x/y coordinates as the pairs are
+ * added). Summaries can be merged in any order and give the same result as marking the full group at once.
+ *
+ * Note: This class is intended for internal MarkDuplicatesSpark purposes, it is only exposed so it can be accessed by
+ *       {@link org.broadinstitute.hellbender.engine.spark.GATKRegistrator} for kryo serialization
+ */
+public final class MarkDuplicatesKeyGroup implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private boolean hasEmptyFragment = false;
+    private Fragment bestFragment = null;
+    private Pair bestPair = null;
+    private final List<IndexPair<String>> passthroughs = new ArrayList<>(0);
+
+    // physical locations of all the pairs in the group (only populated when optical duplicates are detected)
+    private final List<OpticalLocation> pairLocations = new ArrayList<>(0);
+    private int bestPairLocationIndex = -1;
+
+    /**
+     * Adds a single record to this group.
+     * @param finder optical duplicate finder used to parse the location of pairs, or null to skip optical duplicate detection
+     * @return this group
+     */
+    public MarkDuplicatesKeyGroup add(final MarkDuplicatesSparkRecord record, final OpticalDuplicateFinder finder) {
+        switch ( record.getType() ) {
+            case EMPTY_FRAGMENT:
+                hasEmptyFragment = true;
+                break;
+            case FRAGMENT:
+                final Fragment fragment = (Fragment) record;
+                if ( bestFragment == null || MarkDuplicatesSparkUtils.PAIRED_ENDS_SCORE_COMPARATOR.compare(fragment, bestFragment) > 0 ) {
+                    bestFragment = fragment;
+                }
+                break;
+            case PAIR:
+                final Pair pair = (Pair) record;
+                final boolean isBest = bestPair == null || MarkDuplicatesSparkUtils.PAIRED_ENDS_SCORE_COMPARATOR.compare(pair, bestPair) > 0;
+                if ( isBest ) {
+                    bestPair = pair;
+                }
+                if ( finder != null ) {
+                    if ( isBest ) {
+                        bestPairLocationIndex = pairLocations.size();
+                    }
+                    pairLocations.add(new OpticalLocation(pair, finder));
+                }
+                break;
+            case PASSTHROUGH:
+                passthroughs.add(new IndexPair<>(record.getName(), record.getPartitionIndex()));
+                break;
+            default:
+                throw new GATKException.ShouldNeverReachHereException("Unexpected record type " + record.getType());
+        }
+        return this;
+    }
+
+    /**
+     * Merges another group with the same key into this one.
+     * @return this group
+     */
+    public MarkDuplicatesKeyGroup merge(final MarkDuplicatesKeyGroup other) {
+        hasEmptyFragment |= other.hasEmptyFragment;
+        if ( other.bestFragment != null && (bestFragment == null || MarkDuplicatesSparkUtils.PAIRED_ENDS_SCORE_COMPARATOR.compare(other.bestFragment, bestFragment) > 0) ) {
+            bestFragment = other.bestFragment;
+        }
+
+        final int locationOffset = pairLocations.size();
+        pairLocations.addAll(other.pairLocations);
+        if ( other.bestPair != null && (bestPair == null || MarkDuplicatesSparkUtils.PAIRED_ENDS_SCORE_COMPARATOR.compare(other.bestPair, bestPair) > 0) ) {
+            bestPair = other.bestPair;
+            bestPairLocationIndex = other.bestPairLocationIndex < 0 ? -1 : locationOffset + other.bestPairLocationIndex;
+        }
+
+        passthroughs.addAll(other.passthroughs);
+        return this;
+    }
+
+    /**
+     * @return the names (with their routing index) of the templates in this group that are non-duplicates, each with
+     *         its count of optical duplicates (or -1 if optical duplicates are not counted for that template)
+     */
+    public List<Tuple2<IndexPair<String>, Integer>> getNonDuplicates(final OpticalDuplicateFinder finder) {
+        final List<Tuple2<IndexPair<String>, Integer>> nonDuplicates = new ArrayList<>(passthroughs.size() + 2);
+
+        //empty MarkDuplicatesSparkRecord signify that a pair has a mate somewhere else
+        // If there are any non-fragment placeholders at this site, mark everything as duplicates, otherwise compute the best score
+        if ( bestFragment != null && !hasEmptyFragment ) {
+            nonDuplicates.add(new Tuple2<>(new IndexPair<>(bestFragment.getName(), bestFragment.getPartitionIndex()), -1));
+        }
+
+        if ( bestPair != null ) {
+            nonDuplicates.add(new Tuple2<>(new IndexPair<>(bestPair.getName(), bestPair.getPartitionIndex()), countOpticalDuplicates(finder)));
+        }
+
+        for ( final IndexPair<String> passthrough : passthroughs ) {
+            // Emit the passthrough reads as non-duplicates.
+            nonDuplicates.add(new Tuple2<>(passthrough, -1));
+        }
+        return nonDuplicates;
+    }
+
+    private int countOpticalDuplicates(final OpticalDuplicateFinder finder) {
+        if ( finder == null || pairLocations.isEmpty() ) {
+            return 0;
+        }
+        final OpticalLocation keeper = pairLocations.get(bestPairLocationIndex);
+
+        // Split by orientation and count duplicates in each group separately.
+        final Map<Byte, List<OpticalLocation>> groupByOrientation = pairLocations.stream()
+                .collect(Collectors.groupingBy(OpticalLocation::getOrientation));
+        if ( groupByOrientation.containsKey(ReadEnds.FR) && groupByOrientation.containsKey(ReadEnds.RF) ) {
+            return countOpticalDuplicates(finder, groupByOrientation.get(ReadEnds.FR), keeper) +
+                    countOpticalDuplicates(finder, groupByOrientation.get(ReadEnds.RF), keeper);
+        } else {
+            return countOpticalDuplicates(finder, pairLocations, keeper);
+        }
+    }
+
+    private static int countOpticalDuplicates(final OpticalDuplicateFinder finder, final List<OpticalLocation> scored, final OpticalLocation best) {
+        final boolean[] opticalDuplicateFlags = finder.findOpticalDuplicates(scored, best);
+        int numOpticalDuplicates = 0;
+        for ( final boolean b : opticalDuplicateFlags ) {
+            if ( b ) {
+                numOpticalDuplicates++;
+            }
+        }
+        return numOpticalDuplicates;
+    }
+
+    /**
+     * Compact physical location of a pair used for optical duplicate detection, parsed from the read name once
+     * when the pair is added to a group.
+     */
+    public static final class OpticalLocation implements PhysicalLocation, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private short readGroup;
+        private short tile = -1;
+        private int x = -1;
+        private int y = -1;
+        private short libraryId = -1;
+        private final byte orientation;
+
+        OpticalLocation(final Pair pair, final OpticalDuplicateFinder finder) {
+            this.readGroup = pair.getReadGroup();
+            this.orientation = pair.getOrientationForOpticalDuplicates();
+            finder.addLocationInformation(pair.getName(), this);
+        }
+
+        public byte getOrientation() { return orientation; }
+
+        @Override
+        public short getReadGroup() { return readGroup; }
+        @Override
+        public void setReadGroup(final short readGroup) { this.readGroup = readGroup; }
+        @Override
+        public short getTile() { return tile; }
+        @Override
+        public void setTile(final short tile) { this.tile = tile; }
+        @Override
+        public int getX() { return x; }
+        @Override
+        public void setX(final int x) { this.x = x; }
+        @Override
+        public int getY() { return y; }
+        @Override
+        public void setY(final int y) { this.y = y; }
+        @Override
+        public short getLibraryId() { return libraryId; }
+        @Override
+        public void setLibraryId(final short libraryId) { this.libraryId = libraryId; }
+    }
+}
@@ -10,6 +10,7 @@ import org.broadinstitute.hellbender.utils.Utils;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Set of longs that is larger than the max Java array size ( ~ 2^31 ~ 2 billion) and therefore cannot fit into a
@@ -86,6 +87,27 @@ public final class LargeLongHopscotchSet implements Serializable {
         }
     }
 
+    /**
+     * Adds the entries of all the arrays using all available cores. Each task fills its own fixed subset of the
+     * partitions, adding their entries in the order of the arrays, so the resulting set (and its serialized form) is
+     * identical to the one built by adding the entries serially.
+     */
+    public void addAllInParallel(final Collection<long[]> entryArrays) {
+        Utils.nonNull(entryArrays, "Entry arrays cannot be null");
+        final int numTasks = Math.min(numSets, Runtime.getRuntime().availableProcessors());
+        IntStream.range(0, numTasks).parallel().forEach(task -> {
+            for (final long[] entryValues : entryArrays) {
+                for (final long val : entryValues) {
+                    final int hashValue = longHash(val);
+                    final int setIndex = setIndexOf(hashValue);
+                    if (setIndex % numTasks == task) {
+                        sets.get(setIndex).add(val, hashValue);
+                    }
+                }
+            }
+        });
+    }
+
     public long size() {
         long sum = 0;
         for (final LongHopscotchSet s : sets) {
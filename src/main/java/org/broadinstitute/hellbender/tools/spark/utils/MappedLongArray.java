@@ -0,0 +1,80 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of longs backed by a memory-mapped region of a file, which may be larger than the max Java array size.
+ * The region is mapped as several buffers, since a single mapping is limited to 2GB. Longs are stored little-endian.
+ * <p>
+ * The mapping outlives the channel it was made from. A read-only array can be shared by many threads, and the pages
+ * of the file are shared by all the processes on a host that map it.
+ */
+public final class MappedLongArray {
+
+    //2^27 longs (1GB) per buffer
+    private static final int DEFAULT_LONGS_PER_BUFFER_SHIFT = 27;
+
+    private final LongBuffer[] buffers;
+    private final long length;
+    private final int longsPerBufferShift;
+    private final long indexMask;
+
+    /**
+     * Maps an array of longs.
+     *
+     * @param channel the file to map, which must be at least offset + 8 * length bytes long
+     * @param offset byte offset of the array in the file
+     * @param length number of longs in the array
+     * @param mode mapping mode of the channel
+     */
+    public MappedLongArray(final FileChannel channel, final long offset, final long length, final FileChannel.MapMode mode) throws IOException {
+        this(channel, offset, length, mode, DEFAULT_LONGS_PER_BUFFER_SHIFT);
+    }
+
+    @VisibleForTesting
+    MappedLongArray(final FileChannel channel, final long offset, final long length, final FileChannel.MapMode mode,
+                    final int longsPerBufferShift) throws IOException {
+        Utils.nonNull(channel, "Channel cannot be null");
+        Utils.validateArg(offset >= 0, "Offset must be non-negative");
+        Utils.validateArg(length >= 0, "Length must be non-negative");
+        Utils.validateArg(longsPerBufferShift > 0 && longsPerBufferShift <= 27, "Buffers must hold between 2 and 2^27 longs");
+        this.length = length;
+        this.longsPerBufferShift = longsPerBufferShift;
+        this.indexMask = (1L << longsPerBufferShift) - 1;
+
+        final long longsPerBuffer = 1L << longsPerBufferShift;
+        final int numBuffers = (int) ((length + longsPerBuffer - 1) >>> longsPerBufferShift);
+        buffers = new LongBuffer[numBuffers];
+        for (int i = 0; i < numBuffers; i++) {
+            final long bufferLongs = Math.min(longsPerBuffer, length - i * longsPerBuffer);
+            buffers[i] = channel.map(mode, offset + 8 * i * longsPerBuffer, 8 * bufferLongs)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long get(final long index) {
+        return buffers[(int) (index >>> longsPerBufferShift)].get((int) (index & indexMask));
+    }
+
+    public void set(final long index, final long value) {
+        buffers[(int) (index >>> longsPerBufferShift)].put((int) (index & indexMask), value);
+    }
+
+    public void fill(final long value) {
+        for (final LongBuffer buffer : buffers) {
+            for (int i = 0; i < buffer.limit(); i++) {
+                buffer.put(i, value);
+            }
+        }
+    }
+}
@@ -9,6 +9,8 @@ import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
 import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.ArgumentCollection;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
@@ -113,8 +115,13 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
     protected DbsnpArgumentCollection dbsnp = new DbsnpArgumentCollection();
 
     // State that gets accumulated between calls of apply()
-    private final LinkedList<VariantContext> variantContextsOverlappingCurrentMerge = new LinkedList<>();
+    // (an ArrayList, since it is indexed and compacted for every stopped site)
+    private final List<VariantContext> variantContextsOverlappingCurrentMerge = new ArrayList<>();
     private final Set<String> samples = new HashSet<>();
+    // the number of contexts in variantContextsOverlappingCurrentMerge for each sample, and the samples removed from
+    // samples since they were last restored from these counts
+    private final Object2IntOpenHashMap<String> overlappingContextsPerSample = new Object2IntOpenHashMap<>();
+    private final List<String> samplesRemovedSinceRestore = new ArrayList<>();
     private SimpleInterval prevPos = null;
     private byte refAfterPrevPos;
     private ReferenceContext storedReferenceContext;
@@ -152,15 +159,15 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
     void createIntermediateVariants(SimpleInterval intervalToClose) {
         resizeReferenceIfNeeded(intervalToClose);
 
-        // Break up the GVCF according to the provided reference blocking scheme
-        // The values returned from getIntermediateStopSites represent a proposed set of stop sites that may include
-        // intervals that are outside the actual interval being closed. These sites are filtered out below.
-        // Note: Precomputing these is really inefficient when large reference blocks are closed with
-        // fine band resolution because it results in very large collections of stop sites (tens or hundreds of millions)
-        // that must subsequently be sorted.
-        final Set<Integer> sitesToStop = getIntermediateStopSites(intervalToClose, multipleAtWhichToBreakBands);
+        // Break up the GVCF according to the provided reference blocking scheme. The band stop sites are generated
+        // as they are needed rather than collected up front, since there may be tens or hundreds of millions of them when
+        // large reference blocks are closed with fine band resolution. They may include sites that are outside the
+        // interval being closed; these are filtered out below.
+        int nextBandStopSite = multipleAtWhichToBreakBands > 0 ? getFirstIntermediateStopSite(intervalToClose, multipleAtWhichToBreakBands) : Integer.MAX_VALUE;
+        final int lastBandStopSite = intervalToClose.getEnd() - 1;
 
         // If any variant contexts ended (or were spanning deletions) the last context compute where we should stop them
+        final IntArrayList variantStopSites = new IntArrayList();
         for (VariantContext vc : variantContextsOverlappingCurrentMerge) {
 
             // Asking if the number of alleles > 2 is a shorthand for a variant being present, as we expect <non-ref>
@@ -169,22 +176,38 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
             // insert symbolic alleles for those spanning variants.
             if (vc.getNAlleles() > 2) {
                 for (int i = vc.getStart(); i <= vc.getEnd(); i++ ) {
-                    sitesToStop.add(i);
+                    variantStopSites.add(i);
                 }
             } else if (vc.getEnd() <= intervalToClose.getEnd()) {
-                sitesToStop.add(vc.getEnd());
+                variantStopSites.add(vc.getEnd());
             }
         }
+        final int[] sortedVariantStopSites = variantStopSites.toIntArray();
+        Arrays.sort(sortedVariantStopSites);
+
+        // For each stopped loc that is within the interval being closed, in order, create a fake QueuedContextState and pass it to endPreviousStats
+        int variantStopIndex = 0;
+        while (true) {
+            final boolean hasBandStopSite = nextBandStopSite <= lastBandStopSite;
+            final boolean hasVariantStopSite = variantStopIndex < sortedVariantStopSites.length;
+            if (!hasBandStopSite && !hasVariantStopSite) {
+                break;
+            }
+            final int stoppedLoc = Math.min(hasBandStopSite ? nextBandStopSite : Integer.MAX_VALUE,
+                    hasVariantStopSite ? sortedVariantStopSites[variantStopIndex] : Integer.MAX_VALUE);
+            if (hasBandStopSite && nextBandStopSite == stoppedLoc) {
+                nextBandStopSite += multipleAtWhichToBreakBands;
+            }
+            while (variantStopIndex < sortedVariantStopSites.length && sortedVariantStopSites[variantStopIndex] == stoppedLoc) {
+                variantStopIndex++;
+            }
 
-        List<Integer> stoppedLocs = new ArrayList<>(sitesToStop);
-        stoppedLocs.sort(Comparator.naturalOrder());
-
-        // For each stopped loc that is within the interval being closed, create a fake QueuedContextState and pass it to endPreviousStats
-        for (int stoppedLoc : stoppedLocs) {
-            SimpleInterval loc = new SimpleInterval(intervalToClose.getContig(), stoppedLoc, stoppedLoc);
-            if (( stoppedLoc <= intervalToClose.getEnd() && stoppedLoc>= intervalToClose.getStart()) && isWithinInterval(loc)) {
-                byte[] refBases = Arrays.copyOfRange(storedReferenceContext.getBases(), stoppedLoc - storedReferenceContext.getWindow().getStart(), stoppedLoc - storedReferenceContext.getWindow().getStart() + 2);
-                endPreviousStates(loc, refBases, Collections.emptyList(), true);
+            if ( stoppedLoc <= intervalToClose.getEnd() && stoppedLoc>= intervalToClose.getStart()) {
+                SimpleInterval loc = new SimpleInterval(intervalToClose.getContig(), stoppedLoc, stoppedLoc);
+                if (isWithinInterval(loc)) {
+                    byte[] refBases = Arrays.copyOfRange(storedReferenceContext.getBases(), stoppedLoc - storedReferenceContext.getWindow().getStart(), stoppedLoc - storedReferenceContext.getWindow().getStart() + 2);
+                    endPreviousStates(loc, refBases, Collections.emptyList(), true);
+                }
             }
         }
 
@@ -196,19 +219,25 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
         final Set<Integer> sitesToStop = new HashSet<>();
 
         if ( breakBandMultiple > 0) {
-            // if the intermediate interval to close starts before the end of the first band multiple,
-            // create the first stop position at the end of the band multiple
-            for (int blockEndPosition = intervalToClose.getStart() < (breakBandMultiple + 1) ?
-                    Math.max(2, breakBandMultiple) :
-                    (intervalToClose.getStart() / breakBandMultiple) * breakBandMultiple;
-                 blockEndPosition <= intervalToClose.getEnd();
-                 blockEndPosition += breakBandMultiple) {
-                sitesToStop.add(blockEndPosition - 1); // Subtract 1 here because we want to split before this base
+            for (int stopSite = getFirstIntermediateStopSite(intervalToClose, breakBandMultiple);
+                 stopSite < intervalToClose.getEnd();
+                 stopSite += breakBandMultiple) {
+                sitesToStop.add(stopSite);
             }
         }
         return sitesToStop;
     }
 
+    // Get the first intermediate stop site based on the break band multiple; later ones follow every breakBandMultiple bases.
+    private static int getFirstIntermediateStopSite(final SimpleInterval intervalToClose, final int breakBandMultiple) {
+        // if the intermediate interval to close starts before the end of the first band multiple,
+        // create the first stop position at the end of the band multiple
+        final int blockEndPosition = intervalToClose.getStart() < (breakBandMultiple + 1) ?
+                Math.max(2, breakBandMultiple) :
+                (intervalToClose.getStart() / breakBandMultiple) * breakBandMultiple;
+        return blockEndPosition - 1; // Subtract 1 here because we want to split before this base
+    }
+
     /**
      * Resize {@link #storedReferenceContext} to cover at least as much as intervalToClose
      * @param intervalToClose
@@ -284,10 +313,29 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
                 }
             }
             variantContextsOverlappingCurrentMerge.addAll(variantContexts);
-            for(final VariantContext vc : variantContextsOverlappingCurrentMerge){
+            for (final VariantContext vc : variantContexts) {
+                for (final String sample : vc.getSampleNames()) {
+                    overlappingContextsPerSample.addTo(sample, 1);
+                }
                 samples.addAll(vc.getSampleNames());
             }
+            restoreRemovedSamples();
+        }
+    }
+
+    /**
+     * Puts back into samples any sample removed from it along with a stopped context that still has other contexts in
+     * variantContextsOverlappingCurrentMerge (e.g. when a deletion spans the sample's next records), so that samples
+     * again holds the samples of every overlapping context. This only visits the samples removed since the last call,
+     * rather than all the overlapping contexts.
+     */
+    private void restoreRemovedSamples() {
+        for (final String sample : samplesRemovedSinceRestore) {
+            if (overlappingContextsPerSample.getInt(sample) > 0) {
+                samples.add(sample);
+            }
         }
+        samplesRemovedSinceRestore.clear();
     }
 
     /**
@@ -328,8 +376,11 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
         final byte refNextBase = (forceOutputAtCurrentPosition) ? (refBases.length > 1 ? refBases[1] : (byte)'N' ): refBase;
 
         final List<VariantContext> stoppedVCs = new ArrayList<>(variantContextsOverlappingCurrentMerge.size());
+        final int numOverlapping = variantContextsOverlappingCurrentMerge.size();
+        final boolean[] removed = new boolean[numOverlapping];
+        boolean anyRemoved = false;
 
-        for (int i = variantContextsOverlappingCurrentMerge.size() - 1; i >= 0; i-- ) {
+        for (int i = numOverlapping - 1; i >= 0; i-- ) {
             final VariantContext vc = variantContextsOverlappingCurrentMerge.get(i);
             //the VC for the previous state will be stopped if its position is previous to the current position or it we've moved to a new contig
             if ( vc.getStart() <= pos.getStart() || !vc.contigsMatch(pos)) {
@@ -339,10 +390,27 @@ public final class CombineGVCFs extends MultiVariantWalkerGroupedOnStart {
                 // if it was ending anyways, then remove it from the future state
                 // or if ending vc is the same sample as a starting VC, then remove it from the future state
                 if((vc.getEnd() == pos.getStart()) || (variantContexts.size() > 0 && !forceOutputAtCurrentPosition && newSamples.containsAll(vc.getSampleNames()))) {
-                    samples.removeAll(vc.getSampleNames());
-                    variantContextsOverlappingCurrentMerge.remove(i);
+                    for (final String sample : vc.getSampleNames()) {
+                        overlappingContextsPerSample.addTo(sample, -1);
+                        if (samples.remove(sample)) {
+                            samplesRemovedSinceRestore.add(sample);
+                        }
+                    }
+                    removed[i] = true;
+                    anyRemoved = true;
+                }
+            }
+        }
+
+        // remove the stopped contexts in a single pass, keeping the order of the others
+        if (anyRemoved) {
+            int kept = 0;
+            for (int i = 0; i < numOverlapping; i++) {
+                if (!removed[i]) {
+                    variantContextsOverlappingCurrentMerge.set(kept++, variantContextsOverlappingCurrentMerge.get(i));
                 }
             }
+            variantContextsOverlappingCurrentMerge.subList(kept, numOverlapping).clear();
         }
 
         //output the stopped variantContexts if there is no previous output (state.prevPos == null) or our current position is past
@@ -9,6 +9,9 @@ import org.broadinstitute.hellbender.engine.ReadsContext;
 import org.broadinstitute.hellbender.engine.ReferenceContext;
 import org.broadinstitute.hellbender.engine.VariantWalker;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  *
  * Count variant records in a VCF file, regardless of filter status. The tool gives the count at end of the standard out.
@@ -38,6 +41,12 @@ public final class CountVariants extends VariantWalker{
             "Because it counts the number of rows in the VCF, it does not necessarily reflect the number of variant " +
             "alleles. The count is returned at the end of the standard out.";
 
+    // only the sites are counted, so the genotypes never need to be parsed
+    @Override
+    protected Set<String> getSamplesToDecode() {
+        return Collections.emptySet();
+    }
+
     @Override
     public void apply( VariantContext variant, ReadsContext readsContext, ReferenceContext referenceContext, FeatureContext featureContext ) {
         count++;
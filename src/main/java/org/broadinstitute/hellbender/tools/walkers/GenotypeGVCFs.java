@@ -10,10 +10,14 @@ import org.broadinstitute.hellbender.cmdline.*;
 import org.broadinstitute.hellbender.cmdline.argumentcollections.DbsnpArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ShortVariantDiscoveryProgramGroup;
 import org.broadinstitute.hellbender.engine.*;
+import org.broadinstitute.hellbender.engine.filters.VariantFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.tools.walkers.annotator.*;
 import org.broadinstitute.hellbender.tools.walkers.annotator.allelespecific.AS_RMSMappingQuality;
 import org.broadinstitute.hellbender.tools.walkers.genotyper.*;
+import org.broadinstitute.hellbender.tools.walkers.genotyper.afcalc.AlleleFrequencyPruningMetrics;
 import org.broadinstitute.hellbender.tools.walkers.genotyper.afcalc.GeneralPloidyFailOverAFCalculatorProvider;
+import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.genotyper.IndexedSampleList;
@@ -24,6 +28,13 @@ import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Perform joint genotyping on one or more samples pre-called with HaplotypeCaller
@@ -64,6 +75,16 @@ import java.util.*;
  *   -O output.vcf.gz
  * </pre>
  *
+ * <h4>Perform joint genotyping on several threads</h4>
+ * <pre>
+ * gatk --java-options "-Xmx16g" GenotypeGVCFs \
+ *   -R Homo_sapiens_assembly38.fasta \
+ *   -V gendb://my_database \
+ *   -L chr20 \
+ *   --genotyping-threads 8 \
+ *   -O output.vcf.gz
+ * </pre>
+ *
  * <h3>Caveats</h3>
  * <ul>
  *   <li>Only GVCF files produced by HaplotypeCaller (or CombineGVCFs) can be used as input for this tool. Some other
@@ -86,6 +107,8 @@ public final class GenotypeGVCFs extends VariantWalker {
     public static final String PHASED_HOM_VAR_STRING = "1|1";
     public static final String ONLY_OUTPUT_CALLS_STARTING_IN_INTERVALS_FULL_NAME = "only-output-calls-starting-in-intervals";
     public static final String ALL_SITES_LONG_NAME = "include-non-variant-sites";
+    public static final String GENOTYPING_THREADS_LONG_NAME = "genotyping-threads";
+    public static final String GENOTYPING_SHARD_SIZE_LONG_NAME = "genotyping-shard-size";
     private static final String GVCF_BLOCK = "GVCFBlock";
 
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
@@ -115,12 +138,29 @@ public final class GenotypeGVCFs extends VariantWalker {
     @ArgumentCollection
     private final DbsnpArgumentCollection dbsnp = new DbsnpArgumentCollection();
 
-    // the genotyping engine
-    private GenotypingEngine<?> genotypingEngine;
-    // the annotation engine
-    private VariantAnnotatorEngine annotationEngine;
+    /**
+     * With more than one thread, the traversal intervals are cut into shards of --genotyping-shard-size bases, which
+     * are genotyped in parallel, each thread with its own query of the input and its own engines, and written out in
+     * order. The output is the same as with a single thread.
+     */
+    @Advanced
+    @Argument(fullName = GENOTYPING_THREADS_LONG_NAME,
+            doc = "Number of threads to genotype sites on",
+            minValue = 1,
+            optional = true)
+    private int genotypingThreads = 1;
+
+    @Advanced
+    @Argument(fullName = GENOTYPING_SHARD_SIZE_LONG_NAME,
+            doc = "Number of bases in each shard genotyped by a thread, when genotyping on more than one thread",
+            minValue = 1,
+            optional = true)
+    private int genotypingShardSize = 1_000_000;
+
+    // the engines used to genotype sites on the traversal thread
+    private GenotypingEngines engines;
 
-    private ReferenceConfidenceVariantContextMerger merger;
+    private SampleList samples;
 
     private VariantContextWriter vcfWriter;
 
@@ -152,16 +192,30 @@ public final class GenotypeGVCFs extends VariantWalker {
         intervals = hasIntervals() ? intervalArgumentCollection.getIntervals(getBestAvailableSequenceDictionary()) :
                 Collections.emptyList();
 
-        final SampleList samples = new IndexedSampleList(inputVCFHeader.getGenotypeSamples()); //todo should this be getSampleNamesInOrder?
+        samples = new IndexedSampleList(inputVCFHeader.getGenotypeSamples()); //todo should this be getSampleNamesInOrder?
+
+        engines = new GenotypingEngines();
+
+        setupVCFWriter(inputVCFHeader, samples);
+    }
 
-        annotationEngine = new VariantAnnotatorEngine(makeVariantAnnotations(), dbsnp.dbsnp, Collections.emptyList(), false);
+    /**
+     * The engines used to genotype sites. The genotyping engine keeps state between sites, so each thread that
+     * genotypes sites needs its own; the annotations themselves are stateless and shared.
+     */
+    private final class GenotypingEngines {
+        private final VariantAnnotatorEngine annotationEngine;
+        private final GenotypingEngine<?> genotypingEngine;
+        private final ReferenceConfidenceVariantContextMerger merger;
 
-        // We only want the engine to generate the AS_QUAL key if we are using AlleleSpecific annotations.
-        genotypingEngine = new MinimalGenotypingEngine(createUAC(), samples, new GeneralPloidyFailOverAFCalculatorProvider(genotypeArgs), annotationEngine.isRequestedReducibleRawKey(GATKVCFConstants.AS_QUAL_KEY));
+        private GenotypingEngines() {
+            annotationEngine = new VariantAnnotatorEngine(makeVariantAnnotations(), dbsnp.dbsnp, Collections.emptyList(), false);
 
-        merger = new ReferenceConfidenceVariantContextMerger(annotationEngine, getHeaderForVariants());
+            // We only want the engine to generate the AS_QUAL key if we are using AlleleSpecific annotations.
+            genotypingEngine = new MinimalGenotypingEngine(createUAC(), samples, new GeneralPloidyFailOverAFCalculatorProvider(genotypeArgs), annotationEngine.isRequestedReducibleRawKey(GATKVCFConstants.AS_QUAL_KEY));
 
-        setupVCFWriter(inputVCFHeader, samples);
+            merger = new ReferenceConfidenceVariantContextMerger(annotationEngine, getHeaderForVariants());
+        }
     }
 
     private static boolean annotationShouldBeSkippedForHomRefSites(VariantAnnotation annotation) {
@@ -175,8 +229,8 @@ public final class GenotypeGVCFs extends VariantWalker {
         // Remove GCVFBlocks
         headerLines.removeIf(vcfHeaderLine -> vcfHeaderLine.getKey().startsWith(GVCF_BLOCK));
 
-        headerLines.addAll(annotationEngine.getVCFAnnotationDescriptions(false));
-        headerLines.addAll(genotypingEngine.getAppropriateVCFInfoHeaders());
+        headerLines.addAll(engines.annotationEngine.getVCFAnnotationDescriptions(false));
+        headerLines.addAll(engines.genotypingEngine.getAppropriateVCFInfoHeaders());
 
         // add headers for annotations added by this tool
         headerLines.add(GATKVCFHeaderLines.getInfoLine(GATKVCFConstants.MLE_ALLELE_COUNT_KEY));
@@ -194,32 +248,235 @@ public final class GenotypeGVCFs extends VariantWalker {
         vcfWriter.writeHeader(vcfHeader);
     }
 
+    @Override
+    public void traverse() {
+        if (genotypingThreads == 1) {
+            super.traverse();
+        } else {
+            traverseInParallel();
+        }
+    }
+
     @Override
     public void apply(VariantContext variant, ReadsContext reads, ReferenceContext ref, FeatureContext features) {
+        final VariantContext result = genotypeSite(engines, variant, ref, features);
+        if (result != null) {
+            vcfWriter.add(result);
+        }
+    }
+
+    /**
+     * Genotypes the site of a variant from the input
+     * @return the variant to output, or null if there is none
+     */
+    private VariantContext genotypeSite(final GenotypingEngines engines, final VariantContext variant, final ReferenceContext ref, final FeatureContext features) {
         ref.setWindow(10, 10); //TODO this matches the gatk3 behavior but may be unnecessary
-        final VariantContext mergedVC = merger.merge(Collections.singletonList(variant), variant, includeNonVariants ? ref.getBase() : null, true, false);
-        final VariantContext regenotypedVC = regenotypeVC(mergedVC, ref, features, includeNonVariants);
+        final VariantContext mergedVC = engines.merger.merge(Collections.singletonList(variant), variant, includeNonVariants ? ref.getBase() : null, true, false);
+        final VariantContext regenotypedVC = regenotypeVC(engines, mergedVC, ref, features, includeNonVariants);
         if (regenotypedVC != null) {
             final SimpleInterval variantStart = new SimpleInterval(regenotypedVC.getContig(), regenotypedVC.getStart(), regenotypedVC.getStart());
             if (!onlyOutputCallsStartingInIntervals || intervals.stream().anyMatch(interval -> interval.contains    (variantStart))) {
-                vcfWriter.add(regenotypedVC);
+                return regenotypedVC;
             }
         }
+        return null;
     }
 
+    /**
+     * Genotypes shards of the traversal intervals on a pool of threads, each with its own {@link ShardGenotyper}.
+     * The results of the shards are written out in shard order: the futures of the shards in flight are kept in
+     * order, and a shard that finishes early waits in that queue until the shards before it have been written. The
+     * number of shards in flight is bounded so that the results waiting to be written stay bounded too.
+     */
+    private void traverseInParallel() {
+        final List<SimpleInterval> traversalIntervals = hasIntervals() ? intervals :
+                IntervalUtils.getAllIntervalsForReference(getBestAvailableSequenceDictionary());
+        final List<SimpleInterval> shards = IntervalUtils.cutToShards(traversalIntervals, genotypingShardSize);
+        final int maxShardsInFlight = 2 * genotypingThreads;
+        final VariantFilter variantFilter = makeVariantFilter();
+
+        final BlockingQueue<ShardGenotyper> genotypers = new ArrayBlockingQueue<>(genotypingThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(genotypingThreads);
+        try {
+            for (int i = 0; i < genotypingThreads; i++) {
+                genotypers.add(new ShardGenotyper());
+            }
+            final Deque<Future<ShardResult>> shardsInFlight = new ArrayDeque<>(maxShardsInFlight);
+            int nextShard = 0;
+            while (nextShard < shards.size() || !shardsInFlight.isEmpty()) {
+                for (; nextShard < shards.size() && shardsInFlight.size() < maxShardsInFlight; nextShard++) {
+                    final SimpleInterval shard = shards.get(nextShard);
+                    final SimpleInterval previousShard = nextShard > 0 ? shards.get(nextShard - 1) : null;
+                    shardsInFlight.add(executor.submit(() -> genotypeShard(genotypers, shard, previousShard, variantFilter)));
+                }
+                final ShardResult result = getResult(shardsInFlight.remove());
+                result.variants.forEach(vcfWriter::add);
+                for (final SimpleInterval variantInterval : result.inputIntervals) {
+                    progressMeter.update(variantInterval);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            genotypers.forEach(ShardGenotyper::close);
+        }
+    }
 
+    private ShardResult genotypeShard(final BlockingQueue<ShardGenotyper> genotypers, final SimpleInterval shard,
+                                      final SimpleInterval previousShard, final VariantFilter variantFilter) {
+        final ShardGenotyper genotyper;
+        try {
+            genotyper = genotypers.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while genotyping " + shard, e);
+        }
+        try {
+            return genotyper.genotype(shard, previousShard, variantFilter);
+        } finally {
+            genotypers.add(genotyper);
+        }
+    }
+
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while genotyping", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while genotyping", e.getCause());
+        }
+    }
+
+    /**
+     * The variants output for a shard, and the intervals of the input variants genotyped, for the progress meter
+     */
+    private static final class ShardResult {
+        private final List<VariantContext> variants = new ArrayList<>();
+        private final List<SimpleInterval> inputIntervals = new ArrayList<>();
+    }
+
+    /**
+     * Genotypes one shard at a time, with its own sources of input variants, reference and features, since those
+     * only support one query at a time, and its own engines.
+     */
+    private final class ShardGenotyper implements AutoCloseable {
+        private final FeatureDataSource<VariantContext> variants;
+        private final ReferenceDataSource reference;
+        private final FeatureManager features;
+        private final GenotypingEngines engines;
+
+        private ShardGenotyper() {
+            variants = new FeatureDataSource<>(new FeatureInput<>(drivingVariantFile, "drivingVariantFile"), FEATURE_CACHE_LOOKAHEAD,
+                    VariantContext.class, cloudPrefetchBuffer, cloudIndexPrefetchBuffer, referenceArguments.getReferencePath());
+            reference = ReferenceDataSource.of(referenceArguments.getReferencePath());
+            features = new FeatureManager(GenotypeGVCFs.this, FEATURE_CACHE_LOOKAHEAD, cloudPrefetchBuffer, cloudIndexPrefetchBuffer,
+                    referenceArguments.getReferencePath());
+            engines = new GenotypingEngines();
+        }
+
+        /**
+         * Genotypes the input variants overlapping a shard. As when traversing intervals in a single query, a variant
+         * that overlaps the previous shard too is left to that shard, so that it is output once.
+         */
+        private ShardResult genotype(final SimpleInterval shard, final SimpleInterval previousShard, final VariantFilter variantFilter) {
+            final ShardResult result = new ShardResult();
+            replayUpstreamDeletions(shard, previousShard, variantFilter);
+            variants.setIntervalsForTraversal(Collections.singletonList(shard));
+            for (final VariantContext variant : variants) {
+                if (isLeftToPreviousShard(variant, shard, previousShard) || !variantFilter.test(variant)) {
+                    continue;
+                }
+                final SimpleInterval variantInterval = new SimpleInterval(variant);
+                final VariantContext genotyped = genotypeSite(engines, variant,
+                        new ReferenceContext(reference, variantInterval), new FeatureContext(features, variantInterval));
+                if (genotyped != null) {
+                    result.variants.add(genotyped);
+                }
+                result.inputIntervals.add(variantInterval);
+            }
+            return result;
+        }
+
+        /**
+         * Brings the deletions known to the genotyping engine to where they would be at the start of the shard in a
+         * single traversal, so that the spanning deletion alleles of the shard are kept or dropped the same way.
+         *
+         * The engine only keeps deletions called at earlier sites that overlap the later ones, so it is enough to
+         * genotype again, discarding the results, the variants from the last position before the shard that no
+         * variant starting before it overlaps: the deletions of the variants before that position all end before it.
+         * Those variants are counted by the shard that outputs them, so the pruning metrics of the replay are dropped.
+         */
+        private void replayUpstreamDeletions(final SimpleInterval shard, final SimpleInterval previousShard, final VariantFilter variantFilter) {
+            engines.genotypingEngine.clearUpstreamDeletionsLoc();
+            int replayStart = shard.getStart();
+            while (true) {
+                final int position = replayStart;
+                final int earliestStart = variants.queryAndPrefetch(new SimpleInterval(shard.getContig(), position, position)).stream()
+                        .mapToInt(VariantContext::getStart).min().orElse(position);
+                if (earliestStart >= position) {
+                    break;
+                }
+                replayStart = earliestStart;
+            }
+            if (replayStart == shard.getStart()) {
+                return;
+            }
+            final AlleleFrequencyPruningMetrics pruningMetrics = engines.genotypingEngine.getAlleleFrequencyPruningMetrics();
+            final AlleleFrequencyPruningMetrics metricsBeforeReplay = new AlleleFrequencyPruningMetrics();
+            metricsBeforeReplay.add(pruningMetrics);
+            try {
+                for (final VariantContext variant : variants.queryAndPrefetch(new SimpleInterval(shard.getContig(), replayStart, shard.getStart() - 1))) {
+                    // only the variants a single traversal of the intervals would have genotyped before the shard
+                    if (isLeftToPreviousShard(variant, shard, previousShard) && isInTraversalIntervals(variant) && variantFilter.test(variant)) {
+                        final SimpleInterval variantInterval = new SimpleInterval(variant);
+                        genotypeSite(engines, variant, new ReferenceContext(reference, variantInterval), new FeatureContext(features, variantInterval));
+                    }
+                }
+            } finally {
+                pruningMetrics.reset();
+                pruningMetrics.add(metricsBeforeReplay);
+            }
+        }
+
+        private boolean isLeftToPreviousShard(final VariantContext variant, final SimpleInterval shard, final SimpleInterval previousShard) {
+            return variant.getStart() < shard.getStart() && (!shard.overlaps(variant) || (previousShard != null && previousShard.overlaps(variant)));
+        }
+
+        private boolean isInTraversalIntervals(final VariantContext variant) {
+            return intervals.isEmpty() || intervals.stream().anyMatch(interval -> interval.overlaps(variant));
+        }
+
+        @Override
+        public void close() {
+            variants.close();
+            reference.close();
+            features.close();
+            GenotypeGVCFs.this.engines.genotypingEngine.getAlleleFrequencyPruningMetrics()
+                    .add(engines.genotypingEngine.getAlleleFrequencyPruningMetrics());
+        }
+    }
 
     /**
      * Re-genotype (and re-annotate) a combined genomic VC
      * @return a new VariantContext or null if the site turned monomorphic and we don't want such sites
      */
-    private VariantContext  regenotypeVC(final VariantContext originalVC, final ReferenceContext ref, final FeatureContext features, boolean includeNonVariants) {
+    private VariantContext  regenotypeVC(final GenotypingEngines engines, final VariantContext originalVC, final ReferenceContext ref, final FeatureContext features, boolean includeNonVariants) {
         Utils.nonNull(originalVC);
 
+        final VariantAnnotatorEngine annotationEngine = engines.annotationEngine;
         final VariantContext result;
         if ( originalVC.isVariant()  && originalVC.getAttributeAsInt(VCFConstants.DEPTH_KEY,0) > 0 ) {
             // only re-genotype polymorphic sites
-            final VariantContext regenotypedVC = calculateGenotypes(originalVC);
+            final VariantContext regenotypedVC = calculateGenotypes(engines.genotypingEngine, originalVC);
             if (isProperlyPolymorphic(regenotypedVC)) {
                 // Note that reversetrimAlleles must be performed after the annotations are finalized because the reducible annotation data maps
                 // were generated and keyed on the un reverseTrimmed alleles from the starting VariantContexts. Thus reversing the order will make
@@ -255,7 +512,7 @@ public final class GenotypeGVCFs extends VariantWalker {
         }
     }
 
-    private VariantContext calculateGenotypes(VariantContext vc){
+    private static VariantContext calculateGenotypes(final GenotypingEngine<?> genotypingEngine, VariantContext vc){
         /*
          * Query the VariantContext for the appropriate model.  If type == MIXED, one would want to use model = BOTH.
          * However GenotypingEngine.getAlleleFrequencyPriors throws an exception if you give it anything but a SNP or INDEL model.
@@ -399,6 +656,15 @@ public final class GenotypeGVCFs extends VariantWalker {
         return uac;
     }
 
+    @Override
+    public Object onTraversalSuccess() {
+        final AlleleFrequencyPruningMetrics pruningMetrics = engines.genotypingEngine.getAlleleFrequencyPruningMetrics();
+        if (genotypeArgs.USE_NEW_AF_CALCULATOR && pruningMetrics.getSites() > 0) {
+            logger.info(pruningMetrics.toString());
+        }
+        return null;
+    }
+
     @Override
     public void closeTool() {
         if ( vcfWriter != null) {
@@ -0,0 +1,213 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.Feature;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.ArgumentCollection;
+import org.broadinstitute.barclay.argparser.BetaFeature;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.*;
+import org.broadinstitute.hellbender.engine.filters.CountingReadFilter;
+import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.ApplyBQSRUniqueArgumentCollection;
+import org.broadinstitute.hellbender.transformers.BQSRReadTransformer;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadSpillFile;
+import org.broadinstitute.hellbender.utils.read.SAMFileGATKReadWriter;
+import org.broadinstitute.hellbender.utils.recalibration.*;
+import picard.cmdline.programgroups.ReadDataManipulationProgramGroup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Both steps of Base Quality Score Recalibration (BaseRecalibrator and ApplyBQSR) in a single tool that reads the
+ * input only once.
+ *
+ * <p>
+ * During the first pass over the input the recalibration tables are accumulated exactly as in BaseRecalibrator,
+ * while every read is simultaneously spilled to a compact local temporary file. Once the tables are finalized, the
+ * second pass streams the reads back from the spill file, applies the recalibration exactly as ApplyBQSR would and
+ * writes the output. Compared to running BaseRecalibrator followed by ApplyBQSR this removes one complete read and
+ * decode of the input, which dominates the cost when the input lives on cloud storage.
+ * </p>
+ *
+ * <p>
+ * The spill file holds one copy of the (filtered) input reads and needs roughly as much local disk space as the
+ * input BAM. Use --TMP_DIR to place it on a suitable volume.
+ * </p>
+ *
+ * <h3>Input</h3>
+ * <ul>
+ *     <li>A BAM or CRAM file containing input read data</li>
+ *     <li>A database of known polymorphic sites to skip over.</li>
+ * </ul>
+ *
+ * <h3>Output</h3>
+ * <ul>
+ *     <li>A BAM or CRAM file containing the recalibrated read data</li>
+ *     <li>Optionally, the recalibration table that was applied</li>
+ * </ul>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * gatk BQSRPipeline \
+ *   -R reference.fasta \
+ *   -I input.bam \
+ *   --known-sites sites_of_variation.vcf \
+ *   --known-sites another/optional/setOfSitesToMask.vcf \
+ *   -O output.bam
+ * </pre>
+ */
+@CommandLineProgramProperties(
+        summary = BQSRPipeline.USAGE_SUMMARY,
+        oneLineSummary = BQSRPipeline.USAGE_ONE_LINE_SUMMARY,
+        programGroup = ReadDataManipulationProgramGroup.class
+)
+@DocumentedFeature
+@BetaFeature
+public final class BQSRPipeline extends TwoPassReadWalker {
+    static final String USAGE_ONE_LINE_SUMMARY = "Both steps of BQSR (BaseRecalibrator and ApplyBQSR) with a single pass over the input";
+    static final String USAGE_SUMMARY = "This tool performs both steps of BQSR - creation of recalibration tables and " +
+            "rewriting of the reads - reading the input only once. Reads are spilled to a local temporary file " +
+            "during the first pass and recalibrated from there in the second pass.";
+
+    public static final String RECAL_TABLE_OUTPUT_LONG_NAME = "recal-table-output";
+    public static final String SPILL_COMPRESSION_LEVEL_LONG_NAME = "spill-compression-level";
+
+    private static final Logger logger = LogManager.getLogger(BQSRPipeline.class);
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Write output to this file")
+    public String output;
+
+    @Argument(fullName = BaseRecalibrator.KNOWN_SITES_ARG_FULL_NAME, doc = "One or more databases of known polymorphic sites used to exclude regions around known polymorphisms from analysis.", optional = false)
+    private List<FeatureInput<Feature>> knownSites;
+
+    @Argument(fullName = RECAL_TABLE_OUTPUT_LONG_NAME, doc = "If specified, also write the recalibration table that was applied to this file", optional = true)
+    private File recalTableFile = null;
+
+    @Argument(fullName = SPILL_COMPRESSION_LEVEL_LONG_NAME, doc = "Compression level (0-9) of the temporary file holding the reads between passes", optional = true, minValue = 0, maxValue = 9)
+    private int spillCompressionLevel = ReadSpillFile.DEFAULT_COMPRESSION_LEVEL;
+
+    /**
+     * All the command line arguments for BQSR and its covariates.
+     */
+    @ArgumentCollection(doc = "all the command line arguments for BQSR and its covariates")
+    private final RecalibrationArgumentCollection recalArgs = new RecalibrationArgumentCollection();
+
+    /**
+     * Command-line arguments to fine tune the apply BQSR step.
+     */
+    @ArgumentCollection
+    public ApplyBQSRUniqueArgumentCollection applyBqsrArgs = new ApplyBQSRUniqueArgumentCollection();
+
+    private BaseRecalibrationEngine recalibrationEngine;
+
+    private ReferenceDataSource referenceDataSource; // datasource for the reference. We're using a different one from the engine itself to avoid messing with its caches.
+
+    private ReadFilter bqsrReadFilter;
+
+    private ReadSpillFile spillFile;
+
+    private BQSRReadTransformer bqsrTransformer;
+
+    private SAMFileGATKReadWriter outputWriter;
+
+    @Override
+    public boolean requiresReference() {
+        return true;
+    }
+
+    @Override
+    public void onTraversalStart() {
+        if (recalArgs.FORCE_PLATFORM != null) {
+            recalArgs.DEFAULT_PLATFORM = recalArgs.FORCE_PLATFORM;
+        }
+
+        Utils.warnOnNonIlluminaReadGroups(getHeaderForReads(), logger);
+
+        recalibrationEngine = new BaseRecalibrationEngine(recalArgs, getHeaderForReads());
+        recalibrationEngine.logCovariatesUsed();
+        referenceDataSource = ReferenceDataSource.of(referenceArguments.getReferencePath());
+
+        // The reads handed to us have only had the default WellformedReadFilter applied, which is all the filtering
+        // that ApplyBQSR wants. BaseRecalibrator itself wants additional filtering, which we do for the first pass only.
+        bqsrReadFilter = ReadFilter.fromList(BaseRecalibrator.getBQSRSpecificReadFilterList(), getHeaderForReads());
+
+        spillFile = new ReadSpillFile(getHeaderForReads(), null, spillCompressionLevel);
+        outputWriter = createSAMWriter(IOUtils.getPath(output), true);
+    }
+
+    @Override
+    protected void firstPassApply(final GATKRead read, final ReferenceContext referenceContext, final FeatureContext featureContext) {
+        spillFile.addRead(read);
+        if (bqsrReadFilter.test(read)) {
+            recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+        }
+    }
+
+    @Override
+    protected void afterFirstPass() {
+        recalibrationEngine.finalizeData();
+
+        logger.info("Calculating quantized quality scores...");
+        final RecalibrationTables recalibrationTables = recalibrationEngine.getFinalRecalibrationTables();
+        final QuantizationInfo quantizationInfo = new QuantizationInfo(recalibrationTables, recalArgs.QUANTIZING_LEVELS);
+
+        if (recalTableFile != null) {
+            logger.info("Writing recalibration report...");
+            try ( PrintStream recalTableStream = new PrintStream(recalTableFile) ) {
+                RecalUtils.outputRecalibrationReport(recalTableStream, recalArgs, quantizationInfo, recalibrationTables, recalibrationEngine.getCovariates());
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(recalTableFile, e);
+            }
+        }
+
+        final RecalibrationReport recalibrationReport = RecalUtils.createRecalibrationReport(
+                recalArgs.generateReportTable(recalibrationEngine.getCovariates().covariateNames()),
+                quantizationInfo.generateReportTable(),
+                RecalUtils.generateReportTables(recalibrationTables, recalibrationEngine.getCovariates()));
+        bqsrTransformer = new BQSRReadTransformer(getHeaderForReads(), recalibrationReport,
+                applyBqsrArgs.toApplyBQSRArgumentCollection(recalArgs.PRESERVE_QSCORES_LESS_THAN));
+        logger.info("Recalibrating " + spillFile.getNumReadsWritten() + " spilled reads");
+    }
+
+    /**
+     * Replays the reads spilled during the first pass instead of re-reading the input.
+     */
+    @Override
+    protected Stream<GATKRead> getSecondPassReadStream(final CountingReadFilter countedFilter) {
+        final CloseableIterator<GATKRead> spilledReads = spillFile.iterator();
+        return Utils.stream(spilledReads).onClose(spilledReads::close);
+    }
+
+    @Override
+    protected void secondPassApply(final GATKRead read, final ReferenceContext referenceContext, final FeatureContext featureContext) {
+        outputWriter.addRead(bqsrTransformer.apply(read));
+    }
+
+    @Override
+    public Object onTraversalSuccess() {
+        return recalibrationEngine.getNumReadsProcessed();
+    }
+
+    @Override
+    public void closeTool() {
+        if ( outputWriter != null ) {
+            outputWriter.close();
+        }
+        if ( spillFile != null ) {
+            spillFile.close();
+        }
+    }
+}
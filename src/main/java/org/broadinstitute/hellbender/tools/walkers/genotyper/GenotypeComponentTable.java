@@ -0,0 +1,93 @@
+package org.broadinstitute.hellbender.tools.walkers.genotyper;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.broadinstitute.hellbender.utils.Utils;
+
+/**
+ * The alleles and allele counts of every genotype for a ploidy and allele count, flattened into primitive arrays in
+ * likelihood index order.
+ *
+ * <p>
+ *     The likelihood calculation visits every genotype for each block of reads, so it reads them from here rather than
+ *     walking {@link GenotypeAlleleCounts} instances, which past the first
+ *     {@link GenotypeLikelihoodCalculators#MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY} genotypes would have to be
+ *     regenerated one after another for every block.
+ * </p>
+ *
+ * <p>
+ *     The components of genotype <i>g</i> are the entries {@link #componentStart}(g) (inclusive) to
+ *     {@link #componentStart}(g + 1) (exclusive) of {@link #getComponentRows()}, in the order of
+ *     {@link GenotypeAlleleCounts#copyAlleleCounts}. Each is encoded as <code>allele * (ploidy + 1) + count</code>,
+ *     which is the row for that allele and count in a matrix of read likelihoods stratified by allele and then by
+ *     allele count, as used by {@link GenotypeLikelihoodCalculator}.
+ * </p>
+ *
+ * <p>Instances are immutable and shared between threads.</p>
+ */
+final class GenotypeComponentTable {
+
+    private final int genotypeCount;
+
+    private final int[] componentStarts;
+
+    private final int[] componentRows;
+
+    /**
+     * @param ploidy the genotype ploidy.
+     * @param genotypeCount the number of genotypes to include.
+     * @param genotypeTable the first genotypes for that ploidy in likelihood index order; any genotypes past its end
+     *                      are generated from its last one.
+     */
+    GenotypeComponentTable(final int ploidy, final int genotypeCount, final GenotypeAlleleCounts[] genotypeTable) {
+        Utils.validateArg(ploidy > 0, () -> "ploidy must be at least 1 but was " + ploidy);
+        Utils.validateArg(genotypeCount >= 0, () -> "the genotype count cannot be negative: " + genotypeCount);
+        Utils.nonNull(genotypeTable, "the genotype table cannot be null");
+        this.genotypeCount = genotypeCount;
+        componentStarts = new int[genotypeCount + 1];
+        final IntArrayList rows = new IntArrayList(genotypeCount);
+        final int[] alleleCounts = new int[ploidy << 1];
+        GenotypeAlleleCounts genotype = genotypeCount > 0 ? genotypeTable[0] : null;
+        for (int g = 0; g < genotypeCount; g++) {
+            componentStarts[g] = rows.size();
+            final int componentCount = genotype.distinctAlleleCount();
+            genotype.copyAlleleCounts(alleleCounts, 0);
+            for (int c = 0, cc = 0; c < componentCount; c++) {
+                final int allele = alleleCounts[cc++];
+                final int count = alleleCounts[cc++];
+                rows.add(allele * (ploidy + 1) + count);
+            }
+            if (g < genotypeCount - 1) {
+                genotype = g + 1 < genotypeTable.length ? genotypeTable[g + 1] : genotype.next();
+            }
+        }
+        componentStarts[genotypeCount] = rows.size();
+        componentRows = rows.toIntArray();
+    }
+
+    int getGenotypeCount() {
+        return genotypeCount;
+    }
+
+    /**
+     * @return the position in {@link #getComponentRows()} of the first component of a genotype, or the total number of
+     *  components for {@code genotypeIndex} == {@link #getGenotypeCount()}.
+     */
+    int componentStart(final int genotypeIndex) {
+        return componentStarts[genotypeIndex];
+    }
+
+    /**
+     * The starts of every genotype as returned by {@link #componentStart}, followed by the total number of components.
+     * Must not be modified.
+     */
+    int[] getComponentStarts() {
+        return componentStarts;
+    }
+
+    /**
+     * The components of all the genotypes, encoded as described in the class documentation. Must not be modified.
+     */
+    int[] getComponentRows() {
+        return componentRows;
+    }
+}
@@ -23,7 +23,7 @@ public final class GenotypeLikelihoodCalculator {
      * Offset table for this calculator.
      *
      * <p>
-     *     This is a shallow copy of {@link GenotypeLikelihoodCalculators#alleleFirstGenotypeOffsetByPloidy} when the calculator was created
+     *     This is a shallow copy of the shared offset table of {@link GenotypeLikelihoodCalculators} when the calculator was created
      *     thus it follows the same format as that array. Please refer to its documentation.
      * </p>
      *
@@ -86,16 +86,6 @@ public final class GenotypeLikelihoodCalculator {
      */
     private double[] readAlleleLikelihoodByAlleleCount = null;
 
-    /**
-     * Buffer used as a temporary container for likelihood components for genotypes stratified by reads.
-     *
-     * <p>
-     *     It is indexed by genotype index and then by read index. The read capacity is increased as needed by calling
-     *     {@link #ensureReadCapacity(int) ensureReadCapacity}.
-     * </p>
-     */
-    private final double[][] readLikelihoodsByGenotypeIndex;
-
     /**
      * Indicates how many reads the calculator supports.
      *
@@ -105,37 +95,44 @@ public final class GenotypeLikelihoodCalculator {
     private int readCapacity = -1;
 
     /**
-     * Buffer field use as a temporal container for sorted allele counts when calculating the likelihood of a
-     * read in a genotype.
-     * <p>
-     *      This array follows the same format as {@link GenotypeAlleleCounts#sortedAlleleCounts}. Each component in the
-     *      genotype takes up two positions in the array where the first indicate the allele index and the second its frequency in the
-     *      genotype. Only non-zero frequency alleles are represented, taking up the first positions of the array.
-     * </p>
+     * Buffer field use as a temporal container for component likelihoods when calculating the likelihood of a
+     * read in a genotype with more than two distinct alleles.
      *
      * <p>
-     *     This array is sized so that it can accommodate the maximum possible number of distinct alleles in any
-     *     genotype supported by the calculator, value stored in {@link #maximumDistinctAllelesInGenotype}.
+     *     More concretely [i] == log10Lk(read | allele[i]) + log(freq[i]) where allele[i] is the ith allele
+     *     in the genotype of interest and freq[i] is the number of times it occurs in that genotype.
      * </p>
      */
-    private final int[] genotypeAllelesAndCounts;
+    private final double[] readGenotypeLikelihoodComponents;
 
     /**
-     * Buffer field use as a temporal container for component likelihoods when calculating the likelihood of a
-     * read in a genotype. It is stratified by read and the allele component of the genotype likelihood... that is
-     * the part of the likelihood sum that correspond to a particular allele in the genotype.
+     * Number of reads whose likelihoods are added up for every genotype before moving on to the next reads.
      *
      * <p>
-     *     It is implemented in a 1-dimensional array since typically one of the dimensions is rather small. Its size
-     *     is equal to {@link #readCapacity} times {@link #maximumDistinctAllelesInGenotype}.
+     *     Going through the genotypes once per block of reads, rather than once per read or over all the reads at once,
+     *     keeps the likelihoods of the block for every allele and allele count in the processor cache while they are
+     *     combined into each genotype, and spares a genotype by read matrix, which for many alleles is the largest
+     *     structure of the calculation.
      * </p>
+     */
+    static final int READ_BLOCK_SIZE = 64;
+
+    /**
+     * Largest read buffer, in number of doubles, that is kept between calls.
      *
      * <p>
-     *     More concretely [r][i] == log10Lk(read[r] | allele[i]) + log(freq[i]) where allele[i] is the ith allele
-     *     in the genotype of interest and freq[i] is the number of times it occurs in that genotype.
+     *     Calculators are reused by their thread for as long as it lives (see {@link GenotypeLikelihoodCalculators}),
+     *     so a buffer grown for a deep pileup is released after the call rather than held until the thread ends.
+     *     This size (512 KiB) covers more than 10,000 reads at a diploid biallelic site.
      * </p>
      */
-    private double[] readGenotypeLikelihoodComponents;
+    static final int MAXIMUM_RETAINED_READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Table of the genotype components, requested from {@link GenotypeLikelihoodCalculators} the first time
+     * the likelihoods are calculated.
+     */
+    private GenotypeComponentTable componentTable;
 
     /**
      * Creates a new calculator providing its ploidy and number of genotyping alleles.
@@ -150,10 +147,9 @@ public final class GenotypeLikelihoodCalculator {
         this.ploidy = ploidy;
         genotypeCount = this.alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
         alleleHeap = new PriorityQueue<>(ploidy, Comparator.<Integer>naturalOrder().reversed());
-        readLikelihoodsByGenotypeIndex = new double[genotypeCount][];
         // The number of possible components is limited by distinct allele count and ploidy.
         maximumDistinctAllelesInGenotype = Math.min(ploidy, alleleCount);
-        genotypeAllelesAndCounts = new int[maximumDistinctAllelesInGenotype * 2];
+        readGenotypeLikelihoodComponents = new double[maximumDistinctAllelesInGenotype];
     }
 
     /**
@@ -165,18 +161,10 @@ public final class GenotypeLikelihoodCalculator {
         if (readCapacity == -1) { // first time call.
             final int minimumCapacity = Math.max(requestedCapacity, 10); // Never go too small, 10 is the minimum.
             readAlleleLikelihoodByAlleleCount = new double[minimumCapacity * alleleCount * (ploidy+1)];
-            for (int i = 0; i < genotypeCount; i++) {
-                readLikelihoodsByGenotypeIndex[i] = new double[minimumCapacity];
-            }
-            readGenotypeLikelihoodComponents = new double[ploidy * minimumCapacity];
             readCapacity = minimumCapacity;
         } else if (readCapacity < requestedCapacity) {
             final int doubleCapacity = (requestedCapacity << 1);
             readAlleleLikelihoodByAlleleCount = new double[doubleCapacity * alleleCount * (ploidy+1)];
-            for (int i = 0; i < genotypeCount; i++) {
-                readLikelihoodsByGenotypeIndex[i] = new double[doubleCapacity];
-            }
-            readGenotypeLikelihoodComponents = new double[maximumDistinctAllelesInGenotype * doubleCapacity];
             readCapacity = doubleCapacity;
         }
     }
@@ -260,62 +248,89 @@ public final class GenotypeLikelihoodCalculator {
         /// [x][y][z] = z * LnLk(Read_x | Allele_y)
         final double[] readLikelihoodComponentsByAlleleCount
                 = readLikelihoodComponentsByAlleleCount(likelihoods);
-        final double[][] genotypeLikelihoodByRead = genotypeLikelihoodByRead(readLikelihoodComponentsByAlleleCount,readCount);
-        final double[] readLikelihoodsByGenotypeIndex = genotypeLikelihoods(genotypeLikelihoodByRead, readCount);
-        return GenotypeLikelihoods.fromLog10Likelihoods(readLikelihoodsByGenotypeIndex);
+        final double[] result = genotypeLikelihoods(readLikelihoodComponentsByAlleleCount, readCount);
+        releaseOversizedReadBuffer();
+        return GenotypeLikelihoods.fromLog10Likelihoods(result);
     }
 
     /**
-     * Calculates the final genotype likelihood array out of the likelihoods for each genotype per read.
-     *
-     * @param readLikelihoodsByGenotypeIndex <i>[g][r]</i> likelihoods for each genotype <i>g</i> and <i>r</i>.
-     * @param readCount number of reads in the input likelihood arrays in {@code genotypeLikelihoodByRead}.
-     * @return never {@code null}, one position per genotype where the <i>i</i> entry is the likelihood of the ith
-     *   genotype (0-based).
+     * Drops the read buffer if it is larger than {@link #MAXIMUM_RETAINED_READ_BUFFER_SIZE}; the next call
+     * allocates one of the size it needs.
      */
-    private double[] genotypeLikelihoods(final double[][] readLikelihoodsByGenotypeIndex, final int readCount) {
-        final double[] result = new double[genotypeCount];
-        final double denominator = readCount * MathUtils.log10(ploidy);
-        // instead of dividing each read likelihood by ploidy ( so subtract log10(ploidy) )
-         // we multiply them all and the divide by ploidy^readCount (so substract readCount * log10(ploidy) )
-        for (int g = 0; g < genotypeCount; g++) {
-            result[g] = MathUtils.sum(readLikelihoodsByGenotypeIndex[g], 0, readCount) - denominator;
+    private void releaseOversizedReadBuffer() {
+        if (readAlleleLikelihoodByAlleleCount != null && readAlleleLikelihoodByAlleleCount.length > MAXIMUM_RETAINED_READ_BUFFER_SIZE) {
+            readAlleleLikelihoodByAlleleCount = null;
+            readCapacity = -1;
         }
-        return result;
     }
 
     /**
-     * Calculates the likelihood component of each read on each genotype.
+     * Calculates the final genotype likelihood array out of the likelihood components of each read on each allele and
+     * allele count.
+     *
+     * <p>
+     *     The likelihood of each genotype is the sum over the reads of the log10 sum of its components, which are added
+     *     up in read order so that the result does not depend on {@link #READ_BLOCK_SIZE}.
+     * </p>
      *
      * @param readLikelihoodComponentsByAlleleCount [a][f][r] likelihood stratified by allele <i>a</i>, frequency in genotype <i>f</i> and
      *                                              read <i>r</i>.
      * @param readCount number of reads in {@code readLikelihoodComponentsByAlleleCount}.
-     * @return never {@code null}.
+     * @return never {@code null}, one position per genotype where the <i>i</i> entry is the likelihood of the ith
+     *   genotype (0-based).
      */
-    private double[][] genotypeLikelihoodByRead(final double[] readLikelihoodComponentsByAlleleCount, final int readCount) {
-
-        // Here we don't use the convenience of {@link #genotypeAlleleCountsAt(int)} within the loop to spare instantiations of
-        // GenotypeAlleleCounts class when we are dealing with many genotypes.
-        GenotypeAlleleCounts alleleCounts = genotypeAlleleCounts[0];
+    private double[] genotypeLikelihoods(final double[] readLikelihoodComponentsByAlleleCount, final int readCount) {
+        if (componentTable == null) {
+            componentTable = GenotypeLikelihoodCalculators.componentTable(ploidy, alleleCount, genotypeCount, genotypeAlleleCounts);
+        }
+        final int[] componentStarts = componentTable.getComponentStarts();
+        final int[] componentRows = componentTable.getComponentRows();
+        final double[] result = new double[genotypeCount];
 
-        for (int genotypeIndex = 0; genotypeIndex < genotypeCount; genotypeIndex++) {
-            final double[] readLikelihoods = this.readLikelihoodsByGenotypeIndex[genotypeIndex];
-            final int componentCount = alleleCounts.distinctAlleleCount();
-            switch (componentCount) {
-                case 1: //
-                    singleComponentGenotypeLikelihoodByRead(alleleCounts, readLikelihoods, readLikelihoodComponentsByAlleleCount, readCount);
-                    break;
-                case 2:
-                    twoComponentGenotypeLikelihoodByRead(alleleCounts,readLikelihoods,readLikelihoodComponentsByAlleleCount, readCount);
-                    break;
-                default:
-                    manyComponentGenotypeLikelihoodByRead(alleleCounts,readLikelihoods,readLikelihoodComponentsByAlleleCount, readCount);
-            }
-            if (genotypeIndex < genotypeCount - 1) {
-                alleleCounts = nextGenotypeAlleleCounts(alleleCounts);
+        for (int blockStart = 0; blockStart < readCount; blockStart += READ_BLOCK_SIZE) {
+            final int blockEnd = Math.min(readCount, blockStart + READ_BLOCK_SIZE);
+            for (int g = 0; g < genotypeCount; g++) {
+                final int componentStart = componentStarts[g];
+                final int componentCount = componentStarts[g + 1] - componentStart;
+                double sum = result[g];
+                switch (componentCount) {
+                    case 1: {
+                        // the count of the only component must be = ploidy.
+                        final int offset = componentRows[componentStart] * readCount;
+                        for (int r = blockStart; r < blockEnd; r++) {
+                            sum += readLikelihoodComponentsByAlleleCount[offset + r];
+                        }
+                        break;
+                    }
+                    case 2: {
+                        final int offset0 = componentRows[componentStart] * readCount;
+                        final int offset1 = componentRows[componentStart + 1] * readCount;
+                        for (int r = blockStart; r < blockEnd; r++) {
+                            sum += MathUtils.approximateLog10SumLog10(readLikelihoodComponentsByAlleleCount[offset0 + r],
+                                    readLikelihoodComponentsByAlleleCount[offset1 + r]);
+                        }
+                        break;
+                    }
+                    default:
+                        for (int r = blockStart; r < blockEnd; r++) {
+                            for (int c = 0; c < componentCount; c++) {
+                                readGenotypeLikelihoodComponents[c] =
+                                        readLikelihoodComponentsByAlleleCount[componentRows[componentStart + c] * readCount + r];
+                            }
+                            sum += MathUtils.approximateLog10SumLog10(readGenotypeLikelihoodComponents, 0, componentCount);
+                        }
+                }
+                result[g] = sum;
             }
         }
-        return readLikelihoodsByGenotypeIndex;
+
+        // instead of dividing each read likelihood by ploidy ( so subtract log10(ploidy) )
+        // we multiply them all and the divide by ploidy^readCount (so substract readCount * log10(ploidy) )
+        final double denominator = readCount * MathUtils.log10(ploidy);
+        for (int g = 0; g < genotypeCount; g++) {
+            result[g] -= denominator;
+        }
+        return result;
     }
 
     private GenotypeAlleleCounts nextGenotypeAlleleCounts(final GenotypeAlleleCounts alleleCounts) {
@@ -334,72 +349,6 @@ public final class GenotypeLikelihoodCalculator {
         return result;
     }
 
-    /**
-     * General genotype likelihood component by read calculator. It does not make any assumption in the exact
-     * number of alleles present in the genotype.
-     */
-    private void manyComponentGenotypeLikelihoodByRead(final GenotypeAlleleCounts genotypeAlleleCounts,
-                                                       final double[] likelihoodByRead,
-                                                       final double[]readLikelihoodComponentsByAlleleCount,
-                                                       final int readCount) {
-
-        // First we collect the allele likelihood component for all reads and place it
-        // in readGenotypeLikelihoodComponents for the final calculation per read.
-        genotypeAlleleCounts.copyAlleleCounts(genotypeAllelesAndCounts,0);
-        final int componentCount = genotypeAlleleCounts.distinctAlleleCount();
-        final int alleleDataSize = (ploidy + 1) * readCount;
-        for (int c = 0,cc = 0; c < componentCount; c++) {
-            final int alleleIndex = genotypeAllelesAndCounts[cc++];
-            final int alleleCount = genotypeAllelesAndCounts[cc++];
-            // alleleDataOffset will point to the index of the first read likelihood for that allele and allele count.
-            int alleleDataOffset = alleleDataSize * alleleIndex + alleleCount * readCount;
-            for (int r = 0, readDataOffset = c; r < readCount; r++, readDataOffset += maximumDistinctAllelesInGenotype) {
-                readGenotypeLikelihoodComponents[readDataOffset] = readLikelihoodComponentsByAlleleCount[alleleDataOffset++];
-            }
-        }
-
-        // Calculate the likelihood per read.
-        for (int r = 0, readDataOffset = 0; r < readCount; r++, readDataOffset += maximumDistinctAllelesInGenotype) {
-            likelihoodByRead[r] = MathUtils.approximateLog10SumLog10(readGenotypeLikelihoodComponents, readDataOffset, readDataOffset + componentCount);
-        }
-    }
-
-    /**
-     * Calculates the likelihood component by read for a given genotype allele count assuming that there are
-     * exactly two alleles present in the genotype (with arbitrary non-zero counts each).
-     */
-    private void twoComponentGenotypeLikelihoodByRead(final GenotypeAlleleCounts genotypeAlleleCounts,
-                                                      final double[] likelihoodByRead,
-                                                      final double[] readLikelihoodComponentsByAlleleCount,
-                                                      final int readCount) {
-        final int allele0 = genotypeAlleleCounts.alleleIndexAt(0);
-        final int freq0 = genotypeAlleleCounts.alleleCountAt(0);
-        final int allele1 = genotypeAlleleCounts.alleleIndexAt(1);
-        final int freq1 = ploidy - freq0; // no need to get it from genotypeAlleleCounts.
-        int allele0LnLkOffset = readCount * ((ploidy + 1) * allele0 + freq0);
-        int allele1LnLkOffset = readCount * ((ploidy + 1) * allele1 + freq1);
-        for (int r = 0; r < readCount; r++) {
-            final double lnLk0 = readLikelihoodComponentsByAlleleCount[allele0LnLkOffset++];
-            final double lnLk1 = readLikelihoodComponentsByAlleleCount[allele1LnLkOffset++];
-            likelihoodByRead[r] = MathUtils.approximateLog10SumLog10(lnLk0, lnLk1);
-        }
-    }
-
-    /**
-     * Calculates the likelihood component by read for a given genotype allele count assuming that there are
-     * exactly one allele present in the genotype.
-     */
-    private void singleComponentGenotypeLikelihoodByRead(final GenotypeAlleleCounts genotypeAlleleCounts,
-                                                         final double[] likelihoodByRead, final double[] readLikelihoodComponentsByAlleleCount, final int readCount) {
-        final int allele = genotypeAlleleCounts.alleleIndexAt(0);
-        // the count of the only component must be = ploidy.
-        int offset = (allele * (ploidy + 1) + ploidy) * readCount;
-        for (int r = 0; r < readCount; r++) {
-            likelihoodByRead[r] =
-                    readLikelihoodComponentsByAlleleCount[offset++];
-        }
-    }
-
     /**
      * Returns a 3rd matrix with the likelihood components.
      *
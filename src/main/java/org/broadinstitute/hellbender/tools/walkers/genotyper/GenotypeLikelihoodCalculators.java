@@ -1,5 +1,7 @@
 package org.broadinstitute.hellbender.tools.walkers.genotyper;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.Utils;
@@ -7,6 +9,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Genotype likelihood calculator utility.
@@ -15,20 +19,16 @@ import java.util.Arrays;
  *     This class provide genotype likelihood calculators with any number of alleles able given an arbitrary ploidy and allele
  *     count (number of distinct alleles).
  * </p>
+ *
+ * <p>
+ *     It is safe to use from multiple threads: the genotype tables are shared by all instances and threads, and each
+ *     thread gets its own calculators, which are reused for every request with the same ploidy and allele count.
+ * </p>
  */
 public final class GenotypeLikelihoodCalculators {
 
     private static final Logger logger = LogManager.getLogger(GenotypeLikelihoodCalculators.class);
 
-    /**
-     * The current maximum ploidy supported by the tables.
-     * <p>
-     *     Its initial value indicates the initial capacity of the shared {@link #genotypeTableByPloidy}. Feel free
-     *     to change it to anything reasonable that is non-negative.
-     * </p>
-     */
-    private int maximumPloidy = 2; // its initial value is the initial capacity of the shared tables.
-
     /**
      * Maximum possible number of genotypes that this calculator can handle.
      */
@@ -40,33 +40,75 @@ public final class GenotypeLikelihoodCalculators {
     static final int GENOTYPE_COUNT_OVERFLOW = -1;
 
     /**
-     * The current maximum allele index supported by the tables.
+     * Genotype tables shared by all instances of this class.
+     *
      * <p>
-     *     Its initial value indicates the initial capacity of the shared {@link #alleleFirstGenotypeOffsetByPloidy} table.
-     *     Feel free to change it to anything reasonable that is non-negative.
+     *     Tables are never modified once published; when a larger ploidy or allele count is requested a larger copy
+     *     replaces them under a lock, so they can be read by any thread without one.
      * </p>
      */
-    private int maximumAllele = 1; // its initial value is the initial capacity of the shared tables.
+    private static volatile GenotypeTables tables = new GenotypeTables(2, 1);
 
     /**
-     * Shared copy of the offset table as described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
+     * Calculators handed out to each thread by {@link #getInstance}, keyed by {@link #calculatorKey}.
      *
-     * This reference holds the largest requested so far in terms of maximum-allele and maximum-ploidy.
+     * <p>
+     *     A calculator keeps buffers between calls so it cannot be shared between threads, but it can be reused by
+     *     the same thread for as many sites and samples as it likes, sparing the allocation of a new one each time.
+     * </p>
      */
-    private int[][] alleleFirstGenotypeOffsetByPloidy =
-            buildAlleleFirstGenotypeOffsetTable(maximumPloidy, maximumAllele);
+    private static final ThreadLocal<Long2ObjectMap<GenotypeLikelihoodCalculator>> calculatorsByThread =
+            ThreadLocal.withInitial(Long2ObjectOpenHashMap::new);
 
+    /**
+     * Genotype component tables shared by the calculators of all threads, keyed by {@link #calculatorKey}.
+     */
+    private static final ConcurrentMap<Long, GenotypeComponentTable> componentTables = new ConcurrentHashMap<>();
 
     /**
-     * Shared table of genotypes give the ploidy sorted by their index in the likelihood array.
-     *
-     * <p>
-     *  Its format is described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
-     * </p>
+     * Tables with the genotypes of every ploidy up to a maximum, sorted by their index in the likelihood array.
      */
-    private GenotypeAlleleCounts[][] genotypeTableByPloidy =
-            buildGenotypeAlleleCountsTable(maximumPloidy,maximumAllele,alleleFirstGenotypeOffsetByPloidy);
+    private static final class GenotypeTables {
+
+        /**
+         * The maximum ploidy supported by the tables.
+         */
+        private final int maximumPloidy;
+
+        /**
+         * The maximum allele index supported by the tables.
+         */
+        private final int maximumAllele;
+
+        /**
+         * Offset table as described in {@link #buildAlleleFirstGenotypeOffsetTable(int, int)}.
+         */
+        private final int[][] alleleFirstGenotypeOffsetByPloidy;
+
+        /**
+         * Table of genotypes given the ploidy sorted by their index in the likelihood array.
+         *
+         * <p>
+         *  Its format is described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
+         * </p>
+         */
+        private final GenotypeAlleleCounts[][] genotypeTableByPloidy;
+
+        private GenotypeTables(final int maximumPloidy, final int maximumAllele) {
+            this.maximumPloidy = maximumPloidy;
+            this.maximumAllele = maximumAllele;
+            alleleFirstGenotypeOffsetByPloidy = buildAlleleFirstGenotypeOffsetTable(maximumPloidy, maximumAllele);
+            genotypeTableByPloidy = buildGenotypeAlleleCountsTable(maximumPloidy, maximumAllele, alleleFirstGenotypeOffsetByPloidy);
+        }
+
+        private boolean supports(final int ploidy, final int alleleCount) {
+            return ploidy <= maximumPloidy && alleleCount <= maximumAllele;
+        }
+    }
 
+    /**
+     * Creates a handle on the shared genotype tables and calculators; all instances share the same ones.
+     */
     public GenotypeLikelihoodCalculators(){
 
     }
@@ -250,6 +292,11 @@ public final class GenotypeLikelihoodCalculators {
     /**
      * Returns an instance given its ploidy and the number of alleles.
      *
+     * <p>
+     *     Calls from the same thread with the same ploidy and allele count return the same instance, which must not
+     *     be handed to other threads.
+     * </p>
+     *
      * @param alleleCount the required allele-count.
      * @param ploidy the required ploidy-count.
      *
@@ -260,45 +307,72 @@ public final class GenotypeLikelihoodCalculators {
     public GenotypeLikelihoodCalculator getInstance(final int ploidy, final int alleleCount) {
         checkPloidyAndMaximumAllele(ploidy, alleleCount);
 
-        if (calculateGenotypeCountUsingTables(ploidy, alleleCount) == GENOTYPE_COUNT_OVERFLOW) {
+        final Long2ObjectMap<GenotypeLikelihoodCalculator> calculators = calculatorsByThread.get();
+        final long key = calculatorKey(ploidy, alleleCount);
+        final GenotypeLikelihoodCalculator cached = calculators.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final GenotypeTables genotypeTables = tablesWithCapacity(ploidy, alleleCount);
+        if (genotypeTables.alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount] == GENOTYPE_COUNT_OVERFLOW) {
             final double largeGenotypeCount = Math.pow(10, MathUtils.log10BinomialCoefficient(ploidy + alleleCount - 1, alleleCount - 1));
             throw new IllegalArgumentException(String.format("the number of genotypes is too large for ploidy %d and allele %d: approx. %.0f", ploidy, alleleCount, largeGenotypeCount));
         }
 
         // At this point the tables must have at least the requested capacity, likely to be much more.
-        return new GenotypeLikelihoodCalculator(ploidy, alleleCount, alleleFirstGenotypeOffsetByPloidy, genotypeTableByPloidy);
+        final GenotypeLikelihoodCalculator result = new GenotypeLikelihoodCalculator(ploidy, alleleCount,
+                genotypeTables.alleleFirstGenotypeOffsetByPloidy, genotypeTables.genotypeTableByPloidy);
+        calculators.put(key, result);
+        return result;
     }
 
     /**
-     * Update of shared tables
+     * Returns the genotype component table for a ploidy and allele count, building it the first time it is requested
+     * by any thread.
+     *
+     * @param ploidy the required ploidy.
+     * @param alleleCount the required allele-count.
+     * @param genotypeCount the number of genotypes for that ploidy and allele count.
+     * @param genotypeTable the genotypes for that ploidy as found in the shared tables, possibly only the first ones.
      *
-     * @param requestedMaximumAllele the new requested maximum allele maximum.
-     * @param requestedMaximumPloidy the new requested ploidy maximum.
+     * @return never {@code null}.
      */
-    private void ensureCapacity(final int requestedMaximumAllele, final int requestedMaximumPloidy) {
+    static GenotypeComponentTable componentTable(final int ploidy, final int alleleCount, final int genotypeCount,
+                                                 final GenotypeAlleleCounts[] genotypeTable) {
+        return componentTables.computeIfAbsent(calculatorKey(ploidy, alleleCount),
+                key -> new GenotypeComponentTable(ploidy, genotypeCount, genotypeTable));
+    }
 
-        final boolean needsToExpandAlleleCapacity = requestedMaximumAllele > maximumAllele;
-        final boolean needsToExpandPloidyCapacity = requestedMaximumPloidy > maximumPloidy;
+    private static long calculatorKey(final int ploidy, final int alleleCount) {
+        return ((long) ploidy << Integer.SIZE) | alleleCount;
+    }
 
-        // Double check with the lock on to avoid double work.
-        if (!needsToExpandAlleleCapacity && !needsToExpandPloidyCapacity) {
-            return;
+    /**
+     * Returns shared tables with at least the capacity requested, expanding them if needed.
+     *
+     * @param requestedMaximumPloidy the requested ploidy maximum.
+     * @param requestedMaximumAllele the requested allele maximum.
+     */
+    private static GenotypeTables tablesWithCapacity(final int requestedMaximumPloidy, final int requestedMaximumAllele) {
+        final GenotypeTables current = tables;
+        if (current.supports(requestedMaximumPloidy, requestedMaximumAllele)) {
+            return current;
         }
+        synchronized (GenotypeLikelihoodCalculators.class) {
+            // Double check with the lock on to avoid double work.
+            final GenotypeTables latest = tables;
+            if (latest.supports(requestedMaximumPloidy, requestedMaximumAllele)) {
+                return latest;
+            }
 
-        final int newMaximumPloidy = Math.max(maximumPloidy, requestedMaximumPloidy);
-        final int newMaximumAllele = Math.max(maximumAllele, requestedMaximumAllele);
-
-        logger.debug("Expanding capacity ploidy:" + maximumPloidy + "->" + newMaximumPloidy + " allele:" +  maximumAllele +"->" + newMaximumAllele );
+            final int newMaximumPloidy = Math.max(latest.maximumPloidy, requestedMaximumPloidy);
+            final int newMaximumAllele = Math.max(latest.maximumAllele, requestedMaximumAllele);
 
-        // Update tables first.
-        alleleFirstGenotypeOffsetByPloidy = buildAlleleFirstGenotypeOffsetTable(newMaximumPloidy,newMaximumAllele);
-        genotypeTableByPloidy = buildGenotypeAlleleCountsTable(newMaximumPloidy,newMaximumAllele,alleleFirstGenotypeOffsetByPloidy);
+            logger.debug("Expanding capacity ploidy:" + latest.maximumPloidy + "->" + newMaximumPloidy + " allele:" +  latest.maximumAllele +"->" + newMaximumAllele );
 
-        if (needsToExpandAlleleCapacity) {
-            maximumAllele = requestedMaximumAllele;
-        }
-        if (needsToExpandPloidyCapacity) {
-            maximumPloidy = requestedMaximumPloidy;
+            tables = new GenotypeTables(newMaximumPloidy, newMaximumAllele);
+            return tables;
         }
     }
 
@@ -380,11 +454,8 @@ public final class GenotypeLikelihoodCalculators {
         throw new GATKException("Code should never reach here.");
     }
 
-    private int calculateGenotypeCountUsingTables(int ploidy, int alleleCount) {
+    private static int calculateGenotypeCountUsingTables(int ploidy, int alleleCount) {
         checkPloidyAndMaximumAllele(ploidy, alleleCount);
-        if (ploidy > maximumPloidy || alleleCount > maximumAllele) {
-            ensureCapacity(alleleCount, ploidy);
-        }
-        return alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
+        return tablesWithCapacity(ploidy, alleleCount).alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
     }
-}
\ No newline at end of file
+}
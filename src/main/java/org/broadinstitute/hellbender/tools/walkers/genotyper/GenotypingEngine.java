@@ -30,7 +30,7 @@ import java.util.stream.Stream;
  */
 public abstract class GenotypingEngine<Config extends StandardCallerArgumentCollection> {
 
-    protected final AFCalculator newAFCalculator;
+    protected final AlleleFrequencyCalculator newAFCalculator;
 
     protected final AFCalculatorProvider afCalculatorProvider;
 
@@ -80,7 +80,15 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
         final double refPseudocount = configuration.genotypeArgs.snpHeterozygosity / Math.pow(configuration.genotypeArgs.heterozygosityStandardDeviation,2);
         final double snpPseudocount = configuration.genotypeArgs.snpHeterozygosity * refPseudocount;
         final double indelPseudocount = configuration.genotypeArgs.indelHeterozygosity * refPseudocount;
-        newAFCalculator = new AlleleFrequencyCalculator(refPseudocount, snpPseudocount, indelPseudocount, configuration.genotypeArgs.samplePloidy);
+        newAFCalculator = new AlleleFrequencyCalculator(refPseudocount, snpPseudocount, indelPseudocount,
+                configuration.genotypeArgs.samplePloidy, configuration.genotypeArgs.MAX_GENOTYPE_COUNT);
+    }
+
+    /**
+     * @return counts of how often the new allele frequency calculator pruned alleles at the sites genotyped by this engine
+     */
+    public AlleleFrequencyPruningMetrics getAlleleFrequencyPruningMetrics() {
+        return newAFCalculator.getPruningMetrics();
     }
 
     /**
@@ -398,7 +406,10 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
         return new OutputAlleleSubset(outputAlleles,mleCounts,siteIsMonomorphic);
     }
 
-    void clearUpstreamDeletionsLoc() {
+    /**
+     * Forgets the deletions called so far, which decide whether later spanning deletion alleles are kept
+     */
+    public void clearUpstreamDeletionsLoc() {
         upstreamDeletionsLoc.clear();
     }
 
@@ -4,6 +4,7 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.commons.math3.util.MathArrays;
 import org.broadinstitute.hellbender.tools.walkers.genotyper.GenotypeAlleleCounts;
 import org.broadinstitute.hellbender.tools.walkers.genotyper.GenotypeLikelihoodCalculator;
@@ -13,13 +14,28 @@ import org.broadinstitute.hellbender.utils.IndexRange;
 import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.Utils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
+ * Computes the posterior probability that alleles are segregating from the genotype likelihoods of the samples by
+ * iteratively estimating the allele frequencies under a Dirichlet prior.
+ *
+ * <p>
+ *     The cost of each iteration is the number of samples times the number of genotypes, which grows quickly with the
+ *     number of alleles.  Before iterating, alternate alleles that no sample could plausibly carry are therefore pruned
+ *     by a cheap pass over the likelihoods (see {@link #log10AlleleEvidence}), and the calculation proceeds as if they
+ *     were not in the VariantContext: their MLE count is 0 and their probability of being absent is 1.  If more than a
+ *     maximum number of genotypes would remain, the alternate alleles with the least evidence are dropped too, and the
+ *     number of iterations is capped.  How often this happens is recorded in {@link #getPruningMetrics()}.
+ * </p>
+ *
  * @author David Benjamin &lt;davidben@broadinstitute.org&gt;
  */
 public final class AlleleFrequencyCalculator extends AFCalculator {
@@ -27,17 +43,48 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
     private static final double THRESHOLD_FOR_ALLELE_COUNT_CONVERGENCE = 0.1;
     private static final int HOM_REF_GENOTYPE_INDEX = 0;
 
+    /**
+     * Alternate alleles whose bound on the probability of being carried by any sample is below 10 to this power are
+     * pruned before the calculation.
+     */
+    static final double LOG10_ALLELE_PRUNING_THRESHOLD = -4.0;
+
+    /**
+     * The allele frequencies normally converge in a handful of iterations; this only bounds the cost of pathological sites.
+     */
+    static final int MAXIMUM_ITERATIONS = 100;
+
     private final double refPseudocount;
     private final double snpPseudocount;
     private final double indelPseudocount;
     private final int defaultPloidy;
+    private final int maximumGenotypeCount;
+    private final AlleleFrequencyPruningMetrics pruningMetrics = new AlleleFrequencyPruningMetrics();
 
 
     public AlleleFrequencyCalculator(final double refPseudocount, final double snpPseudocount, final double indelPseudocount, final int defaultPloidy) {
+        this(refPseudocount, snpPseudocount, indelPseudocount, defaultPloidy, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maximumGenotypeCount the alternate alleles with the least evidence are dropped from sites where the
+     *                             remaining alleles would have more genotypes than this
+     */
+    public AlleleFrequencyCalculator(final double refPseudocount, final double snpPseudocount, final double indelPseudocount,
+                                     final int defaultPloidy, final int maximumGenotypeCount) {
+        Utils.validateArg(maximumGenotypeCount > 0, () -> "the maximum genotype count must be positive but was " + maximumGenotypeCount);
         this.refPseudocount = refPseudocount;
         this.snpPseudocount = snpPseudocount;
         this.indelPseudocount = indelPseudocount;
         this.defaultPloidy = defaultPloidy;
+        this.maximumGenotypeCount = maximumGenotypeCount;
+    }
+
+    /**
+     * @return counts of the sites where this calculator pruned alleles or bounded the calculation
+     */
+    public AlleleFrequencyPruningMetrics getPruningMetrics() {
+        return pruningMetrics;
     }
 
     public AFCalculationResult getLog10PNonRef(final VariantContext vc) {
@@ -61,15 +108,51 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
         final List<Allele> alleles = vc.getAlleles();
         Utils.validateArg( numAlleles > 1, () -> "VariantContext has only a single reference allele, but getLog10PNonRef requires at least one at all " + vc);
 
-        final double[] priorPseudocounts = alleles.stream()
+        final List<SampleLikelihoods> samples = sampleLikelihoods(vc, defaultPloidy, numAlleles);
+
+        // choose the alleles to keep
+        final double[] log10AlleleEvidence = log10AlleleEvidence(samples, numAlleles);
+        final boolean[] kept = new boolean[numAlleles];
+        kept[0] = true;
+        int numPrunedAlleles = 0;
+        for (int allele = 1; allele < numAlleles; allele++) {
+            kept[allele] = samples.isEmpty() || log10AlleleEvidence[allele] >= LOG10_ALLELE_PRUNING_THRESHOLD;
+            numPrunedAlleles += kept[allele] ? 0 : 1;
+        }
+        final boolean[] keptBeforeGenotypeLimit = kept.clone();
+        int numAllelesOverGenotypeLimit = dropAllelesOverGenotypeLimit(samples, kept, log10AlleleEvidence);
+
+        // without a variant allele the probability of a variant would be exactly 0, so keep the best one even if it's unlikely
+        if (IntStream.range(1, numAlleles).noneMatch(a -> kept[a] && !alleles.get(a).equals(Allele.SPAN_DEL))) {
+            final int bestVariantAllele = IntStream.range(1, numAlleles).filter(a -> !alleles.get(a).equals(Allele.SPAN_DEL)).boxed()
+                    .max(Comparator.comparingDouble(a -> log10AlleleEvidence[a])).orElse(-1);
+            if (bestVariantAllele > 0) {
+                kept[bestVariantAllele] = true;
+                if (keptBeforeGenotypeLimit[bestVariantAllele]) {
+                    numAllelesOverGenotypeLimit--;
+                } else {
+                    numPrunedAlleles--;
+                }
+            }
+        }
+
+        final int[] keptAlleleIndices = IntStream.range(0, numAlleles).filter(a -> kept[a]).toArray();
+        final int numKeptAlleles = keptAlleleIndices.length;
+        final List<Allele> keptAlleles = numKeptAlleles == numAlleles ? alleles
+                : Arrays.stream(keptAlleleIndices).mapToObj(alleles::get).collect(Collectors.toList());
+        final List<SampleLikelihoods> keptSamples = numKeptAlleles == numAlleles ? samples
+                : subsetAlleles(samples, numAlleles, keptAlleleIndices);
+
+        final double[] priorPseudocounts = keptAlleles.stream()
                 .mapToDouble(a -> a.isReference() ? refPseudocount : (a.length() > 1 ? snpPseudocount : indelPseudocount)).toArray();
 
-        double[] alleleCounts = new double[numAlleles];
-        final double flatLog10AlleleFrequency = -MathUtils.log10(numAlleles); // log10(1/numAlleles)
-        double[] log10AlleleFrequencies = new IndexRange(0, numAlleles).mapToDouble(n -> flatLog10AlleleFrequency);
+        double[] alleleCounts = new double[numKeptAlleles];
+        final double flatLog10AlleleFrequency = -MathUtils.log10(numKeptAlleles); // log10(1/numAlleles)
+        double[] log10AlleleFrequencies = new IndexRange(0, numKeptAlleles).mapToDouble(n -> flatLog10AlleleFrequency);
 
-        for (double alleleCountsMaximumDifference = Double.POSITIVE_INFINITY; alleleCountsMaximumDifference > THRESHOLD_FOR_ALLELE_COUNT_CONVERGENCE; ) {
-            final double[] newAlleleCounts = effectiveAlleleCounts(vc, log10AlleleFrequencies);
+        double alleleCountsMaximumDifference = Double.POSITIVE_INFINITY;
+        for (int iteration = 0; alleleCountsMaximumDifference > THRESHOLD_FOR_ALLELE_COUNT_CONVERGENCE && iteration < MAXIMUM_ITERATIONS; iteration++) {
+            final double[] newAlleleCounts = effectiveAlleleCounts(keptSamples, log10AlleleFrequencies);
             alleleCountsMaximumDifference = Arrays.stream(MathArrays.ebeSubtract(alleleCounts, newAlleleCounts)).map(Math::abs).max().getAsDouble();
             alleleCounts = newAlleleCounts;
             final double[] posteriorPseudocounts = MathArrays.ebeAdd(priorPseudocounts, alleleCounts);
@@ -79,26 +162,24 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
             // basically, we want a chance to get non-zero pseudocounts before using a prior that's biased against a variant
             log10AlleleFrequencies = new Dirichlet(posteriorPseudocounts).log10MeanWeights();
         }
+        final boolean reachedIterationLimit = alleleCountsMaximumDifference > THRESHOLD_FOR_ALLELE_COUNT_CONVERGENCE;
 
-        double[] log10POfZeroCountsByAllele = new double[numAlleles];
+        double[] log10POfZeroCountsByAllele = new double[numKeptAlleles];
         double log10PNoVariant = 0;
 
-        final boolean spanningDeletionPresent = alleles.contains(Allele.SPAN_DEL);
+        final boolean spanningDeletionPresent = keptAlleles.contains(Allele.SPAN_DEL);
         final Map<Integer, int[]> nonVariantIndicesByPloidy = new Int2ObjectArrayMap<>();
-        for (final Genotype g : vc.getGenotypes()) {
-            if (!g.hasLikelihoods()) {
-                continue;
-            }
-            final int ploidy = g.getPloidy() == 0 ? defaultPloidy : g.getPloidy();
-            final GenotypeLikelihoodCalculator glCalc = GL_CALCS.getInstance(ploidy, numAlleles);
+        for (final SampleLikelihoods sample : keptSamples) {
+            final SiteGenotypes genotypes = sample.genotypes;
+            final int ploidy = genotypes.ploidy;
 
-            final double[] log10GenotypePosteriors = log10NormalizedGenotypePosteriors(g, glCalc, log10AlleleFrequencies);
+            final double[] log10GenotypePosteriors = log10NormalizedGenotypePosteriors(sample, log10AlleleFrequencies);
 
             //the total probability
             if (!spanningDeletionPresent) {
                 log10PNoVariant += log10GenotypePosteriors[HOM_REF_GENOTYPE_INDEX];
             } else {
-                nonVariantIndicesByPloidy.computeIfAbsent(ploidy, p -> genotypeIndicesWithOnlyRefAndSpanDel(p, alleles));
+                nonVariantIndicesByPloidy.computeIfAbsent(ploidy, p -> genotypeIndicesWithOnlyRefAndSpanDel(p, keptAlleles));
                 final int[] nonVariantIndices = nonVariantIndicesByPloidy.get(ploidy);
                 final double[] nonVariantLog10Posteriors = MathUtils.applyToArray(nonVariantIndices, n -> log10GenotypePosteriors[n]);
                 log10PNoVariant += MathUtils.log10SumLog10(nonVariantLog10Posteriors);
@@ -106,17 +187,19 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
 
             // per allele non-log space probabilities of zero counts for this sample
             // for each allele calculate the total probability of genotypes containing at least one copy of the allele
-            final double[] log10ProbabilityOfNonZeroAltAlleles = new double[numAlleles];
+            final double[] log10ProbabilityOfNonZeroAltAlleles = new double[numKeptAlleles];
             Arrays.fill(log10ProbabilityOfNonZeroAltAlleles, Double.NEGATIVE_INFINITY);
 
-            for (int genotype = 0; genotype < glCalc.genotypeCount(); genotype++) {
+            for (int genotype = 0; genotype < genotypes.genotypeCount; genotype++) {
                 final double log10GenotypePosterior = log10GenotypePosteriors[genotype];
-                glCalc.genotypeAlleleCountsAt(genotype).forEachAlleleIndexAndCount((alleleIndex, count) ->
-                        log10ProbabilityOfNonZeroAltAlleles[alleleIndex] =
-                                MathUtils.log10SumLog10(log10ProbabilityOfNonZeroAltAlleles[alleleIndex], log10GenotypePosterior));
+                for (int component = genotypes.componentStarts[genotype]; component < genotypes.componentStarts[genotype + 1]; component++) {
+                    final int alleleIndex = genotypes.componentAlleles[component];
+                    log10ProbabilityOfNonZeroAltAlleles[alleleIndex] =
+                            MathUtils.log10SumLog10(log10ProbabilityOfNonZeroAltAlleles[alleleIndex], log10GenotypePosterior);
+                }
             }
 
-            for (int allele = 0; allele < numAlleles; allele++) {
+            for (int allele = 0; allele < numKeptAlleles; allele++) {
                 // if prob of non hom ref == 1 up to numerical precision, short-circuit to avoid NaN
                 if (log10ProbabilityOfNonZeroAltAlleles[allele] >= 0) {
                     log10POfZeroCountsByAllele[allele] = Double.NEGATIVE_INFINITY;
@@ -126,14 +209,20 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
             }
         }
 
+        pruningMetrics.recordSite(numPrunedAlleles, numAllelesOverGenotypeLimit, reachedIterationLimit);
+
         // unfortunately AFCalculationResult expects integers for the MLE.  We really should emit the EM no-integer values
         // which are valuable (eg in CombineGVCFs) as the sufficient statistics of the Dirichlet posterior on allele frequencies
-        final int[] integerAlleleCounts = Arrays.stream(alleleCounts).mapToInt(x -> (int) Math.round(x)).toArray();
-        final int[] integerAltAlleleCounts = Arrays.copyOfRange(integerAlleleCounts, 1, numAlleles);
-
+        // pruned alleles have an MLE count of 0 and are certainly absent
+        final int[] integerAltAlleleCounts = new int[numAlleles - 1];
+        final Map<Allele, Double> log10PRefByAllele = new HashMap<>(numAlleles);
+        IntStream.range(1, numAlleles).filter(a -> !kept[a]).forEach(a -> log10PRefByAllele.put(alleles.get(a), 0.0));
         //skip the ref allele (index 0)
-        final Map<Allele, Double> log10PRefByAllele = IntStream.range(1, numAlleles).boxed()
-                .collect(Collectors.toMap(alleles::get, a -> log10POfZeroCountsByAllele[a]));
+        for (int keptAllele = 1; keptAllele < numKeptAlleles; keptAllele++) {
+            final int allele = keptAlleleIndices[keptAllele];
+            integerAltAlleleCounts[allele - 1] = (int) Math.round(alleleCounts[keptAllele]);
+            log10PRefByAllele.put(alleles.get(allele), log10POfZeroCountsByAllele[keptAllele]);
+        }
 
         // we compute posteriors here and don't have the same prior that AFCalculationResult expects.  Therefore, we
         // give it our posterior as its "likelihood" along with a flat dummy prior
@@ -143,37 +232,138 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
         return new AFCalculationResult(integerAltAlleleCounts, alleles, log10PosteriorOfNoVariantYesVariant, dummyFlatPrior, log10PRefByAllele);
     }
 
+    /**
+     * Extracts the likelihoods of the samples that have them, once per site, so that the iterations don't go back to
+     * the Genotype objects
+     */
+    private static List<SampleLikelihoods> sampleLikelihoods(final VariantContext vc, final int defaultPloidy, final int numAlleles) {
+        final Map<Integer, SiteGenotypes> genotypesByPloidy = new Int2ObjectArrayMap<>();
+        final List<SampleLikelihoods> result = new ArrayList<>(vc.getNSamples());
+        for (final Genotype g : vc.getGenotypes()) {
+            if (!g.hasLikelihoods()) {
+                continue;
+            }
+            final int ploidy = g.getPloidy() == 0 ? defaultPloidy : g.getPloidy();
+            final SiteGenotypes genotypes = genotypesByPloidy.computeIfAbsent(ploidy, p -> new SiteGenotypes(p, numAlleles));
+            result.add(new SampleLikelihoods(genotypes, g.getLikelihoods().getAsVector()));
+        }
+        return result;
+    }
+
+    /**
+     * For each allele, the log10 of an upper bound on the probability that any sample carries it, using a flat allele
+     * frequency prior as in the first iteration.
+     *
+     * <p>
+     *     With genotype weights w_g = likelihood(g) * (multinomial coefficient of g), the probability that a sample
+     *     carries allele a is SUM_{g containing a} w_g / SUM_g w_g, which is at most G * MAX_{g containing a} w_g / MAX_g w_g
+     *     for G genotypes.  The sum of this over the samples bounds the probability that any of them carries a.
+     * </p>
+     */
+    private static double[] log10AlleleEvidence(final List<SampleLikelihoods> samples, final int numAlleles) {
+        final double[] result = new double[numAlleles];
+        Arrays.fill(result, Double.NEGATIVE_INFINITY);
+        final double[] bestLog10WeightWithAllele = new double[numAlleles];
+        for (final SampleLikelihoods sample : samples) {
+            final SiteGenotypes genotypes = sample.genotypes;
+            Arrays.fill(bestLog10WeightWithAllele, Double.NEGATIVE_INFINITY);
+            double bestLog10Weight = Double.NEGATIVE_INFINITY;
+            for (int genotype = 0; genotype < genotypes.genotypeCount; genotype++) {
+                final double log10Weight = sample.log10Likelihoods[genotype] + genotypes.log10CombinationCounts[genotype];
+                bestLog10Weight = Math.max(bestLog10Weight, log10Weight);
+                for (int component = genotypes.componentStarts[genotype]; component < genotypes.componentStarts[genotype + 1]; component++) {
+                    final int allele = genotypes.componentAlleles[component];
+                    bestLog10WeightWithAllele[allele] = Math.max(bestLog10WeightWithAllele[allele], log10Weight);
+                }
+            }
+            final double log10GenotypeCount = MathUtils.log10(genotypes.genotypeCount);
+            for (int allele = 0; allele < numAlleles; allele++) {
+                result[allele] = MathUtils.log10SumLog10(result[allele], bestLog10WeightWithAllele[allele] - bestLog10Weight + log10GenotypeCount);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the kept alternate alleles with the least evidence until the genotypes of every sample ploidy number no
+     * more than the maximum genotype count, always keeping at least one alternate allele.
+     *
+     * @return the number of alleles dropped
+     */
+    private int dropAllelesOverGenotypeLimit(final List<SampleLikelihoods> samples, final boolean[] kept, final double[] log10AlleleEvidence) {
+        if (maximumGenotypeCount == Integer.MAX_VALUE || samples.isEmpty()) {
+            return 0;
+        }
+        final int maximumPloidy = samples.stream().mapToInt(s -> s.genotypes.ploidy).max().getAsInt();
+        final int maximumAlleleCount = Math.max(2, GenotypeLikelihoodCalculators.computeMaxAcceptableAlleleCount(maximumPloidy, maximumGenotypeCount));
+        final int[] keptAltAllelesByEvidence = IntStream.range(1, kept.length).filter(a -> kept[a]).boxed()
+                .sorted(Comparator.comparingDouble(a -> -log10AlleleEvidence[a])).mapToInt(a -> a).toArray();
+        // the ref allele is kept too
+        final int numToDrop = keptAltAllelesByEvidence.length + 1 - maximumAlleleCount;
+        for (int n = 0; n < numToDrop; n++) {
+            kept[keptAltAllelesByEvidence[keptAltAllelesByEvidence.length - 1 - n]] = false;
+        }
+        return Math.max(numToDrop, 0);
+    }
+
+    /**
+     * Restricts the likelihoods of every sample to the genotypes made of the kept alleles
+     *
+     * @param keptAlleleIndices the original indices of the kept alleles, in increasing order, starting with the reference
+     */
+    private static List<SampleLikelihoods> subsetAlleles(final List<SampleLikelihoods> samples, final int numAlleles, final int[] keptAlleleIndices) {
+        final Map<Integer, SiteGenotypes> genotypesByPloidy = new Int2ObjectArrayMap<>();
+        final Map<Integer, int[]> genotypeIndexMapsByPloidy = new Int2ObjectArrayMap<>();
+        final List<SampleLikelihoods> result = new ArrayList<>(samples.size());
+        for (final SampleLikelihoods sample : samples) {
+            final int ploidy = sample.genotypes.ploidy;
+            final SiteGenotypes genotypes = genotypesByPloidy.computeIfAbsent(ploidy, p -> new SiteGenotypes(p, keptAlleleIndices.length));
+            final int[] genotypeIndexMap = genotypeIndexMapsByPloidy.computeIfAbsent(ploidy,
+                    p -> GL_CALCS.getInstance(p, numAlleles).genotypeIndexMap(keptAlleleIndices, GL_CALCS));
+            result.add(new SampleLikelihoods(genotypes, MathUtils.applyToArray(genotypeIndexMap, n -> sample.log10Likelihoods[n])));
+        }
+        return result;
+    }
+
     // effectiveAlleleCounts[allele a] = SUM_{genotypes g} (posterior_probability(g) * num_copies of a in g), which we denote as SUM [n_g p_g]
     // for numerical stability we will do this in log space:
     // count = SUM 10^(log (n_g p_g)) = SUM 10^(log n_g + log p_g)
     // thanks to the log-sum-exp trick this lets us work with log posteriors alone
-    private double[] effectiveAlleleCounts(final VariantContext vc, final double[] log10AlleleFrequencies) {
-        final int numAlleles = vc.getNAlleles();
-        Utils.validateArg(numAlleles == log10AlleleFrequencies.length, "number of alleles inconsistent");
+    private static double[] effectiveAlleleCounts(final List<SampleLikelihoods> samples, final double[] log10AlleleFrequencies) {
+        final int numAlleles = log10AlleleFrequencies.length;
         final double[] log10Result = new double[numAlleles];
         Arrays.fill(log10Result, Double.NEGATIVE_INFINITY);
-        for (final Genotype g : vc.getGenotypes()) {
-            if (!g.hasLikelihoods()) {
-                continue;
-            }
-            final GenotypeLikelihoodCalculator glCalc = GL_CALCS.getInstance(g.getPloidy(), numAlleles);
+        for (final SampleLikelihoods sample : samples) {
+            final SiteGenotypes genotypes = sample.genotypes;
+            Utils.validateArg(numAlleles == genotypes.numAlleles, "number of alleles inconsistent");
 
-            final double[] log10GenotypePosteriors = log10NormalizedGenotypePosteriors(g, glCalc, log10AlleleFrequencies);
+            final double[] log10GenotypePosteriors = log10NormalizedGenotypePosteriors(sample, log10AlleleFrequencies);
 
-            new IndexRange(0, glCalc.genotypeCount()).forEach(genotypeIndex ->
-                glCalc.genotypeAlleleCountsAt(genotypeIndex).forEachAlleleIndexAndCount((alleleIndex, count) ->
-                        log10Result[alleleIndex] = MathUtils.log10SumLog10(log10Result[alleleIndex], log10GenotypePosteriors[genotypeIndex] + MathUtils.log10(count))));
+            for (int genotype = 0; genotype < genotypes.genotypeCount; genotype++) {
+                for (int component = genotypes.componentStarts[genotype]; component < genotypes.componentStarts[genotype + 1]; component++) {
+                    final int alleleIndex = genotypes.componentAlleles[component];
+                    log10Result[alleleIndex] = MathUtils.log10SumLog10(log10Result[alleleIndex],
+                            log10GenotypePosteriors[genotype] + MathUtils.log10(genotypes.componentCounts[component]));
+                }
+            }
         }
         return MathUtils.applyToArrayInPlace(log10Result, x -> Math.pow(10.0, x));
     }
 
-    private static double[] log10NormalizedGenotypePosteriors(final Genotype g, final GenotypeLikelihoodCalculator glCalc, final double[] log10AlleleFrequencies) {
-        final double[] log10Likelihoods = g.getLikelihoods().getAsVector();
-        final double[] log10Posteriors = new IndexRange(0, glCalc.genotypeCount()).mapToDouble(genotypeIndex -> {
-            final GenotypeAlleleCounts gac = glCalc.genotypeAlleleCountsAt(genotypeIndex);
-            return gac.log10CombinationCount() + log10Likelihoods[genotypeIndex]
-                    + gac.sumOverAlleleIndicesAndCounts((index, count) -> count * log10AlleleFrequencies[index]);
-        });
+    /**
+     * @return the normalized log10 genotype posteriors of a sample, in a buffer shared by the samples of the same ploidy
+     * that is only valid until the next call for one of them
+     */
+    private static double[] log10NormalizedGenotypePosteriors(final SampleLikelihoods sample, final double[] log10AlleleFrequencies) {
+        final SiteGenotypes genotypes = sample.genotypes;
+        final double[] log10Posteriors = genotypes.log10PosteriorsBuffer;
+        for (int genotype = 0; genotype < genotypes.genotypeCount; genotype++) {
+            double log10Prior = 0;
+            for (int component = genotypes.componentStarts[genotype]; component < genotypes.componentStarts[genotype + 1]; component++) {
+                log10Prior += genotypes.componentCounts[component] * log10AlleleFrequencies[genotypes.componentAlleles[component]];
+            }
+            log10Posteriors[genotype] = genotypes.log10CombinationCounts[genotype] + sample.log10Likelihoods[genotype] + log10Prior;
+        }
         return MathUtils.normalizeLog10(log10Posteriors);
     }
 
@@ -189,6 +379,61 @@ public final class AlleleFrequencyCalculator extends AFCalculator {
         }
     }
 
+    /**
+     * The genotypes of one ploidy and number of alleles, with their alleles, allele counts and combination counts
+     * flattened into arrays in likelihood index order.  The components of genotype g are the entries
+     * componentStarts[g] (inclusive) to componentStarts[g + 1] (exclusive) of componentAlleles and componentCounts.
+     */
+    private static final class SiteGenotypes {
+        private final int ploidy;
+        private final int numAlleles;
+        private final int genotypeCount;
+        private final double[] log10CombinationCounts;
+        private final int[] componentStarts;
+        private final int[] componentAlleles;
+        private final int[] componentCounts;
+        private final double[] log10PosteriorsBuffer;
+
+        private SiteGenotypes(final int ploidy, final int numAlleles) {
+            final GenotypeLikelihoodCalculator glCalc = GL_CALCS.getInstance(ploidy, numAlleles);
+            this.ploidy = ploidy;
+            this.numAlleles = numAlleles;
+            genotypeCount = glCalc.genotypeCount();
+            log10CombinationCounts = new double[genotypeCount];
+            componentStarts = new int[genotypeCount + 1];
+            final IntArrayList alleles = new IntArrayList(genotypeCount);
+            final IntArrayList counts = new IntArrayList(genotypeCount);
+            for (int genotype = 0; genotype < genotypeCount; genotype++) {
+                final GenotypeAlleleCounts gac = glCalc.genotypeAlleleCountsAt(genotype);
+                log10CombinationCounts[genotype] = gac.log10CombinationCount();
+                componentStarts[genotype] = alleles.size();
+                gac.forEachAlleleIndexAndCount((alleleIndex, count) -> {
+                    alleles.add(alleleIndex);
+                    counts.add(count);
+                });
+            }
+            componentStarts[genotypeCount] = alleles.size();
+            componentAlleles = alleles.toIntArray();
+            componentCounts = counts.toIntArray();
+            log10PosteriorsBuffer = new double[genotypeCount];
+        }
+    }
+
+    /**
+     * The log10 genotype likelihoods of one sample, in the likelihood index order of its genotypes
+     */
+    private static final class SampleLikelihoods {
+        private final SiteGenotypes genotypes;
+        private final double[] log10Likelihoods;
+
+        private SampleLikelihoods(final SiteGenotypes genotypes, final double[] log10Likelihoods) {
+            Utils.validateArg(log10Likelihoods.length == genotypes.genotypeCount, () -> "expected " + genotypes.genotypeCount
+                    + " genotype likelihoods for ploidy " + genotypes.ploidy + " but found " + log10Likelihoods.length);
+            this.genotypes = genotypes;
+            this.log10Likelihoods = log10Likelihoods;
+        }
+    }
+
     @Override   //Note: unused
     protected AFCalculationResult getResultFromFinalState(final VariantContext vc, final double[] priors, final StateTracker st) { return null; }
 
@@ -0,0 +1,117 @@
+package org.broadinstitute.hellbender.tools.walkers.genotyper.afcalc;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of how often {@link AlleleFrequencyCalculator} pruned alleles, or bounded the cost of a site, to be reported
+ * at the end of a run. It may be updated from multiple threads.
+ */
+public final class AlleleFrequencyPruningMetrics {
+
+    private final LongAdder sites = new LongAdder();
+    private final LongAdder sitesWithPrunedAlleles = new LongAdder();
+    private final LongAdder prunedAlleles = new LongAdder();
+    private final LongAdder sitesOverGenotypeLimit = new LongAdder();
+    private final LongAdder allelesOverGenotypeLimit = new LongAdder();
+    private final LongAdder sitesAtIterationLimit = new LongAdder();
+
+    /**
+     * Records the calculation for one site
+     * @param numPrunedAlleles number of alternate alleles dropped for lack of evidence
+     * @param numAllelesOverGenotypeLimit number of alternate alleles with some evidence dropped to keep the number of
+     *                                    genotypes within the limit
+     * @param reachedIterationLimit whether the allele frequencies had not converged by the maximum number of iterations
+     */
+    void recordSite(final int numPrunedAlleles, final int numAllelesOverGenotypeLimit, final boolean reachedIterationLimit) {
+        sites.increment();
+        if (numPrunedAlleles > 0) {
+            sitesWithPrunedAlleles.increment();
+            prunedAlleles.add(numPrunedAlleles);
+        }
+        if (numAllelesOverGenotypeLimit > 0) {
+            sitesOverGenotypeLimit.increment();
+            allelesOverGenotypeLimit.add(numAllelesOverGenotypeLimit);
+        }
+        if (reachedIterationLimit) {
+            sitesAtIterationLimit.increment();
+        }
+    }
+
+    /**
+     * Adds the counts of another set of metrics to these
+     */
+    public void add(final AlleleFrequencyPruningMetrics other) {
+        Utils.nonNull(other);
+        sites.add(other.getSites());
+        sitesWithPrunedAlleles.add(other.getSitesWithPrunedAlleles());
+        prunedAlleles.add(other.getPrunedAlleles());
+        sitesOverGenotypeLimit.add(other.getSitesOverGenotypeLimit());
+        allelesOverGenotypeLimit.add(other.getAllelesOverGenotypeLimit());
+        sitesAtIterationLimit.add(other.getSitesAtIterationLimit());
+    }
+
+    /**
+     * Sets all the counts back to zero
+     */
+    public void reset() {
+        sites.reset();
+        sitesWithPrunedAlleles.reset();
+        prunedAlleles.reset();
+        sitesOverGenotypeLimit.reset();
+        allelesOverGenotypeLimit.reset();
+        sitesAtIterationLimit.reset();
+    }
+
+    /**
+     * @return the number of sites whose allele frequencies were calculated
+     */
+    public long getSites() {
+        return sites.sum();
+    }
+
+    /**
+     * @return the number of sites with alternate alleles dropped for lack of evidence
+     */
+    public long getSitesWithPrunedAlleles() {
+        return sitesWithPrunedAlleles.sum();
+    }
+
+    /**
+     * @return the total number of alternate alleles dropped for lack of evidence
+     */
+    public long getPrunedAlleles() {
+        return prunedAlleles.sum();
+    }
+
+    /**
+     * @return the number of sites with alternate alleles dropped to keep the number of genotypes within the limit
+     */
+    public long getSitesOverGenotypeLimit() {
+        return sitesOverGenotypeLimit.sum();
+    }
+
+    /**
+     * @return the total number of alternate alleles dropped to keep the number of genotypes within the limit
+     */
+    public long getAllelesOverGenotypeLimit() {
+        return allelesOverGenotypeLimit.sum();
+    }
+
+    /**
+     * @return the number of sites whose allele frequencies had not converged by the maximum number of iterations
+     */
+    public long getSitesAtIterationLimit() {
+        return sitesAtIterationLimit.sum();
+    }
+
+    @Override
+    public String toString() {
+        final long numSites = getSites();
+        return String.format("Allele frequency calculation: %d sites, %d (%.2f%%) with %d alternate alleles pruned for lack of evidence, " +
+                        "%d with %d alternate alleles dropped to stay within the maximum genotype count, %d at the iteration limit",
+                numSites, getSitesWithPrunedAlleles(), numSites == 0 ? 0.0 : 100.0 * getSitesWithPrunedAlleles() / numSites,
+                getPrunedAlleles(), getSitesOverGenotypeLimit(), getAllelesOverGenotypeLimit(), getSitesAtIterationLimit());
+    }
+}
@@ -83,6 +83,22 @@ public class HaplotypeCallerArgumentCollection extends AssemblyBasedCallerArgume
             GVCFGQBands.add(70); GVCFGQBands.add(80); GVCFGQBands.add(90); GVCFGQBands.add(99);
     };
 
+    /**
+     * With the default one-wide GQ bands, a stretch of homozygous-reference sites whose GQ fluctuates around a band
+     * boundary is written as many short blocks.  This argument lets a block extend over sites whose GQ is up to this
+     * far outside its band, which can greatly reduce the number of records in the GVCF and the time spent merging it.
+     * The GQ and PLs of each block remain the minimum over its sites, so blocks are never over-confident, but they
+     * may fall below their nominal band.  The default of 0 keeps blocks within their bands.
+     *
+     * Writing the GVCF to a file ending in .g.vcf.gz produces block-compressed, indexed output, and writing it to a file
+     * ending in .g.bcf produces indexed BCF, which is smaller than VCF and much faster to read back into
+     * GenomicsDBImport, CombineGVCFs or GenotypeGVCFs.
+     */
+    @Advanced
+    @Argument(fullName = "gvcf-gq-band-tolerance", doc = "How far outside its GQ band a homozygous-reference site may be " +
+            "and still extend a GVCF reference block", optional = true, minValue = 0)
+    public int GVCFGQBandTolerance = 0;
+
     /**
      * This parameter determines the maximum size of an indel considered as potentially segregating in the
      * reference model.  It is used to eliminate reads from being indel informative at a site, and determines
@@ -0,0 +1,214 @@
+package org.broadinstitute.hellbender.tools.walkers.markduplicates;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriterImpl;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordQueryNameComparator;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.ArgumentCollection;
+import org.broadinstitute.barclay.argparser.BetaFeature;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.MarkDuplicatesSparkArgumentCollection;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.OpticalDuplicatesArgumentCollection;
+import org.broadinstitute.hellbender.engine.GATKTool;
+import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
+import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSparkUtils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadSpillFile;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.SAMFileGATKReadWriter;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+import org.broadinstitute.hellbender.utils.read.markduplicates.GATKDuplicationMetrics;
+import org.broadinstitute.hellbender.utils.read.markduplicates.SerializableOpticalDuplicatesFinder;
+import picard.cmdline.programgroups.ReadDataManipulationProgramGroup;
+import picard.sam.markduplicates.util.OpticalDuplicateFinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Marks duplicates on a single machine using multiple threads, with the same duplicate-marking logic as MarkDuplicatesSpark.
+ *
+ * <p>
+ * This tool produces the same duplicate flags and duplication metrics as MarkDuplicatesSpark without the need for a
+ * Spark context. Duplicate-marking records are partitioned by the hash of their duplicate key into local temporary
+ * files, and the partitions are processed concurrently by a pool of threads (see {@link MarkDuplicatesMultithreadedEngine}).
+ * Memory use is bounded by the size of the partitions being processed at any one time, and can be reduced by
+ * increasing --num-partitions.
+ * </p>
+ *
+ * <p>
+ * The input is expected to be queryname sorted or query grouped. Inputs in any other order are first sorted by
+ * queryname, spilling to disk as needed. Reads are kept in a local temporary file between the passes, so the input is
+ * only read once. The output is coordinate sorted.
+ * </p>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * gatk MarkDuplicatesMultithreaded \
+ *   -I input.bam \
+ *   -O marked_duplicates.bam \
+ *   -M marked_dup_metrics.txt \
+ *   --num-threads 16
+ * </pre>
+ */
+@DocumentedFeature
+@CommandLineProgramProperties(
+        summary = "Marks duplicates on a single machine using multiple threads, with the same results as MarkDuplicatesSpark",
+        oneLineSummary = "MarkDuplicates with the MarkDuplicatesSpark algorithm on multiple local threads",
+        programGroup = ReadDataManipulationProgramGroup.class)
+@BetaFeature
+public final class MarkDuplicatesMultithreaded extends GATKTool {
+
+    public static final String NUM_THREADS_LONG_NAME = "num-threads";
+    public static final String NUM_PARTITIONS_LONG_NAME = "num-partitions";
+    public static final String MAX_RECORDS_IN_RAM_LONG_NAME = "max-records-in-ram";
+
+    @Argument(doc = "the output bam", shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
+            fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, optional = false)
+    protected String output;
+
+    @Argument(doc = "Path to write duplication metrics to.", optional=true,
+            shortName = StandardArgumentDefinitions.METRICS_FILE_SHORT_NAME,
+            fullName = StandardArgumentDefinitions.METRICS_FILE_LONG_NAME)
+    protected String metricsFile;
+
+    @Argument(doc = "Number of threads used to mark duplicates.", fullName = NUM_THREADS_LONG_NAME, optional = true, minValue = 1)
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @Argument(doc = "Number of partitions the duplicate-marking records are spilled into. At most two partitions per " +
+            "thread are held in memory at a time, so increasing this reduces memory use.", fullName = NUM_PARTITIONS_LONG_NAME, optional = true, minValue = 1)
+    protected int numPartitions = 256;
+
+    @Argument(doc = "Maximum number of reads held in memory when the input has to be sorted by queryname first.",
+            fullName = MAX_RECORDS_IN_RAM_LONG_NAME, optional = true, minValue = 1)
+    protected int maxRecordsInRam = SAMFileWriterImpl.getDefaultMaxRecordsInRam();
+
+    @ArgumentCollection
+    protected MarkDuplicatesSparkArgumentCollection markDuplicatesSparkArgumentCollection = new MarkDuplicatesSparkArgumentCollection();
+
+    @ArgumentCollection
+    protected OpticalDuplicatesArgumentCollection opticalDuplicatesArgumentCollection = new OpticalDuplicatesArgumentCollection();
+
+    @Override
+    public boolean requiresReads() { return true; }
+
+    @Override
+    public List<ReadFilter> getDefaultReadFilters() {
+        return Collections.singletonList(ReadFilterLibrary.ALLOW_ALL_READS);
+    }
+
+    /**
+     * The output is coordinate sorted, just like for MarkDuplicatesSpark.
+     */
+    @Override
+    protected SAMFileHeader getHeaderForSAMWriter() {
+        final SAMFileHeader header = super.getHeaderForSAMWriter().clone();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        return header;
+    }
+
+    @Override
+    public void traverse() {
+        final SAMFileHeader header = getHeaderForReads();
+        final Supplier<OpticalDuplicateFinder> finderSupplier = opticalDuplicatesArgumentCollection.READ_NAME_REGEX != null ?
+                () -> new SerializableOpticalDuplicatesFinder(opticalDuplicatesArgumentCollection.READ_NAME_REGEX, opticalDuplicatesArgumentCollection.OPTICAL_DUPLICATE_PIXEL_DISTANCE) : null;
+
+        try ( final MarkDuplicatesMultithreadedEngine engine = new MarkDuplicatesMultithreadedEngine(header,
+                markDuplicatesSparkArgumentCollection.duplicatesScoringStrategy, finderSupplier, numThreads, numPartitions, null);
+              final ReadSpillFile spillFile = new ReadSpillFile(header) ) {
+
+            logger.info("Generating duplicate-marking records");
+            try ( final CloseableIterator<GATKRead> readsByName = getReadsGroupedByName(header) ) {
+                forEachReadNameGroup(readsByName, group -> {
+                    engine.addReadNameGroup(group);
+                    group.forEach(spillFile::addRead);
+                });
+            }
+
+            logger.info("Marking duplicates using " + numThreads + " threads");
+            engine.markDuplicates();
+
+            logger.info("Writing duplicate-marked reads");
+            try ( final SAMFileGATKReadWriter writer = createSAMWriter(IOUtils.getPath(output), false);
+                  final CloseableIterator<GATKRead> spilledReads = spillFile.iterator() ) {
+                forEachReadNameGroup(spilledReads, group -> {
+                    engine.markReadNameGroup(group, markDuplicatesSparkArgumentCollection.dontMarkUnmappedMates);
+                    group.forEach(writer::addRead);
+                });
+            }
+
+            if ( metricsFile != null ) {
+                final MetricsFile<GATKDuplicationMetrics, Double> resultMetrics = getMetricsFile();
+                MarkDuplicatesSparkUtils.saveMetrics(resultMetrics, header, engine.getMetricsByLibrary(), metricsFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the filtered input reads in read name order, sorting them first if the input is not already queryname
+     * sorted or query grouped.
+     */
+    private CloseableIterator<GATKRead> getReadsGroupedByName(final SAMFileHeader header) {
+        final Iterator<GATKRead> filteredReads = getTransformedReadStream(makeReadFilter()).iterator();
+        if ( ReadUtils.isReadNameGroupedBam(header) ) {
+            return new CloseableIterator<GATKRead>() {
+                @Override
+                public void close() { }
+                @Override
+                public boolean hasNext() { return filteredReads.hasNext(); }
+                @Override
+                public GATKRead next() { return filteredReads.next(); }
+            };
+        }
+
+        logger.info("Input is not queryname sorted or query grouped; sorting by queryname first");
+        final SortingCollection<SAMRecord> sorter = SortingCollection.newInstance(SAMRecord.class, new BAMRecordCodec(header),
+                new SAMRecordQueryNameComparator(), maxRecordsInRam);
+        filteredReads.forEachRemaining(read -> sorter.add(read.convertToSAMRecord(header)));
+        sorter.doneAdding();
+        final CloseableIterator<SAMRecord> sortedRecords = sorter.iterator();
+        return new CloseableIterator<GATKRead>() {
+            @Override
+            public void close() {
+                sortedRecords.close();
+                sorter.cleanup();
+            }
+            @Override
+            public boolean hasNext() { return sortedRecords.hasNext(); }
+            @Override
+            public GATKRead next() { return new SAMRecordToGATKReadAdapter(sortedRecords.next()); }
+        };
+    }
+
+    /**
+     * Hands each run of consecutive reads sharing a read name to the consumer.
+     */
+    private void forEachReadNameGroup(final Iterator<GATKRead> readsByName, final Consumer<List<GATKRead>> groupConsumer) {
+        List<GATKRead> group = new ArrayList<>(2);
+        while ( readsByName.hasNext() ) {
+            final GATKRead read = readsByName.next();
+            if ( !group.isEmpty() && !group.get(0).getName().equals(read.getName()) ) {
+                groupConsumer.accept(group);
+                group = new ArrayList<>(2);
+            }
+            group.add(read);
+            progressMeter.update(read.isUnmapped() ? null : read);
+        }
+        if ( !group.isEmpty() ) {
+            groupConsumer.accept(group);
+        }
+    }
+}
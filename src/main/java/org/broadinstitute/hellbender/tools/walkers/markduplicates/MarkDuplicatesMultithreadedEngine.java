@@ -0,0 +1,307 @@
+package org.broadinstitute.hellbender.tools.walkers.markduplicates;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.SAMFileHeader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.engine.spark.GATKRegistrator;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSparkUtils;
+import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSparkUtils.IndexPair;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.markduplicates.GATKDuplicationMetrics;
+import org.broadinstitute.hellbender.utils.read.markduplicates.LibraryIdGenerator;
+import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
+import org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords.MarkDuplicatesSparkRecord;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import picard.sam.markduplicates.util.OpticalDuplicateFinder;
+import scala.Tuple2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Single-node, multithreaded duplicate marking engine built on the same record model and duplicate-marking logic as
+ * MarkDuplicatesSpark ({@link MarkDuplicatesSparkRecord}, {@link ReadsKey} and {@link MarkDuplicatesSparkUtils}), so
+ * that it produces the same duplicate flags and {@link GATKDuplicationMetrics}.
+ *
+ * The engine is driven in two passes over the same read-name-grouped stream of reads:
+ * <ol>
+ *     <li>{@link #addReadNameGroup} is called for every group of reads sharing a read name. The duplicate-marking
+ *     records for the group are generated and spilled to one of a fixed number of local partition files chosen by
+ *     the hash of their {@link ReadsKey}, so that all records sharing a key end up in the same partition.</li>
+ *     <li>{@link #markDuplicates} then processes the partitions on a thread pool. Each partition is loaded, grouped by
+ *     key and duplicate-marked independently; at most two partitions per thread are loaded or waiting to be folded
+ *     into the results at a time, so the peak memory is roughly {@code 2 * numThreads / numPartitions} of the total
+ *     records.</li>
+ *     <li>{@link #markReadNameGroup} is finally called for every group, in the same order as in the first pass,
+ *     to set the duplicate flags on the reads and accumulate the metrics.</li>
+ * </ol>
+ *
+ * The only per-template state retained between the passes is one bit indicating whether the template is a
+ * non-duplicate (plus its optical duplicate count, for the rare templates that have one).
+ */
+public final class MarkDuplicatesMultithreadedEngine implements Closeable {
+    private static final Logger logger = LogManager.getLogger(MarkDuplicatesMultithreadedEngine.class);
+
+    private static final int PARTITION_BUFFER_SIZE = 64 * 1024;
+
+    private final SAMFileHeader header;
+    private final MarkDuplicatesScoringStrategy scoringStrategy;
+    private final Supplier<OpticalDuplicateFinder> opticalDuplicateFinderSupplier;
+    private final int numThreads;
+    private final Map<String, Short> readGroupIndexMap;
+    private final Map<String, Byte> libraryIndex;
+
+    private final Kryo kryo;
+    private final File[] partitionFiles;
+    private Output[] partitionOutputs;
+
+    // Results of duplicate marking, indexed by template ordinal (the position of the read name group in the stream)
+    private final BitSet nonDuplicateTemplates = new BitSet();
+    private final Map<Integer, Integer> opticalDuplicateCounts = new HashMap<>();
+
+    private int templatesAdded = 0;
+    private int templatesMarked = 0;
+    private boolean duplicatesMarked = false;
+
+    private final Map<String, GATKDuplicationMetrics> metricsByLibrary = new LinkedHashMap<>();
+
+    /**
+     * @param header header for the reads
+     * @param scoringStrategy method by which the non-duplicate is chosen among duplicates
+     * @param opticalDuplicateFinderSupplier creates a new optical duplicate finder for each partition (finders are not
+     *                                       thread-safe), or null to skip optical duplicate detection
+     * @param numThreads number of threads used to duplicate-mark partitions
+     * @param numPartitions number of key-hash partitions the records are spilled into
+     * @param tmpDir directory for the partition files, or null for the default temporary directory
+     */
+    public MarkDuplicatesMultithreadedEngine(final SAMFileHeader header,
+                                             final MarkDuplicatesScoringStrategy scoringStrategy,
+                                             final Supplier<OpticalDuplicateFinder> opticalDuplicateFinderSupplier,
+                                             final int numThreads,
+                                             final int numPartitions,
+                                             final File tmpDir) {
+        Utils.nonNull(header, "header");
+        Utils.nonNull(scoringStrategy, "scoringStrategy");
+        Utils.validateArg(numThreads > 0, "numThreads must be positive");
+        Utils.validateArg(numPartitions > 0, "numPartitions must be positive");
+        this.header = header;
+        this.scoringStrategy = scoringStrategy;
+        this.opticalDuplicateFinderSupplier = opticalDuplicateFinderSupplier;
+        this.numThreads = numThreads;
+        this.readGroupIndexMap = MarkDuplicatesSparkUtils.getHeaderReadGroupIndexMap(header);
+        this.libraryIndex = MarkDuplicatesSparkUtils.constructLibraryIndex(header);
+
+        this.kryo = newKryo();
+        this.partitionFiles = new File[numPartitions];
+        this.partitionOutputs = new Output[numPartitions];
+        for ( int i = 0; i < numPartitions; i++ ) {
+            partitionFiles[i] = IOUtils.createTempFileInDirectory("markDuplicatesPartition" + i + ".", ".kryo", tmpDir);
+            try {
+                partitionOutputs[i] = new Output(new FileOutputStream(partitionFiles[i]), PARTITION_BUFFER_SIZE);
+            } catch (final FileNotFoundException e) {
+                throw new UserException.CouldNotCreateOutputFile(partitionFiles[i], e);
+            }
+        }
+    }
+
+    /**
+     * First pass: generates and spills the duplicate-marking records for a group of reads sharing the same read name.
+     * Must be called for every read name group in the input (including groups with no mapped reads).
+     */
+    public void addReadNameGroup(final List<GATKRead> readsWithSameName) {
+        Utils.nonEmpty(readsWithSameName, "readsWithSameName");
+        Utils.validate(partitionOutputs != null, "cannot add reads after duplicates have been marked");
+        final int templateOrdinal = templatesAdded++;
+        if ( templatesAdded < 0 ) {
+            throw new GATKException("Too many read name groups for MarkDuplicatesMultithreadedEngine (maximum is " + Integer.MAX_VALUE + ")");
+        }
+
+        // Unmapped reads are handled when setting the flags, just as in MarkDuplicatesSpark
+        final List<IndexPair<GATKRead>> mappedReads = readsWithSameName.stream()
+                .filter(read -> !read.isUnmapped())
+                .map(read -> new IndexPair<>(read, templateOrdinal))
+                .collect(Collectors.toList());
+        if ( mappedReads.isEmpty() ) {
+            return;
+        }
+
+        for ( final Tuple2<ReadsKey, MarkDuplicatesSparkRecord> keyedRecord : MarkDuplicatesSparkUtils.generateRecordsForReadNameGroup(header, scoringStrategy, readGroupIndexMap, libraryIndex, mappedReads) ) {
+            final Output output = partitionOutputs[partitionForKey(keyedRecord._1())];
+            // The keys are transient in the records, so they are written separately
+            kryo.writeClassAndObject(output, keyedRecord._1());
+            kryo.writeClassAndObject(output, keyedRecord._2());
+        }
+    }
+
+    /**
+     * Duplicate-marks all partitions on a thread pool. Must be called once, after all read name groups have been
+     * added and before any is passed to {@link #markReadNameGroup}.
+     */
+    public void markDuplicates() {
+        Utils.validate(!duplicatesMarked, "duplicates have already been marked");
+        closePartitionOutputs();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            // A bounded number of partitions is in flight, and the results of each are folded into the bitset and
+            // dropped as soon as the partitions before it have been, so the results held at once stay bounded too.
+            // Results are consumed in partition order, so the outcome does not depend on thread scheduling.
+            final int maxPartitionsInFlight = 2 * numThreads;
+            final Deque<Future<List<Tuple2<IndexPair<String>, Integer>>>> partitionsInFlight = new ArrayDeque<>(maxPartitionsInFlight);
+            int nextPartition = 0;
+            while ( nextPartition < partitionFiles.length || !partitionsInFlight.isEmpty() ) {
+                for ( ; nextPartition < partitionFiles.length && partitionsInFlight.size() < maxPartitionsInFlight; nextPartition++ ) {
+                    final File partitionFile = partitionFiles[nextPartition];
+                    partitionsInFlight.add(executor.submit(() -> markDuplicatesInPartition(partitionFile)));
+                }
+                addNonDuplicates(getResult(partitionsInFlight.remove()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        duplicatesMarked = true;
+        deletePartitionFiles();
+        logger.info(String.format("Found %d non-duplicate templates among %d read name groups", nonDuplicateTemplates.cardinality(), templatesAdded));
+    }
+
+    /**
+     * Second pass: sets the duplicate flags on a group of reads sharing the same read name and accumulates the
+     * duplication metrics. Groups must be presented in exactly the same order as in the first pass.
+     *
+     * @param dontMarkUnmappedMates when true, unmapped mates of duplicate fragments will be marked as non-duplicates
+     */
+    public void markReadNameGroup(final List<GATKRead> readsWithSameName, final boolean dontMarkUnmappedMates) {
+        Utils.nonEmpty(readsWithSameName, "readsWithSameName");
+        Utils.validate(duplicatesMarked, "duplicates must be marked before flags can be set");
+        Utils.validate(templatesMarked < templatesAdded, "more read name groups were marked than were added");
+        final int templateOrdinal = templatesMarked++;
+        final boolean markUnmappedMates = !dontMarkUnmappedMates;
+        final boolean isNonDuplicate = nonDuplicateTemplates.get(templateOrdinal);
+        int opticalDuplicateCount = isNonDuplicate ? opticalDuplicateCounts.getOrDefault(templateOrdinal, 0) : -1;
+
+        for ( final GATKRead read : readsWithSameName ) {
+            if ( isNonDuplicate ) {
+                read.setIsDuplicate(false);
+            } else if ( ReadUtils.readAndMateAreUnmapped(read) ) {
+                read.setIsDuplicate(false);
+            } else {
+                read.setIsDuplicate(markUnmappedMates || !read.isUnmapped());
+            }
+
+            final GATKDuplicationMetrics metrics = metricsByLibrary.computeIfAbsent(LibraryIdGenerator.getLibraryName(header, read.getReadGroup()), library -> {
+                final GATKDuplicationMetrics newMetrics = new GATKDuplicationMetrics();
+                newMetrics.LIBRARY = library;
+                return newMetrics;
+            });
+            metrics.updateMetrics(read);
+            // The optical duplicate count of a template is only attributed once, to its first eligible read
+            if ( opticalDuplicateCount >= 0 && (markUnmappedMates || !read.isUnmapped()) ) {
+                metrics.READ_PAIR_OPTICAL_DUPLICATES += opticalDuplicateCount;
+                opticalDuplicateCount = -1;
+            }
+        }
+    }
+
+    /**
+     * @return the finalized duplication metrics for each library seen by {@link #markReadNameGroup}
+     */
+    public Map<String, GATKDuplicationMetrics> getMetricsByLibrary() {
+        return metricsByLibrary.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> MarkDuplicatesSparkUtils.finalizeMetrics(e.getValue())));
+    }
+
+    @Override
+    public void close() {
+        closePartitionOutputs();
+        deletePartitionFiles();
+    }
+
+    private int partitionForKey(final ReadsKey key) {
+        return Math.floorMod(key.hashCode(), partitionFiles.length);
+    }
+
+    private List<Tuple2<IndexPair<String>, Integer>> markDuplicatesInPartition(final File partitionFile) {
+        final Kryo partitionKryo = newKryo(); // Kryo instances are not thread-safe
+        final Map<ReadsKey, List<MarkDuplicatesSparkRecord>> recordsByKey = new HashMap<>();
+        try ( final Input input = new Input(new FileInputStream(partitionFile), PARTITION_BUFFER_SIZE) ) {
+            while ( !input.eof() ) {
+                final ReadsKey key = (ReadsKey) partitionKryo.readClassAndObject(input);
+                final MarkDuplicatesSparkRecord record = (MarkDuplicatesSparkRecord) partitionKryo.readClassAndObject(input);
+                recordsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(partitionFile, e);
+        }
+
+        final OpticalDuplicateFinder finder = opticalDuplicateFinderSupplier == null ? null : opticalDuplicateFinderSupplier.get();
+        final List<Tuple2<IndexPair<String>, Integer>> nonDuplicates = new ArrayList<>();
+        for ( final List<MarkDuplicatesSparkRecord> recordsWithSameKey : recordsByKey.values() ) {
+            nonDuplicates.addAll(MarkDuplicatesSparkUtils.markDuplicatesInKeyGroup(recordsWithSameKey, finder));
+        }
+        return nonDuplicates;
+    }
+
+    private void addNonDuplicates(final List<Tuple2<IndexPair<String>, Integer>> nonDuplicates) {
+        for ( final Tuple2<IndexPair<String>, Integer> nonDuplicate : nonDuplicates ) {
+            final int templateOrdinal = nonDuplicate._1().getIndex();
+            if ( nonDuplicateTemplates.get(templateOrdinal) ) {
+                throw new GATKException(String.format("Detected multiple mark duplicate records objects corresponding to read with name '%s', this could be the result of the file sort order being incorrect", nonDuplicate._1().getValue()));
+            }
+            nonDuplicateTemplates.set(templateOrdinal);
+            if ( nonDuplicate._2() > 0 ) {
+                opticalDuplicateCounts.put(templateOrdinal, nonDuplicate._2());
+            }
+        }
+    }
+
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while marking duplicates", e);
+        } catch (final ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while marking duplicates", e.getCause());
+        }
+    }
+
+    private void closePartitionOutputs() {
+        if ( partitionOutputs != null ) {
+            for ( final Output output : partitionOutputs ) {
+                output.close();
+            }
+            partitionOutputs = null;
+        }
+    }
+
+    private void deletePartitionFiles() {
+        for ( final File partitionFile : partitionFiles ) {
+            if ( partitionFile.exists() && !partitionFile.delete() ) {
+                logger.warn("Could not delete temporary file " + partitionFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private static Kryo newKryo() {
+        final Kryo kryo = new Kryo();
+        // the records have no no-arg constructors
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        new GATKRegistrator().registerClasses(kryo);
+        return kryo;
+    }
+}
@@ -513,6 +513,25 @@ public final class SelectVariants extends VariantWalker {
         vcfWriter.writeHeader(new VCFHeader(actualLines, samples));
     }
 
+    /**
+     * Only the genotypes of the selected samples are parsed, unless the Mendelian violation check needs their
+     * relatives. When writing sites-only output without selecting samples, no genotypes are parsed at all unless a
+     * selection criterion looks at them.
+     */
+    @Override
+    protected Set<String> getSamplesToDecode() {
+        if (noSamplesSpecified) {
+            final boolean selectionUsesGenotypes = mendelianViolations || discordanceOnly || concordanceOnly ||
+                    considerFilteredGenotypes() || considerNoCallGenotypes() || XLnonVariants ||
+                    removeUnusedAlternates || !jexls.isEmpty();
+            return outputSitesOnlyVCFs && !selectionUsesGenotypes ? Collections.emptySet() : null;
+        }
+        if (mendelianViolations || Collections.disjoint(samples, getHeaderForVariants().getGenotypeSamples())) {
+            return null;
+        }
+        return samples;
+    }
+
     @Override
     public void apply(VariantContext vc, ReadsContext readsContext, ReferenceContext ref, FeatureContext featureContext) {
 
@@ -1024,8 +1043,10 @@ public final class SelectVariants extends VariantWalker {
         // strip out the alternate alleles that aren't being used
         final VariantContext sub = vc.subContextFromSamples(samples, removeUnusedAlternates);
 
-        // If no subsetting happened, exit now
-        if (sub.getNSamples() == vc.getNSamples() && sub.getNAlleles() == vc.getNAlleles()) {
+        // If no subsetting happened, exit now. The genotypes of unselected samples may already have been dropped from
+        // vc (see getSamplesToDecode()), so compare with the samples in the header for a record with genotypes.
+        final int numOriginalSamples = vc.hasGenotypes() ? getHeaderForVariants().getNGenotypeSamples() : 0;
+        if (sub.getNSamples() == numOriginalSamples && sub.getNAlleles() == vc.getNAlleles()) {
             return vc;
         }
 
@@ -180,6 +180,10 @@ public final class VariantsToTable extends VariantWalker {
 
     private static final String MISSING_DATA = "NA";
 
+    // standard fields that are summaries of the genotypes, so need the GT of every sample
+    private static final Set<String> GENOTYPE_SUMMARY_FIELDS = new HashSet<>(Arrays.asList(
+            "HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NSAMPLES", "NCALLED"));
+
     private SortedSet<String> samples;
     private long nRecords = 0L;
     private PrintStream outputStream = null;
@@ -215,6 +219,18 @@ public final class VariantsToTable extends VariantWalker {
         }
     }
 
+    @Override
+    protected Set<String> getSamplesToDecode() {
+        final boolean needsGenotypes = !genotypeFieldsToTake.isEmpty() ||
+                fieldsToTake.stream().anyMatch(GENOTYPE_SUMMARY_FIELDS::contains);
+        return needsGenotypes ? null : Collections.emptySet();
+    }
+
+    @Override
+    protected Set<String> getFormatFieldsToDecode() {
+        return new HashSet<>(genotypeFieldsToTake);
+    }
+
     private PrintStream createPrintStream() {
         try {
             return out != null ? new PrintStream(out) : System.out;
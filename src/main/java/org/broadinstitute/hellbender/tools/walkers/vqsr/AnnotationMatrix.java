@@ -0,0 +1,48 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.List;
+
+/**
+ * The annotations of a list of VariantDatum, copied into one contiguous row-major array so that the loops over all
+ * the data when fitting a Gaussian mixture model read memory in order, rather than chasing a separate array per datum.
+ */
+final class AnnotationMatrix {
+
+    private final double[] values;
+    private final int numData;
+    private final int numAnnotations;
+
+    AnnotationMatrix(final List<VariantDatum> data) {
+        Utils.nonEmpty(data, "No data found.");
+        numData = data.size();
+        numAnnotations = data.get(0).annotations.length;
+        values = new double[numData * numAnnotations];
+        int offset = 0;
+        for (final VariantDatum datum : data) {
+            Utils.validateArg(datum.annotations.length == numAnnotations, "All data must have the same number of annotations");
+            System.arraycopy(datum.annotations, 0, values, offset, numAnnotations);
+            offset += numAnnotations;
+        }
+    }
+
+    int getNumData() {
+        return numData;
+    }
+
+    int getNumAnnotations() {
+        return numAnnotations;
+    }
+
+    /**
+     * The array of all the values; the annotations of datum i start at {@link #offset}(i)
+     */
+    double[] getValues() {
+        return values;
+    }
+
+    int offset(final int datum) {
+        return datum * numAnnotations;
+    }
+}
@@ -16,8 +16,6 @@ import org.broadinstitute.hellbender.utils.haplotype.HaplotypeBAMWriter;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import  org.broadinstitute.hellbender.utils.io.Resource;
 import org.broadinstitute.hellbender.utils.python.StreamingPythonScriptExecutor;
-import org.broadinstitute.hellbender.utils.read.GATKRead;
-import org.broadinstitute.hellbender.utils.runtime.AsynchronousStreamWriter;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFHeaderLines;
 import picard.cmdline.programgroups.VariantFilteringProgramGroup;
@@ -115,7 +113,6 @@ public class CNNScoreVariants extends VariantWalker {
     private static final int REF_INDEX = 2;
     private static final int ALT_INDEX = 3;
     private static final int KEY_INDEX = 4;
-    private static final int FIFO_STRING_INITIAL_CAPACITY = 1024;
     private static final int MAX_READ_BATCH = 4098;
 
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME,
@@ -168,14 +165,12 @@ public class CNNScoreVariants extends VariantWalker {
 
     // Create the Python executor. This doesn't actually start the Python process, but verifies that
     // the requestedPython executable exists and can be located.
-    final StreamingPythonScriptExecutor<String> pythonExecutor = new StreamingPythonScriptExecutor<>(true);
+    final StreamingPythonScriptExecutor<CNNTensorBatch> pythonExecutor = new StreamingPythonScriptExecutor<>(true);
 
-    private List<String> batchList = new ArrayList<>(inferenceBatchSize);
+    private CNNTensorBatchStreamer batchStreamer;
 
-    private int curBatchSize = 0;
     private int windowEnd = windowSize / 2;
     private int windowStart = windowSize / 2;
-    private boolean waitforBatchCompletion = false;
     private File scoreFile;
 
     private String scoreKey;
@@ -231,8 +226,8 @@ public class CNNScoreVariants extends VariantWalker {
 
         // Start the Python process and initialize a stream writer for streaming data to the Python code
         pythonExecutor.start(Collections.emptyList(), enableJournal);
-        pythonExecutor.initStreamWriter(AsynchronousStreamWriter.stringSerializer);
-        batchList = new ArrayList<>(transferBatchSize);
+        pythonExecutor.initStreamWriter(CNNTensorBatch::getFrame);
+        batchStreamer = new CNNTensorBatchStreamer(new PythonTensorBatchScorer(), transferBatchSize, windowSize, tensorType.isReadsRequired());
 
         // Execute Python code to open our output file, where it will write the contents of everything it reads
         // from the stream.
@@ -272,119 +267,19 @@ public class CNNScoreVariants extends VariantWalker {
     @Override
     public void apply(final VariantContext variant, final ReadsContext readsContext, final ReferenceContext referenceContext, final FeatureContext featureContext) {
         referenceContext.setWindow(windowStart, windowEnd);
+        final byte[] referenceBases = Arrays.copyOfRange(referenceContext.getBases(), 0, windowSize);
         if (tensorType.isReadsRequired()) {
-            transferReadsToPythonViaFifo(variant, readsContext, referenceContext);
-        } else {
-            transferToPythonViaFifo(variant, referenceContext);
-        }
-        sendBatchIfReady();
-    }
-
-    private void transferToPythonViaFifo(final VariantContext variant, final ReferenceContext referenceContext) {
-        try {
-            final String outDat = String.format("%s\t%s\t%s\t%s\n",
-                    getVariantDataString(variant),
-                    new String(Arrays.copyOfRange(referenceContext.getBases(), 0, windowSize), "UTF-8"),
-                    getVariantInfoString(variant),
-                    variant.isSNP() ? "SNP" : variant.isIndel() ? "INDEL" : "OTHER");
-            batchList.add(outDat);
-            curBatchSize++;
-        } catch (UnsupportedEncodingException e) {
-            throw new GATKException("Trying to make string from reference, but unsupported encoding UTF-8.", e);
-        }
-
-    }
-
-    private void sendBatchIfReady() {
-        if (curBatchSize == transferBatchSize) {
-            if (waitforBatchCompletion == true) {
-                // wait for the last batch to complete before we start a new one
-                pythonExecutor.waitForPreviousBatchCompletion();
-                waitforBatchCompletion = false;
+            if (batchStreamer.addVariant(variant, referenceBases, readsContext) == 0) {
+                logger.warn("No reads at contig:" + variant.getContig() + " site:" + String.valueOf(variant.getStart()));
             }
-            executePythonCommand();
-            waitforBatchCompletion = true;
-            curBatchSize = 0;
-            batchList = new ArrayList<>(transferBatchSize);
-        }
-    }
-
-    private void transferReadsToPythonViaFifo(final VariantContext variant, final ReadsContext readsContext, final ReferenceContext referenceContext) {
-        StringBuilder sb = new StringBuilder(FIFO_STRING_INITIAL_CAPACITY);
-        try {
-            sb.append(String.format("%s\t%s\t%s\t%s\t",
-                    getVariantDataString(variant),
-                    new String(Arrays.copyOfRange(referenceContext.getBases(), 0, windowSize), "UTF-8"),
-                    getVariantInfoString(variant),
-                    variant.isSNP() ? "SNP" : variant.isIndel() ? "INDEL" : "OTHER"));
-        } catch (UnsupportedEncodingException e) {
-            throw new GATKException("Trying to make string from reference, but unsupported encoding UTF-8.", e);
-        }
-        Iterator<GATKRead> readIt = readsContext.iterator();
-        if (!readIt.hasNext()) {
-            logger.warn("No reads at contig:" + variant.getContig() + " site:" + String.valueOf(variant.getStart()));
-        }
-        while (readIt.hasNext()) {
-            sb.append(GATKReadToString(readIt.next()));
-        }
-        sb.append("\n");
-        batchList.add(sb.toString());
-        curBatchSize++;
-    }
-
-    private String GATKReadToString(GATKRead read) {
-        StringBuilder sb = new StringBuilder(FIFO_STRING_INITIAL_CAPACITY);
-        sb.append(read.getBasesString() + "\t");
-
-        appendQualityBytes(sb, read.getBaseQualities());
-        sb.append(read.getCigar().toString() + "\t");
-        sb.append(read.isReverseStrand() + "\t");
-        sb.append((read.isPaired() ? read.mateIsReverseStrand() : "false") + "\t");
-        sb.append(read.isFirstOfPair() + "\t");
-        sb.append(read.getMappingQuality() + "\t");
-        sb.append(Integer.toString(read.getUnclippedStart()) + "\t");
-        return sb.toString();
-    }
-
-    private void appendQualityBytes(StringBuilder sb, byte[] qualities) {
-        if(qualities.length == 0) {
-            sb.append("\t");
-            return;
-        }
-
-        for (int i = 0; i < qualities.length - 1; i++) {
-            sb.append(Integer.toString(qualities[i]) + ",");
-        }
-        sb.append(Integer.toString(qualities[qualities.length - 1]) + "\t");
-    }
-
-    private String getVariantDataString(final VariantContext variant) {
-        return String.format("%s\t%d\t%s\t%s",
-                variant.getContig(),
-                variant.getStart(),
-                variant.getReference().getBaseString(),
-                variant.getAlternateAlleles().toString()
-        );
-    }
-
-    private String getVariantInfoString(final VariantContext variant) {
-        // Create a string that will easily be parsed as a python dictionary
-        String varInfo = "";
-        for (final String attributeKey : variant.getAttributes().keySet()) {
-            varInfo += attributeKey + "=" + variant.getAttribute(attributeKey).toString().replace(" ", "").replace("[", "").replace("]", "") + ";";
+        } else {
+            batchStreamer.addVariant(variant, referenceBases, null);
         }
-        return varInfo;
     }
 
     @Override
     public Object onTraversalSuccess() {
-        if (waitforBatchCompletion) {
-            pythonExecutor.waitForPreviousBatchCompletion();
-        }
-        if (curBatchSize > 0) {
-            executePythonCommand();
-            pythonExecutor.waitForPreviousBatchCompletion();
-        }
+        batchStreamer.finish();
 
         pythonExecutor.sendSynchronousCommand("tempFile.close()" + NL);
         pythonExecutor.terminate();
@@ -394,13 +289,24 @@ public class CNNScoreVariants extends VariantWalker {
         return true;
     }
 
-    private void executePythonCommand() {
-        final String pythonCommand = String.format(
-                "vqsr_cnn.score_and_write_batch(args, model, tempFile, %d, %d, '%s')",
-                curBatchSize,
-                inferenceBatchSize,
-                outputTensorsDir) + NL;
-        pythonExecutor.startBatchWrite(pythonCommand, batchList);
+    /**
+     * Scores each batch in the Python process, which reads the batch frame from the data FIFO and appends the scores
+     * to the temp file.
+     */
+    private final class PythonTensorBatchScorer implements CNNTensorBatchScorer {
+        @Override
+        public void startBatch(final CNNTensorBatch batch) {
+            final String pythonCommand = String.format(
+                    "vqsr_cnn.score_and_write_tensor_batch(args, model, tempFile, %d, '%s')",
+                    inferenceBatchSize,
+                    outputTensorsDir) + NL;
+            pythonExecutor.startBatchWrite(pythonCommand, Collections.singletonList(batch));
+        }
+
+        @Override
+        public void waitForPreviousBatch() {
+            pythonExecutor.waitForPreviousBatchCompletion();
+        }
     }
 
 
@@ -0,0 +1,254 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A batch of variants to be scored by the CNN, encoded in the binary frame that
+ * {@code vqsr_cnn.score_and_write_tensor_batch} reads from the data FIFO.
+ *
+ * All values are big-endian. A frame is a header of five ints: {@link #MAGIC}, the number of variants, the window
+ * size, 1 if the variants include reads and 0 otherwise, and the length in bytes of the records that follow. Each
+ * variant record is:
+ *
+ *  - the variant key (contig, position, reference and alternate alleles, tab separated), as an int length followed
+ *    by that many UTF-8 bytes; the scores are written out with this key
+ *  - the INFO annotations, as a string in the same way, formatted as name=value pairs separated by semicolons
+ *  - one byte for the variant type: {@link #SNP}, {@link #INDEL} or {@link #OTHER}
+ *  - the reference tensor: window size rows of 4 floats, for A, C, G and T, one-hot for unambiguous bases, the
+ *    IUPAC weights for ambiguity codes, and zeros after the end of the reference
+ *  - only if the batch includes reads: the window size reference bases, the number of reads, and for each read the
+ *    number of bases, the bases, the number of base qualities, the qualities, the cigar as a string, one byte of
+ *    flags ({@link #READ_REVERSE_STRAND}, {@link #READ_MATE_REVERSE_STRAND}, {@link #READ_FIRST_OF_PAIR}), the
+ *    mapping quality as an int and the unclipped start as an int
+ *
+ * Reads are not turned into tensors here because the read tensor layout depends on the channels and read limit of
+ * the model, which only the Python side knows.
+ *
+ * A batch is reused for the whole traversal: {@link #clear()} empties it without releasing its buffer.
+ */
+final class CNNTensorBatch {
+
+    static final int MAGIC = 0x434E4E54; // "CNNT"
+    static final int HEADER_LENGTH = 5 * Integer.BYTES;
+    static final int BASES_PER_REFERENCE_ROW = 4;
+
+    static final byte SNP = 0;
+    static final byte INDEL = 1;
+    static final byte OTHER = 2;
+
+    static final byte READ_REVERSE_STRAND = 1;
+    static final byte READ_MATE_REVERSE_STRAND = 2;
+    static final byte READ_FIRST_OF_PAIR = 4;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    // rows of the reference tensor for each base; null for bases that are not allowed in the reference
+    private static final float[][] REFERENCE_ROWS = new float[128][];
+
+    static {
+        REFERENCE_ROWS['A'] = new float[]{1, 0, 0, 0};
+        REFERENCE_ROWS['C'] = new float[]{0, 1, 0, 0};
+        REFERENCE_ROWS['G'] = new float[]{0, 0, 1, 0};
+        REFERENCE_ROWS['T'] = new float[]{0, 0, 0, 1};
+        // the same weights as defines.AMBIGUITY_CODES in vqsr_cnn
+        REFERENCE_ROWS['K'] = new float[]{0, 0, 0.5f, 0.5f};
+        REFERENCE_ROWS['M'] = new float[]{0.5f, 0.5f, 0, 0};
+        REFERENCE_ROWS['R'] = new float[]{0.5f, 0, 0, 0.5f};
+        REFERENCE_ROWS['Y'] = new float[]{0, 0.5f, 0.5f, 0};
+        REFERENCE_ROWS['S'] = new float[]{0, 0.5f, 0, 0.5f};
+        REFERENCE_ROWS['W'] = new float[]{0.5f, 0, 0.5f, 0};
+        REFERENCE_ROWS['B'] = new float[]{0, 0.333f, 0.333f, 0.334f};
+        REFERENCE_ROWS['V'] = new float[]{0.333f, 0.333f, 0, 0.334f};
+        REFERENCE_ROWS['H'] = new float[]{0.333f, 0.333f, 0.334f, 0};
+        REFERENCE_ROWS['D'] = new float[]{0.333f, 0, 0.333f, 0.334f};
+        REFERENCE_ROWS['X'] = new float[]{0.25f, 0.25f, 0.25f, 0.25f};
+        REFERENCE_ROWS['N'] = new float[]{0.25f, 0.25f, 0.25f, 0.25f};
+    }
+
+    private final int windowSize;
+    private final boolean includesReads;
+    private final FrameBuffer frame = new FrameBuffer(INITIAL_CAPACITY);
+    private final DataOutputStream out = new DataOutputStream(frame);
+    private int size;
+
+    /**
+     * @param windowSize number of reference bases around each variant
+     * @param includesReads whether the reads overlapping each variant are sent along with it
+     */
+    CNNTensorBatch(final int windowSize, final boolean includesReads) {
+        Utils.validateArg(windowSize > 0, "The window size must be positive");
+        this.windowSize = windowSize;
+        this.includesReads = includesReads;
+        clear();
+    }
+
+    /**
+     * @return the number of variants in the batch
+     */
+    int size() {
+        return size;
+    }
+
+    int getWindowSize() {
+        return windowSize;
+    }
+
+    boolean includesReads() {
+        return includesReads;
+    }
+
+    /**
+     * Removes all the variants from the batch, keeping its buffer to be refilled
+     */
+    void clear() {
+        frame.reset();
+        try {
+            for (int i = 0; i < HEADER_LENGTH / Integer.BYTES; i++) {
+                out.writeInt(0);
+            }
+        } catch (final IOException e) {
+            throw new GATKException("Error when encoding a batch of tensors", e);
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds a variant to the batch
+     * @param referenceBases the window size reference bases around the variant, padded with zeros past the end of
+     *                       the contig
+     * @param reads reads overlapping the variant, which must be given if and only if the batch includes reads
+     * @return the number of reads added with the variant
+     */
+    int addVariant(final VariantContext variant, final byte[] referenceBases, final Iterable<GATKRead> reads) {
+        Utils.nonNull(variant);
+        Utils.nonNull(referenceBases);
+        Utils.validateArg(referenceBases.length == windowSize, "The reference bases must cover the window");
+        Utils.validateArg((reads != null) == includesReads, includesReads ? "Reads are required" : "Reads are not expected");
+        final int numReads;
+        try {
+            writeString(getVariantKey(variant));
+            writeString(getVariantInfoString(variant));
+            out.writeByte(variant.isSNP() ? SNP : variant.isIndel() ? INDEL : OTHER);
+            writeReferenceTensor(variant, referenceBases);
+            if (includesReads) {
+                out.write(referenceBases);
+                numReads = writeReads(reads);
+            } else {
+                numReads = 0;
+            }
+        } catch (final IOException e) {
+            throw new GATKException("Error when encoding a batch of tensors", e);
+        }
+        size++;
+        return numReads;
+    }
+
+    /**
+     * @return the frame encoding the batch, whose contents are only valid until the batch is next modified
+     */
+    ByteArrayOutputStream getFrame() {
+        frame.setInt(0, MAGIC);
+        frame.setInt(Integer.BYTES, size);
+        frame.setInt(2 * Integer.BYTES, windowSize);
+        frame.setInt(3 * Integer.BYTES, includesReads ? 1 : 0);
+        frame.setInt(4 * Integer.BYTES, frame.size() - HEADER_LENGTH);
+        return frame;
+    }
+
+    /**
+     * The key the scores of a variant are written with: contig, position, reference and alternate alleles
+     */
+    static String getVariantKey(final VariantContext variant) {
+        return String.format("%s\t%d\t%s\t%s",
+                variant.getContig(),
+                variant.getStart(),
+                variant.getReference().getBaseString(),
+                variant.getAlternateAlleles().toString()
+        );
+    }
+
+    private static String getVariantInfoString(final VariantContext variant) {
+        // Create a string that will easily be parsed as a python dictionary
+        final StringBuilder varInfo = new StringBuilder();
+        for (final String attributeKey : variant.getAttributes().keySet()) {
+            varInfo.append(attributeKey).append('=')
+                    .append(variant.getAttribute(attributeKey).toString().replace(" ", "").replace("[", "").replace("]", ""))
+                    .append(';');
+        }
+        return varInfo.toString();
+    }
+
+    private void writeReferenceTensor(final VariantContext variant, final byte[] referenceBases) throws IOException {
+        int i = 0;
+        for (; i < windowSize && referenceBases[i] != 0; i++) {
+            final byte base = referenceBases[i];
+            final float[] row = base > 0 ? REFERENCE_ROWS[base] : null;
+            if (row == null) {
+                throw new GATKException(String.format("Unknown reference base code %s near variant at %s:%d",
+                        (char) (base & 0xFF), variant.getContig(), variant.getStart()));
+            }
+            for (final float value : row) {
+                out.writeFloat(value);
+            }
+        }
+        for (; i < windowSize; i++) {
+            for (int j = 0; j < BASES_PER_REFERENCE_ROW; j++) {
+                out.writeFloat(0);
+            }
+        }
+    }
+
+    private int writeReads(final Iterable<GATKRead> reads) throws IOException {
+        // the number of reads is only known once they have been iterated, so it is patched in afterwards
+        final int countPosition = frame.size();
+        out.writeInt(0);
+        int numReads = 0;
+        for (final GATKRead read : reads) {
+            final byte[] bases = read.getBases();
+            out.writeInt(bases.length);
+            out.write(bases);
+            final byte[] qualities = read.getBaseQualities();
+            out.writeInt(qualities.length);
+            out.write(qualities);
+            writeString(read.getCigar().toString());
+            out.writeByte((read.isReverseStrand() ? READ_REVERSE_STRAND : 0) |
+                    (read.isPaired() && read.mateIsReverseStrand() ? READ_MATE_REVERSE_STRAND : 0) |
+                    (read.isFirstOfPair() ? READ_FIRST_OF_PAIR : 0));
+            out.writeInt(read.getMappingQuality());
+            out.writeInt(read.getUnclippedStart());
+            numReads++;
+        }
+        frame.setInt(countPosition, numReads);
+        return numReads;
+    }
+
+    private void writeString(final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * A byte array output stream whose ints can be overwritten once written
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+        FrameBuffer(final int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        void setInt(final int position, final int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+    }
+}
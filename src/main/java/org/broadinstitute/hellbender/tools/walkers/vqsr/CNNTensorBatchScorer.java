@@ -0,0 +1,18 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+/**
+ * Scores batches of variant tensors in the background, one batch at a time.
+ */
+interface CNNTensorBatchScorer {
+
+    /**
+     * Starts scoring a batch, without waiting for it to be scored. Any batch started before must have been waited
+     * for with {@link #waitForPreviousBatch()}, and the batch must not be modified until it has been waited for too.
+     */
+    void startBatch(final CNNTensorBatch batch);
+
+    /**
+     * Waits for the last batch started to be scored; returns right away if there is no such batch.
+     */
+    void waitForPreviousBatch();
+}
@@ -0,0 +1,71 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+
+/**
+ * Collects variants into batches and streams them to a {@link CNNTensorBatchScorer}, double buffered: while one batch
+ * is being scored the next is filled, and the tool only waits for the scorer when the next batch is full before the
+ * previous one has been scored. The two batch buffers are reused for the whole traversal.
+ */
+final class CNNTensorBatchStreamer {
+
+    private final CNNTensorBatchScorer scorer;
+    private final int transferBatchSize;
+
+    // the batch being filled, and the other batch, which is either being scored or free
+    private CNNTensorBatch fillingBatch;
+    private CNNTensorBatch otherBatch;
+    private boolean otherBatchInFlight = false;
+
+    /**
+     * @param transferBatchSize number of variants sent to the scorer at a time
+     */
+    CNNTensorBatchStreamer(final CNNTensorBatchScorer scorer, final int transferBatchSize, final int windowSize, final boolean includesReads) {
+        this.scorer = Utils.nonNull(scorer);
+        Utils.validateArg(transferBatchSize > 0, "The transfer batch size must be positive");
+        this.transferBatchSize = transferBatchSize;
+        fillingBatch = new CNNTensorBatch(windowSize, includesReads);
+        otherBatch = new CNNTensorBatch(windowSize, includesReads);
+    }
+
+    /**
+     * Adds a variant to the current batch, sending the batch to the scorer once it is full
+     * @see CNNTensorBatch#addVariant
+     */
+    int addVariant(final VariantContext variant, final byte[] referenceBases, final Iterable<GATKRead> reads) {
+        final int numReads = fillingBatch.addVariant(variant, referenceBases, reads);
+        if (fillingBatch.size() == transferBatchSize) {
+            sendFillingBatch();
+        }
+        return numReads;
+    }
+
+    /**
+     * Sends the last, partial, batch if there is one, and waits for all the batches to be scored
+     */
+    void finish() {
+        if (fillingBatch.size() > 0) {
+            sendFillingBatch();
+        }
+        waitForOtherBatch();
+    }
+
+    private void sendFillingBatch() {
+        waitForOtherBatch();
+        scorer.startBatch(fillingBatch);
+        final CNNTensorBatch sentBatch = fillingBatch;
+        fillingBatch = otherBatch;
+        fillingBatch.clear();
+        otherBatch = sentBatch;
+        otherBatchInFlight = true;
+    }
+
+    private void waitForOtherBatch() {
+        if (otherBatchInFlight) {
+            scorer.waitForPreviousBatch();
+            otherBatchInFlight = false;
+        }
+    }
+}
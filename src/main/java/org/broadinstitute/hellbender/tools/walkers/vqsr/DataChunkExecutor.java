@@ -0,0 +1,95 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a computation over consecutive chunks of the VQSR data on a thread pool.
+ *
+ * With more than one thread the data are split into chunks of CHUNK_SIZE, and the results are returned in chunk order
+ * so that they can be combined in a fixed order, and the output does not depend on the number of threads or on thread
+ * scheduling. With a single thread all the data are one chunk, processed on the calling thread, so that sums over the
+ * data are accumulated in exactly the same order as a plain loop would.
+ */
+final class DataChunkExecutor implements AutoCloseable {
+
+    static final int CHUNK_SIZE = 10_000;
+
+    private final ExecutorService executor;
+
+    @FunctionalInterface
+    interface ChunkFunction<T> {
+        /**
+         * @param chunk index of the chunk, from 0
+         * @param start index of the first datum in the chunk
+         * @param end index after the last datum in the chunk
+         */
+        T apply(final int chunk, final int start, final int end);
+    }
+
+    DataChunkExecutor(final int numThreads) {
+        Utils.validateArg(numThreads > 0, "The number of threads must be positive");
+        executor = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+    }
+
+    /**
+     * Applies a function to each chunk of numData data
+     * @return the results of the function for each chunk, in chunk order
+     */
+    <T> List<T> mapChunks(final int numData, final ChunkFunction<T> function) {
+        Utils.nonNull(function);
+        Utils.validateArg(numData >= 0, "The number of data must be non-negative");
+        if (executor == null || numData <= CHUNK_SIZE) {
+            return Collections.singletonList(function.apply(0, 0, numData));
+        }
+        final int numChunks = (numData + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final List<Future<T>> futures = new ArrayList<>(numChunks);
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            final int chunkIndex = chunk;
+            final int start = chunk * CHUNK_SIZE;
+            final int end = Math.min(numData, start + CHUNK_SIZE);
+            futures.add(executor.submit(() -> function.apply(chunkIndex, start, end)));
+        }
+        final List<T> results = new ArrayList<>(numChunks);
+        for (final Future<T> future : futures) {
+            results.add(getResult(future));
+        }
+        return results;
+    }
+
+    /**
+     * Applies an action to each chunk of numData data, returning when all the chunks are done
+     */
+    void forEachChunk(final int numData, final ChunkFunction<Void> action) {
+        mapChunks(numData, action);
+    }
+
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while modeling variants", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while modeling variants", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
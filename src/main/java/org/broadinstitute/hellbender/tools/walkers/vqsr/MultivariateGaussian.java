@@ -23,13 +23,11 @@ class MultivariateGaussian {
     private double cachedDenomLog10;
     private Matrix cachedSigmaInverse;
     final private double[] pVarInGaussian;
-    int pVarInGaussianIndex;
 
     public MultivariateGaussian( final int numVariants, final int numAnnotations  ) {
         mu = new double[numAnnotations];
         sigma = new Matrix(numAnnotations, numAnnotations);
         pVarInGaussian = new double[numVariants];
-        pVarInGaussianIndex = 0;
     }
 
     public void zeroOutMu() {
@@ -71,13 +69,36 @@ class MultivariateGaussian {
         return MathUtils.distanceSquared( datum.annotations, mu );
     }
 
+    /**
+     * @param values annotations of the data, with those of the datum starting at offset
+     */
+    public double calculateDistanceFromMeanSquared( final double[] values, final int offset ) {
+        double sum = 0.0;
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            sum += MathUtils.square(values[offset + jjj] - mu[jjj]);
+        }
+        return sum;
+    }
+
     public void incrementMu( final VariantDatum datum ) {
         incrementMu( datum, 1.0 );
     }
 
+    /**
+     * @param values annotations of the data, with those of the datum starting at offset
+     */
+    public void incrementMu( final double[] values, final int offset ) {
+        incrementMu( values, offset, 1.0, mu );
+    }
+
     public void incrementMu( final VariantDatum datum, final double prob ) {
-        for( int jjj = 0; jjj < mu.length; jjj++ ) {
-            mu[jjj] += prob * datum.annotations[jjj];
+        incrementMu( datum.annotations, 0, prob, mu );
+    }
+
+    // adds prob times the annotations starting at offset to sums
+    private static void incrementMu( final double[] values, final int offset, final double prob, final double[] sums ) {
+        for( int jjj = 0; jjj < sums.length; jjj++ ) {
+            sums[jjj] += prob * values[offset + jjj];
         }
     }
 
@@ -125,43 +146,111 @@ class MultivariateGaussian {
     }
 
     public double evaluateDatumLog10( final VariantDatum datum ) {
+        return evaluateDatumLog10( datum.annotations, 0 );
+    }
+
+    /**
+     * @param values annotations of the data, with those of the datum starting at offset
+     */
+    public double evaluateDatumLog10( final double[] values, final int offset ) {
         double sumKernel = 0.0;
         final double[] crossProdTmp = new double[mu.length];
         Arrays.fill(crossProdTmp, 0.0);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+                crossProdTmp[iii] += (values[offset + jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
             }
         }
         for( int iii = 0; iii < mu.length; iii++ ) {
-            sumKernel += crossProdTmp[iii] * (datum.annotations[iii] - mu[iii]);
+            sumKernel += crossProdTmp[iii] * (values[offset + iii] - mu[iii]);
         }
 
         return (( -0.5 * sumKernel ) / Math.log(10.0)) + cachedDenomLog10; // This is the definition of a Gaussian PDF Log10
     }
 
-    public void assignPVarInGaussian( final double pVar ) {
-        pVarInGaussian[pVarInGaussianIndex++] = pVar;
+    /**
+     * Sets the probability that a datum belongs to this Gaussian. Different data may be set concurrently.
+     */
+    public void setPVarInGaussian( final int datumIndex, final double pVar ) {
+        pVarInGaussian[datumIndex] = pVar;
     }
 
     public void resetPVarInGaussian() {
         Arrays.fill(pVarInGaussian, 0.0);
-        pVarInGaussianIndex = 0;
     }
 
-    public void maximizeGaussian(final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
+    /**
+     * Sums the probabilities of a chunk of the data and the annotations weighted by them.
+     * @param initialSumProb the value the sum of the probabilities starts from
+     * @return the sum of the probabilities, followed by the weighted sum of each annotation
+     */
+    private double[] sumWeightedDataInChunk( final AnnotationMatrix data, final int start, final int end, final double initialSumProb ) {
+        final double[] values = data.getValues();
+        final double[] sums = new double[1 + mu.length];
+        final double[] muSums = new double[mu.length];
+        double chunkSumProb = initialSumProb;
+        for( int datumIndex = start; datumIndex < end; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            chunkSumProb += prob;
+            incrementMu( values, data.offset(datumIndex), prob, muSums );
+        }
+        sums[0] = chunkSumProb;
+        System.arraycopy(muSums, 0, sums, 1, mu.length);
+        return sums;
+    }
+
+    /**
+     * Sets sumProb and mu to the probability-weighted sums over all the data, adding up the chunks in order. The sum
+     * of the probabilities starts from initialSumProb.
+     */
+    private void sumWeightedData( final AnnotationMatrix data, final DataChunkExecutor executor, final double initialSumProb ) {
+        final List<double[]> chunkSums = executor.mapChunks(data.getNumData(),
+                (chunk, start, end) -> sumWeightedDataInChunk(data, start, end, chunk == 0 ? initialSumProb : 0.0));
+        sumProb = 0.0;
+        zeroOutMu();
+        for( int chunk = 0; chunk < chunkSums.size(); chunk++ ) {
+            final double[] sums = chunkSums.get(chunk);
+            sumProb = chunk == 0 ? sums[0] : sumProb + sums[0];
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                mu[jjj] += sums[1 + jjj];
+            }
+        }
+    }
+
+    /**
+     * Sums the probability-weighted outer products of the deviations of a chunk of the data from mu
+     */
+    private double[][] sumWeightedScatterInChunk( final AnnotationMatrix data, final int start, final int end ) {
+        final double[] values = data.getValues();
+        final double[][] scatter = new double[mu.length][mu.length];
+        for( int datumIndex = start; datumIndex < end; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final int offset = data.offset(datumIndex);
+            for( int iii = 0; iii < mu.length; iii++ ) {
+                final double deltaMu = prob * (values[offset + iii] - mu[iii]);
+                for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                    scatter[iii][jjj] += deltaMu * (values[offset + jjj] - mu[jjj]);
+                }
+            }
+        }
+        return scatter;
+    }
+
+    /**
+     * Adds the probability-weighted scatter of all the data around mu to sigma, adding up the chunks in order
+     */
+    private void addWeightedScatterToSigma( final AnnotationMatrix data, final DataChunkExecutor executor ) {
+        for( final double[][] scatter : executor.mapChunks(data.getNumData(), (chunk, start, end) -> sumWeightedScatterInChunk(data, start, end)) ) {
+            sigma.plusEquals( new Matrix(scatter) );
+        }
+    }
+
+    public void maximizeGaussian(final AnnotationMatrix data, final DataChunkExecutor executor, final double[] empiricalMu, final Matrix empiricalSigma,
                                  final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
-        sumProb = 1E-10;
         final Matrix wishart = new Matrix(mu.length, mu.length);
-        zeroOutMu();
         zeroOutSigma();
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
+        sumWeightedData( data, executor, 1E-10 );
         divideEqualsMu( sumProb );
 
         final double shrinkageFactor = (SHRINKAGE * sumProb) / (SHRINKAGE + sumProb);
@@ -172,18 +261,7 @@ class MultivariateGaussian {
             }
         }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                double deltaMu = prob * (datum.annotations[iii]-mu[iii]);
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, deltaMu * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
+        addWeightedScatterToSigma( data, executor );
 
         sigma.plusEquals( empiricalSigma );
         sigma.plusEquals( wishart );
@@ -199,30 +277,13 @@ class MultivariateGaussian {
         resetPVarInGaussian(); // clean up some memory
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        sumProb = 0.0;
-        zeroOutMu();
+    public void evaluateFinalModelParameters( final AnnotationMatrix data, final DataChunkExecutor executor ) {
         zeroOutSigma();
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
+        sumWeightedData( data, executor, 0.0 );
         divideEqualsMu( sumProb );
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
+        addWeightedScatterToSigma( data, executor );
         sigma.timesEquals( 1.0 / sumProb );
 
         resetPVarInGaussian(); // clean up some memory
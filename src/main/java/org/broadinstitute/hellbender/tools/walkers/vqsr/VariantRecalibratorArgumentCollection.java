@@ -49,6 +49,16 @@ final class VariantRecalibratorArgumentCollection {
     @Argument(fullName = "max-negative-gaussians", doc = "Max number of Gaussians for the negative model", optional = true)
     public int MAX_GAUSSIANS_FOR_NEGATIVE_MODEL = 2;
 
+    /**
+     * The Gaussian mixture models are fit, and the variants scored, on this many threads. With more than one thread
+     * the data are split into chunks of a fixed size whose sums are always combined in the same order, so the results
+     * are the same for any number of threads greater than one, although they may differ very slightly from those of a
+     * single thread, which sums over the data in one pass.
+     */
+    @Advanced
+    @Argument(fullName = "model-threads", doc = "Number of threads to use for fitting the models and scoring the variants", minValue = 1, optional = true)
+    public int NUM_THREADS = 1;
+
     /**
      * This parameter determines the maximum number of VBEM iterations to be performed in the variational Bayes algorithm.
      * The procedure will normally end when convergence is detected.
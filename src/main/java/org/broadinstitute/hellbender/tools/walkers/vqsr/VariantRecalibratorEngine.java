@@ -44,7 +44,9 @@ public class VariantRecalibratorEngine {
                 VRAC.SHRINKAGE,
                 VRAC.DIRICHLET_PARAMETER,
                 VRAC.PRIOR_COUNTS );
-        variationalBayesExpectationMaximization( model, data );
+        try (final DataChunkExecutor executor = new DataChunkExecutor(VRAC.NUM_THREADS)) {
+            variationalBayesExpectationMaximization( model, new AnnotationMatrix(data), executor );
+        }
         return model;
     }
 
@@ -60,8 +62,25 @@ public class VariantRecalibratorEngine {
         }
 
         logger.info("Evaluating full set of " + data.size() + " variants...");
-        for( final VariantDatum datum : data ) {
-            final double thisLod = evaluateDatum( datum, model );
+        // The data with no missing annotations are scored in parallel first. Marginalizing over missing annotations
+        // and jittering infinite contrastive lods both draw random numbers, so they are done serially in data order,
+        // which keeps the draws, and so the results, the same as scoring all the data in a single loop.
+        final double[] lods = new double[data.size()];
+        try (final DataChunkExecutor executor = new DataChunkExecutor(VRAC.NUM_THREADS)) {
+            executor.forEachChunk(data.size(), (chunk, start, end) -> {
+                for( int datumIndex = start; datumIndex < end; datumIndex++ ) {
+                    final VariantDatum datum = data.get(datumIndex);
+                    if( !hasNullAnnotation(datum) ) {
+                        lods[datumIndex] = evaluateDatum( datum, model );
+                    }
+                }
+                return null;
+            });
+        }
+
+        for( int datumIndex = 0; datumIndex < data.size(); datumIndex++ ) {
+            final VariantDatum datum = data.get(datumIndex);
+            final double thisLod = hasNullAnnotation(datum) ? evaluateDatum( datum, model ) : lods[datumIndex];
             if( Double.isNaN(thisLod) ) {
                 logger.warn("Evaluate datum returned a NaN.");
                 model.failedToConverge = true;
@@ -77,21 +96,39 @@ public class VariantRecalibratorEngine {
     }
 
     public void calculateWorstPerformingAnnotation( final List<VariantDatum> data, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
-        for( final VariantDatum datum : data ) {
-            int worstAnnotation = -1;
-            double minProb = Double.MAX_VALUE;
-            double worstValue = -1;
-            for( int iii = 0; iii < datum.annotations.length; iii++ ) {
-                final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
-                final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
-                if( goodProbLog10 != null && badProbLog10 != null ) {
-                    final double prob = goodProbLog10 - badProbLog10;
-                    if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+        try (final DataChunkExecutor executor = new DataChunkExecutor(VRAC.NUM_THREADS)) {
+            executor.forEachChunk(data.size(), (chunk, start, end) -> {
+                for( final VariantDatum datum : data.subList(start, end) ) {
+                    calculateWorstPerformingAnnotation(datum, goodModel, badModel);
                 }
+                return null;
+            });
+        }
+    }
+
+    private static void calculateWorstPerformingAnnotation( final VariantDatum datum, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
+        int worstAnnotation = -1;
+        double minProb = Double.MAX_VALUE;
+        double worstValue = -1;
+        for( int iii = 0; iii < datum.annotations.length; iii++ ) {
+            final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
+            final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
+            if( goodProbLog10 != null && badProbLog10 != null ) {
+                final double prob = goodProbLog10 - badProbLog10;
+                if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+            }
+        }
+        datum.worstAnnotation = worstAnnotation;
+        datum.worstValue = worstValue;
+    }
+
+    private static boolean hasNullAnnotation( final VariantDatum datum ) {
+        for( final boolean isNull : datum.isNull ) {
+            if( isNull ) {
+                return true;
             }
-            datum.worstAnnotation = worstAnnotation;
-            datum.worstValue = worstValue;
         }
+        return false;
     }
 
 
@@ -99,21 +136,21 @@ public class VariantRecalibratorEngine {
     // Private Methods used for generating a GaussianMixtureModel
     /////////////////////////////
 
-    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final List<VariantDatum> data ) {
+    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final AnnotationMatrix data, final DataChunkExecutor executor ) {
 
-        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS );
+        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS, executor );
 
         // The VBEM loop
         model.normalizePMixtureLog10();
-        model.expectationStep( data );
+        model.expectationStep( data, executor );
         double currentChangeInMixtureCoefficients;
         int iteration = 0;
         logger.info("Finished iteration " + iteration + ".");
         while( iteration < VRAC.MAX_ITERATIONS ) {
             iteration++;
-            model.maximizationStep( data );
+            model.maximizationStep( data, executor );
             currentChangeInMixtureCoefficients = model.normalizePMixtureLog10();
-            model.expectationStep( data );
+            model.expectationStep( data, executor );
             if( iteration % 5 == 0 ) { // cut down on the number of output lines so that users can read the warning messages
                 logger.info("Finished iteration " + iteration + ". \tCurrent change in mixture coefficients = " + String.format("%.5f", currentChangeInMixtureCoefficients));
             }
@@ -123,7 +160,7 @@ public class VariantRecalibratorEngine {
             }
         }
 
-        model.evaluateFinalModelParameters( data );
+        model.evaluateFinalModelParameters( data, executor );
     }
 
     /////////////////////////////
@@ -0,0 +1,169 @@
+package org.broadinstitute.hellbender.utils.read;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.NoSuchElementException;
+
+/**
+ * A local temporary file that reads can be spilled to and later replayed in the order in which they were written.
+ *
+ * Reads are stored as raw BAM records (via {@link BAMRecordCodec}) inside BGZF blocks compressed at a low level,
+ * without the BAM header or index, so writing and replaying is considerably cheaper than writing an intermediate
+ * BAM file. The file is intended to live only for the duration of a single tool run and is deleted on {@link #close()}
+ * (and on JVM exit as a fallback).
+ *
+ * Usage is strictly two-phase: add all reads with {@link #addRead}, then call {@link #iterator()} (which ends the
+ * writing phase) as many times as needed to replay them.
+ */
+public final class ReadSpillFile implements GATKReadWriter {
+
+    /**
+     * Default BGZF compression level used for spilled reads: favours speed over size.
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 1;
+
+    private final SAMFileHeader header;
+    private final File spillFile;
+    private final BAMRecordCodec writeCodec;
+    private OutputStream outputStream;
+    private long readsWritten = 0;
+
+    /**
+     * @param header header for the reads; used both to encode and to decode the records
+     * @param tmpDir directory in which to create the spill file, or null to use the default temporary directory
+     * @param compressionLevel BGZF compression level (0-9) for the spill file
+     */
+    public ReadSpillFile(final SAMFileHeader header, final File tmpDir, final int compressionLevel) {
+        Utils.nonNull(header, "header");
+        Utils.validateArg(compressionLevel >= 0 && compressionLevel <= 9, "compression level must be between 0 and 9");
+        this.header = header;
+        this.spillFile = IOUtils.createTempFileInDirectory("readSpill", ".tmp", tmpDir);
+        try {
+            this.outputStream = new BlockCompressedOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)), spillFile, compressionLevel);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(spillFile, e);
+        }
+        this.writeCodec = new BAMRecordCodec(header);
+        this.writeCodec.setOutputStream(outputStream, spillFile.getAbsolutePath());
+    }
+
+    /**
+     * Creates a spill file in the default temporary directory using {@link #DEFAULT_COMPRESSION_LEVEL}.
+     */
+    public ReadSpillFile(final SAMFileHeader header) {
+        this(header, null, DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    @Override
+    public void addRead(final GATKRead read) {
+        Utils.nonNull(read, "read");
+        Utils.validate(outputStream != null, "cannot add reads to a spill file that has already been read back");
+        writeCodec.encode(read.convertToSAMRecord(header));
+        readsWritten++;
+    }
+
+    /**
+     * @return the number of reads written to this spill file
+     */
+    public long getNumReadsWritten() {
+        return readsWritten;
+    }
+
+    /**
+     * @return the underlying temporary file
+     */
+    public File getFile() {
+        return spillFile;
+    }
+
+    /**
+     * Ends the writing phase (if not already ended) and returns an iterator over the spilled reads, in the order in
+     * which they were added. The caller must close the iterator.
+     */
+    public CloseableIterator<GATKRead> iterator() {
+        finishWriting();
+        return new SpillFileIterator();
+    }
+
+    /**
+     * Ends the writing phase and deletes the underlying file.
+     */
+    @Override
+    public void close() {
+        finishWriting();
+        if ( spillFile.exists() && ! spillFile.delete() ) {
+            throw new GATKException("Could not delete read spill file " + spillFile.getAbsolutePath());
+        }
+    }
+
+    private void finishWriting() {
+        if ( outputStream != null ) {
+            try {
+                outputStream.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(spillFile, e);
+            } finally {
+                outputStream = null;
+            }
+        }
+    }
+
+    private final class SpillFileIterator implements CloseableIterator<GATKRead> {
+        private final InputStream inputStream;
+        private final BAMRecordCodec readCodec;
+        private SAMRecord nextRecord;
+
+        private SpillFileIterator() {
+            try {
+                inputStream = new BlockCompressedInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(spillFile, e);
+            }
+            readCodec = new BAMRecordCodec(header);
+            readCodec.setInputStream(inputStream, spillFile.getAbsolutePath());
+            nextRecord = readCodec.decode();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextRecord != null;
+        }
+
+        @Override
+        public GATKRead next() {
+            if ( nextRecord == null ) {
+                throw new NoSuchElementException("No more reads in spill file " + spillFile.getAbsolutePath());
+            }
+            final SAMRecord current = nextRecord;
+            nextRecord = readCodec.decode();
+            return new SAMRecordToGATKReadAdapter(current);
+        }
+
+        @Override
+        public void close() {
+            nextRecord = null;
+            try {
+                inputStream.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(spillFile, e);
+            }
+        }
+    }
+}
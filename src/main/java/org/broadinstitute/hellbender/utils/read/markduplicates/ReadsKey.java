@@ -1,5 +1,9 @@
 package org.broadinstitute.hellbender.utils.read.markduplicates;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import htsjdk.samtools.SAMFileHeader;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
@@ -50,6 +54,7 @@ public abstract class ReadsKey {
      * Note: This class is intended for internal MarkDuplicatesSpark key purposes, it is only exposed so it can
      *       be accessed by {@link org.broadinstitute.hellbender.engine.spark.GATKRegistrator} for kryo serialization
      */
+    @DefaultSerializer(KeyForFragment.Serializer.class)
     public static class KeyForFragment extends ReadsKey {
         final long keyValue;
 
@@ -73,6 +78,21 @@ public abstract class ReadsKey {
         public String toString() {
             return Long.toString(keyValue);
         }
+
+        /**
+         * Writes the key as a single fixed-width long. The keys pack the start position into the high bits, so a
+         * variable-length encoding would never be shorter.
+         */
+        public static final class Serializer extends com.esotericsoftware.kryo.Serializer<KeyForFragment> {
+            @Override
+            public void write(final Kryo kryo, final Output output, final KeyForFragment key) {
+                output.writeLong(key.keyValue);
+            }
+            @Override
+            public KeyForFragment read(final Kryo kryo, final Input input, final Class<KeyForFragment> klass) {
+                return new KeyForFragment(input.readLong());
+            }
+        }
     }
 
     /**
@@ -81,6 +101,7 @@ public abstract class ReadsKey {
      * Note: This class is intended for internal MarkDuplicatesSpark key purposes, it is only exposed so it can
      *       be accessed by {@link org.broadinstitute.hellbender.engine.spark.GATKRegistrator} for kryo serialization
      */
+    @DefaultSerializer(KeyForPair.Serializer.class)
     public static class KeyForPair extends ReadsKey {
         final long firstReadKeyValue;
         final long secondReadKeyValue;
@@ -108,6 +129,21 @@ public abstract class ReadsKey {
         public String toString() {
             return firstReadKeyValue + " " + secondReadKeyValue;
         }
+
+        /**
+         * Writes the key as two fixed-width longs.
+         */
+        public static final class Serializer extends com.esotericsoftware.kryo.Serializer<KeyForPair> {
+            @Override
+            public void write(final Kryo kryo, final Output output, final KeyForPair key) {
+                output.writeLong(key.firstReadKeyValue);
+                output.writeLong(key.secondReadKeyValue);
+            }
+            @Override
+            public KeyForPair read(final Kryo kryo, final Input input, final Class<KeyForPair> klass) {
+                return new KeyForPair(input.readLong(), input.readLong());
+            }
+        }
     }
 
     // Helper methods for generating summary longs
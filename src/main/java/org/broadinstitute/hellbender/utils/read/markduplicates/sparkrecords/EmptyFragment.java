@@ -1,5 +1,9 @@
 package org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import htsjdk.samtools.SAMFileHeader;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
@@ -16,6 +20,7 @@ import java.util.Map;
  * This class holds onto as little information as possible in an attempt to prevent excessive serialization of
  * during the processing step of MarkDuplicatesSpark
  */
+@DefaultSerializer(EmptyFragment.Serializer.class)
 public final class EmptyFragment extends PairedEnds {
     protected transient ReadsKey key;
 
@@ -35,6 +40,16 @@ public final class EmptyFragment extends PairedEnds {
                 headerLibraryMap.get(ReadUtils.getLibrary(read, header, LibraryIdGenerator.UNKNOWN_LIBRARY)));
     }
 
+    // Constructor for serialization purposes, only the strand is needed after the shuffle
+    private EmptyFragment(Kryo kryo, Input input){
+        super(0, null);
+        R1R = input.readBoolean();
+    }
+
+    protected void serialize(Kryo kryo, Output output) {
+        output.writeBoolean(R1R);
+    }
+
     @Override
     public Type getType() {
         return Type.EMPTY_FRAGMENT;
@@ -64,4 +79,18 @@ public final class EmptyFragment extends PairedEnds {
     public String toString() {
         return "EmptyFragment ";
     }
+
+    /**
+     * Serializer for EmptyFragment which relies on the encoding implemented within the class itself
+     */
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<EmptyFragment> {
+        @Override
+        public void write(final Kryo kryo, final Output output, final EmptyFragment emptyFragment ) {
+            emptyFragment.serialize(kryo, output);
+        }
+        @Override
+        public EmptyFragment read(final Kryo kryo, final Input input, final Class<EmptyFragment> klass ) {
+            return new EmptyFragment(kryo, input);
+        }
+    }
 }
@@ -1,7 +1,10 @@
 package org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import htsjdk.samtools.SAMFileHeader;
-import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.read.markduplicates.LibraryIdGenerator;
@@ -17,6 +20,7 @@ import java.util.Map;
  * This class holds onto as little information as possible in an attempt to prevent excessive serialization of
  * during the processing step of MarkDuplicatesSpark
  */
+@DefaultSerializer(Fragment.Serializer.class)
 public class Fragment extends PairedEnds {
     protected transient ReadsKey key;
 
@@ -37,6 +41,24 @@ public class Fragment extends PairedEnds {
                 headerLibraryMap.get(ReadUtils.getLibrary(first, header, LibraryIdGenerator.UNKNOWN_LIBRARY)));
     }
 
+    // Constructor for serialization purposes
+    private Fragment(Kryo kryo, Input input){
+        super(input.readInt(true), input.readString());
+
+        score = input.readInt();
+        firstStartPosition = input.readInt();
+        R1R = input.readBoolean();
+    }
+
+    protected void serialize(Kryo kryo, Output output) {
+        output.writeInt(partitionIndex, true);
+        output.writeString(name);
+
+        output.writeInt(score);
+        output.writeInt(firstStartPosition);
+        output.writeBoolean(R1R);
+    }
+
     @Override
     public Type getType() {
       return Type.FRAGMENT;
@@ -66,4 +88,18 @@ public class Fragment extends PairedEnds {
     public String toString() {
         return "fragment: " + name + " " + firstStartPosition;
     }
+
+    /**
+     * Serializer for Fragment which relies on the fixed-width encoding implemented within the class itself
+     */
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<Fragment> {
+        @Override
+        public void write(final Kryo kryo, final Output output, final Fragment fragment ) {
+            fragment.serialize(kryo, output);
+        }
+        @Override
+        public Fragment read(final Kryo kryo, final Input input, final Class<Fragment> klass ) {
+            return new Fragment(kryo, input);
+        }
+    }
 }
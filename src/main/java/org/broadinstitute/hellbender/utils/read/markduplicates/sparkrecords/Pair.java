@@ -23,6 +23,11 @@ import java.util.Map;
  */
 @DefaultSerializer(Pair.Serializer.class)
 public final class Pair extends PairedEnds implements PhysicalLocation {
+    // Bits of the single byte used to serialize the orientation of the pair
+    private static final int READ1_REVERSE_STRAND_FLAG = 0x1;
+    private static final int READ2_REVERSE_STRAND_FLAG = 0x2;
+    private static final int WAS_FLIPPED_FLAG = 0x4;
+
     protected transient ReadsKey key;
 
     private final int firstStartPosition;
@@ -104,12 +109,12 @@ public final class Pair extends PairedEnds implements PhysicalLocation {
         score = input.readInt();
 
         firstStartPosition = input.readInt();
-        isRead1ReverseStrand = input.readBoolean();
-
-        isRead2ReverseStrand = input.readBoolean();
-
         readGroupIndex = input.readShort();
-        wasFlipped = input.readBoolean();
+
+        final byte flags = input.readByte();
+        isRead1ReverseStrand = (flags & READ1_REVERSE_STRAND_FLAG) != 0;
+        isRead2ReverseStrand = (flags & READ2_REVERSE_STRAND_FLAG) != 0;
+        wasFlipped = (flags & WAS_FLIPPED_FLAG) != 0;
     }
 
     protected void serialize(Kryo kryo, Output output) {
@@ -119,12 +124,11 @@ public final class Pair extends PairedEnds implements PhysicalLocation {
         output.writeInt(score);
 
         output.writeInt(firstStartPosition);
-        output.writeBoolean(isRead1ReverseStrand);
-
-        output.writeBoolean(isRead2ReverseStrand);
-
         output.writeShort(readGroupIndex);
-        output.writeBoolean(wasFlipped);
+
+        output.writeByte((isRead1ReverseStrand ? READ1_REVERSE_STRAND_FLAG : 0) |
+                (isRead2ReverseStrand ? READ2_REVERSE_STRAND_FLAG : 0) |
+                (wasFlipped ? WAS_FLIPPED_FLAG : 0));
     }
 
     @Override
@@ -1,5 +1,9 @@
 package org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
 
@@ -7,6 +11,7 @@ import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
  * Dummy class used for preserving reads that need to be marked as non-duplicate despite not wanting to perform any
  * processing on the reads. (eg. unmapped reads we don't want to process but must be non-duplicate marked)
  */
+@DefaultSerializer(Passthrough.Serializer.class)
 public final class Passthrough extends MarkDuplicatesSparkRecord {
     private final transient ReadsKey key;
 
@@ -17,6 +22,17 @@ public final class Passthrough extends MarkDuplicatesSparkRecord {
         this.key = ReadsKey.hashKeyForPassthroughRead(read);
     }
 
+    // Constructor for serialization purposes, only the name and its partition are needed after the shuffle
+    private Passthrough(Kryo kryo, Input input){
+        super(input.readInt(true), input.readString());
+        this.key = null;
+    }
+
+    protected void serialize(Kryo kryo, Output output) {
+        output.writeInt(partitionIndex, true);
+        output.writeString(name);
+    }
+
     @Override
     public Type getType() {
         return Type.PASSTHROUGH;
@@ -26,4 +42,18 @@ public final class Passthrough extends MarkDuplicatesSparkRecord {
     public ReadsKey key() {
         return key;
     }
+
+    /**
+     * Serializer for Passthrough which relies on the encoding implemented within the class itself
+     */
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<Passthrough> {
+        @Override
+        public void write(final Kryo kryo, final Output output, final Passthrough passthrough ) {
+            passthrough.serialize(kryo, output);
+        }
+        @Override
+        public Passthrough read(final Kryo kryo, final Input input, final Class<Passthrough> klass ) {
+            return new Passthrough(kryo, input);
+        }
+    }
 }
@@ -0,0 +1,324 @@
+package org.broadinstitute.hellbender.utils.reference;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A reference genome held off-heap, packed 2 bits per base (A, C, G, T), with the runs of any other bases (N and the
+ * IUPAC ambiguity codes) kept in a separate run-length mask. A human reference takes under 800MB of direct memory,
+ * which the garbage collector never has to scan or copy.
+ *
+ * Lower-case (soft-masked) A, C, G and T are packed as upper-case bases; all other bytes are kept exactly.
+ *
+ * Instances are immutable and can be queried concurrently, so a single copy (for example, the value of a Spark
+ * broadcast) can be shared by all the tasks in an executor. Note that the packed bases count against the JVM's
+ * direct memory limit rather than the heap.
+ */
+@DefaultSerializer(PackedReference.Serializer.class)
+public final class PackedReference implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private transient Map<String, PackedContig> contigs;
+
+    private PackedReference(final Map<String, PackedContig> contigs) {
+        this.contigs = contigs;
+    }
+
+    /**
+     * @return a dictionary of the contigs, in the order they were added
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        final List<SAMSequenceRecord> records = contigs.values().stream()
+                .map(contig -> new SAMSequenceRecord(contig.name, contig.length))
+                .collect(Collectors.toList());
+        return new SAMSequenceDictionary(records);
+    }
+
+    /**
+     * @return the length of the given contig
+     */
+    public int getContigLength(final String contig) {
+        return getContig(contig).length;
+    }
+
+    /**
+     * @return the number of bytes of packed bases, which are held in direct memory
+     */
+    public long getPackedSize() {
+        return contigs.values().stream().mapToLong(contig -> contig.packed.capacity()).sum();
+    }
+
+    /**
+     * Decodes the bases of an interval, at 8 bits per base.
+     *
+     * @param interval an interval that lies within its contig
+     * @return a new array of the bases of the interval
+     */
+    public byte[] getBases(final SimpleInterval interval) {
+        Utils.nonNull(interval);
+        final PackedContig contig = getContig(interval.getContig());
+        Utils.validateArg(interval.getEnd() <= contig.length, () -> "Interval " + interval + " extends beyond the end of its contig");
+        return contig.getBases(interval.getStart() - 1, interval.getEnd());
+    }
+
+    private PackedContig getContig(final String contig) {
+        final PackedContig packedContig = contigs.get(contig);
+        Utils.nonNull(packedContig, () -> "Contig " + contig + " not found in reference dictionary");
+        return packedContig;
+    }
+
+    private static int encode(final byte base) {
+        switch (base) {
+            case 'A': case 'a': return 0;
+            case 'C': case 'c': return 1;
+            case 'G': case 'g': return 2;
+            case 'T': case 't': return 3;
+            default: return -1;
+        }
+    }
+
+    private void write(final DataOutput out) throws IOException {
+        out.writeInt(contigs.size());
+        for (final PackedContig contig : contigs.values()) {
+            contig.write(out);
+        }
+    }
+
+    private static PackedReference read(final DataInput in) throws IOException {
+        final int numContigs = in.readInt();
+        final Map<String, PackedContig> contigs = new LinkedHashMap<>();
+        for (int i = 0; i < numContigs; i++) {
+            final PackedContig contig = PackedContig.read(in);
+            contigs.put(contig.name, contig);
+        }
+        return new PackedReference(contigs);
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        write(out);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        contigs = read(in).contigs;
+    }
+
+    /**
+     * The packed bases of one contig. Base {@code i} (0-based) is held in bits {@code 2*(i%4)} and {@code 2*(i%4)+1}
+     * of byte {@code i/4}; the mask runs are 0-based, half-open, sorted and disjoint.
+     */
+    private static final class PackedContig {
+        private final String name;
+        private final int length;
+        private final ByteBuffer packed;
+        private final int[] maskStarts;
+        private final int[] maskEnds;
+        private final byte[] maskBases;
+
+        PackedContig(final String name, final int length, final ByteBuffer packed,
+                     final int[] maskStarts, final int[] maskEnds, final byte[] maskBases) {
+            this.name = name;
+            this.length = length;
+            this.packed = packed;
+            this.maskStarts = maskStarts;
+            this.maskEnds = maskEnds;
+            this.maskBases = maskBases;
+        }
+
+        byte[] getBases(final int start, final int end) {
+            final byte[] bases = new byte[end - start];
+            // only absolute gets are used, so concurrent queries don't interfere
+            for (int i = start; i < end; i++) {
+                bases[i - start] = BASES[(packed.get(i >> 2) >> ((i & 3) << 1)) & 3];
+            }
+            for (int run = firstMaskRunEndingAfter(start); run < maskStarts.length && maskStarts[run] < end; run++) {
+                Arrays.fill(bases, Math.max(start, maskStarts[run]) - start, Math.min(end, maskEnds[run]) - start, maskBases[run]);
+            }
+            return bases;
+        }
+
+        private int firstMaskRunEndingAfter(final int position) {
+            int low = 0;
+            int high = maskEnds.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (maskEnds[mid] > position) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        void write(final DataOutput out) throws IOException {
+            out.writeUTF(name);
+            out.writeInt(length);
+            out.writeInt(maskStarts.length);
+            for (int i = 0; i < maskStarts.length; i++) {
+                out.writeInt(maskStarts[i]);
+                out.writeInt(maskEnds[i]);
+                out.writeByte(maskBases[i]);
+            }
+            final ByteBuffer source = packed.duplicate();
+            source.clear();
+            final byte[] chunk = new byte[Math.min(source.capacity(), 1 << 16)];
+            while (source.hasRemaining()) {
+                final int n = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+
+        static PackedContig read(final DataInput in) throws IOException {
+            final String name = in.readUTF();
+            final int length = in.readInt();
+            final int numMaskRuns = in.readInt();
+            final int[] maskStarts = new int[numMaskRuns];
+            final int[] maskEnds = new int[numMaskRuns];
+            final byte[] maskBases = new byte[numMaskRuns];
+            for (int i = 0; i < numMaskRuns; i++) {
+                maskStarts[i] = in.readInt();
+                maskEnds[i] = in.readInt();
+                maskBases[i] = in.readByte();
+            }
+            final ByteBuffer packed = ByteBuffer.allocateDirect(packedSize(length));
+            final byte[] chunk = new byte[Math.min(packed.capacity(), 1 << 16)];
+            while (packed.hasRemaining()) {
+                final int n = Math.min(chunk.length, packed.remaining());
+                in.readFully(chunk, 0, n);
+                packed.put(chunk, 0, n);
+            }
+            packed.clear();
+            return new PackedContig(name, length, packed, maskStarts, maskEnds, maskBases);
+        }
+
+        static int packedSize(final int length) {
+            return (int) ((length + 3L) / 4);
+        }
+    }
+
+    /**
+     * Builds a {@link PackedReference} one contig at a time, with the bases of each contig added in order, so that
+     * a contig never has to be held on the heap in full.
+     */
+    public static final class Builder {
+        private final Map<String, PackedContig> contigs = new LinkedHashMap<>();
+
+        private String name;
+        private int length;
+        private ByteBuffer packed;
+        private int position;
+        private final IntArrayList maskStarts = new IntArrayList();
+        private final IntArrayList maskEnds = new IntArrayList();
+        private final ByteArrayList maskBases = new ByteArrayList();
+
+        /**
+         * Starts a new contig, whose bases must then be added with {@link #addBases(byte[])}.
+         */
+        public Builder addContig(final String contig, final int contigLength) {
+            Utils.nonNull(contig);
+            Utils.validateArg(contigLength >= 0, "contig length must be non-negative");
+            Utils.validateArg(!contigs.containsKey(contig) && !contig.equals(name), () -> "Duplicate contig " + contig);
+            finishContig();
+            name = contig;
+            length = contigLength;
+            packed = ByteBuffer.allocateDirect(PackedContig.packedSize(contigLength));
+            position = 0;
+            return this;
+        }
+
+        /**
+         * Adds the next bases of the current contig, at 8 bits per base.
+         */
+        public Builder addBases(final byte[] bases) {
+            Utils.nonNull(bases);
+            Utils.validate(name != null, "addContig must be called before addBases");
+            Utils.validateArg(position + (long) bases.length <= length, () -> "More bases than the length of contig " + name);
+            for (final byte base : bases) {
+                int code = encode(base);
+                if (code < 0) {
+                    final int lastRun = maskEnds.size() - 1;
+                    if (lastRun >= 0 && maskEnds.getInt(lastRun) == position && maskBases.getByte(lastRun) == base) {
+                        maskEnds.set(lastRun, position + 1);
+                    } else {
+                        maskStarts.add(position);
+                        maskEnds.add(position + 1);
+                        maskBases.add(base);
+                    }
+                    code = 0;
+                }
+                if (code != 0) {
+                    final int index = position >> 2;
+                    packed.put(index, (byte) (packed.get(index) | (code << ((position & 3) << 1))));
+                }
+                position++;
+            }
+            return this;
+        }
+
+        private void finishContig() {
+            if (name == null) {
+                return;
+            }
+            if (position != length) {
+                throw new GATKException("Contig " + name + " has length " + length + " but only " + position + " bases were added");
+            }
+            contigs.put(name, new PackedContig(name, length, packed,
+                    maskStarts.toIntArray(), maskEnds.toIntArray(), maskBases.toByteArray()));
+            maskStarts.clear();
+            maskEnds.clear();
+            maskBases.clear();
+            name = null;
+            packed = null;
+        }
+
+        public PackedReference build() {
+            finishContig();
+            return new PackedReference(new LinkedHashMap<>(contigs));
+        }
+    }
+
+    /**
+     * A Kryo serializer that writes the packed bases directly, and reads them back into direct memory.
+     */
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<PackedReference> {
+        @Override
+        public void write(final Kryo kryo, final Output output, final PackedReference reference) {
+            try {
+                reference.write(new DataOutputStream(output));
+            } catch (final IOException e) {
+                throw new GATKException("Error serializing packed reference", e);
+            }
+        }
+
+        @Override
+        public PackedReference read(final Kryo kryo, final Input input, final Class<PackedReference> klass) {
+            try {
+                return PackedReference.read(new DataInputStream(input));
+            } catch (final IOException e) {
+                throw new GATKException("Error deserializing packed reference", e);
+            }
+        }
+    }
+}
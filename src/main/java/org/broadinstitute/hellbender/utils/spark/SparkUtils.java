@@ -13,10 +13,12 @@ import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
+import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.apache.spark.api.java.function.Function;
 import org.apache.spark.broadcast.Broadcast;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
 import org.broadinstitute.hellbender.exceptions.GATKException;
@@ -231,4 +233,102 @@ public final class SparkUtils {
             return current;
         });
     }
+
+    /**
+     * Redistribute the elements of an RDD so that each partition holds roughly the same total estimated cost, rather
+     * than roughly the same number of elements. This is useful before an expensive step whose cost per element varies
+     * widely, so that a few expensive elements that happen to be together don't make their partition a straggler task.
+     *
+     * Partitions are contiguous ranges of the input, so the order of the elements (both across and within partitions)
+     * is preserved. An element is never split, so a single element that costs more than the average cost per partition
+     * will end up in a partition of its own.
+     *
+     * The input is traversed twice (once to total the costs and once to shuffle the elements), so it should be cached
+     * if it is expensive to compute.
+     *
+     * @param elements the elements to redistribute
+     * @param cost the estimated cost of processing an element, must not be negative
+     * @param numPartitions the number of partitions of the returned RDD
+     * @return the same elements, in the same order, with the cost balanced across <code>numPartitions</code> partitions
+     */
+    public static <T> JavaRDD<T> rebalanceByCost(final JavaRDD<T> elements, final Function<T, Long> cost, final int numPartitions) {
+        Utils.nonNull(elements);
+        Utils.nonNull(cost);
+        Utils.validateArg(numPartitions > 0, "numPartitions must be > 0");
+
+        // the number of elements and the total cost of each input partition
+        final List<Tuple2<Long, Long>> partitionTotals = elements.mapPartitions(it -> {
+            long count = 0;
+            long totalCost = 0;
+            while (it.hasNext()) {
+                count++;
+                totalCost += cost.call(it.next());
+            }
+            return Iterators.singletonIterator(new Tuple2<>(count, totalCost));
+        }).collect();
+
+        final long[] firstIndex = new long[partitionTotals.size()];
+        final long[] costBefore = new long[partitionTotals.size()];
+        for (int i = 1; i < partitionTotals.size(); i++) {
+            firstIndex[i] = firstIndex[i - 1] + partitionTotals.get(i - 1)._1();
+            costBefore[i] = costBefore[i - 1] + partitionTotals.get(i - 1)._2();
+        }
+        final long totalCost = partitionTotals.stream().mapToLong(Tuple2::_2).sum();
+        if (totalCost == 0) {
+            return elements;
+        }
+        final double costPerPartition = (double) totalCost / numPartitions;
+
+        // key each element by its new partition (the one that its cost midpoint falls in) and its global index
+        final JavaPairRDD<Tuple2<Integer, Long>, T> keyed = elements.mapPartitionsWithIndex((partitionIndex, it) -> {
+            final List<Tuple2<Tuple2<Integer, Long>, T>> keyedElements = new ArrayList<>();
+            long index = firstIndex[partitionIndex];
+            long cumulativeCost = costBefore[partitionIndex];
+            while (it.hasNext()) {
+                final T element = it.next();
+                final long elementCost = cost.call(element);
+                final int newPartition = (int) Math.min(numPartitions - 1, (long) ((cumulativeCost + elementCost / 2.0) / costPerPartition));
+                keyedElements.add(new Tuple2<>(new Tuple2<>(newPartition, index++), element));
+                cumulativeCost += elementCost;
+            }
+            return keyedElements.iterator();
+        }, true).mapToPair(t -> t);
+
+        return keyed.repartitionAndSortWithinPartitions(new KeyedPartitioner(numPartitions), new IndexComparator()).values();
+    }
+
+    /**
+     * Partitions elements keyed by (partition, index) by the partition in their key.
+     */
+    private static final class KeyedPartitioner extends Partitioner {
+        private static final long serialVersionUID = 1L;
+        private final int numPartitions;
+
+        KeyedPartitioner(final int numPartitions) {
+            this.numPartitions = numPartitions;
+        }
+
+        @Override
+        public int numPartitions() {
+            return numPartitions;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int getPartition(final Object key) {
+            return ((Tuple2<Integer, Long>) key)._1();
+        }
+    }
+
+    /**
+     * Orders elements keyed by (partition, index) by the index in their key.
+     */
+    private static final class IndexComparator implements Comparator<Tuple2<Integer, Long>>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(final Tuple2<Integer, Long> o1, final Tuple2<Integer, Long> o2) {
+            return Long.compare(o1._2(), o2._2());
+        }
+    }
 }
@@ -0,0 +1,278 @@
+package org.broadinstitute.hellbender.utils.variant;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only, memory-mapped index of the intervals of a collection of known sites, with an efficient
+ * operation to get the sites that overlap a given query interval.
+ *
+ * The index is written once to a binary file (see {@link Builder}) and then opened with {@link #open(File)}, which
+ * memory-maps the file instead of loading it onto the heap, so that all the tasks of a JVM (and all the JVMs of a
+ * machine, through the page cache) share a single copy of the data. For each contig the file holds three sorted
+ * int arrays - the site starts, the site ends and the running maximum of the ends - plus one byte of type flags per
+ * site, and queries are answered with two binary searches followed by a scan of the candidates between them.
+ *
+ * Only the location and type of the sites are kept, so the results are {@link MinimalVariant}s.
+ */
+public final class KnownSitesIndex {
+
+    private static final int MAGIC = 0x474B5349; // "GKSI"
+    private static final int VERSION = 1;
+
+    private static final byte SNP_FLAG = 0x1;
+    private static final byte INDEL_FLAG = 0x2;
+
+    private final File file;
+    private final Map<String, ContigSites> sitesByContig;
+
+    private KnownSitesIndex(final File file, final Map<String, ContigSites> sitesByContig) {
+        this.file = file;
+        this.sitesByContig = sitesByContig;
+    }
+
+    /**
+     * Memory-maps an index written by {@link Builder#write(File)}.
+     */
+    public static KnownSitesIndex open(final File file) {
+        Utils.nonNull(file, "file");
+        try ( final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+              final FileChannel channel = randomAccessFile.getChannel() ) {
+            final DataInputStream header = new DataInputStream(Channels.newInputStream(channel));
+            if ( header.readInt() != MAGIC ) {
+                throw new UserException.MalformedFile(file, "not a known sites index");
+            }
+            final int version = header.readInt();
+            if ( version != VERSION ) {
+                throw new UserException.MalformedFile(file, "unsupported known sites index version " + version);
+            }
+            final int numContigs = header.readInt();
+            final Map<String, ContigSites> sitesByContig = new LinkedHashMap<>(numContigs * 2);
+            for ( int i = 0; i < numContigs; i++ ) {
+                final String contig = header.readUTF();
+                final int numSites = header.readInt();
+                final long offset = header.readLong();
+                // the mapping stays valid after the channel is closed
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, ContigSites.sizeInBytes(numSites));
+                sitesByContig.put(contig, new ContigSites(contig, numSites, buffer));
+            }
+            return new KnownSitesIndex(file, sitesByContig);
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * @return the file backing this index
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the total number of sites in this index
+     */
+    public long size() {
+        return sitesByContig.values().stream().mapToLong(sites -> sites.numSites).sum();
+    }
+
+    /**
+     * Returns all the sites that overlap with the query, in order of their start position.
+     * You may modify the returned list.
+     */
+    public List<GATKVariant> getOverlapping(final SimpleInterval query) {
+        final ContigSites sites = sitesByContig.get(query.getContig());
+        if ( sites == null ) {
+            return new ArrayList<>();
+        }
+        return sites.getOverlapping(query);
+    }
+
+    private static final class ContigSites {
+        private final String contig;
+        private final int numSites;
+        private final IntBuffer starts;
+        private final IntBuffer ends;
+        private final IntBuffer maxEnds;
+        private final ByteBuffer flags;
+
+        private static long sizeInBytes(final int numSites) {
+            return (3L * Integer.BYTES + 1) * numSites;
+        }
+
+        private ContigSites(final String contig, final int numSites, final ByteBuffer buffer) {
+            this.contig = contig;
+            this.numSites = numSites;
+            this.starts = slice(buffer, 0, numSites * Integer.BYTES).asIntBuffer();
+            this.ends = slice(buffer, numSites * Integer.BYTES, numSites * Integer.BYTES).asIntBuffer();
+            this.maxEnds = slice(buffer, 2 * numSites * Integer.BYTES, numSites * Integer.BYTES).asIntBuffer();
+            this.flags = slice(buffer, 3 * numSites * Integer.BYTES, numSites);
+        }
+
+        private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.limit(offset + length);
+            return duplicate.slice();
+        }
+
+        private List<GATKVariant> getOverlapping(final SimpleInterval query) {
+            // sites before "first" all end before the query starts, sites from "last" on all start after the query ends
+            final int first = firstIndexAtLeast(maxEnds, query.getStart());
+            final int last = firstIndexAtLeast(starts, query.getEnd() + 1);
+            final List<GATKVariant> overlapping = new ArrayList<>();
+            for ( int i = first; i < last; i++ ) {
+                final int end = ends.get(i);
+                if ( end >= query.getStart() ) {
+                    final byte siteFlags = flags.get(i);
+                    overlapping.add(new MinimalVariant(new SimpleInterval(contig, starts.get(i), end),
+                            (siteFlags & SNP_FLAG) != 0, (siteFlags & INDEL_FLAG) != 0));
+                }
+            }
+            return overlapping;
+        }
+
+        /**
+         * @return the index of the first value in the non-decreasing {@code values} that is at least {@code target},
+         *         or the number of values if there is none
+         */
+        private int firstIndexAtLeast(final IntBuffer values, final int target) {
+            int low = 0;
+            int high = numSites;
+            while ( low < high ) {
+                final int mid = (low + high) >>> 1;
+                if ( values.get(mid) < target ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Accumulates sites in any order and writes them out as a known sites index file.
+     */
+    public static final class Builder {
+        private final Map<String, ContigBuilder> contigs = new LinkedHashMap<>();
+
+        public Builder add(final GATKVariant site) {
+            Utils.nonNull(site, "site");
+            contigs.computeIfAbsent(site.getContig(), k -> new ContigBuilder())
+                    .add(site.getStart(), site.getEnd(), (byte) ((site.isSnp() ? SNP_FLAG : 0) | (site.isIndel() ? INDEL_FLAG : 0)));
+            return this;
+        }
+
+        /**
+         * Writes the accumulated sites to the given file, which can then be opened with {@link KnownSitesIndex#open(File)}.
+         */
+        public void write(final File file) {
+            Utils.nonNull(file, "file");
+            try {
+                // The header holds the offset of each contig's data, so size it first by writing it with placeholder offsets
+                final List<String> contigNames = new ArrayList<>(contigs.keySet());
+                final long[] offsets = new long[contigNames.size()];
+                long offset = writeHeader(new DataOutputStream(new ByteArrayOutputStream()), contigNames, offsets);
+                for ( int i = 0; i < offsets.length; i++ ) {
+                    offsets[i] = offset;
+                    offset += ContigSites.sizeInBytes(contigs.get(contigNames.get(i)).size());
+                }
+
+                try ( final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))) ) {
+                    writeHeader(out, contigNames, offsets);
+                    for ( final String contig : contigNames ) {
+                        contigs.get(contig).write(out);
+                    }
+                }
+            } catch ( final IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+
+        private long writeHeader(final DataOutputStream out, final List<String> contigNames, final long[] offsets) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(contigNames.size());
+            for ( int i = 0; i < contigNames.size(); i++ ) {
+                out.writeUTF(contigNames.get(i));
+                out.writeInt(contigs.get(contigNames.get(i)).size());
+                out.writeLong(offsets[i]);
+            }
+            out.flush();
+            return out.size();
+        }
+    }
+
+    private static final class ContigBuilder {
+        private final IntArrayList starts = new IntArrayList();
+        private final IntArrayList ends = new IntArrayList();
+        private final ByteArrayList flags = new ByteArrayList();
+
+        private void add(final int start, final int end, final byte siteFlags) {
+            starts.add(start);
+            ends.add(end);
+            flags.add(siteFlags);
+        }
+
+        private int size() {
+            return starts.size();
+        }
+
+        private void write(final DataOutputStream out) throws IOException {
+            final int numSites = size();
+            if ( ContigSites.sizeInBytes(numSites) > Integer.MAX_VALUE ) {
+                throw new GATKException("Too many known sites on a single contig to index: " + numSites);
+            }
+            // sort the sites by start by packing each start together with the site index into a primitive sort key,
+            // so ties on start keep their insertion order
+            final long[] order = new long[numSites];
+            for ( int i = 0; i < numSites; i++ ) {
+                order[i] = ((long) starts.getInt(i) << 32) | i;
+            }
+            Arrays.sort(order);
+            final int[] sorted = new int[numSites];
+            for ( int i = 0; i < numSites; i++ ) {
+                sorted[i] = (int) order[i];
+            }
+
+            for ( final int i : sorted ) {
+                out.writeInt(starts.getInt(i));
+            }
+            for ( final int i : sorted ) {
+                out.writeInt(ends.getInt(i));
+            }
+            int maxEnd = Integer.MIN_VALUE;
+            for ( final int i : sorted ) {
+                maxEnd = Math.max(maxEnd, ends.getInt(i));
+                out.writeInt(maxEnd);
+            }
+            for ( final int i : sorted ) {
+                out.writeByte(flags.getByte(i));
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ public final class GVCFWriter implements VariantContextWriter {
 
     private final RangeMap<Integer, Range<Integer>> gqPartitions;
     private final int defaultPloidy;
+    private final int gqBandTolerance;
 
     /** fields updated on the fly during GVCFWriter operation */
     private int nextAvailableStart = -1;
@@ -57,9 +58,30 @@ public final class GVCFWriter implements VariantContextWriter {
      * @param defaultPloidy    the assumed ploidy for input variant context without one.
      */
     public GVCFWriter(final VariantContextWriter underlyingWriter, final List<Integer> gqPartitions, final int defaultPloidy) {
+        this(underlyingWriter, gqPartitions, defaultPloidy, 0);
+    }
+
+    /**
+     * Create a new GVCF writer whose hom-ref blocks may extend past the bounds of their GQ band
+     *
+     * A block accepts the hom-ref sites whose GQ is within {@code gqBandTolerance} of the band of the site that started
+     * it, so that a run of sites whose GQ fluctuates around a band boundary is emitted as one block rather than
+     * one block per crossing.  The GQ and PLs of the block are still the minimum over its sites, so the block is never
+     * more confident than its least confident site, but its GQ may fall below its nominal band.
+     *
+     * @param underlyingWriter the ultimate destination of the GVCF records
+     * @param gqPartitions     a list of GQ partitions, this list must be non-empty and every element must be larger than previous element
+     * @param defaultPloidy    the assumed ploidy for input variant context without one.
+     * @param gqBandTolerance  how far outside its GQ band a site may be and still extend a block; 0 keeps every block
+     *                         within its band
+     */
+    public GVCFWriter(final VariantContextWriter underlyingWriter, final List<Integer> gqPartitions, final int defaultPloidy,
+                      final int gqBandTolerance) {
+        Utils.validateArg(gqBandTolerance >= 0, () -> "The GQ band tolerance cannot be negative but was " + gqBandTolerance);
         this.underlyingWriter = Utils.nonNull(underlyingWriter);
         this.gqPartitions = parsePartitions(gqPartitions);
         this.defaultPloidy = defaultPloidy;
+        this.gqBandTolerance = gqBandTolerance;
     }
 
     /**
@@ -209,8 +231,10 @@ public final class GVCFWriter implements VariantContextWriter {
             throw new GATKException("GQ " + g + " from " + vc + " didn't fit into any partition");
         }
 
-        // create the block, add g to it, and return it for use
-        final HomRefBlock block = new HomRefBlock(vc, partition.lowerEndpoint(), partition.upperEndpoint(), defaultPloidy);
+        // create the block, widened by the tolerance, add g to it, and return it for use
+        final int lowerGQBound = Math.max(partition.lowerEndpoint() - gqBandTolerance, 0);
+        final int upperGQBound = Math.min(partition.upperEndpoint() + gqBandTolerance, MAX_GENOTYPE_QUAL + 1);
+        final HomRefBlock block = new HomRefBlock(vc, lowerGQBound, upperGQBound, defaultPloidy);
         block.add(vc.getStart(), g);
         return block;
     }
@@ -0,0 +1,333 @@
+package org.broadinstitute.hellbender.utils.variant.writers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.DynamicIndexCreator;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexCreator;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VCFEncoder;
+import htsjdk.variant.variantcontext.writer.VCFWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A writer of VCF or block-compressed VCF files that formats, and compresses, records on a pool of threads.
+ *
+ * Records are collected into batches of {@link #BATCH_SIZE}.  Each batch is formatted by a worker thread and, for
+ * block-compressed output, compressed into BGZF blocks of its own, and the batches are written out in the order they
+ * were added.  At most two batches per thread are in flight, so memory stays bounded; {@link #add} only waits when
+ * the oldest of them is not done yet.  The records are the same as those written by the htsjdk writer, although the
+ * BGZF blocks are cut at different places.  Like the htsjdk writer, it can index the output on the fly, from the
+ * positions of the records in the batches.
+ *
+ * The variants are read on the worker threads, so they must not be modified once they have been added.  Genotypes
+ * still to be parsed from the input are parsed by {@link #add}, on the calling thread, since they are parsed by the
+ * codec of the reader they came from, which is not thread-safe.
+ */
+public final class ParallelVCFWriter implements VariantContextWriter {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final Set<Options> SUPPORTED_OPTIONS =
+            EnumSet.of(Options.INDEX_ON_THE_FLY, Options.ALLOW_MISSING_FIELDS_IN_HEADER, Options.DO_NOT_WRITE_GENOTYPES);
+
+    private final File outputFile;
+    private final boolean blockCompressed;
+    private final boolean allowMissingFieldsInHeader;
+    private final boolean doNotWriteGenotypes;
+    private final IndexCreator indexCreator;
+    private final OutputStream outputStream;
+    private final ExecutorService executor;
+    private final int maxBatchesInFlight;
+    private final Deque<Future<EncodedBatch>> batchesInFlight;
+
+    private VCFHeader header = null;
+    private List<VariantContext> currentBatch = new ArrayList<>(BATCH_SIZE);
+    // the number of bytes written so far, which for block-compressed output is the address of the next block
+    private long position = 0;
+    private boolean error = false;
+    private boolean closed = false;
+
+    /**
+     * @param outputFile the VCF or block-compressed VCF to write, as determined by its extension
+     * @param sequenceDictionary the dictionary of the contigs of the output, which is required to index it
+     * @param numThreads the number of threads formatting and compressing records
+     * @param options any of {@link Options#INDEX_ON_THE_FLY}, {@link Options#ALLOW_MISSING_FIELDS_IN_HEADER} and
+     *                {@link Options#DO_NOT_WRITE_GENOTYPES}, with the same meaning as for the htsjdk writers
+     */
+    public ParallelVCFWriter(final File outputFile, final SAMSequenceDictionary sequenceDictionary, final int numThreads,
+                             final Options... options) {
+        Utils.nonNull(outputFile);
+        Utils.validateArg(canWrite(outputFile), () -> "Only VCF or block-compressed VCF files can be written in parallel: " + outputFile);
+        Utils.validateArg(numThreads > 0, "The number of threads must be positive");
+        final Set<Options> optionSet = options.length == 0 ? Collections.emptySet() : EnumSet.copyOf(Arrays.asList(options));
+        Utils.validateArg(SUPPORTED_OPTIONS.containsAll(optionSet), () -> "Unsupported writer options: " + optionSet);
+        this.outputFile = outputFile;
+        blockCompressed = IOUtil.hasBlockCompressedExtension(outputFile);
+        allowMissingFieldsInHeader = optionSet.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+        doNotWriteGenotypes = optionSet.contains(Options.DO_NOT_WRITE_GENOTYPES);
+
+        if (optionSet.contains(Options.INDEX_ON_THE_FLY)) {
+            Utils.nonNull(sequenceDictionary, "A sequence dictionary is required to index the output");
+            if (blockCompressed) {
+                indexCreator = new TabixIndexCreator(sequenceDictionary, TabixFormat.VCF);
+            } else {
+                indexCreator = new DynamicIndexCreator(outputFile, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+                indexCreator.setIndexSequenceDictionary(sequenceDictionary);
+            }
+        } else {
+            indexCreator = null;
+        }
+
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(outputFile));
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(outputFile, e);
+        }
+        executor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder().setNameFormat("vcf-writer-%d").setDaemon(true).build());
+        maxBatchesInFlight = 2 * numThreads;
+        batchesInFlight = new ArrayDeque<>(maxBatchesInFlight);
+    }
+
+    /**
+     * @return whether a file can be written by this writer, which is the case for VCF and block-compressed VCF
+     */
+    public static boolean canWrite(final File file) {
+        final String name = file.getName();
+        return name.endsWith(IOUtil.VCF_FILE_EXTENSION) || (IOUtil.hasBlockCompressedExtension(file)
+                && name.substring(0, name.lastIndexOf('.')).endsWith(IOUtil.VCF_FILE_EXTENSION));
+    }
+
+    @Override
+    public void writeHeader(final VCFHeader header) {
+        setHeader(header);
+        final ByteArrayOutputStream headerText = new ByteArrayOutputStream();
+        final byte[] bytes;
+        try {
+            try (final Writer writer = new OutputStreamWriter(headerText, StandardCharsets.UTF_8)) {
+                VCFWriter.writeHeader(this.header, writer, VCFHeaderVersion.VCF4_2, outputFile.getPath());
+            }
+            bytes = blockCompressed ? compress(headerText.toByteArray()) : headerText.toByteArray();
+        } catch (final IOException e) {
+            throw new GATKException("Error when formatting the header of " + outputFile, e);
+        }
+        writeBatch(new EncodedBatch(Collections.emptyList(), bytes, new long[0]));
+    }
+
+    @Override
+    public void setHeader(final VCFHeader header) {
+        Utils.nonNull(header, "header cannot be null");
+        this.header = doNotWriteGenotypes ? new VCFHeader(header.getMetaDataInSortedOrder()) : header;
+    }
+
+    @Override
+    public void add(final VariantContext vc) {
+        Utils.nonNull(vc);
+        Utils.validate(header != null, "The header must be set before adding variants");
+        Utils.validate(!closed, "The writer has been closed");
+        if (doNotWriteGenotypes) {
+            currentBatch.add(new VariantContextBuilder(vc).noGenotypes().make());
+        } else {
+            final GenotypesContext genotypes = vc.getGenotypes();
+            if (genotypes.isLazyWithData()) {
+                ((LazyGenotypesContext) genotypes).decode();
+            }
+            currentBatch.add(vc);
+        }
+        if (currentBatch.size() == BATCH_SIZE) {
+            submitCurrentBatch();
+        }
+    }
+
+    @Override
+    public boolean checkError() {
+        return error;
+    }
+
+    /**
+     * Writes out all the pending batches and, if requested, the index
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitCurrentBatch();
+            while (!batchesInFlight.isEmpty()) {
+                writeBatch(getResult(batchesInFlight.remove()));
+            }
+            final long endPosition = blockCompressed ? BlockCompressedFilePointerUtil.makeFilePointer(position, 0) : position;
+            if (blockCompressed) {
+                outputStream.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            }
+            outputStream.close();
+            if (indexCreator != null) {
+                final Index index = indexCreator.finalizeIndex(endPosition);
+                index.write(blockCompressed ? Tribble.tabixIndexFile(outputFile) : Tribble.indexFile(outputFile));
+            }
+        } catch (final IOException e) {
+            error = true;
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "Error when writing variants", e);
+        } catch (final RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            // already closed unless writing failed
+            CloserUtil.close(outputStream);
+        }
+    }
+
+    private void submitCurrentBatch() {
+        if (currentBatch.isEmpty()) {
+            return;
+        }
+        if (batchesInFlight.size() == maxBatchesInFlight) {
+            writeBatch(getResult(batchesInFlight.remove()));
+        }
+        final List<VariantContext> batch = currentBatch;
+        final VCFHeader batchHeader = header;
+        batchesInFlight.add(executor.submit(() -> encode(batch, batchHeader)));
+        currentBatch = new ArrayList<>(BATCH_SIZE);
+    }
+
+    /**
+     * Formats, and compresses if needed, a batch of variants, recording the position of each relative to the start of
+     * the batch
+     */
+    private EncodedBatch encode(final List<VariantContext> variants, final VCFHeader header) {
+        final VCFEncoder encoder = new VCFEncoder(header, allowMissingFieldsInHeader, false);
+        final long[] recordPositions = new long[variants.size()];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            if (blockCompressed) {
+                final BlockCompressedOutputStream compressed = new BlockCompressedOutputStream(bytes, (File) null);
+                for (int i = 0; i < variants.size(); i++) {
+                    recordPositions[i] = compressed.getFilePointer();
+                    compressed.write(encodeLine(encoder, variants.get(i)));
+                }
+                compressed.close();
+                return new EncodedBatch(variants, withoutTerminator(bytes.toByteArray()), recordPositions);
+            } else {
+                for (int i = 0; i < variants.size(); i++) {
+                    recordPositions[i] = bytes.size();
+                    bytes.write(encodeLine(encoder, variants.get(i)));
+                }
+                return new EncodedBatch(variants, bytes.toByteArray(), recordPositions);
+            }
+        } catch (final IOException e) {
+            throw new GATKException("Error when formatting variants for " + outputFile, e);
+        }
+    }
+
+    private static byte[] encodeLine(final VCFEncoder encoder, final VariantContext vc) {
+        return (encoder.encode(vc) + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compresses bytes into BGZF blocks that can be followed by more blocks
+     */
+    private static byte[] compress(final byte[] bytes) throws IOException {
+        final ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+        try (final BlockCompressedOutputStream compressed = new BlockCompressedOutputStream(compressedBytes, (File) null)) {
+            compressed.write(bytes);
+        }
+        return withoutTerminator(compressedBytes.toByteArray());
+    }
+
+    // closing a BlockCompressedOutputStream ends it with an empty block, which must only be at the end of the file
+    private static byte[] withoutTerminator(final byte[] compressedBytes) {
+        return Arrays.copyOf(compressedBytes, compressedBytes.length - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+    }
+
+    private void writeBatch(final EncodedBatch batch) {
+        if (indexCreator != null) {
+            for (int i = 0; i < batch.variants.size(); i++) {
+                final long recordPosition = batch.recordPositions[i];
+                indexCreator.addFeature(batch.variants.get(i), blockCompressed
+                        ? BlockCompressedFilePointerUtil.makeFilePointer(position + BlockCompressedFilePointerUtil.getBlockAddress(recordPosition),
+                                BlockCompressedFilePointerUtil.getBlockOffset(recordPosition))
+                        : position + recordPosition);
+            }
+        }
+        try {
+            outputStream.write(batch.bytes);
+        } catch (final IOException e) {
+            error = true;
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "Error when writing variants", e);
+        }
+        position += batch.bytes.length;
+    }
+
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while writing variants", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while writing variants", e.getCause());
+        }
+    }
+
+    /**
+     * A batch of variants formatted for output, with the position of each in the bytes of the batch: an offset for
+     * VCF, or a virtual file pointer for block-compressed VCF
+     */
+    private static final class EncodedBatch {
+        private final List<VariantContext> variants;
+        private final byte[] bytes;
+        private final long[] recordPositions;
+
+        private EncodedBatch(final List<VariantContext> variants, final byte[] bytes, final long[] recordPositions) {
+            this.variants = variants;
+            this.bytes = bytes;
+            this.recordPositions = recordPositions;
+        }
+    }
+}
@@ -108,6 +108,18 @@ def readDataFIFO() -> str:
     return _dataFIFO.readLine()
 
 
+def readDataFIFOBytes(numBytes: int) -> bytes:
+    """
+    Read exactly numBytes bytes of binary data from the Data FIFO.
+
+    Binary reads must not be mixed with readDataFIFO on the same FIFO,
+    since text reads may buffer data ahead of the line returned.
+    :return: bytes
+    """
+    global _dataFIFO
+    return _dataFIFO.readBytes(numBytes)
+
+
 class AckFIFO:
     """
     Manage the FIFO used to notify GATK (via an ack) that a command has
@@ -173,6 +185,18 @@ class DataFIFO:
             raise RuntimeError("data FIFO reader has not been initialized")
         return self.fileReader.readline()
 
+    def readBytes(self, numBytes: int) -> bytes:
+        """
+        Read exactly numBytes bytes from the Data FIFO.
+        :return: bytes
+        """
+        if self.fileReader is None:
+            raise RuntimeError("data FIFO reader has not been initialized")
+        data = self.fileReader.buffer.read(numBytes)
+        if len(data) != numBytes:
+            raise RuntimeError("data FIFO closed after %d of %d bytes" % (len(data), numBytes))
+        return data
+
     def close(self):
         if self.fileReader is None:
             raise RuntimeError("data FIFO reader has not been initialized")
@@ -2,7 +2,7 @@ from .vqsr_cnn.models import build_read_tensor_2d_and_annotations_model, build_t
 from .vqsr_cnn.models import args_and_model_from_semantics, train_model_from_generators, build_small_2d_annotation_model
 from .vqsr_cnn.tensor_maps import get_tensor_channel_map_from_args, tensor_shape_from_args
 from .vqsr_cnn.arguments import parse_args, weight_path_from_args, annotations_from_args
-from .vqsr_cnn.inference import score_and_write_batch
+from .vqsr_cnn.inference import score_and_write_batch, score_and_write_tensor_batch
 from .vqsr_cnn.plots import plot_roc_per_class
 from ._version import __version__
 from .vqsr_cnn.defines import *
@@ -1,6 +1,7 @@
 # Imports
 import os
 import h5py
+import struct
 import numpy as np
 from collections import Counter, defaultdict, namedtuple
 
@@ -14,6 +15,17 @@ from . import defines
 from . import tensor_maps
 
 READ_ELEMENTS = 8
+
+# Binary frame of a batch of tensors, written by CNNTensorBatch.java
+TENSOR_BATCH_MAGIC = 0x434E4E54
+TENSOR_BATCH_HEADER = struct.Struct('>iiiii')
+INT = struct.Struct('>i')
+READ_FOOTER = struct.Struct('>Bii')
+VARIANT_TYPES = ['SNP', 'INDEL', 'OTHER']
+READ_REVERSE_STRAND = 1
+READ_MATE_REVERSE_STRAND = 2
+READ_FIRST_OF_PAIR = 4
+
 Read = namedtuple("Read", "seq qual cigar reverse mate_reverse first mapping_quality reference_start")
 Variant = namedtuple("Variant", "contig pos ref alt type")
 
@@ -36,7 +48,8 @@ def score_and_write_batch(args, model, file_out, batch_size, python_batch_size,
     '''Score a batch of variants with a CNN model. Write tab delimited temp file with scores.
 
     This function is tightly coupled with the CNNScoreVariants.java
-    It requires data written to the fifo in the order given by transferToPythonViaFifo
+    It requires tab separated text records in the fifo; CNNScoreVariants.java now streams binary
+    frames instead, which are read by score_and_write_tensor_batch
 
     Arguments
         args: Namespace with command line or configuration file set arguments
@@ -84,6 +97,98 @@ def score_and_write_batch(args, model, file_out, batch_size, python_batch_size,
                 _write_tensor_to_hd5(args, tensor, annotation_batch[-1], fifo_data[0], fifo_data[1], fifo_data[6])
             read_batch.append(tensor)
 
+    _predict_and_write_scores(args, model, file_out, python_batch_size, variant_data, variant_types,
+                              reference_batch, annotation_batch, read_batch)
+
+
+def score_and_write_tensor_batch(args, model, file_out, python_batch_size, tensor_dir):
+    '''Score a batch of variants with a CNN model. Write tab delimited temp file with scores.
+
+    Reads one binary frame of tensors from the fifo, in the layout written by CNNTensorBatch.java.
+    The reference tensors arrive ready made, so only the annotations and read tensors are built here.
+
+    Arguments
+        args: Namespace with command line or configuration file set arguments
+        model: a keras model
+        file_out: The VCF file where variants scores are written
+        python_batch_size: the number of variants to process in each inference
+        tensor_dir : If this path exists write hd5 files for each tensor (optional for debugging)
+    '''
+    magic, batch_size, window_size, has_reads, payload_length = TENSOR_BATCH_HEADER.unpack(
+        tool.readDataFIFOBytes(TENSOR_BATCH_HEADER.size))
+    if magic != TENSOR_BATCH_MAGIC:
+        raise ValueError('Bad tensor batch frame from GATK, magic number:', magic)
+    payload = tool.readDataFIFOBytes(payload_length)
+
+    annotation_batch = []
+    reference_batch = []
+    variant_types = []
+    variant_data = []
+    read_batch = []
+
+    offset = 0
+    for _ in range(batch_size):
+        variant_key, offset = _unpack_string(payload, offset)
+        annotations, offset = _unpack_string(payload, offset)
+        variant_type = VARIANT_TYPES[payload[offset]]
+        offset += 1
+        reference_tensor = np.frombuffer(payload, dtype='>f4', count=window_size*4, offset=offset)
+        offset += reference_tensor.nbytes
+
+        variant_data.append(variant_key)
+        reference_batch.append(reference_tensor.reshape((window_size, 4)).astype(np.float32))
+        annotation_batch.append(annotation_string_to_tensor(args, annotations))
+        variant_types.append(variant_type)
+
+        if has_reads:
+            reference_string = payload[offset:offset+window_size].decode('utf-8')
+            offset += window_size
+            num_reads, = INT.unpack_from(payload, offset)
+            offset += INT.size
+            read_tuples = []
+            for _ in range(num_reads):
+                read_length, = INT.unpack_from(payload, offset)
+                offset += INT.size
+                seq = payload[offset:offset+read_length].decode('utf-8')
+                offset += read_length
+                qual_length, = INT.unpack_from(payload, offset)
+                offset += INT.size
+                qual = list(payload[offset:offset+qual_length])
+                offset += qual_length
+                cigar, offset = _unpack_string(payload, offset)
+                flags, mapping_quality, reference_start = READ_FOOTER.unpack_from(payload, offset)
+                offset += READ_FOOTER.size
+                read_tuples.append(Read(seq, qual, cigar,
+                                        bool(flags & READ_REVERSE_STRAND),
+                                        bool(flags & READ_MATE_REVERSE_STRAND),
+                                        bool(flags & READ_FIRST_OF_PAIR),
+                                        mapping_quality,
+                                        reference_start))
+
+            if args.tensor_name in defines.TENSOR_MAPS_2D:
+                contig, pos, ref, alt = variant_key.split(defines.SEPARATOR_CHAR)
+                var = Variant(contig, int(pos), ref, alt, variant_type)
+                _, ref_start, _ = get_variant_window(args, var)
+                insert_dict = get_inserts(args, read_tuples, var)
+                tensor = read_tuples_to_read_tensor(args, read_tuples, ref_start, insert_dict)
+                reference_sequence_into_tensor(args, reference_string, tensor, insert_dict)
+                if os.path.exists(tensor_dir):
+                    _write_tensor_to_hd5(args, tensor, annotation_batch[-1], contig, pos, variant_type)
+                read_batch.append(tensor)
+
+    _predict_and_write_scores(args, model, file_out, python_batch_size, variant_data, variant_types,
+                              reference_batch, annotation_batch, read_batch)
+
+
+def _unpack_string(payload, offset):
+    length, = INT.unpack_from(payload, offset)
+    offset += INT.size
+    return payload[offset:offset+length].decode('utf-8'), offset+length
+
+
+def _predict_and_write_scores(args, model, file_out, python_batch_size, variant_data, variant_types,
+                              reference_batch, annotation_batch, read_batch):
+    batch_size = len(variant_data)
     if args.tensor_name in defines.TENSOR_MAPS_1D:
         predictions = model.predict([np.array(reference_batch), np.array(annotation_batch)],
                                     batch_size=python_batch_size)
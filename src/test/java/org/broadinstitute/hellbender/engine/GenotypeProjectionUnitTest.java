@@ -0,0 +1,92 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public final class GenotypeProjectionUnitTest extends GATKBaseTest {
+
+    // 61 samples with GT:RD:GQ genotypes
+    private static final File MULTI_SAMPLE_VCF = new File(publicTestDir + "org/broadinstitute/hellbender/engine/FeatureInput/vcfWithIndex.vcf");
+
+    private static List<VariantContext> readVariants(final GenotypeProjection projection) {
+        final List<VariantContext> variants = new ArrayList<>();
+        try (final FeatureDataSource<VariantContext> source = new FeatureDataSource<>(MULTI_SAMPLE_VCF)) {
+            source.forEach(vc -> variants.add(projection == null ? vc : projection.apply(vc)));
+        }
+        return variants;
+    }
+
+    private static VCFHeader getHeader() {
+        try (final FeatureDataSource<VariantContext> source = new FeatureDataSource<>(MULTI_SAMPLE_VCF)) {
+            return (VCFHeader) source.getHeader();
+        }
+    }
+
+    @Test
+    public void testProjectSamplesAndFormatFields() {
+        final VCFHeader header = getHeader();
+        final List<String> headerSamples = header.getGenotypeSamples();
+        final List<String> samplesToKeep = Arrays.asList(headerSamples.get(1), headerSamples.get(30), headerSamples.get(headerSamples.size() - 1));
+
+        final List<VariantContext> original = readVariants(null);
+        final List<VariantContext> projected = readVariants(new GenotypeProjection(header, new HashSet<>(samplesToKeep), Collections.singleton("GQ")));
+        Assert.assertEquals(projected.size(), original.size());
+        for (int i = 0; i < original.size(); i++) {
+            final VariantContext projectedVariant = projected.get(i);
+            Assert.assertEquals(projectedVariant.getStart(), original.get(i).getStart());
+            Assert.assertEquals(projectedVariant.getAttributes(), original.get(i).getAttributes());
+            Assert.assertEquals(projectedVariant.getNSamples(), samplesToKeep.size());
+            Assert.assertEquals(new ArrayList<>(projectedVariant.getSampleNamesOrderedByName()),
+                    new ArrayList<>(original.get(i).getGenotypes(new HashSet<>(samplesToKeep)).getSampleNamesOrderedByName()));
+            for (final String sample : samplesToKeep) {
+                final Genotype projectedGenotype = projectedVariant.getGenotype(sample);
+                final Genotype originalGenotype = original.get(i).getGenotype(sample);
+                Assert.assertEquals(projectedGenotype.getAlleles(), originalGenotype.getAlleles());
+                Assert.assertEquals(projectedGenotype.getGQ(), originalGenotype.getGQ());
+                Assert.assertTrue(originalGenotype.hasExtendedAttribute("RD"));
+                Assert.assertFalse(projectedGenotype.hasExtendedAttribute("RD"));
+            }
+        }
+    }
+
+    @Test
+    public void testProjectAllSamples() {
+        final VCFHeader header = getHeader();
+        final List<VariantContext> original = readVariants(null);
+        final List<VariantContext> projected = readVariants(new GenotypeProjection(header, null, new HashSet<>(Arrays.asList("RD", "XX"))));
+        for (int i = 0; i < original.size(); i++) {
+            Assert.assertEquals(projected.get(i).getNSamples(), header.getNGenotypeSamples());
+            for (final Genotype originalGenotype : original.get(i).getGenotypes()) {
+                final Genotype projectedGenotype = projected.get(i).getGenotype(originalGenotype.getSampleName());
+                Assert.assertEquals(projectedGenotype.getAlleles(), originalGenotype.getAlleles());
+                Assert.assertEquals(projectedGenotype.getExtendedAttribute("RD"), originalGenotype.getExtendedAttribute("RD"));
+                Assert.assertFalse(projectedGenotype.hasGQ());
+            }
+        }
+    }
+
+    @Test
+    public void testSitesOnly() {
+        final Set<String> noSamples = Collections.emptySet();
+        // no header is needed just to drop the genotypes
+        for (final GenotypeProjection projection : Arrays.asList(new GenotypeProjection(getHeader(), noSamples, null),
+                new GenotypeProjection(null, noSamples, null),
+                new GenotypeProjection(getHeader(), Collections.singleton("not_a_sample"), null))) {
+            final List<VariantContext> projected = readVariants(projection);
+            Assert.assertFalse(projected.isEmpty());
+            projected.forEach(vc -> Assert.assertFalse(vc.hasGenotypes()));
+        }
+    }
+}
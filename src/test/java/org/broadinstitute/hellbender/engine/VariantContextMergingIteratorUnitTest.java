@@ -0,0 +1,58 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class VariantContextMergingIteratorUnitTest extends GATKBaseTest {
+
+    private static final SAMSequenceDictionary DICTIONARY = new SAMSequenceDictionary(Arrays.asList(
+            new SAMSequenceRecord("2", 1000), new SAMSequenceRecord("1", 1000)));
+
+    private static VariantContext makeVariant(final String source, final String contig, final int start) {
+        return new VariantContextBuilder(source, contig, start, start, Collections.singletonList(Allele.create("A", true))).make();
+    }
+
+    private static CloseableIterator<VariantContext> makeInput(final VariantContext... variants) {
+        final List<VariantContext> list = Arrays.asList(variants);
+        return new CloseableIterator<VariantContext>() {
+            int next = 0;
+            @Override public void close() { }
+            @Override public boolean hasNext() { return next < list.size(); }
+            @Override public VariantContext next() { return list.get(next++); }
+        };
+    }
+
+    @Test
+    public void testMergeInDictionaryOrder() {
+        final List<CloseableIterator<VariantContext>> inputs = Arrays.asList(
+                makeInput(makeVariant("a", "2", 5), makeVariant("a", "1", 1), makeVariant("a", "1", 10)),
+                makeInput(),
+                makeInput(makeVariant("b", "2", 1), makeVariant("b", "2", 5), makeVariant("b", "1", 10)),
+                makeInput(makeVariant("c", "1", 3)));
+
+        final List<String> merged = new ArrayList<>();
+        try (final VariantContextMergingIterator iterator = new VariantContextMergingIterator(inputs, DICTIONARY)) {
+            iterator.forEachRemaining(vc -> merged.add(vc.getSource() + ":" + vc.getContig() + ":" + vc.getStart()));
+        }
+        // contig "2" comes first in the dictionary, and ties are returned in input order
+        Assert.assertEquals(merged, Arrays.asList("b:2:1", "a:2:5", "b:2:5", "a:1:1", "c:1:3", "a:1:10", "b:1:10"));
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testContigNotInDictionary() {
+        new VariantContextMergingIterator(Collections.singletonList(makeInput(makeVariant("a", "3", 1))), DICTIONARY);
+    }
+}
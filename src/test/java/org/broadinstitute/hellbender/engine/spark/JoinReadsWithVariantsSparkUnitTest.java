@@ -3,18 +3,24 @@ package org.broadinstitute.hellbender.engine.spark;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.GATKBaseTest;
 import org.broadinstitute.hellbender.utils.KV;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.variant.GATKVariant;
+import org.broadinstitute.hellbender.utils.variant.MinimalVariant;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
+import scala.Tuple2;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class JoinReadsWithVariantsSparkUnitTest extends GATKBaseTest {
     @DataProvider(name = "pairedReadsAndVariants")
@@ -40,9 +46,15 @@ public class JoinReadsWithVariantsSparkUnitTest extends GATKBaseTest {
 
         JavaRDD<GATKRead> rddReads = ctx.parallelize(reads);
         JavaRDD<GATKVariant> rddVariants = ctx.parallelize(variantList);
-        JavaPairRDD<GATKRead, Iterable<GATKVariant>> actual = joinStrategy == JoinStrategy.SHUFFLE ?
-                                                          ShuffleJoinReadsWithVariants.join(rddReads, rddVariants) :
-                                                          BroadcastJoinReadsWithVariants.join(rddReads, rddVariants);
+        JavaPairRDD<GATKRead, Iterable<GATKVariant>> actual;
+        if (joinStrategy == JoinStrategy.SHUFFLE) {
+            actual = ShuffleJoinReadsWithVariants.join(rddReads, rddVariants);
+        } else if (joinStrategy == JoinStrategy.SORTED_MERGE) {
+            SAMSequenceDictionary sd = new SAMSequenceDictionary(Lists.newArrayList(new SAMSequenceRecord("1", 100000), new SAMSequenceRecord("2", 100000)));
+            actual = SortedMergeJoinReadsWithVariants.join(rddReads, rddVariants, sd);
+        } else {
+            actual = BroadcastJoinReadsWithVariants.join(rddReads, rddVariants);
+        }
         Map<GATKRead, Iterable<GATKVariant>> gatkReadIterableMap = actual.collectAsMap();
 
         Assert.assertEquals(gatkReadIterableMap.size(), kvReadiVariant.size());
@@ -55,4 +67,38 @@ public class JoinReadsWithVariantsSparkUnitTest extends GATKBaseTest {
             Assert.assertEquals(hashVariants, expectedHashVariants);
         }
     }
-}
\ No newline at end of file
+
+    @Test(groups = "spark")
+    public void sortedMergeJoinAcrossPartitionsTest() {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        SAMSequenceDictionary sd = new SAMSequenceDictionary(Lists.newArrayList(new SAMSequenceRecord("1", 100000), new SAMSequenceRecord("2", 100000)));
+
+        // coordinate-sorted reads of varying length, and variants (including some long ones) spanning partition boundaries
+        Random random = new Random(7);
+        List<GATKRead> reads = new ArrayList<>();
+        List<GATKVariant> variantList = new ArrayList<>();
+        for (String contig : Arrays.asList("1", "2")) {
+            int start = 1;
+            for (int i = 0; i < 500; i++) {
+                start += random.nextInt(100);
+                reads.add(ReadsPreprocessingPipelineSparkTestData.makeRead(contig, start, 1 + random.nextInt(150), reads.size(), SAMRecord.class));
+            }
+            for (int i = 0; i < 200; i++) {
+                int variantStart = 1 + random.nextInt(30000);
+                int length = random.nextInt(10) == 0 ? random.nextInt(500) : 0;
+                variantList.add(new MinimalVariant(new SimpleInterval(contig, variantStart, variantStart + length), length == 0, length > 0));
+            }
+        }
+
+        JavaRDD<GATKRead> rddReads = ctx.parallelize(reads, 7);
+        JavaRDD<GATKVariant> rddVariants = ctx.parallelize(variantList, 3);
+        List<Tuple2<GATKRead, Iterable<GATKVariant>>> actual = SortedMergeJoinReadsWithVariants.join(rddReads, rddVariants, sd).collect();
+        Map<GATKRead, Iterable<GATKVariant>> expected = BroadcastJoinReadsWithVariants.join(rddReads, rddVariants).collectAsMap();
+
+        // the reads keep their order
+        Assert.assertEquals(actual.stream().map(Tuple2::_1).collect(Collectors.toList()), reads);
+        for (Tuple2<GATKRead, Iterable<GATKVariant>> readVariants : actual) {
+            Assert.assertEquals(Sets.newHashSet(readVariants._2()), Sets.newHashSet(expected.get(readVariants._1())), readVariants._1().getName());
+        }
+    }
+}
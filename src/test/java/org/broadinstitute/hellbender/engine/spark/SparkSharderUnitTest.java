@@ -368,6 +368,51 @@ public class SparkSharderUnitTest extends GATKBaseTest implements Serializable {
                 ));
     }
 
+    @Test
+    public void testDivideIntervalsByCoverage() {
+        // ten locatables in each bin of ten bases, except for a high-coverage bin at 21-30
+        Map<Long, Long> locatablesPerBin = new HashMap<>();
+        for (int bin = 0; bin < 10; bin++) {
+            locatablesPerBin.put((long) bin, bin == 2 ? 100L : 10L);
+        }
+        List<SimpleInterval> intervals = ImmutableList.of(new SimpleInterval("1", 1, 100));
+
+        List<ShardBoundary> shards = SparkSharder.divideIntervalsByCoverage(locatablesPerBin, sequenceDictionary, intervals, 50, 5, 10, 20);
+        assertEquals(shards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 20), new SimpleInterval("1", 21, 30), new SimpleInterval("1", 31, 50),
+                new SimpleInterval("1", 51, 70), new SimpleInterval("1", 71, 90), new SimpleInterval("1", 91, 100)));
+        assertEquals(shards.get(0).getPaddedInterval(), new SimpleInterval("1", 1, 25));
+        assertEquals(shards.get(1).getPaddedInterval(), new SimpleInterval("1", 16, 35));
+
+        // with a large target the shards are only limited by the maximum shard size
+        List<ShardBoundary> maxSizeShards = SparkSharder.divideIntervalsByCoverage(locatablesPerBin, sequenceDictionary, intervals, 50, 0, 10, 1000);
+        assertEquals(maxSizeShards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 50), new SimpleInterval("1", 51, 100)));
+    }
+
+    @Test
+    public void testCoverageAwareShardBoundaries() {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        List<TestRead> readList = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            readList.add(new TestRead(21 + i % 10, 23 + i % 10));
+        }
+        for (int i = 0; i < 5; i++) {
+            readList.add(new TestRead(61, 63));
+        }
+        readList.add(new TestRead("2", 10, 12));
+        JavaRDD<TestRead> reads = ctx.parallelize(readList, 3);
+
+        // 36 reads over three fixed-size shards gives a target of 12 reads per shard, so the high-coverage bin at
+        // 21-30 ends the first shard early
+        List<ShardBoundary> shards = SparkSharder.coverageAwareShardBoundaries(reads, sequenceDictionary,
+                ImmutableList.of(new SimpleInterval("1", 1, 100), new SimpleInterval("2", 1, 50)), 50, 0, 10, 0);
+        assertEquals(shards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 30), new SimpleInterval("1", 31, 80), new SimpleInterval("1", 81, 100),
+                new SimpleInterval("2", 1, 50)));
+    }
+
     private static class TestRead implements Locatable {
         private static final long serialVersionUID = 1L;
         private final String contig;
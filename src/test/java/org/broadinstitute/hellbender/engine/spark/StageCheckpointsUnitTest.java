@@ -0,0 +1,56 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public final class StageCheckpointsUnitTest extends GATKBaseTest {
+
+    @Test
+    public void testFingerprint() {
+        final File input = createTempFile("input", ".txt");
+        final List<String> inputs = Collections.singletonList(input.getAbsolutePath());
+        Assert.assertEquals(StageCheckpoints.fingerprint("tool --arg 1", inputs), StageCheckpoints.fingerprint("tool --arg 1", inputs));
+        Assert.assertNotEquals(StageCheckpoints.fingerprint("tool --arg 1", inputs), StageCheckpoints.fingerprint("tool --arg 2", inputs));
+        Assert.assertNotEquals(StageCheckpoints.fingerprint("tool --arg 1", inputs), StageCheckpoints.fingerprint("tool --arg 1", Collections.emptyList()));
+    }
+
+    @Test(groups = "spark")
+    public void testCheckpointIsReused() {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final String checkpointDir = IOUtils.createTempDir("checkpoints").getAbsolutePath();
+        final List<String> records = IntStream.range(0, 2 * StageCheckpoints.RECORDS_PER_BATCH + 17)
+                .mapToObj(i -> "record" + i).collect(Collectors.toList());
+
+        final StageCheckpoints checkpoints = new StageCheckpoints(checkpointDir, "fingerprint");
+        Assert.assertFalse(checkpoints.isComplete("stage"));
+        final List<Integer> computed = new ArrayList<>();
+        final JavaRDD<String> first = checkpoints.checkpoint(ctx, "stage", () -> {
+            computed.add(1);
+            return ctx.parallelize(records, 3);
+        });
+        Assert.assertEquals(first.collect(), records);
+        Assert.assertTrue(checkpoints.isComplete("stage"));
+
+        // a rerun reads the stage back without computing it
+        final JavaRDD<String> second = new StageCheckpoints(checkpointDir, "fingerprint").checkpoint(ctx, "stage", () -> {
+            computed.add(2);
+            return ctx.parallelize(records, 3);
+        });
+        Assert.assertEquals(second.collect(), records);
+        Assert.assertEquals(computed, Collections.singletonList(1));
+
+        // a different fingerprint does not reuse the stage
+        Assert.assertFalse(new StageCheckpoints(checkpointDir, "other").isComplete("stage"));
+    }
+}
@@ -0,0 +1,65 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import scala.Tuple2;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public final class StageMetricsListenerUnitTest extends GATKBaseTest {
+
+    @Test(groups = "spark")
+    public void testReport() throws Exception {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final StageMetricsListener listener = SparkContextFactory.addStageMetricsListener(ctx);
+
+        ctx.setJobDescription("count-by-key");
+        try {
+            final List<Integer> values = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+            ctx.parallelize(values, 4).mapToPair(i -> new Tuple2<>(i % 10, 1)).reduceByKey(Integer::sum).collect();
+        } finally {
+            ctx.setJobDescription(null);
+        }
+        // the test context is not stopped, so wait for the events to be delivered
+        SparkContextFactory.waitForListenerEvents(ctx);
+
+        final File report = createTempFile("stageMetrics", ".tsv");
+        listener.writeReport(report.getAbsolutePath());
+        final List<String> lines = Files.readAllLines(report.toPath());
+        Assert.assertEquals(lines.get(0).split("\t"), StageMetricsListener.REPORT_COLUMNS);
+
+        // a map stage and a reduce stage
+        final List<List<String>> stages = lines.subList(1, lines.size()).stream()
+                .map(line -> Arrays.asList(line.split("\t", -1)))
+                .filter(fields -> fields.get(3).equals("count-by-key"))
+                .collect(Collectors.toList());
+        Assert.assertEquals(stages.size(), 2);
+        for (final List<String> fields : stages) {
+            Assert.assertEquals(fields.size(), StageMetricsListener.REPORT_COLUMNS.length);
+            Assert.assertEquals(fields.get(4), "COMPLETED");
+            Assert.assertEquals(fields.get(5), "4");
+        }
+
+        // once removed, the listener records no more stages
+        SparkContextFactory.removeStageMetricsListener(ctx, listener);
+        ctx.setJobDescription("after-removal");
+        try {
+            ctx.parallelize(Arrays.asList(1, 2, 3), 2).count();
+        } finally {
+            ctx.setJobDescription(null);
+        }
+        SparkContextFactory.waitForListenerEvents(ctx);
+
+        final File reportAfterRemoval = createTempFile("stageMetrics.afterRemoval", ".tsv");
+        listener.writeReport(reportAfterRemoval.getAbsolutePath());
+        Assert.assertTrue(Files.readAllLines(reportAfterRemoval.toPath()).stream()
+                .noneMatch(line -> line.contains("after-removal")));
+    }
+}
@@ -0,0 +1,73 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import org.apache.avro.Schema;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.TraversalParameters;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class ADAMReadsQueryUnitTest extends GATKBaseTest {
+
+    @Test
+    public void testAllReadsEverything() {
+        Assert.assertNull(ADAMReadsQuery.ALL.getProjection());
+        Assert.assertNull(ADAMReadsQuery.ALL.getPredicate(null));
+    }
+
+    @Test
+    public void testProjection() {
+        final Schema projection = ADAMReadsQuery.ALL.withFields("duplicateRead").withFlag("primaryAlignment", true).getProjection();
+        final List<String> fieldNames = projection.getFields().stream().map(Schema.Field::name).collect(Collectors.toList());
+        Assert.assertEquals(fieldNames.size(), ADAMReadsQuery.LOCATION_FIELDS.size() + 2);
+        Assert.assertTrue(fieldNames.containsAll(ADAMReadsQuery.LOCATION_FIELDS));
+        Assert.assertTrue(fieldNames.contains("duplicateRead"));
+        Assert.assertTrue(fieldNames.contains("primaryAlignment"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownField() {
+        ADAMReadsQuery.ALL.withFields("noSuchField");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonBooleanFlag() {
+        ADAMReadsQuery.ALL.withFlag("readName", true);
+    }
+
+    @Test
+    public void testFlagPredicate() {
+        final FilterPredicate predicate = ADAMReadsQuery.ALL.withFlag("duplicateRead", false).getPredicate(null);
+        Assert.assertEquals(predicate, FilterApi.eq(FilterApi.booleanColumn("duplicateRead"), false));
+    }
+
+    @Test
+    public void testUnmappedOnlyPredicate() {
+        final FilterPredicate predicate = ADAMReadsQuery.ALL.getPredicate(new TraversalParameters(Collections.emptyList(), true));
+        Assert.assertEquals(predicate, FilterApi.eq(FilterApi.booleanColumn("readMapped"), false));
+    }
+
+    @Test
+    public void testIntervalsPredicate() {
+        final List<SimpleInterval> intervals = Arrays.asList(new SimpleInterval("1", 100, 200), new SimpleInterval("2", 1, 50));
+        final String predicate = ADAMReadsQuery.ALL.getPredicate(new TraversalParameters(intervals, false)).toString();
+        Assert.assertEquals(StringUtils.countMatches(predicate, "contigName"), 2);
+
+        // many intervals are simplified to one span per contig
+        final List<SimpleInterval> manyIntervals = new ArrayList<>();
+        for (int i = 0; i <= ADAMReadsQuery.MAX_INTERVALS_IN_PREDICATE; i++) {
+            manyIntervals.add(new SimpleInterval(i % 2 == 0 ? "1" : "2", 1 + 100 * i, 50 + 100 * i));
+        }
+        final String simplified = ADAMReadsQuery.ALL.getPredicate(new TraversalParameters(manyIntervals, true)).toString();
+        Assert.assertEquals(StringUtils.countMatches(simplified, "contigName"), 2);
+    }
+}
@@ -8,6 +8,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
+import org.bdgenomics.formats.avro.AlignmentRecord;
 import org.broadinstitute.hellbender.engine.ReadsDataSource;
 import org.broadinstitute.hellbender.engine.TraversalParameters;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
@@ -30,6 +31,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -38,6 +40,40 @@ import static org.testng.Assert.assertEquals;
 public class ReadsSparkSourceUnitTest extends GATKBaseTest {
     private static final String dirBQSR = toolsTestDir + "BQSR/";
 
+    @DataProvider(name = "alignmentRecordOverlaps")
+    public Object[][] alignmentRecordOverlaps() {
+        final TraversalParameters intervals = new TraversalParameters(Arrays.asList(new SimpleInterval("1", 100, 200)), false);
+        final TraversalParameters intervalsAndUnmapped = new TraversalParameters(Arrays.asList(new SimpleInterval("1", 100, 200)), true);
+        final TraversalParameters unmappedOnly = new TraversalParameters(Collections.emptyList(), true);
+        return new Object[][]{
+                // ADAM coordinates are 0-based, with an exclusive end
+                {adamRecord("1", 89L, 99L, true), intervals, false},
+                {adamRecord("1", 89L, 100L, true), intervals, true},
+                {adamRecord("1", 199L, 250L, true), intervals, true},
+                {adamRecord("1", 200L, 250L, true), intervals, false},
+                {adamRecord("2", 150L, 160L, true), intervals, false},
+                // unmapped reads placed at a position are only matched by that position
+                {adamRecord("1", 89L, null, false), intervals, false},
+                {adamRecord("1", 149L, null, false), intervals, true},
+                {adamRecord("2", 149L, null, false), intervals, false},
+                {adamRecord(null, null, null, false), intervals, false},
+                {adamRecord(null, null, null, false), intervalsAndUnmapped, true},
+                {adamRecord(null, null, null, false), unmappedOnly, true},
+                {adamRecord("1", 149L, 160L, true), unmappedOnly, false},
+                {adamRecord("1", 149L, 160L, true), null, true}
+        };
+    }
+
+    private static AlignmentRecord adamRecord(final String contig, final Long start, final Long end, final boolean mapped) {
+        // only the location fields are set, as when the other fields are projected out
+        return AlignmentRecord.newBuilder().setContigName(contig).setStart(start).setEnd(end).setReadMapped(mapped).build();
+    }
+
+    @Test(dataProvider = "alignmentRecordOverlaps")
+    public void testAlignmentRecordOverlaps(final AlignmentRecord record, final TraversalParameters traversalParameters, final boolean expected) {
+        Assert.assertEquals(ReadsSparkSource.alignmentRecordOverlaps(record, traversalParameters), expected);
+    }
+
     @DataProvider(name = "loadReads")
     public Object[][] loadReads() {
         return new Object[][]{
@@ -155,6 +155,30 @@ public final class VariantsSparkSinkUnitTest extends GATKBaseTest {
 
     }
 
+    @Test
+    public void testGVCFBandTolerance() throws IOException {
+        // hom-ref sites whose GQ alternates around the band boundary at 20
+        final List<VariantContext> vcs = new ArrayList<>();
+        for(int i = 1; i <= 10; i++) {
+            final Allele A = Allele.create("A", true);
+            final int gq = i % 2 == 0 ? 19 : 21;
+            vcs.add(new VariantContextBuilder("hand crafted", "1", i, i, Arrays.asList(A, Allele.NON_REF_ALLELE))
+                    .genotypes(new GenotypeBuilder(SAMPLE).alleles(Arrays.asList(A, A)).DP(10).GQ(gq).PL(new int[]{0, gq, 60}).make())
+                    .make());
+        }
+
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final File strict = createTempFile(outputFileName, ".g.vcf");
+        VariantsSparkSink.writeVariants(ctx, strict.toString(), ctx.parallelize(vcs), getHeader(), true, Arrays.asList(20, 100), 2, 0, 1);
+        Assert.assertEquals(readVariants(strict.toString()).size(), 10);
+
+        final File tolerant = createTempFile(outputFileName, ".g.vcf");
+        VariantsSparkSink.writeVariants(ctx, tolerant.toString(), ctx.parallelize(vcs), getHeader(), true, Arrays.asList(20, 100), 2, 2, 1);
+        final List<VariantContext> writtenVcs = readVariants(tolerant.toString());
+        Assert.assertEquals(writtenVcs.size(), 1);
+        Assert.assertEquals(writtenVcs.get(0).getEnd(), 10);
+    }
+
     private static VCFHeader getHeader() {
         final Set<VCFHeaderLine> headerlines = new LinkedHashSet<>();
         VCFStandardHeaderLines.addStandardFormatLines(headerlines, true,
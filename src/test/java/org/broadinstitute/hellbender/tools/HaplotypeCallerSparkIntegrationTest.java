@@ -13,6 +13,7 @@ import org.broadinstitute.hellbender.tools.walkers.genotyper.GenotypeCalculation
 import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.HaplotypeCallerArgumentCollection;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -128,6 +129,33 @@ public class HaplotypeCallerSparkIntegrationTest extends CommandLineProgramTest
         Assert.assertTrue(concordance >= 0.99, "Concordance with GATK 3.8 in GVCF mode is < 99% (" +  concordance + ")");
     }
 
+    /*
+     * Test that rebalancing the assembly regions doesn't change the calls, and that the regions cached to rebalance
+     * them are released once the output has been written
+     */
+    @Test
+    public void testRebalancedAssemblyRegionsGiveTheSameCalls() throws Exception {
+        final File output = createTempFile("testRebalancedAssemblyRegions", ".vcf");
+        final File rebalancedOutput = createTempFile("testRebalancedAssemblyRegions.rebalanced", ".vcf");
+
+        final int persistedRDDsBefore = SparkContextFactory.getTestSparkContext().getPersistentRDDs().size();
+        for (final boolean rebalance : new boolean[]{false, true}) {
+            Utils.resetRandomGenerator();
+            final String[] args = {
+                    "-I", NA12878_20_21_WGS_bam,
+                    "-R", b37_2bit_reference_20_21,
+                    "-L", "20:10000000-10100000",
+                    "-O", (rebalance ? rebalancedOutput : output).getAbsolutePath(),
+                    "-pairHMM", "AVX_LOGLESS_CACHING",
+                    "--" + HaplotypeCallerSpark.REBALANCE_ASSEMBLY_REGIONS_LONG_NAME, String.valueOf(rebalance)
+            };
+            runCommandLine(args);
+        }
+
+        IntegrationTestSpec.assertEqualTextFiles(rebalancedOutput, output, "#");
+        Assert.assertEquals(SparkContextFactory.getTestSparkContext().getPersistentRDDs().size(), persistedRDDsBefore);
+    }
+
     @DataProvider
     public static Object[][] brokenGVCFCases() {
         return new Object[][]{
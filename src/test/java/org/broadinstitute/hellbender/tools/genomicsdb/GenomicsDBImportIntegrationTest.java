@@ -32,6 +32,7 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
@@ -86,6 +87,29 @@ public final class GenomicsDBImportIntegrationTest extends CommandLineProgramTes
         testGenomicsDBImporter(LOCAL_GVCFS, INTERVAL, COMBINED, b38_reference_20_21, true);
     }
 
+    @Test
+    public void testGenomicsDBImportBCFInputs() throws IOException {
+        final List<String> bcfInputs = LOCAL_GVCFS.stream().map(gvcf -> toBCF(gvcf, INTERVAL)).collect(Collectors.toList());
+        testGenomicsDBImporter(bcfInputs, INTERVAL, COMBINED, b38_reference_20_21, true);
+    }
+
+    // writes the records of a GVCF overlapping an interval to an indexed BCF
+    private static String toBCF(final String gvcf, final SimpleInterval interval) {
+        final File out = createTempFile(new File(gvcf).getName() + "_", ".g.bcf");
+        try (final AbstractFeatureReader<VariantContext, LineIterator> reader = AbstractFeatureReader.getFeatureReader(gvcf, new VCFCodec(), true)) {
+            final VCFHeader header = (VCFHeader) reader.getHeader();
+            try (final VariantContextWriter writer = GATKVariantContextUtils.createVCFWriter(out, header.getSequenceDictionary(), false,
+                                                                                             Options.INDEX_ON_THE_FLY);
+                 final CloseableTribbleIterator<VariantContext> variants = reader.query(interval.getContig(), interval.getStart(), interval.getEnd())) {
+                writer.writeHeader(header);
+                variants.forEachRemaining(writer::add);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.getAbsolutePath();
+    }
+
     @Test
     public void testGenomicsDBImportFileInputsAgainstCombineGVCF() throws IOException {
         testGenomicsDBAgainstCombineGVCFs(LOCAL_GVCFS, INTERVAL, b38_reference_20_21, new String[0]);
@@ -639,6 +663,26 @@ public final class GenomicsDBImportIntegrationTest extends CommandLineProgramTes
         return getGenomicsDBFeatureReader(workspace, reference, false);
     }
 
+    @Test
+    public void testImportMultipleIntervalsInParallel() throws IOException {
+        final SimpleInterval otherInterval = new SimpleInterval("chr21", 10000000, 10001000);
+        final String workspace = createTempDir("genomicsdb-tests-").getAbsolutePath() + "/workspace";
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+        args.addArgument("L", IntervalUtils.locatableToString(INTERVAL));
+        args.addArgument("L", IntervalUtils.locatableToString(otherInterval));
+        LOCAL_GVCFS.forEach(vcf -> args.addArgument("V", vcf));
+        args.addArgument("batch-size", "2");
+        args.addArgument(GenomicsDBImport.MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL, "2");
+        runCommandLine(args);
+
+        final String intervalWorkspace = workspace + "/chr20_17960187_17981445";
+        checkJSONFilesAreWritten(intervalWorkspace);
+        checkGenomicsDBAgainstExpected(intervalWorkspace, INTERVAL, COMBINED, b38_reference_20_21, true);
+        checkJSONFilesAreWritten(workspace + "/chr21_10000000_10001000");
+    }
+
     @Test(expectedExceptions = GenomicsDBImport.UnableToCreateGenomicsDBWorkspace.class)
     public void testYouCantWriteIntoAnExistingDirectory(){
         // this actually creates the directory on disk, not just the file name.
@@ -5,6 +5,7 @@ import com.esotericsoftware.kryo.io.Input;
 import org.apache.commons.io.FileUtils;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceFileSource;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.spark.sv.utils.SVKmerShort;
 import org.broadinstitute.hellbender.tools.spark.utils.LargeLongHopscotchSet;
 import org.broadinstitute.hellbender.tools.spark.utils.LongBloomFilter;
@@ -141,11 +142,11 @@ public class PSKmerUtilsTest extends CommandLineProgramTest {
             hssMasked.add(PSKmerCollection.canonicalizeAndMask(new SVKmerShort(hssUnmaskedIter.next()), kSize, mask));
         }
 
-        final File hssFile = createTempFile("set", ".bin");
+        final File hssFile = createTempFile("set", PSKmerUtils.HOPSCOTCH_SET_EXTENSION);
         final PSKmerSet truthSet = new PSKmerSet(hssMasked, kSize, mask);
         PSKmerUtils.writeKmerSet(hssFile.getPath(), truthSet);
 
-        final PSKmerSet hssIn = (PSKmerSet) PSKmerUtils.readKmerFilter(hssFile.getPath() + PSKmerUtils.HOPSCOTCH_SET_EXTENSION);
+        final PSKmerSet hssIn = (PSKmerSet) PSKmerUtils.readKmerFilter(hssFile.getPath());
         Assert.assertEquals(hssIn, truthSet, "Hopscotch set changed after writing/reading");
 
         final double bloomFPP = 0.5;
@@ -155,10 +156,10 @@ public class PSKmerUtilsTest extends CommandLineProgramTest {
             bfOut.add(hssIter.next());
         }
 
-        final File bfFile = createTempFile("set", ".bin");
+        final File bfFile = createTempFile("set", PSKmerUtils.BLOOM_FILTER_EXTENSION);
         PSKmerUtils.writeKmerBloomFilter(bfFile.getPath(), new PSKmerBloomFilter(bfOut, kSize, mask, 1000));
 
-        final PSKmerCollection bloomIn = PSKmerUtils.readKmerFilter(bfFile.getPath() + PSKmerUtils.BLOOM_FILTER_EXTENSION);
+        final PSKmerCollection bloomIn = PSKmerUtils.readKmerFilter(bfFile.getPath());
         hssIter = hssMasked.iterator();
         while (hssIter.hasNext()) {
             Assert.assertTrue(bloomIn.contains(new SVKmerShort(hssIter.next())), "Bloom filter changed after writing/reading");
@@ -169,4 +170,63 @@ public class PSKmerUtilsTest extends CommandLineProgramTest {
         }
     }
 
+    @Test
+    public void testReadWriteMappedSets() {
+        final int numElements = 100000;
+        final int kSize = 31;
+        final SVKmerShort mask = SVKmerShort.getMask(new byte[]{3, 20, 25}, kSize);
+
+        //Repeat some kmers, as in a reference
+        final Random rand = new Random(738489373L);
+        final long[] rawKmers = new long[numElements];
+        for (int i = 0; i < numElements; i++) {
+            rawKmers[i] = i % 10 == 0 && i > 0 ? rawKmers[i - 1] : rand.nextLong() >>> 2;
+        }
+        final long[] maskedKmers = Arrays.stream(rawKmers)
+                .map(val -> PSKmerCollection.canonicalizeAndMask(new SVKmerShort(val), kSize, mask)).toArray();
+        final Collection<long[]> maskedKmerCollection = Arrays.asList(Arrays.copyOfRange(maskedKmers, 0, numElements / 3),
+                Arrays.copyOfRange(maskedKmers, numElements / 3, numElements));
+        final LargeLongHopscotchSet hssMasked = new LargeLongHopscotchSet(numElements);
+        hssMasked.addAll(maskedKmers);
+        final PSKmerSet truthSet = new PSKmerSet(hssMasked, kSize, mask);
+
+        final File setFile = createTempFile("set", PSKmerUtils.MAPPED_HOPSCOTCH_SET_EXTENSION);
+        PSKmerUtils.writeMappedKmerFilter(setFile.getPath(), maskedKmerCollection, numElements, 0, kSize, mask);
+        final PSMappedKmerSet setIn = (PSMappedKmerSet) PSKmerUtils.readKmerFilter(setFile.getPath());
+        Assert.assertEquals(setIn.setSize(), truthSet.setSize());
+        Assert.assertEquals(setIn.kmerSize(), kSize);
+        Assert.assertEquals(setIn.getMask(), mask);
+        for (final long val : rawKmers) {
+            Assert.assertTrue(setIn.contains(new SVKmerShort(val)));
+        }
+        for (int i = 0; i < 10000; i++) {
+            final SVKmerShort kmer = new SVKmerShort(rand.nextLong() >>> 2);
+            Assert.assertEquals(setIn.contains(kmer), truthSet.contains(kmer));
+        }
+
+        final double bloomFPP = 0.01;
+        final File bfFile = createTempFile("set", PSKmerUtils.MAPPED_BLOOM_FILTER_EXTENSION);
+        PSKmerUtils.writeMappedKmerFilter(bfFile.getPath(), maskedKmerCollection, numElements, bloomFPP, kSize, mask);
+        final PSKmerCollection bloomIn = PSKmerUtils.readKmerFilter(bfFile.getPath());
+        Assert.assertTrue(bloomIn instanceof PSMappedKmerBloomFilter);
+        Assert.assertTrue(bloomIn.getFalsePositiveProbability() <= bloomFPP);
+        for (final long val : rawKmers) {
+            Assert.assertTrue(bloomIn.contains(new SVKmerShort(val)));
+        }
+        final int numTrials = 10000;
+        int falsePositives = 0;
+        for (int i = 0; i < numTrials; i++) {
+            final SVKmerShort kmer = new SVKmerShort(rand.nextLong() >>> 2);
+            if (bloomIn.contains(kmer) && !truthSet.contains(kmer)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue(falsePositives / (double) numTrials < bloomFPP * 2, "Mapped Bloom filter gave too many false positives");
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testMappedSetsMustBeLocal() {
+        PSKmerUtils.readKmerFilter("hdfs://localhost/kmers" + PSKmerUtils.MAPPED_HOPSCOTCH_SET_EXTENSION);
+    }
+
 }
\ No newline at end of file
@@ -1,8 +1,14 @@
 package org.broadinstitute.hellbender.tools.spark.pipelines.metrics;
 
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.metrics.MetricsFile;
+import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
+import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.broadinstitute.hellbender.GATKBaseTest;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
@@ -13,6 +19,9 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public final class MeanQualityByCycleSparkIntegrationTest extends CommandLineProgramTest {
 
@@ -172,6 +181,57 @@ public final class MeanQualityByCycleSparkIntegrationTest extends CommandLinePro
         IntegrationTestSpec.assertEqualTextFiles(outfile, expectedFile, "#");
     }
 
+    @DataProvider(name = "ADAMInputs")
+    public Object[][] adamInputs() {
+        return new Object[][]{
+                {"first5000a.bam", "meanqualbycycle.txt", Collections.emptyList()},
+                // the PF flag is pushed down to the Parquet reader when only PF reads are used
+                {"example_pfFail_reads.bam", "pfFailBam.pf.txt", Arrays.asList("--pfReadsOnly", "false")},
+                {"example_pfFail_reads.bam", "pfFailBam.pfOnly.txt", Arrays.asList("--pfReadsOnly", "true")}
+        };
+    }
+
+    @Test(dataProvider = "ADAMInputs", groups = "spark")
+    public void testADAMInput(final String bamName, final String expectedName, final List<String> extraArgs) throws IOException {
+        //Note we compare to non-spark outputs
+        final File adam = writeADAM(new File(TEST_DATA_DIR, bamName));
+        final File expectedFile = new File(TEST_DATA_DIR, expectedName);
+        final File outfile = runOn(adam, extraArgs);
+
+        IntegrationTestSpec.assertEqualTextFiles(outfile, expectedFile, "#");
+    }
+
+    @Test(groups = "spark")
+    public void testADAMInputWithIntervals() throws IOException {
+        final File bam = new File(TEST_DATA_DIR, "first5000a.bam");
+        final File adam = writeADAM(bam);
+        // the intervals are pushed down to the Parquet reader, and then applied exactly to the projected records
+        final List<String> intervalArgs = Arrays.asList("-L", "20:10000000-10001000");
+
+        IntegrationTestSpec.assertEqualTextFiles(runOn(adam, intervalArgs), runOn(bam, intervalArgs), "#");
+    }
+
+    private static File writeADAM(final File bam) throws IOException {
+        final File adam = new File(createTempDir("MeanQualityByCycleSpark_ADAM"), bam.getName().replace(".bam", ".adam"));
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final ReadsSparkSource readsSource = new ReadsSparkSource(ctx);
+        final SAMFileHeader header = readsSource.getHeader(bam.getAbsolutePath(), null);
+        ReadsSparkSink.writeReads(ctx, adam.getAbsolutePath(), null, readsSource.getParallelReads(bam.getAbsolutePath(), null), header, ReadsWriteFormat.ADAM);
+        return adam;
+    }
+
+    private File runOn(final File input, final List<String> extraArgs) throws IOException {
+        final File outfile = GATKBaseTest.createTempFile("testMeanQualityByCycle." + input.getName(), ".metrics");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.add("--" + StandardArgumentDefinitions.INPUT_LONG_NAME);
+        args.add(input.getCanonicalPath());
+        args.add("--" + StandardArgumentDefinitions.OUTPUT_LONG_NAME);
+        args.add(outfile.getCanonicalPath());
+        extraArgs.forEach(args::add);
+        this.runCommandLine(args.getArgsArray());
+        return outfile;
+    }
+
     @Test
     public void testGetRScriptResource() {
         // Make sure the RScript resource can be resolved
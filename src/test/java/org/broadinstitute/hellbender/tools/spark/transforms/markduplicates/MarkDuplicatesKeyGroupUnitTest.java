@@ -0,0 +1,114 @@
+package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.markduplicates.LibraryIdGenerator;
+import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
+import org.broadinstitute.hellbender.utils.read.markduplicates.SerializableOpticalDuplicatesFinder;
+import org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords.MarkDuplicatesSparkRecord;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import picard.sam.markduplicates.util.OpticalDuplicateFinder;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class MarkDuplicatesKeyGroupUnitTest extends GATKBaseTest {
+
+    private static final Map<String, Byte> LIBRARY_INDEX = Collections.singletonMap(LibraryIdGenerator.UNKNOWN_LIBRARY, (byte) 0);
+
+    private static MarkDuplicatesSparkRecord pair(final String name, final int partitionIndex, final int baseQuality) {
+        final GATKRead first = ArtificialReadUtils.createSamBackedRead("100M", 100000, 100);
+        final GATKRead second = ArtificialReadUtils.createSamBackedRead("100M", 101000, 100);
+        for ( final GATKRead read : new GATKRead[]{first, second} ) {
+            read.setName(name);
+            read.setBaseQualities(Utils.repeatBytes((byte) baseQuality, 100));
+        }
+        first.setIsFirstOfPair();
+        second.setIsSecondOfPair();
+        second.setIsReverseStrand(true);
+        return MarkDuplicatesSparkRecord.newPair(first, second, hg19Header, partitionIndex, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, LIBRARY_INDEX);
+    }
+
+    private static MarkDuplicatesSparkRecord fragment(final String name, final int partitionIndex, final int baseQuality) {
+        final GATKRead read = ArtificialReadUtils.createSamBackedRead("100M", 200000, 100);
+        read.setName(name);
+        read.setBaseQualities(Utils.repeatBytes((byte) baseQuality, 100));
+        return MarkDuplicatesSparkRecord.newFragment(read, hg19Header, partitionIndex, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, LIBRARY_INDEX);
+    }
+
+    private static MarkDuplicatesSparkRecord emptyFragment(final String name) {
+        final GATKRead read = ArtificialReadUtils.createSamBackedRead("100M", 200000, 100);
+        read.setName(name);
+        return MarkDuplicatesSparkRecord.newEmptyFragment(read, hg19Header, LIBRARY_INDEX);
+    }
+
+    private static MarkDuplicatesSparkRecord passthrough(final String name, final int partitionIndex) {
+        final GATKRead read = ArtificialReadUtils.createSamBackedRead("100M", 300000, 100);
+        read.setName(name);
+        return MarkDuplicatesSparkRecord.getPassthrough(read, partitionIndex);
+    }
+
+    private static List<String> toStrings(final List<Tuple2<MarkDuplicatesSparkUtils.IndexPair<String>, Integer>> nonDuplicates) {
+        return nonDuplicates.stream()
+                .map(t -> t._1().getValue() + ":" + t._1().getIndex() + ":" + t._2())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @DataProvider
+    public Object[][] keyGroups() {
+        final OpticalDuplicateFinder finder = new SerializableOpticalDuplicatesFinder();
+        return new Object[][] {
+                // the best scoring pair wins, and the two tiles that are close together are counted as one optical duplicate
+                {Arrays.asList(pair("RUNID:7:1203:2886:82292", 0, 20), pair("RUNID:7:1203:2884:82290", 1, 30), pair("RUNID:7:1204:2886:82292", 2, 10)),
+                        finder, Collections.singletonList("RUNID:7:1203:2884:82290:1:1")},
+                // without a finder no optical duplicates are counted
+                {Arrays.asList(pair("RUNID:7:1203:2886:82292", 0, 20), pair("RUNID:7:1203:2884:82290", 1, 30)),
+                        null, Collections.singletonList("RUNID:7:1203:2884:82290:1:0")},
+                // the best fragment wins when there are no empty fragments
+                {Arrays.asList(fragment("a", 0, 10), fragment("b", 3, 30), fragment("c", 2, 20)),
+                        finder, Collections.singletonList("b:3:-1")},
+                // an empty fragment (a pair elsewhere) makes every fragment a duplicate
+                {Arrays.asList(fragment("a", 0, 10), emptyFragment("d"), fragment("b", 3, 30)),
+                        finder, Collections.emptyList()},
+                // passthroughs are always emitted
+                {Arrays.asList(passthrough("p1", 0), passthrough("p2", 5)),
+                        finder, Arrays.asList("p1:0:-1", "p2:5:-1")},
+        };
+    }
+
+    @Test(dataProvider = "keyGroups")
+    public void testMatchesWholeGroup(final List<MarkDuplicatesSparkRecord> records, final OpticalDuplicateFinder finder, final List<String> expected) {
+        Assert.assertEquals(toStrings(MarkDuplicatesSparkUtils.markDuplicatesInKeyGroup(records, finder)), expected);
+    }
+
+    @Test(dataProvider = "keyGroups")
+    public void testMergeIsOrderIndependent(final List<MarkDuplicatesSparkRecord> records, final OpticalDuplicateFinder finder, final List<String> expected) {
+        // every split point and both merge orders must give the same result as marking the whole group
+        for ( int split = 0; split <= records.size(); split++ ) {
+            final List<MarkDuplicatesSparkRecord> left = new ArrayList<>(records.subList(0, split));
+            final List<MarkDuplicatesSparkRecord> right = new ArrayList<>(records.subList(split, records.size()));
+
+            final MarkDuplicatesKeyGroup leftFirst = group(left, finder).merge(group(right, finder));
+            Assert.assertEquals(toStrings(leftFirst.getNonDuplicates(finder)), expected);
+
+            final MarkDuplicatesKeyGroup rightFirst = group(right, finder).merge(group(left, finder));
+            Assert.assertEquals(toStrings(rightFirst.getNonDuplicates(finder)), expected);
+        }
+    }
+
+    private static MarkDuplicatesKeyGroup group(final List<MarkDuplicatesSparkRecord> records, final OpticalDuplicateFinder finder) {
+        final MarkDuplicatesKeyGroup group = new MarkDuplicatesKeyGroup();
+        records.forEach(r -> group.add(r, finder));
+        return group;
+    }
+}
@@ -10,8 +10,10 @@ import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 
 public final class LargeLongHopscotchSetTest extends GATKBaseTest {
@@ -228,4 +230,35 @@ public final class LargeLongHopscotchSetTest extends GATKBaseTest {
             Assert.assertTrue(hopscotchSet.contains(val));
         }
     }
+
+    @Test
+    void addAllInParallelMatchesSerialTest() {
+        final Random rng = new Random(RAND_SEED);
+        final List<long[]> arrays = new ArrayList<>();
+        for (int arrayNo = 0; arrayNo != 100; ++arrayNo) {
+            final long[] array = new long[HHASH_NVALS / 100];
+            for (int valNo = 0; valNo != array.length; ++valNo) {
+                array[valNo] = randomLong(rng);
+            }
+            arrays.add(array);
+        }
+
+        final LargeLongHopscotchSet serialSet = new LargeLongHopscotchSet(HHASH_NVALS);
+        arrays.forEach(serialSet::addAll);
+        final LargeLongHopscotchSet parallelSet = new LargeLongHopscotchSet(HHASH_NVALS);
+        parallelSet.addAllInParallel(arrays);
+
+        // the layout of the sets depends on the order in which the entries are added, so comparing the serialized
+        // sets checks that the parallel set was filled in the same order
+        Assert.assertEquals(parallelSet.size(), serialSet.size());
+        Assert.assertEquals(serialize(parallelSet), serialize(serialSet));
+    }
+
+    private static byte[] serialize(final LargeLongHopscotchSet hopscotchSet) {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        new Kryo().writeObject(out, hopscotchSet);
+        out.flush();
+        return bos.toByteArray();
+    }
 }
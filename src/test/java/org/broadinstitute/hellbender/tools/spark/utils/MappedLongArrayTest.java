@@ -0,0 +1,38 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public final class MappedLongArrayTest extends GATKBaseTest {
+
+    private static final int OFFSET = 24;
+    private static final int LENGTH = 1000;
+
+    @Test
+    void writeAndReadTest() throws IOException {
+        final File file = createTempFile("mappedLongs", ".bin");
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // small buffers, so that the array spans many of them
+            final MappedLongArray array = new MappedLongArray(channel, OFFSET, LENGTH, FileChannel.MapMode.READ_WRITE, 6);
+            Assert.assertEquals(array.length(), LENGTH);
+            array.fill(-1L);
+            for (long i = 0; i < LENGTH; i += 2) {
+                array.set(i, i * 31);
+            }
+        }
+        Assert.assertEquals(file.length(), OFFSET + 8L * LENGTH);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final MappedLongArray array = new MappedLongArray(channel, OFFSET, LENGTH, FileChannel.MapMode.READ_ONLY);
+            for (long i = 0; i < LENGTH; i++) {
+                Assert.assertEquals(array.get(i), i % 2 == 0 ? i * 31 : -1L);
+            }
+        }
+    }
+}
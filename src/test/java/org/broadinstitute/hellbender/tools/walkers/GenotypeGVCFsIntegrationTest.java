@@ -181,6 +181,41 @@ public class GenotypeGVCFsIntegrationTest extends CommandLineProgramTest {
         runGenotypeGVCFSAndAssertSomething(genomicsDBUri, expected, NO_EXTRA_ARGS, VariantContextTestUtils::assertVariantContextsHaveSameGenotypes, reference);
     }
 
+    private static List<String> genotypeInParallelArgs(final int shardSize, final String... extraArgs) {
+        final List<String> args = new ArrayList<>(Arrays.asList("--" + GenotypeGVCFs.GENOTYPING_THREADS_LONG_NAME, "3",
+                "--" + GenotypeGVCFs.GENOTYPING_SHARD_SIZE_LONG_NAME, String.valueOf(shardSize)));
+        args.addAll(Arrays.asList(extraArgs));
+        return args;
+    }
+
+    // shards small enough that variants and reference blocks span their boundaries
+    @DataProvider
+    public Object[][] gvcfsToGenotypeInParallel() {
+        return new Object[][]{
+                {getTestFile(BASE_PAIR_GVCF), getTestFile(BASE_PAIR_EXPECTED), genotypeInParallelArgs(1000, "-L", "20:10000000-10010000"), b37_reference_20_21},
+                {getTestFile("gvcfExample1.vcf"), getTestFile( "gvcfExample1.gatk3.7_30_ga4f720357.expected.vcf"), genotypeInParallelArgs(100, "-L", "20:69000-70000"), b37_reference_20_21},
+                {CEUTRIO_20_21_GATK3_4_G_VCF, getTestFile(CEUTRIO_20_21_EXPECTED_VCF), genotypeInParallelArgs(1_000_000, "-L", "20", "-L", "21", "--dbsnp", largeFileTestDir + "dbsnp_138.b37.20.21.vcf"), b37_reference_20_21},
+                // the deletion called at 20:69511 is in the shard before the spanning deletion allele at 20:69513 it covers
+                {getTestFile("spanningDel.combined.g.vcf"), getTestFile("spanningDel.combined.gatk3.7_30_ga4f720357.expected.vcf"), genotypeInParallelArgs(22, "-L", "20:69491-69521"), b37_reference_20_21},
+                // and a few shards before it, between shards spanned by other variants
+                {getTestFile("spanningDel.combined.g.vcf"), getTestFile("spanningDel.combined.gatk3.7_30_ga4f720357.expected.vcf"), genotypeInParallelArgs(1, "-L", "20:69491-69521"), b37_reference_20_21}
+        };
+    }
+
+    @Test(dataProvider = "gvcfsToGenotypeInParallel")
+    public void testGenotypeInParallel(File input, File expected, List<String> extraArgs, String reference) throws IOException {
+        assertVariantContextsMatch(input, expected, extraArgs, reference);
+    }
+
+    @Test
+    public void testGenotypeInParallelFromTileDB() throws IOException {
+        final File tempGenomicsDB = GenomicsDBTestUtils.createTempGenomicsDB(getTestFile(BASE_PAIR_GVCF), new SimpleInterval("20", 1, 11_000_000));
+        final String genomicsDBUri = GenomicsDBTestUtils.makeGenomicsDBUri(tempGenomicsDB);
+        runGenotypeGVCFSAndAssertSomething(genomicsDBUri, getTestFile(BASE_PAIR_EXPECTED),
+                genotypeInParallelArgs(1000, "-L", "20:10000000-10010000"),
+                VariantContextTestUtils::assertVariantContextsHaveSameGenotypes, b37_reference_20_21);
+    }
+
     @Test(dataProvider = "gvcfsToGenotype")
     public void testEntireVariantContext(File input, File expected, List<String> extraArgs, String reference) throws IOException {
         assertVariantContextsMatch(input, expected, extraArgs, reference);
@@ -0,0 +1,56 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.ValidationStringency;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.broadinstitute.hellbender.utils.test.SamAssertionUtils;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public final class BQSRPipelineIntegrationTest extends CommandLineProgramTest {
+
+    private String getResourceDir(){
+        return getTestDataDir() + "/" + "BQSR" + "/";
+    }
+
+    // The expected outputs are shared with BQSRPipelineSparkIntegrationTest: both tools must agree with
+    // running BaseRecalibrator followed by ApplyBQSR.
+    @DataProvider(name = "BQSRPipelineTest")
+    public Object[][] createBQSRPipelineTestData() {
+        final String hiSeqBam_chr20 = getResourceDir() + WGS_B37_CH20_1M_1M1K_BAM;
+        final String dbSNPb37_20 = getResourceDir() + DBSNP_138_B37_CH20_1M_1M1K_VCF;
+
+        final String hiSeqBam_20_21_100000 = getResourceDir() + "CEUTrio.HiSeq.WGS.b37.NA12878.20.21.10m-10m100.bam";
+        final String more20Sites = getResourceDir() + "dbsnp_138.b37.20.10m-10m100.vcf";
+        final String more21Sites = getResourceDir() + "dbsnp_138.b37.21.10m-10m100.vcf";
+
+        return new Object[][]{
+                {hiSeqBam_chr20, new String[]{dbSNPb37_20}, getResourceDir() + "expected.CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.recalibrated.DIQ.bam"},
+                {hiSeqBam_20_21_100000, new String[]{more20Sites, more21Sites}, getResourceDir() + "expected.MultiSite.bqsr.pipeline.bam"},
+        };
+    }
+
+    @Test(dataProvider = "BQSRPipelineTest")
+    public void testBQSRPipeline(final String bam, final String[] knownSites, final String expectedFileName) throws IOException {
+        final File outFile = GATKBaseTest.createTempFile("bqsrPipelineTest", ".bam");
+        final File recalTableFile = GATKBaseTest.createTempFile("bqsrPipelineTest", ".table");
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addInput(new File(bam));
+        args.addOutput(outFile);
+        args.addReference(new File(b37_reference_20_21));
+        for (final String sites : knownSites) {
+            args.addFileArgument(BaseRecalibrator.KNOWN_SITES_ARG_FULL_NAME, new File(sites));
+        }
+        args.addBooleanArgument("indels", true);
+        args.addBooleanArgument("enable-baq", true);
+        args.addFileArgument(BQSRPipeline.RECAL_TABLE_OUTPUT_LONG_NAME, recalTableFile);
+        runCommandLine(args);
+
+        SamAssertionUtils.assertEqualBamFiles(outFile, new File(expectedFileName), true, ValidationStringency.SILENT);
+    }
+}
@@ -0,0 +1,118 @@
+package org.broadinstitute.hellbender.tools.walkers.genotyper;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.MathUtils;
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.hellbender.utils.genotyper.ReadLikelihoodsUnitTester;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * A class to compare the speed of {@link GenotypeLikelihoodCalculator#genotypeLikelihoods} with the previous calculation,
+ * which filled a per-read likelihood array for each genotype before adding them up.
+ * This test is disabled by default because it only prints timings.
+ */
+public class GenotypeLikelihoodCalculatorSpeedUnitTest extends GATKBaseTest {
+
+    private static final int numIterations = 200;
+
+    private static final double MS_TO_NS = 1000000.0;
+
+    // ploidy, allele count and read count of each case.
+    private static final int[][] cases = {
+            { 2, 2, 30 },
+            { 2, 2, 500 },
+            { 2, 6, 100 },
+            { 2, 20, 100 },
+            { 4, 6, 100 },
+            { 2, 50, 300 },
+    };
+
+    //==================================================================================================================
+
+    private static void printTimingString(final int[] testCase, final long currentTime_ns, final long previousTime_ns) {
+        System.out.println("\tploidy=" + testCase[0] + " alleles=" + testCase[1] + " reads=" + testCase[2]
+                + "\tCurrent:\t" + (currentTime_ns / MS_TO_NS) + "ms\tPrevious:\t" + (previousTime_ns / MS_TO_NS)
+                + "ms\tSpeed-up:\t" + ((double) previousTime_ns / (double) currentTime_ns));
+    }
+
+    /**
+     * The calculation done before reads were processed in blocks: the likelihood of every read is computed for a
+     * genotype before moving on to the next genotype, and the per-read values are added up at the end.
+     */
+    private static double[] previousGenotypeLikelihoods(final GenotypeLikelihoodCalculator calculator, final int ploidy,
+                                                        final LikelihoodMatrix<Allele> likelihoods) {
+        final int alleleCount = likelihoods.numberOfAlleles();
+        final int readCount = likelihoods.numberOfReads();
+        final int genotypeCount = calculator.genotypeCount();
+
+        // [a][f][r] = log10(f) + log10 Lk(read_r | allele_a)
+        final double[][][] components = new double[alleleCount][ploidy + 1][readCount];
+        for (int a = 0; a < alleleCount; a++) {
+            for (int f = 1; f <= ploidy; f++) {
+                final double log10Frequency = MathUtils.log10(f);
+                for (int r = 0; r < readCount; r++) {
+                    components[a][f][r] = likelihoods.get(a, r) + log10Frequency;
+                }
+            }
+        }
+
+        final double[][] likelihoodByRead = new double[genotypeCount][readCount];
+        final double[] readComponents = new double[ploidy];
+        for (int g = 0; g < genotypeCount; g++) {
+            final GenotypeAlleleCounts alleleCounts = calculator.genotypeAlleleCountsAt(g);
+            final int componentCount = alleleCounts.distinctAlleleCount();
+            for (int r = 0; r < readCount; r++) {
+                for (int c = 0; c < componentCount; c++) {
+                    readComponents[c] = components[alleleCounts.alleleIndexAt(c)][alleleCounts.alleleCountAt(c)][r];
+                }
+                likelihoodByRead[g][r] = MathUtils.approximateLog10SumLog10(readComponents, 0, componentCount);
+            }
+        }
+
+        final double[] result = new double[genotypeCount];
+        final double denominator = readCount * MathUtils.log10(ploidy);
+        for (int g = 0; g < genotypeCount; g++) {
+            result[g] = MathUtils.sum(likelihoodByRead[g], 0, readCount) - denominator;
+        }
+        return result;
+    }
+
+    //==================================================================================================================
+
+    // Disabled so that we don't waste time.
+    @Test(enabled = false)
+    void compareTimingForGenotypeLikelihoods() {
+        System.out.println("================================================================================");
+        System.out.println("Timing Results (" + numIterations + " iterations per case):");
+        System.out.println("--------------------------------------------------------------------------------");
+        for (final int[] testCase : cases) {
+            final int ploidy = testCase[0];
+            final int alleleCount = testCase[1];
+            final ReadLikelihoods<Allele> readLikelihoods = ReadLikelihoodsUnitTester.readLikelihoods(alleleCount, new int[] { testCase[2] });
+            final LikelihoodMatrix<Allele> sampleLikelihoods = readLikelihoods.sampleMatrix(0);
+            final GenotypeLikelihoodCalculator calculator = new GenotypeLikelihoodCalculators().getInstance(ploidy, alleleCount);
+
+            // warm up both and check that they agree before timing them.
+            final double[] expected = previousGenotypeLikelihoods(calculator, ploidy, sampleLikelihoods);
+            Assert.assertEquals(calculator.genotypeLikelihoods(sampleLikelihoods).getAsVector(), expected, 0.0001);
+
+            final long currentStartTime = System.nanoTime();
+            for (int i = 0; i < numIterations; ++i) {
+                calculator.genotypeLikelihoods(sampleLikelihoods);
+            }
+            final long currentTime_ns = System.nanoTime() - currentStartTime;
+
+            final long previousStartTime = System.nanoTime();
+            for (int i = 0; i < numIterations; ++i) {
+                previousGenotypeLikelihoods(calculator, ploidy, sampleLikelihoods);
+            }
+            final long previousTime_ns = System.nanoTime() - previousStartTime;
+
+            printTimingString(testCase, currentTime_ns, previousTime_ns);
+        }
+        System.out.println("================================================================================");
+    }
+}
@@ -12,6 +12,9 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tests {@link GenotypeLikelihoodCalculators} and {@link GenotypeLikelihoodCalculator}.
@@ -48,6 +51,84 @@ public final class GenotypeLikelihoodCalculatorUnitTest {
 
     @Test(dataProvider = "ploidyAndMaximumAlleleAndReadCountsData", dependsOnMethods = "testPloidyAndMaximumAllele")
     public void testLikelihoodCalculation(final int ploidy, final int alleleCount, final int[] readCount) {
+        assertLikelihoodsMatchReadByReadCalculation(ploidy, alleleCount, readCount);
+    }
+
+    @Test(dataProvider = "manyAllelesAndReadCountsData", dependsOnMethods = "testPloidyAndMaximumAllele")
+    public void testLikelihoodCalculationWithManyAlleles(final int ploidy, final int alleleCount, final int[] readCount) {
+        assertLikelihoodsMatchReadByReadCalculation(ploidy, alleleCount, readCount);
+    }
+
+    @Test(dependsOnMethods = "testPloidyAndMaximumAllele")
+    public void testLikelihoodsAfterOversizedReadBufferIsReleased() {
+        // enough reads for the diploid biallelic read buffer to exceed MAXIMUM_RETAINED_READ_BUFFER_SIZE,
+        // followed by calls that must allocate a new one.
+        final int largeReadCount = GenotypeLikelihoodCalculator.MAXIMUM_RETAINED_READ_BUFFER_SIZE / 6 + 1;
+        assertLikelihoodsMatchReadByReadCalculation(2, 2, new int[] { 10, largeReadCount, 5, largeReadCount, 100 });
+    }
+
+    @Test
+    public void testInstancesAreReusedWithinAThread() throws Exception {
+        final GenotypeLikelihoodCalculators calculators = new GenotypeLikelihoodCalculators();
+        final GenotypeLikelihoodCalculator calculator = calculators.getInstance(2, 3);
+        Assert.assertSame(new GenotypeLikelihoodCalculators().getInstance(2, 3), calculator);
+        Assert.assertNotSame(calculators.getInstance(2, 4), calculator);
+        Assert.assertNotSame(calculators.getInstance(3, 3), calculator);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertNotSame(executor.submit(() -> calculators.getInstance(2, 3)).get(), calculator);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentLikelihoodCalculation() throws Exception {
+        // a mix of sizes, so that threads expand the shared tables while others are using them
+        final int[][] ploidyAndAlleleCounts = { {2, 2}, {2, 30}, {3, 6}, {1, 40}, {4, 9}, {2, 12}, {6, 5}, {3, 15} };
+        final int[] readCount = { 5, 70, 130 };
+        final List<double[][]> expected = new ArrayList<>();
+        for (final int[] ploidyAndAlleleCount : ploidyAndAlleleCounts) {
+            expected.add(calculateGenotypeLikelihoods(ploidyAndAlleleCount[0], ploidyAndAlleleCount[1], readCount));
+        }
+
+        final int threads = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int firstCase = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < ploidyAndAlleleCounts.length * 3; i++) {
+                        final int c = (firstCase + i) % ploidyAndAlleleCounts.length;
+                        final double[][] actual = calculateGenotypeLikelihoods(ploidyAndAlleleCounts[c][0], ploidyAndAlleleCounts[c][1], readCount);
+                        for (int s = 0; s < readCount.length; s++) {
+                            Assert.assertEquals(actual[s], expected.get(c)[s]);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static double[][] calculateGenotypeLikelihoods(final int ploidy, final int alleleCount, final int[] readCount) {
+        final ReadLikelihoods<Allele> readLikelihoods = ReadLikelihoodsUnitTester.readLikelihoods(alleleCount, readCount);
+        final GenotypeLikelihoodCalculator calculator = new GenotypeLikelihoodCalculators().getInstance(ploidy, alleleCount);
+        final double[][] result = new double[readCount.length][];
+        for (int s = 0; s < readCount.length; s++) {
+            result[s] = calculator.genotypeLikelihoods(readLikelihoods.sampleMatrix(s)).getAsVector();
+        }
+        return result;
+    }
+
+    // Checks the calculator against a straightforward calculation of each genotype likelihood read by read.
+    private static void assertLikelihoodsMatchReadByReadCalculation(final int ploidy, final int alleleCount, final int[] readCount) {
         final ReadLikelihoods<Allele> readLikelihoods = ReadLikelihoodsUnitTester.readLikelihoods(alleleCount, readCount);
         final GenotypeLikelihoodCalculator calculator = new GenotypeLikelihoodCalculators().getInstance(ploidy, alleleCount);
         final int genotypeCount = calculator.genotypeCount();
@@ -160,6 +241,20 @@ public final class GenotypeLikelihoodCalculatorUnitTest {
         return result;
     }
 
+    @DataProvider(name="manyAllelesAndReadCountsData")
+    public Object[][] manyAllelesAndReadCountsData() {
+        // up to more genotypes than GenotypeLikelihoodCalculators.MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY, and reads that
+        // fill none, one or several blocks of GenotypeLikelihoodCalculator.READ_BLOCK_SIZE
+        final int blockSize = GenotypeLikelihoodCalculator.READ_BLOCK_SIZE;
+        final int[] readCounts = { 0, 1, blockSize - 1, blockSize, blockSize + 1, 3 * blockSize + 5 };
+        return new Object[][] {
+                { 1, 100, readCounts },
+                { 2, 50, readCounts },
+                { 3, 20, readCounts },
+                { 4, 12, readCounts },
+        };
+    }
+
     @DataProvider(name="ploidyAndMaximumAlleleData")
     public Object[][] ploidyAndMaximumAlleleData() {
         final Object[][] result = new Object[PLOIDY.length * MAXIMUM_ALLELE.length][];
@@ -246,6 +246,76 @@ public class AlleleFrequencyCalculatorUnitTest extends GATKBaseTest {
         Assert.assertEquals(log10PVariantWithoutSpanDel, log10PVariantWithSpanDel, 0.0001);
     }
 
+    // alleles that no sample supports should be pruned without changing the results for the others
+    @Test
+    public void testUnsupportedAllelesArePruned() {
+        final AlleleFrequencyCalculator afCalc = new AlleleFrequencyCalculator(1, 0.1, 0.1, DEFAULT_PLOIDY);
+        final List<Allele> manyAlleles = Arrays.asList(A, B, C, Allele.create("T"), Allele.create("AT"), Allele.create("AC"));
+        final List<Allele> biallelic = Arrays.asList(A, B);
+        final int numAlleles = manyAlleles.size();
+
+        final List<Genotype> manyAlleleGenotypes = Arrays.asList(
+                genotypeWithObviousCall(DIPLOID, numAlleles, new int[] {0,2}, EXTREMELY_CONFIDENT_PL),
+                genotypeWithObviousCall(DIPLOID, numAlleles, new int[] {0,1,1,1}, EXTREMELY_CONFIDENT_PL),
+                genotypeWithObviousCall(TRIPLOID, numAlleles, new int[] {0,2,1,1}, EXTREMELY_CONFIDENT_PL));
+        final List<Genotype> biallelicGenotypes = Arrays.asList(
+                genotypeWithObviousCall(DIPLOID, BIALLELIC, new int[] {0,2}, EXTREMELY_CONFIDENT_PL),
+                genotypeWithObviousCall(DIPLOID, BIALLELIC, new int[] {0,1,1,1}, EXTREMELY_CONFIDENT_PL),
+                genotypeWithObviousCall(TRIPLOID, BIALLELIC, new int[] {0,2,1,1}, EXTREMELY_CONFIDENT_PL));
+
+        final AFCalculationResult result = afCalc.getLog10PNonRef(makeVC(manyAlleles, manyAlleleGenotypes));
+        final AFCalculationResult biallelicResult = afCalc.getLog10PNonRef(makeVC(biallelic, biallelicGenotypes));
+
+        Assert.assertEquals(result.getLog10PosteriorOfAFEq0(), biallelicResult.getLog10PosteriorOfAFEq0(), 1e-10);
+        Assert.assertEquals(result.getLog10PosteriorOfAFEq0ForAllele(B), biallelicResult.getLog10PosteriorOfAFEq0ForAllele(B), 1e-10);
+        Assert.assertEquals(result.getAlleleCountAtMLE(B), biallelicResult.getAlleleCountAtMLE(B));
+        for (final Allele pruned : manyAlleles.subList(2, numAlleles)) {
+            Assert.assertEquals(result.getAlleleCountAtMLE(pruned), 0);
+            Assert.assertEquals(result.getLog10PosteriorOfAFEq0ForAllele(pruned), 0.0);
+        }
+
+        final AlleleFrequencyPruningMetrics metrics = afCalc.getPruningMetrics();
+        Assert.assertEquals(metrics.getSites(), 2);
+        Assert.assertEquals(metrics.getSitesWithPrunedAlleles(), 1);
+        Assert.assertEquals(metrics.getPrunedAlleles(), numAlleles - 2);
+        Assert.assertEquals(metrics.getSitesOverGenotypeLimit(), 0);
+    }
+
+    // when the alleles have too many genotypes, the alleles with the least evidence should be dropped
+    @Test
+    public void testGenotypeLimit() {
+        // a diploid genotype limit of 3 only allows for one alt allele
+        final AlleleFrequencyCalculator afCalc = new AlleleFrequencyCalculator(1, 1, 1, DEFAULT_PLOIDY, 3);
+        final List<Allele> alleles = Arrays.asList(A,B,C);
+        final Genotype AB = genotypeWithObviousCall(DIPLOID, TRIALLELIC, new int[] {0,1,1,1}, EXTREMELY_CONFIDENT_PL);
+        final Genotype AC = genotypeWithObviousCall(DIPLOID, TRIALLELIC, new int[] {0,1,2,1}, FAIRLY_CONFIDENT_PL);
+
+        final AFCalculationResult result = afCalc.getLog10PNonRef(makeVC(alleles, AB, AB, AC));
+        Assert.assertTrue(result.getAlleleCountAtMLE(B) >= 2);
+        Assert.assertTrue(result.isPolymorphic(B, -10));
+        Assert.assertEquals(result.getAlleleCountAtMLE(C), 0);
+        Assert.assertEquals(result.getLog10PosteriorOfAFEq0ForAllele(C), 0.0);
+
+        final AlleleFrequencyPruningMetrics metrics = afCalc.getPruningMetrics();
+        Assert.assertEquals(metrics.getSites(), 1);
+        Assert.assertEquals(metrics.getSitesWithPrunedAlleles(), 0);
+        Assert.assertEquals(metrics.getSitesOverGenotypeLimit(), 1);
+        Assert.assertEquals(metrics.getAllelesOverGenotypeLimit(), 1);
+
+        // the metrics can be restored to a snapshot, as GenotypeGVCFs does to leave out the sites it genotypes again
+        final AlleleFrequencyPruningMetrics snapshot = new AlleleFrequencyPruningMetrics();
+        snapshot.add(metrics);
+        afCalc.getLog10PNonRef(makeVC(alleles, AB, AB, AC));
+        Assert.assertEquals(metrics.getSites(), 2);
+        metrics.reset();
+        Assert.assertEquals(metrics.getSites(), 0);
+        Assert.assertEquals(metrics.getAllelesOverGenotypeLimit(), 0);
+        metrics.add(snapshot);
+        Assert.assertEquals(metrics.getSites(), 1);
+        Assert.assertEquals(metrics.getSitesOverGenotypeLimit(), 1);
+        Assert.assertEquals(metrics.getAllelesOverGenotypeLimit(), 1);
+    }
+
     // make PLs that correspond to an obvious call i.e. one PL is relatively big and the rest are zero
     // alleleCounts is the GenotypeAlleleCounts format for the obvious genotype, with repeats but in no particular order
     private static int[] PLsForObviousCall(final int ploidy, final int numAlleles, final int[] alleleCounts, final int PL)   {
@@ -206,6 +206,56 @@ public class HaplotypeCallerIntegrationTest extends CommandLineProgramTest {
         IntegrationTestSpec.assertEqualTextFiles(output, expected);
     }
 
+    /*
+     * Test that a GVCF written as BCF is indexed and has the same records as the past GATK4 GVCF results
+     */
+    @Test
+    public void testGVCFModeInBCF() throws Exception {
+        Utils.resetRandomGenerator();
+
+        final File output = createTempFile("testGVCFModeInBCF", ".g.bcf");
+        final File expected = new File(TEST_FILES_DIR, "expected.testGVCFMode.gatk4.g.vcf");
+
+        final String[] args = {
+                "-I", NA12878_20_21_WGS_bam,
+                "-R", b37_reference_20_21,
+                "-L", "20:10000000-10100000",
+                "-O", output.getAbsolutePath(),
+                "-ERC", "GVCF",
+                "-pairHMM", "AVX_LOGLESS_CACHING",
+                "--" + StandardArgumentDefinitions.ADD_OUTPUT_VCF_COMMANDLINE, "false"
+        };
+
+        runCommandLine(args);
+
+        Assert.assertTrue(Tribble.indexFile(output).exists());
+        final List<VariantContext> actualVCs = VariantContextTestUtils.readEntireVCFIntoMemory(output.getAbsolutePath()).getRight();
+        final List<VariantContext> expectedVCs = VariantContextTestUtils.readEntireVCFIntoMemory(expected.getAbsolutePath()).getRight();
+        Assert.assertEquals(actualVCs.size(), expectedVCs.size());
+        // BCF decodes attributes to typed values, so compare the fields that make up the blocks and calls
+        for ( int i = 0; i < actualVCs.size(); i++ ) {
+            final VariantContext actual = actualVCs.get(i);
+            final VariantContext expectedVC = expectedVCs.get(i);
+            Assert.assertEquals(actual.getContig(), expectedVC.getContig());
+            Assert.assertEquals(actual.getStart(), expectedVC.getStart());
+            Assert.assertEquals(actual.getEnd(), expectedVC.getEnd());
+            Assert.assertEquals(actual.getAlleles(), expectedVC.getAlleles());
+            final Genotype actualGenotype = actual.getGenotype(0);
+            final Genotype expectedGenotype = expectedVC.getGenotype(0);
+            Assert.assertEquals(actualGenotype.getAlleles(), expectedGenotype.getAlleles());
+            Assert.assertEquals(actualGenotype.getGQ(), expectedGenotype.getGQ());
+            Assert.assertEquals(actualGenotype.getDP(), expectedGenotype.getDP());
+            Assert.assertEquals(actualGenotype.getPL(), expectedGenotype.getPL());
+        }
+
+        // the blocks can be looked up by interval
+        try ( final FeatureDataSource<VariantContext> gvcf = new FeatureDataSource<>(output) ) {
+            final SimpleInterval interval = new SimpleInterval("20", 10050000, 10050100);
+            Assert.assertEquals(gvcf.queryAndPrefetch(interval).size(),
+                    (int) expectedVCs.stream().filter(vc -> vc.overlaps(interval)).count());
+        }
+    }
+
     /*
      * Test that in GVCF mode we're consistent with past GATK4 results using AS_ annotations
      *
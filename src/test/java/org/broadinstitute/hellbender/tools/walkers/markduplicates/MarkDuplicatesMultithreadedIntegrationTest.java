@@ -0,0 +1,126 @@
+package org.broadinstitute.hellbender.tools.walkers.markduplicates;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import htsjdk.samtools.metrics.MetricsFile;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.ReadsDataSource;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.markduplicates.GATKDuplicationMetrics;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public final class MarkDuplicatesMultithreadedIntegrationTest extends CommandLineProgramTest {
+
+    // The expected values are the same as for MarkDuplicatesSpark (and match the outputs of picard mark duplicates):
+    // total reads, duplicate reads, and for each library UNPAIRED_READS_EXAMINED, READ_PAIRS_EXAMINED, UNMAPPED_READS,
+    // UNPAIRED_READ_DUPLICATES, READ_PAIR_DUPLICATES, READ_PAIR_OPTICAL_DUPLICATES, PERCENT_DUPLICATION
+    @DataProvider(name = "md")
+    public Object[][] md(){
+        final List<Object[]> data = new ArrayList<>();
+        final Object[][] cases = {
+            {new File(MarkDuplicatesGATKIntegrationTest.TEST_DATA_DIR,"example.chr1.1-1K.unmarkedDups.noDups.bam"), 20, 0,
+             ImmutableMap.of("Solexa-16419", ImmutableList.of(0L, 3L, 0L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16416", ImmutableList.of(0L, 1L, 0L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16404", ImmutableList.of(0L, 3L, 0L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16406", ImmutableList.of(0L, 1L, 0L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16412", ImmutableList.of(0L, 1L, 0L, 0L, 0L, 0L, 0.0))},
+            {new File(MarkDuplicatesGATKIntegrationTest.TEST_DATA_DIR,"example.chr1.1-1K.unmarkedDups.bam"), 90, 6,
+             ImmutableMap.of("Solexa-16419", ImmutableList.of(4L, 4L, 4L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16416", ImmutableList.of(2L, 2L, 2L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16404", ImmutableList.of(3L, 9L, 3L, 0L, 2L, 0L, 0.190476),
+                             "Solexa-16406", ImmutableList.of(1L, 10L, 1L, 0L, 0L, 0L, 0.0),
+                             "Solexa-16412", ImmutableList.of(3L, 6L, 3L, 0L, 1L, 0L, 0.133333))},
+            {new File(MarkDuplicatesGATKIntegrationTest.TEST_DATA_DIR, "optical_dupes.bam"), 4, 2,
+             ImmutableMap.of("mylib", ImmutableList.of(0L, 2L, 0L, 0L, 1L, 1L, 0.5))},
+            {new File(MarkDuplicatesGATKIntegrationTest.TEST_DATA_DIR, "optical_dupes_casava.bam"), 4, 2,
+             ImmutableMap.of("mylib", ImmutableList.of(0L, 2L, 0L, 0L, 1L, 1L, 0.5))},
+        };
+        // results must not depend on the number of threads or partitions
+        for ( final Object[] testCase : cases ) {
+            data.add(new Object[]{testCase[0], testCase[1], testCase[2], testCase[3], 1, 1});
+            data.add(new Object[]{testCase[0], testCase[1], testCase[2], testCase[3], 4, 7});
+            // more partitions than can be in flight at once
+            data.add(new Object[]{testCase[0], testCase[1], testCase[2], testCase[3], 2, 16});
+        }
+        return data.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "md")
+    public void testMarkDuplicatesMultithreaded(final File input, final long totalExpected, final long dupsExpected,
+                                                final Map<String, List<?>> metricsExpected,
+                                                final int numThreads, final int numPartitions) throws IOException {
+        final File outputFile = createTempFile("markdups", ".bam");
+        final File metricsFile = createTempFile("markdups_metrics", ".txt");
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addInput(input);
+        args.addOutput(outputFile);
+        args.addFileArgument(StandardArgumentDefinitions.METRICS_FILE_LONG_NAME, metricsFile);
+        args.addArgument(MarkDuplicatesMultithreaded.NUM_THREADS_LONG_NAME, String.valueOf(numThreads));
+        args.addArgument(MarkDuplicatesMultithreaded.NUM_PARTITIONS_LONG_NAME, String.valueOf(numPartitions));
+        runCommandLine(args);
+
+        int totalReads = 0;
+        int duplicateReads = 0;
+        try ( final ReadsDataSource outputReads = new ReadsDataSource(outputFile.toPath()) ) {
+            for ( final GATKRead read : outputReads ) {
+                ++totalReads;
+                if ( read.isDuplicate() ) {
+                    ++duplicateReads;
+                }
+            }
+        }
+        Assert.assertEquals(totalReads, totalExpected, "Wrong number of reads in output BAM");
+        Assert.assertEquals(duplicateReads, dupsExpected, "Wrong number of duplicate reads in output BAM");
+
+        final MetricsFile<GATKDuplicationMetrics, Comparable<?>> metricsOutput = new MetricsFile<>();
+        metricsOutput.read(new FileReader(metricsFile));
+        final List<GATKDuplicationMetrics> nonEmptyMetrics = metricsOutput.getMetrics().stream()
+                .filter(metric -> metric.UNPAIRED_READS_EXAMINED != 0L || metric.READ_PAIRS_EXAMINED != 0L || metric.UNMAPPED_READS != 0L)
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(nonEmptyMetrics.size(), metricsExpected.size(), "Wrong number of metrics with non-zero fields.");
+        for ( final GATKDuplicationMetrics observedMetrics : nonEmptyMetrics ) {
+            final List<?> expectedList = metricsExpected.get(observedMetrics.LIBRARY);
+            Assert.assertNotNull(expectedList, "Unexpected library found: " + observedMetrics.LIBRARY);
+            Assert.assertEquals(observedMetrics.UNPAIRED_READS_EXAMINED, expectedList.get(0));
+            Assert.assertEquals(observedMetrics.READ_PAIRS_EXAMINED, expectedList.get(1));
+            Assert.assertEquals(observedMetrics.UNMAPPED_READS, expectedList.get(2));
+            Assert.assertEquals(observedMetrics.UNPAIRED_READ_DUPLICATES, expectedList.get(3));
+            Assert.assertEquals(observedMetrics.READ_PAIR_DUPLICATES, expectedList.get(4));
+            Assert.assertEquals(observedMetrics.READ_PAIR_OPTICAL_DUPLICATES, expectedList.get(5));
+            Assert.assertEquals(observedMetrics.PERCENT_DUPLICATION, expectedList.get(6));
+        }
+    }
+
+    @Test
+    public void testHashCollisionHandling() {
+        // Two read pairs with the same start positions on different contigs must not be duplicates of each other
+        final File output = createTempFile("hashCollisionedReads", ".bam");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addOutput(output);
+        args.addInput(new File(publicTestDir + "org/broadinstitute/hellbender/tools/spark/pipelines/MarkDuplicatesSpark/hashCollisionedReads.bam"));
+        runCommandLine(args);
+
+        try ( final ReadsDataSource outputReadsSource = new ReadsDataSource(output.toPath()) ) {
+            int numReads = 0;
+            for ( final GATKRead read : outputReadsSource ) {
+                Assert.assertFalse(read.isDuplicate());
+                numReads++;
+            }
+            Assert.assertEquals(numReads, 4, "Wrong number of reads output");
+        }
+    }
+}
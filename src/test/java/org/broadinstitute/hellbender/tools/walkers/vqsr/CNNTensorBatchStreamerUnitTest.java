@@ -0,0 +1,154 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class CNNTensorBatchStreamerUnitTest extends GATKBaseTest {
+
+    private static final int WINDOW_SIZE = 8;
+    private static final int NUM_VARIANTS = 25;
+
+    private static VariantContext makeVariant(final int i) {
+        final List<Allele> alleles = i % 2 == 0 ?
+                Arrays.asList(Allele.create("A", true), Allele.create("G")) :
+                Arrays.asList(Allele.create("AC", true), Allele.create("A"));
+        return new VariantContextBuilder("test", "20", 1000 + 10 * i, 999 + 10 * i + alleles.get(0).length(), alleles)
+                .attribute("DP", i)
+                .make();
+    }
+
+    private static byte[] makeReferenceBases(final int i) {
+        // the GC content of the window encodes the variant index, so that the scores can be checked
+        final byte[] bases = new byte[WINDOW_SIZE];
+        for (int j = 0; j < WINDOW_SIZE; j++) {
+            bases[j] = (byte) (j < i % (WINDOW_SIZE + 1) ? 'G' : 'T');
+        }
+        return bases;
+    }
+
+    @DataProvider(name = "transferBatchSizes")
+    public Object[][] transferBatchSizes() {
+        return new Object[][] {{1}, {3}, {NUM_VARIANTS}, {100}};
+    }
+
+    @Test(dataProvider = "transferBatchSizes")
+    public void testAllVariantsScoredInOrder(final int transferBatchSize) {
+        try (final StubTensorBatchScorer scorer = new StubTensorBatchScorer()) {
+            final CNNTensorBatchStreamer streamer = new CNNTensorBatchStreamer(scorer, transferBatchSize, WINDOW_SIZE, false);
+            for (int i = 0; i < NUM_VARIANTS; i++) {
+                streamer.addVariant(makeVariant(i), makeReferenceBases(i), null);
+            }
+            streamer.finish();
+
+            Assert.assertEquals(scorer.getNumBatches(), (NUM_VARIANTS + transferBatchSize - 1) / transferBatchSize);
+            final List<String> scoreLines = scorer.getScoreLines();
+            Assert.assertEquals(scoreLines.size(), NUM_VARIANTS);
+            for (int i = 0; i < NUM_VARIANTS; i++) {
+                final VariantContext variant = makeVariant(i);
+                final double gcContent = (double) (i % (WINDOW_SIZE + 1)) / WINDOW_SIZE;
+                Assert.assertEquals(scoreLines.get(i), String.format("%s\t%d\t%s\t%s\t%.3f", variant.getContig(), variant.getStart(),
+                        variant.getReference().getBaseString(), variant.getAlternateAlleles().toString(), gcContent));
+                final StubTensorBatchScorer.DecodedVariant decoded = scorer.getVariants().get(i);
+                Assert.assertEquals(decoded.type, i % 2 == 0 ? CNNTensorBatch.SNP : CNNTensorBatch.INDEL);
+                Assert.assertEquals(decoded.annotations, "DP=" + i + ";");
+                Assert.assertNull(decoded.reads);
+            }
+        }
+    }
+
+    @Test
+    public void testReferenceTensor() {
+        try (final StubTensorBatchScorer scorer = new StubTensorBatchScorer()) {
+            final CNNTensorBatchStreamer streamer = new CNNTensorBatchStreamer(scorer, 10, WINDOW_SIZE, false);
+            // an ambiguity code, and zeros past the end of the contig
+            streamer.addVariant(makeVariant(0), new byte[] {'A', 'C', 'G', 'T', 'N', 'R', 0, 0}, null);
+            streamer.finish();
+
+            final float[] expected = {
+                    1, 0, 0, 0,
+                    0, 1, 0, 0,
+                    0, 0, 1, 0,
+                    0, 0, 0, 1,
+                    0.25f, 0.25f, 0.25f, 0.25f,
+                    0.5f, 0, 0, 0.5f,
+                    0, 0, 0, 0,
+                    0, 0, 0, 0};
+            Assert.assertEquals(scorer.getVariants().get(0).referenceTensor, expected);
+        }
+    }
+
+    @Test(expectedExceptions = GATKException.class)
+    public void testUnknownReferenceBase() {
+        final CNNTensorBatch batch = new CNNTensorBatch(WINDOW_SIZE, false);
+        batch.addVariant(makeVariant(0), "ACGTacgt".getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test
+    public void testReads() {
+        final GATKRead read = ArtificialReadUtils.createArtificialRead(
+                "ACGTACGT".getBytes(StandardCharsets.UTF_8), new byte[] {30, 31, 32, 33, 34, 35, 36, 37}, "2S6M");
+        read.setPosition("20", 1002);
+        read.setIsReverseStrand(true);
+        read.setIsPaired(true);
+        read.setIsFirstOfPair();
+        read.setMateIsReverseStrand(false);
+        read.setMappingQuality(50);
+
+        try (final StubTensorBatchScorer scorer = new StubTensorBatchScorer()) {
+            final CNNTensorBatchStreamer streamer = new CNNTensorBatchStreamer(scorer, 2, WINDOW_SIZE, true);
+            Assert.assertEquals(streamer.addVariant(makeVariant(0), makeReferenceBases(3), Collections.singletonList(read)), 1);
+            Assert.assertEquals(streamer.addVariant(makeVariant(1), makeReferenceBases(4), Collections.emptyList()), 0);
+            streamer.finish();
+
+            final StubTensorBatchScorer.DecodedVariant withRead = scorer.getVariants().get(0);
+            Assert.assertEquals(withRead.referenceBases, "GGGTTTTT");
+            Assert.assertEquals(withRead.reads.size(), 1);
+            final StubTensorBatchScorer.DecodedRead decodedRead = withRead.reads.get(0);
+            Assert.assertEquals(decodedRead.bases, read.getBases());
+            Assert.assertEquals(decodedRead.qualities, read.getBaseQualities());
+            Assert.assertEquals(decodedRead.cigar, "2S6M");
+            Assert.assertEquals(decodedRead.flags, CNNTensorBatch.READ_REVERSE_STRAND | CNNTensorBatch.READ_FIRST_OF_PAIR);
+            Assert.assertEquals(decodedRead.mappingQuality, 50);
+            Assert.assertEquals(decodedRead.unclippedStart, 1000);
+            Assert.assertTrue(scorer.getVariants().get(1).reads.isEmpty());
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testNextBatchIsFilledWhilePreviousIsScored() {
+        try (final StubTensorBatchScorer scorer = new StubTensorBatchScorer()) {
+            final CNNTensorBatchStreamer streamer = new CNNTensorBatchStreamer(scorer, 2, WINDOW_SIZE, false);
+            scorer.hold();
+            streamer.addVariant(makeVariant(0), makeReferenceBases(0), null);
+            streamer.addVariant(makeVariant(1), makeReferenceBases(1), null);
+            // the first batch is stuck in the scorer, but the second can still be filled
+            streamer.addVariant(makeVariant(2), makeReferenceBases(2), null);
+            Assert.assertTrue(scorer.isBatchInFlight());
+            Assert.assertEquals(scorer.getNumBatches(), 1);
+            scorer.release();
+
+            for (int i = 3; i < NUM_VARIANTS; i++) {
+                streamer.addVariant(makeVariant(i), makeReferenceBases(i), null);
+            }
+            streamer.finish();
+            Assert.assertFalse(scorer.isBatchInFlight());
+            Assert.assertEquals(scorer.getScoreLines().size(), NUM_VARIANTS);
+            for (int i = 0; i < NUM_VARIANTS; i++) {
+                Assert.assertTrue(scorer.getScoreLines().get(i).startsWith("20\t" + (1000 + 10 * i) + "\t"));
+            }
+        }
+    }
+}
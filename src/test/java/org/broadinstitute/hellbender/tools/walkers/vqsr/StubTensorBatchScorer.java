@@ -0,0 +1,178 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import org.broadinstitute.hellbender.exceptions.GATKException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Scores batches of tensors locally on a background thread, in place of the Python process, by decoding each frame
+ * the way {@code vqsr_cnn.score_and_write_tensor_batch} does. The score of a variant is the GC content of its
+ * reference tensor, so that tests can check what was streamed without a model.
+ */
+final class StubTensorBatchScorer implements CNNTensorBatchScorer, AutoCloseable {
+
+    static final class DecodedRead {
+        byte[] bases;
+        byte[] qualities;
+        String cigar;
+        int flags;
+        int mappingQuality;
+        int unclippedStart;
+    }
+
+    static final class DecodedVariant {
+        String key;
+        String annotations;
+        int type;
+        float[] referenceTensor;
+        String referenceBases;
+        List<DecodedRead> reads;
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // held by tests to keep a batch from being scored
+    private final Semaphore gate = new Semaphore(Integer.MAX_VALUE);
+    private final List<DecodedVariant> variants = new ArrayList<>();
+    private final List<String> scoreLines = new ArrayList<>();
+    private Future<?> batchInFlight = null;
+    private int numBatches = 0;
+
+    @Override
+    public void startBatch(final CNNTensorBatch batch) {
+        if (batchInFlight != null) {
+            throw new IllegalStateException("Previous batch not yet complete");
+        }
+        numBatches++;
+        batchInFlight = executor.submit(() -> {
+            gate.acquireUninterruptibly();
+            try {
+                decode(batch.getFrame().toByteArray());
+            } finally {
+                gate.release();
+            }
+        });
+    }
+
+    @Override
+    public void waitForPreviousBatch() {
+        if (batchInFlight != null) {
+            try {
+                batchInFlight.get();
+            } catch (final InterruptedException | ExecutionException e) {
+                throw new GATKException("Stub scoring failed", e);
+            }
+            batchInFlight = null;
+        }
+    }
+
+    /**
+     * Stops batches from being scored until {@link #release()}
+     */
+    void hold() {
+        gate.acquireUninterruptibly(Integer.MAX_VALUE);
+    }
+
+    void release() {
+        gate.release(Integer.MAX_VALUE);
+    }
+
+    boolean isBatchInFlight() {
+        return batchInFlight != null && !batchInFlight.isDone();
+    }
+
+    int getNumBatches() {
+        return numBatches;
+    }
+
+    List<DecodedVariant> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @return the lines the Python scorer would write to the score file, without line terminators
+     */
+    List<String> getScoreLines() {
+        return scoreLines;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void decode(final byte[] frame) {
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame))) {
+            if (in.readInt() != CNNTensorBatch.MAGIC) {
+                throw new GATKException("Bad magic number");
+            }
+            final int batchSize = in.readInt();
+            final int windowSize = in.readInt();
+            final boolean hasReads = in.readInt() == 1;
+            if (in.readInt() != frame.length - CNNTensorBatch.HEADER_LENGTH) {
+                throw new GATKException("Bad payload length");
+            }
+            for (int i = 0; i < batchSize; i++) {
+                final DecodedVariant variant = new DecodedVariant();
+                variant.key = readString(in);
+                variant.annotations = readString(in);
+                variant.type = in.readByte();
+                variant.referenceTensor = new float[windowSize * CNNTensorBatch.BASES_PER_REFERENCE_ROW];
+                for (int j = 0; j < variant.referenceTensor.length; j++) {
+                    variant.referenceTensor[j] = in.readFloat();
+                }
+                if (hasReads) {
+                    final byte[] referenceBases = new byte[windowSize];
+                    in.readFully(referenceBases);
+                    variant.referenceBases = new String(referenceBases, StandardCharsets.UTF_8);
+                    final int numReads = in.readInt();
+                    variant.reads = new ArrayList<>(numReads);
+                    for (int j = 0; j < numReads; j++) {
+                        final DecodedRead read = new DecodedRead();
+                        read.bases = new byte[in.readInt()];
+                        in.readFully(read.bases);
+                        read.qualities = new byte[in.readInt()];
+                        in.readFully(read.qualities);
+                        read.cigar = readString(in);
+                        read.flags = in.readByte();
+                        read.mappingQuality = in.readInt();
+                        read.unclippedStart = in.readInt();
+                        variant.reads.add(read);
+                    }
+                }
+                variants.add(variant);
+                scoreLines.add(String.format("%s\t%.3f", variant.key, gcContent(variant.referenceTensor)));
+            }
+            if (in.available() != 0) {
+                throw new GATKException("Trailing bytes after the last variant");
+            }
+        } catch (final IOException e) {
+            throw new GATKException("Bad tensor batch frame", e);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static double gcContent(final float[] referenceTensor) {
+        double gc = 0;
+        double total = 0;
+        for (int i = 0; i < referenceTensor.length; i += CNNTensorBatch.BASES_PER_REFERENCE_ROW) {
+            gc += referenceTensor[i + 1] + referenceTensor[i + 2];
+            total += referenceTensor[i] + referenceTensor[i + 1] + referenceTensor[i + 2] + referenceTensor[i + 3];
+        }
+        return total == 0 ? 0 : gc / total;
+    }
+}
@@ -0,0 +1,78 @@
+package org.broadinstitute.hellbender.tools.walkers.vqsr;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public final class VariantRecalibratorEngineUnitTest extends GATKBaseTest {
+
+    // enough data to be split into several chunks when running on more than one thread
+    private static final int NUM_DATA = 2 * DataChunkExecutor.CHUNK_SIZE + 123;
+    private static final int NUM_DATA_WITH_MISSING_ANNOTATIONS = 10;
+
+    private static List<VariantDatum> makeData(final int numData, final boolean withMissingAnnotation) {
+        final Random random = new Random(13);
+        final List<VariantDatum> data = new ArrayList<>(numData);
+        for (int i = 0; i < numData; i++) {
+            final VariantDatum datum = new VariantDatum();
+            // two clusters
+            final double center = i % 3 == 0 ? -2.0 : 1.0;
+            datum.annotations = new double[] {center + random.nextGaussian(), center + 0.5 * random.nextGaussian()};
+            datum.isNull = new boolean[] {false, withMissingAnnotation};
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static double[] fitAndScore(final int numThreads) {
+        Utils.resetRandomGenerator();
+        final VariantRecalibratorArgumentCollection arguments = new VariantRecalibratorArgumentCollection();
+        arguments.NUM_THREADS = numThreads;
+        arguments.MAX_ITERATIONS = 20;
+        final VariantRecalibratorEngine engine = new VariantRecalibratorEngine(arguments);
+
+        final GaussianMixtureModel model = engine.generateModel(makeData(NUM_DATA, false), 2);
+        final List<VariantDatum> data = makeData(NUM_DATA, false);
+        data.addAll(makeData(NUM_DATA_WITH_MISSING_ANNOTATIONS, true));
+        engine.evaluateData(data, model, false);
+        Assert.assertFalse(model.failedToConverge);
+        return data.stream().mapToDouble(datum -> datum.lod).toArray();
+    }
+
+    @Test
+    public void testResultsDoNotDependOnNumberOfThreads() {
+        final double[] serialLods = fitAndScore(1);
+        final double[] parallelLods = fitAndScore(2);
+        // the chunks are always combined in the same order, so any number of threads gives the same results
+        Assert.assertEquals(fitAndScore(4), parallelLods);
+        // a single thread sums the data in one pass, which only differs by rounding
+        Assert.assertEquals(parallelLods.length, serialLods.length);
+        for (int i = 0; i < serialLods.length; i++) {
+            Assert.assertEquals(parallelLods[i], serialLods[i], 1e-6 * Math.max(1.0, Math.abs(serialLods[i])));
+        }
+    }
+
+    @Test
+    public void testChunksAreInOrder() {
+        try (final DataChunkExecutor executor = new DataChunkExecutor(3)) {
+            final List<int[]> chunks = executor.mapChunks(NUM_DATA, (chunk, start, end) -> new int[] {chunk, start, end});
+            int expectedStart = 0;
+            for (int chunk = 0; chunk < chunks.size(); chunk++) {
+                Assert.assertEquals(chunks.get(chunk)[0], chunk);
+                Assert.assertEquals(chunks.get(chunk)[1], expectedStart);
+                expectedStart = chunks.get(chunk)[2];
+            }
+            Assert.assertEquals(expectedStart, NUM_DATA);
+            Assert.assertEquals(chunks.size(), (NUM_DATA + DataChunkExecutor.CHUNK_SIZE - 1) / DataChunkExecutor.CHUNK_SIZE);
+        }
+        try (final DataChunkExecutor executor = new DataChunkExecutor(1)) {
+            Assert.assertEquals(executor.mapChunks(NUM_DATA, (chunk, start, end) -> end - start), Collections.singletonList(NUM_DATA));
+        }
+    }
+}
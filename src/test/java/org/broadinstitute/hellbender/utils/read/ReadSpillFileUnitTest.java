@@ -0,0 +1,83 @@
+package org.broadinstitute.hellbender.utils.read;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.util.CloseableIterator;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ReadSpillFileUnitTest extends GATKBaseTest {
+
+    private static List<GATKRead> makeReads(final SAMFileHeader header, final int numReads) {
+        final List<GATKRead> reads = new ArrayList<>(numReads);
+        for ( int i = 0; i < numReads; i++ ) {
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read" + i, i % 2, 100 + i * 7, 50);
+            read.setAttribute("XX", i);
+            if ( i % 3 == 0 ) {
+                read.setIsReverseStrand(true);
+            }
+            reads.add(read);
+        }
+        return reads;
+    }
+
+    @DataProvider(name = "spillData")
+    public Object[][] spillData() {
+        return new Object[][]{
+                {0, 1}, {1, 1}, {1000, 0}, {1000, 1}, {1000, 9}
+        };
+    }
+
+    @Test(dataProvider = "spillData")
+    public void testSpillAndReplay(final int numReads, final int compressionLevel) {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(2, 0, 100000);
+        final List<GATKRead> reads = makeReads(header, numReads);
+
+        try ( final ReadSpillFile spillFile = new ReadSpillFile(header, null, compressionLevel) ) {
+            reads.forEach(spillFile::addRead);
+            Assert.assertEquals(spillFile.getNumReadsWritten(), numReads);
+
+            // replaying more than once must give the same reads each time
+            for ( int pass = 0; pass < 2; pass++ ) {
+                final List<GATKRead> replayed = new ArrayList<>();
+                try ( final CloseableIterator<GATKRead> it = spillFile.iterator() ) {
+                    it.forEachRemaining(replayed::add);
+                }
+                Assert.assertEquals(replayed.size(), reads.size());
+                for ( int i = 0; i < reads.size(); i++ ) {
+                    Assert.assertEquals(replayed.get(i).convertToSAMRecord(header).getSAMString(), reads.get(i).convertToSAMRecord(header).getSAMString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFileDeletedOnClose() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader();
+        final ReadSpillFile spillFile = new ReadSpillFile(header);
+        final File file = spillFile.getFile();
+        makeReads(header, 10).forEach(spillFile::addRead);
+        Assert.assertTrue(file.exists());
+        spillFile.close();
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCannotAddAfterReplay() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader();
+        try ( final ReadSpillFile spillFile = new ReadSpillFile(header) ) {
+            spillFile.iterator().close();
+            spillFile.addRead(makeReads(header, 1).get(0));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadCompressionLevel() {
+        new ReadSpillFile(ArtificialReadUtils.createArtificialSamHeader(), null, 10);
+    }
+}
@@ -0,0 +1,95 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords;
+
+import org.apache.spark.SparkConf;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.spark.GATKRegistrator;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.markduplicates.LibraryIdGenerator;
+import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
+import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class MarkDuplicatesSparkRecordSerializerUnitTest extends GATKBaseTest {
+
+    private static final SparkConf CONF = new SparkConf().set("spark.kryo.registrator", GATKRegistrator.class.getName());
+
+    private static GATKRead read(final String name, final int start, final boolean reverse) {
+        final GATKRead read = ArtificialReadUtils.createSamBackedRead(name, "1", start, 100);
+        read.setIsReverseStrand(reverse);
+        return read;
+    }
+
+    private static Map<String, Byte> libraryIndex(final GATKRead read) {
+        return Collections.singletonMap(ReadUtils.getLibrary(read, hg19Header, LibraryIdGenerator.UNKNOWN_LIBRARY), (byte) 0);
+    }
+
+    @DataProvider
+    public Object[][] pairOrientations() {
+        return new Object[][]{{false, false}, {false, true}, {true, false}, {true, true}};
+    }
+
+    @Test(dataProvider = "pairOrientations")
+    public void testPairRoundTrip(final boolean firstReverse, final boolean secondReverse) {
+        final GATKRead first = read("pair", 100000, firstReverse);
+        final GATKRead second = read("pair", 101000, secondReverse);
+        first.setIsFirstOfPair();
+        second.setIsSecondOfPair();
+        final Pair pair = MarkDuplicatesSparkRecord.newPair(second, first, hg19Header, 7, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, libraryIndex(first));
+        pair.setReadGroup((short) 3);
+
+        final Pair roundTripped = SparkTestUtils.roundTripInKryo(pair, Pair.class, CONF);
+        Assert.assertEquals(roundTripped.getName(), pair.getName());
+        Assert.assertEquals(roundTripped.getPartitionIndex(), pair.getPartitionIndex());
+        Assert.assertEquals(roundTripped.getScore(), pair.getScore());
+        Assert.assertEquals(roundTripped.getFirstStartPosition(), pair.getFirstStartPosition());
+        Assert.assertEquals(roundTripped.getReadGroup(), pair.getReadGroup());
+        Assert.assertEquals(roundTripped.getOrientationForPCRDuplicates(), pair.getOrientationForPCRDuplicates());
+        Assert.assertEquals(roundTripped.getOrientationForOpticalDuplicates(), pair.getOrientationForOpticalDuplicates());
+    }
+
+    @Test
+    public void testFragmentRoundTrip() {
+        final GATKRead read = read("fragment", 100000, true);
+        final Fragment fragment = MarkDuplicatesSparkRecord.newFragment(read, hg19Header, 12, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, libraryIndex(read));
+
+        final Fragment roundTripped = SparkTestUtils.roundTripInKryo(fragment, Fragment.class, CONF);
+        Assert.assertEquals(roundTripped.getName(), fragment.getName());
+        Assert.assertEquals(roundTripped.getPartitionIndex(), fragment.getPartitionIndex());
+        Assert.assertEquals(roundTripped.getScore(), fragment.getScore());
+        Assert.assertEquals(roundTripped.getFirstStartPosition(), fragment.getFirstStartPosition());
+        Assert.assertEquals(roundTripped.isRead1ReverseStrand(), fragment.isRead1ReverseStrand());
+    }
+
+    @Test
+    public void testEmptyFragmentAndPassthroughRoundTrip() {
+        final GATKRead read = read("empty", 100000, true);
+        final EmptyFragment emptyFragment = MarkDuplicatesSparkRecord.newEmptyFragment(read, hg19Header, libraryIndex(read));
+        final EmptyFragment roundTrippedEmpty = SparkTestUtils.roundTripInKryo(emptyFragment, EmptyFragment.class, CONF);
+        Assert.assertEquals(roundTrippedEmpty.isRead1ReverseStrand(), true);
+        Assert.assertEquals(roundTrippedEmpty.getType(), MarkDuplicatesSparkRecord.Type.EMPTY_FRAGMENT);
+
+        final Passthrough passthrough = MarkDuplicatesSparkRecord.getPassthrough(read("passthrough", 1, false), 42);
+        final Passthrough roundTrippedPassthrough = SparkTestUtils.roundTripInKryo(passthrough, Passthrough.class, CONF);
+        Assert.assertEquals(roundTrippedPassthrough.getName(), "passthrough");
+        Assert.assertEquals(roundTrippedPassthrough.getPartitionIndex(), 42);
+    }
+
+    @Test
+    public void testKeysRoundTrip() {
+        final GATKRead first = read("pair", 100000, false);
+        final GATKRead second = read("pair", 101000, true);
+        final ReadsKey pairKey = ReadsKey.getKeyForPair(hg19Header, first, second, libraryIndex(first));
+        Assert.assertEquals(SparkTestUtils.roundTripInKryo(pairKey, ReadsKey.KeyForPair.class, CONF), pairKey);
+
+        final ReadsKey fragmentKey = ReadsKey.getKeyForFragment(-12345, true, 3, (byte) 2);
+        Assert.assertEquals(SparkTestUtils.roundTripInKryo(fragmentKey, ReadsKey.KeyForFragment.class, CONF), fragmentKey);
+    }
+}
@@ -0,0 +1,104 @@
+package org.broadinstitute.hellbender.utils.reference;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.spark.SparkConf;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public final class PackedReferenceUnitTest extends GATKBaseTest {
+
+    private static final byte[] ALPHABET = "ACGTACGTACGTacgtNNNNRYKMSWBDHVn".getBytes();
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        int i = 0;
+        while (i < length) {
+            // runs of the same base, so that the mask has runs longer than one base
+            final byte base = ALPHABET[random.nextInt(ALPHABET.length)];
+            final int runLength = Math.min(length - i, 1 + random.nextInt(random.nextInt(10) == 0 ? 50 : 3));
+            Arrays.fill(bases, i, i + runLength, base);
+            i += runLength;
+        }
+        return bases;
+    }
+
+    private static byte[] expectedBases(final byte[] bases, final int start, final int end) {
+        final byte[] expected = Arrays.copyOfRange(bases, start - 1, end);
+        for (int i = 0; i < expected.length; i++) {
+            // soft-masked A, C, G and T are packed as upper case
+            if ("acgt".indexOf(expected[i]) >= 0) {
+                expected[i] = (byte) Character.toUpperCase(expected[i]);
+            }
+        }
+        return expected;
+    }
+
+    private static PackedReference build(final byte[]... contigs) {
+        final PackedReference.Builder builder = new PackedReference.Builder();
+        for (int i = 0; i < contigs.length; i++) {
+            builder.addContig(Integer.toString(i + 1), contigs[i].length);
+            // add the bases in uneven chunks
+            for (int start = 0; start < contigs[i].length; start += 37) {
+                builder.addBases(Arrays.copyOfRange(contigs[i], start, Math.min(contigs[i].length, start + 37)));
+            }
+        }
+        return builder.build();
+    }
+
+    private static void assertMatches(final PackedReference reference, final byte[][] contigs, final Random random) {
+        for (int i = 0; i < contigs.length; i++) {
+            final String contig = Integer.toString(i + 1);
+            Assert.assertEquals(reference.getContigLength(contig), contigs[i].length);
+            Assert.assertEquals(reference.getBases(new SimpleInterval(contig, 1, contigs[i].length)), expectedBases(contigs[i], 1, contigs[i].length));
+            for (int j = 0; j < 200; j++) {
+                final int start = 1 + random.nextInt(contigs[i].length);
+                final int end = start + random.nextInt(contigs[i].length - start + 1);
+                Assert.assertEquals(reference.getBases(new SimpleInterval(contig, start, end)), expectedBases(contigs[i], start, end), contig + ":" + start + "-" + end);
+            }
+        }
+    }
+
+    @Test
+    public void testGetBases() {
+        final Random random = new Random(11);
+        final byte[][] contigs = { randomBases(random, 1000), randomBases(random, 1), randomBases(random, 4003) };
+        final PackedReference reference = build(contigs);
+
+        Assert.assertEquals(reference.getSequenceDictionary().size(), 3);
+        Assert.assertEquals(reference.getSequenceDictionary().getSequence(2).getSequenceName(), "3");
+        Assert.assertEquals(reference.getPackedSize(), 250 + 1 + 1001);
+        assertMatches(reference, contigs, random);
+    }
+
+    @Test
+    public void testSerializationRoundTrips() {
+        final Random random = new Random(12);
+        final byte[][] contigs = { randomBases(random, 70000), randomBases(random, 33) };
+        final PackedReference reference = build(contigs);
+
+        assertMatches(SerializationUtils.roundtrip(reference), contigs, random);
+        assertMatches(SparkTestUtils.roundTripInKryo(reference, PackedReference.class, new SparkConf()), contigs, random);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIntervalBeyondContigEnd() {
+        build("ACGT".getBytes()).getBases(new SimpleInterval("1", 2, 5));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownContig() {
+        build("ACGT".getBytes()).getBases(new SimpleInterval("2", 1, 2));
+    }
+
+    @Test(expectedExceptions = GATKException.class)
+    public void testMissingBases() {
+        new PackedReference.Builder().addContig("1", 10).addBases("ACGT".getBytes()).build();
+    }
+}
@@ -259,4 +259,24 @@ public class SparkUtilsUnitTest extends GATKBaseTest {
         final JavaRDD<Integer> sorted = SparkUtils.sortUsingElementsAsKeys(unsortedRDD, Comparator.naturalOrder(), 2);
         assertSorted(sorted.collect(), Comparator.naturalOrder());
     }
+
+    @Test
+    public void testRebalanceByCost() {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        // elements 0..99 cost 1 each, except for element 10 which costs as much as all the others put together
+        final List<Integer> elements = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        final JavaRDD<Integer> rdd = ctx.parallelize(elements, 7);
+
+        final JavaRDD<Integer> rebalanced = SparkUtils.rebalanceByCost(rdd, i -> i == 10 ? 99L : 1L, 4);
+        Assert.assertEquals(rebalanced.getNumPartitions(), 4);
+        Assert.assertEquals(rebalanced.collect(), elements, "order must be preserved");
+
+        final List<List<Integer>> partitions = rebalanced.glom().collect();
+        // the expensive element takes half the total cost, so it gets a partition of its own, and the cheap elements
+        // after it are split between the partitions that cover the rest of the cost
+        Assert.assertEquals(partitions.get(0), elements.subList(0, 10));
+        Assert.assertEquals(partitions.get(1), Collections.singletonList(10));
+        Assert.assertEquals(partitions.get(2), elements.subList(11, 50));
+        Assert.assertEquals(partitions.get(3), elements.subList(50, 100));
+    }
 }
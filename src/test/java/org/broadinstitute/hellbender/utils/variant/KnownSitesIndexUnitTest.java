@@ -0,0 +1,79 @@
+package org.broadinstitute.hellbender.utils.variant;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.collections.IntervalsSkipList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public final class KnownSitesIndexUnitTest extends GATKBaseTest {
+
+    private static List<String> toStrings(final List<GATKVariant> variants) {
+        return variants.stream()
+                .map(v -> v.getContig() + ":" + v.getStart() + "-" + v.getEnd() + ":" + v.isSnp() + ":" + v.isIndel())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static KnownSitesIndex writeAndOpen(final List<GATKVariant> sites) {
+        final KnownSitesIndex.Builder builder = new KnownSitesIndex.Builder();
+        sites.forEach(builder::add);
+        final File indexFile = createTempFile("knownSites", ".index");
+        builder.write(indexFile);
+        return KnownSitesIndex.open(indexFile);
+    }
+
+    @Test
+    public void testSimpleQueries() {
+        final List<GATKVariant> sites = Arrays.asList(
+                new MinimalVariant(new SimpleInterval("1", 200, 300), false, true),
+                new MinimalVariant(new SimpleInterval("1", 10, 10), true, false),
+                new MinimalVariant(new SimpleInterval("2", 50, 50), true, false));
+        final KnownSitesIndex index = writeAndOpen(sites);
+
+        Assert.assertEquals(index.size(), 3);
+        Assert.assertEquals(toStrings(index.getOverlapping(new SimpleInterval("1", 1, 9))), Arrays.asList());
+        Assert.assertEquals(toStrings(index.getOverlapping(new SimpleInterval("1", 10, 250))), Arrays.asList("1:10-10:true:false", "1:200-300:false:true"));
+        Assert.assertEquals(toStrings(index.getOverlapping(new SimpleInterval("1", 300, 400))), Arrays.asList("1:200-300:false:true"));
+        Assert.assertEquals(toStrings(index.getOverlapping(new SimpleInterval("2", 1, 100))), Arrays.asList("2:50-50:true:false"));
+        Assert.assertEquals(toStrings(index.getOverlapping(new SimpleInterval("3", 1, 100))), Arrays.asList());
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        final KnownSitesIndex index = writeAndOpen(new ArrayList<>());
+        Assert.assertEquals(index.size(), 0);
+        Assert.assertTrue(index.getOverlapping(new SimpleInterval("1", 1, 100)).isEmpty());
+    }
+
+    @Test
+    public void testMatchesIntervalsSkipList() {
+        // a mix of SNPs and indels, including some long deletions that span many later sites
+        final Random random = new Random(13);
+        final List<GATKVariant> sites = new ArrayList<>();
+        for ( final String contig : Arrays.asList("1", "2", "3") ) {
+            for ( int i = 0; i < 2000; i++ ) {
+                final int start = 1 + random.nextInt(100000);
+                final int length = random.nextInt(20) == 0 ? random.nextInt(5000) : random.nextInt(3);
+                sites.add(new MinimalVariant(new SimpleInterval(contig, start, start + length), length == 0, length > 0));
+            }
+        }
+        final KnownSitesIndex index = writeAndOpen(sites);
+        final IntervalsSkipList<GATKVariant> skipList = new IntervalsSkipList<>(sites);
+
+        Assert.assertEquals(index.size(), sites.size());
+        for ( int i = 0; i < 1000; i++ ) {
+            final String contig = Arrays.asList("1", "2", "3", "4").get(random.nextInt(4));
+            final int start = 1 + random.nextInt(110000);
+            final SimpleInterval query = new SimpleInterval(contig, start, start + random.nextInt(500));
+            Assert.assertEquals(toStrings(index.getOverlapping(query)), toStrings(skipList.getOverlapping(query)), query.toString());
+        }
+    }
+}
@@ -327,6 +327,43 @@ public class GVCFWriterUnitTest extends GATKBaseTest {
     }
 
 
+    @Test
+    public void testBandToleranceMergesFluctuatingGQs() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY, 2);
+
+        // GQs fluctuating around the partition at 10 stay in the block started in [10, 20)
+        writer.add(makeHomRef(1, 10));
+        writer.add(makeHomRef(2, 9));
+        writer.add(makeHomRef(3, 11));
+        writer.add(makeHomRef(4, 8));
+        // but a GQ further from the band starts a new block
+        writer.add(makeHomRef(5, 7));
+        writer.close();
+        Assert.assertEquals(mockWriter.emitted.size(), 2);
+        assertGoodVC(mockWriter.emitted.get(0), CHR1, 1, 4, false);
+        assertGoodVC(mockWriter.emitted.get(1), CHR1, 5, 5, false);
+        // the block reports its least confident site
+        Assert.assertEquals(mockWriter.emitted.get(0).getGenotype(0).getGQ(), 8);
+    }
+
+    @Test
+    public void testNoBandToleranceKeepsBlocksWithinBands() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY, 0);
+
+        writer.add(makeHomRef(1, 10));
+        writer.add(makeHomRef(2, 9));
+        writer.add(makeHomRef(3, 11));
+        writer.close();
+        Assert.assertEquals(mockWriter.emitted.size(), 3);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeBandTolerance() {
+        new GVCFWriter(new MockWriter(), standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY, -1);
+    }
+
     @Test
     public void testBandingUsingPP() {
         final MockWriter mockWriter = new MockWriter();
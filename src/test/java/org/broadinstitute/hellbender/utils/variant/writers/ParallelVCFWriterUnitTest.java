@@ -0,0 +1,166 @@
+package org.broadinstitute.hellbender.utils.variant.writers;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.Tribble;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.FeatureDataSource;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelVCFWriterUnitTest extends GATKBaseTest {
+
+    private static final List<String> SAMPLES = Arrays.asList("sample1", "sample2", "sample3");
+    private static final SAMSequenceDictionary DICTIONARY = new SAMSequenceDictionary(Arrays.asList(
+            new SAMSequenceRecord("1", 1_000_000), new SAMSequenceRecord("2", 1_000_000)));
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C");
+
+    // more than a few batches, so that several are in flight at once
+    private static final int NUM_VARIANTS_PER_CONTIG = 5 * ParallelVCFWriter.BATCH_SIZE / 2;
+
+    private static VCFHeader makeHeader() {
+        final Set<VCFHeaderLine> headerLines = new LinkedHashSet<>();
+        VCFStandardHeaderLines.addStandardFormatLines(headerLines, true,
+                VCFConstants.GENOTYPE_KEY, VCFConstants.DEPTH_KEY, VCFConstants.GENOTYPE_QUALITY_KEY);
+        VCFStandardHeaderLines.addStandardInfoLines(headerLines, true, VCFConstants.DEPTH_KEY);
+        final VCFHeader header = new VCFHeader(headerLines, SAMPLES);
+        header.setSequenceDictionary(DICTIONARY);
+        return header;
+    }
+
+    private static List<VariantContext> makeVariants() {
+        final List<VariantContext> result = new ArrayList<>();
+        for (final SAMSequenceRecord contig : DICTIONARY.getSequences()) {
+            for (int n = 0; n < NUM_VARIANTS_PER_CONTIG; n++) {
+                final int start = 100 * (n + 1);
+                final int sampleOffset = n;
+                result.add(new VariantContextBuilder("test", contig.getSequenceName(), start, start, Arrays.asList(REF, ALT))
+                        .attribute(VCFConstants.DEPTH_KEY, 30 + n % 7)
+                        .genotypes(SAMPLES.stream().map(sample -> new GenotypeBuilder(sample,
+                                (sample.hashCode() + sampleOffset) % 3 == 0 ? Arrays.asList(REF, ALT) : Arrays.asList(REF, REF))
+                                .DP(10 + sampleOffset % 11).GQ(sampleOffset % 99).make()).collect(Collectors.toList()))
+                        .make());
+            }
+        }
+        return result;
+    }
+
+    private static void writeVariants(final VariantContextWriter writer) {
+        try (final VariantContextWriter w = writer) {
+            w.writeHeader(makeHeader());
+            makeVariants().forEach(w::add);
+        }
+    }
+
+    private static List<String> readRecordLines(final File file) throws IOException {
+        try (final InputStream fileStream = new FileInputStream(file);
+             final InputStream in = file.getName().endsWith(".gz") ? new GZIPInputStream(fileStream) : fileStream;
+             final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().filter(line -> !line.startsWith("#")).collect(Collectors.toList());
+        }
+    }
+
+    @DataProvider(name = "outputs")
+    public Object[][] outputs() {
+        return new Object[][] {
+                {".vcf", 1}, {".vcf", 3}, {".vcf.gz", 1}, {".vcf.gz", 3}
+        };
+    }
+
+    @Test(dataProvider = "outputs")
+    public void testSameRecordsAsSerialWriter(final String extension, final int numThreads) throws IOException {
+        final File expected = createTempFile("serial", extension);
+        final File actual = createTempFile("parallel", extension);
+        writeVariants(GATKVariantContextUtils.createVCFWriter(expected, DICTIONARY, false));
+        writeVariants(new ParallelVCFWriter(actual, DICTIONARY, numThreads));
+
+        final List<String> actualRecords = readRecordLines(actual);
+        Assert.assertEquals(actualRecords.size(), 2 * NUM_VARIANTS_PER_CONTIG);
+        Assert.assertEquals(actualRecords, readRecordLines(expected));
+    }
+
+    @Test(dataProvider = "outputs")
+    public void testVariantsWithLazyGenotypes(final String extension, final int numThreads) throws IOException {
+        // variants read from a file have genotypes parsed on demand by the codec of the reader, which is shared
+        final File input = createTempFile("input", ".vcf");
+        writeVariants(GATKVariantContextUtils.createVCFWriter(input, DICTIONARY, false));
+        final File output = createTempFile("rewritten", extension);
+        try (final FeatureDataSource<VariantContext> variants = new FeatureDataSource<>(input);
+             final VariantContextWriter writer = new ParallelVCFWriter(output, DICTIONARY, numThreads)) {
+            writer.writeHeader((VCFHeader) variants.getHeader());
+            variants.forEach(vc -> {
+                Assert.assertTrue(vc.getGenotypes().isLazyWithData());
+                writer.add(vc);
+            });
+        }
+        Assert.assertEquals(readRecordLines(output), readRecordLines(input));
+    }
+
+    @Test(dataProvider = "outputs")
+    public void testIndexOnTheFly(final String extension, final int numThreads) {
+        final File output = createTempFile("indexed", extension);
+        writeVariants(new ParallelVCFWriter(output, DICTIONARY, numThreads, Options.INDEX_ON_THE_FLY));
+        Assert.assertTrue(extension.endsWith(".gz") ? Tribble.tabixIndexFile(output).exists() : Tribble.indexFile(output).exists());
+
+        try (final FeatureDataSource<VariantContext> variants = new FeatureDataSource<>(output)) {
+            // the first variants of the second contig, which are after the first batches
+            final List<VariantContext> queried = variants.queryAndPrefetch(new SimpleInterval("2", 1, 1000));
+            Assert.assertEquals(queried.size(), 10);
+            queried.forEach(vc -> Assert.assertEquals(vc.getContig(), "2"));
+            // a range across batches
+            Assert.assertEquals(variants.queryAndPrefetch(new SimpleInterval("1", 99_950, 200_050)).size(), 1001);
+        }
+    }
+
+    @Test
+    public void testSitesOnly() throws IOException {
+        final File output = createTempFile("sitesOnly", ".vcf");
+        writeVariants(new ParallelVCFWriter(output, DICTIONARY, 2, Options.DO_NOT_WRITE_GENOTYPES));
+        final List<String> records = readRecordLines(output);
+        Assert.assertEquals(records.size(), 2 * NUM_VARIANTS_PER_CONTIG);
+        // CHROM POS ID REF ALT QUAL FILTER INFO
+        records.forEach(record -> Assert.assertEquals(record.split("\t").length, 8));
+    }
+
+    @Test
+    public void testCanWrite() {
+        Assert.assertTrue(ParallelVCFWriter.canWrite(new File("out.vcf")));
+        Assert.assertTrue(ParallelVCFWriter.canWrite(new File("out.g.vcf.gz")));
+        Assert.assertFalse(ParallelVCFWriter.canWrite(new File("out.bcf")));
+        Assert.assertFalse(ParallelVCFWriter.canWrite(new File("out.txt.gz")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedOption() {
+        new ParallelVCFWriter(createTempFile("unsupported", ".vcf"), DICTIONARY, 1, Options.USE_ASYNC_IO);
+    }
+}